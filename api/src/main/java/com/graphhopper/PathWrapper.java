@@ -341,4 +341,42 @@ public class PathWrapper {
     public void setImpossible(boolean impossible) {
         this.impossible = impossible;
     }
+
+    /**
+     * @return a copy of this path. Its lists, points and path details can be changed without changing this path,
+     * but the Instruction objects are shared.
+     */
+    public PathWrapper copy() {
+        PathWrapper copy = new PathWrapper();
+        copy.errors.addAll(errors);
+        if (description != null)
+            copy.description = new ArrayList<>(description);
+        copy.distance = distance;
+        copy.ascend = ascend;
+        copy.descend = descend;
+        copy.routeWeight = routeWeight;
+        copy.time = time;
+        copy.debugInfo = debugInfo;
+        if (instructions != null) {
+            copy.instructions = new InstructionList(instructions.size(), instructions.getTranslation());
+            copy.instructions.addAll(instructions);
+        }
+        if (waypointList != PointList.EMPTY)
+            copy.waypointList = waypointList.clone(false);
+        if (pointList != PointList.EMPTY)
+            copy.pointList = pointList.clone(false);
+        copy.numChanges = numChanges;
+        copy.legs.addAll(legs);
+        copy.pointsOrder.addAll(pointsOrder);
+        for (Map.Entry<String, List<PathDetail>> entry : pathDetails.entrySet()) {
+            List<PathDetail> details = new ArrayList<>(entry.getValue().size());
+            for (PathDetail detail : entry.getValue()) {
+                details.add(new PathDetail(detail));
+            }
+            copy.pathDetails.put(entry.getKey(), details);
+        }
+        copy.fare = fare;
+        copy.impossible = impossible;
+        return copy;
+    }
 }
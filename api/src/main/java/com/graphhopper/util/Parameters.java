@@ -129,11 +129,38 @@ public class Parameters {
          */
         public static final double DEFAULT_HEADING_PENALTY = 300;
         public static final String HEADING_PENALTY = "heading_penalty";
+        /**
+         * true or false. If the response should contain the route without the heading constraints as second path,
+         * in case it differs. It is calculated with the same snapped points and only the legs with a heading are
+         * searched again. Only the via routing supports it, the alternative route and round trip algorithms ignore it.
+         */
+        public static final String ALTERNATIVE_WITHOUT_HEADING = "alternative_without_heading";
         /**
          * block road access via a point in the format lat,lon or an area defined by a circle lat,lon,radius or
          * a rectangle lat1,lon1,lat2,lon2
          */
         public static final String BLOCK_AREA = "block_area";
+        /**
+         * true or false. If the legs between via points should be calculated in parallel. Legs that depend on the
+         * previous leg (pass_through) or that enforce a heading are still calculated one after the other.
+         */
+        public static final String PARALLEL_LEGS = "parallel_legs";
+        /**
+         * The maximum number of threads calculating the legs of one request with parallel_legs=true
+         */
+        public static final String INIT_PARALLEL_LEGS_THREADS = ROUTING_INIT_PREFIX + "parallel_legs.threads";
+        /**
+         * The maximum number of cached route responses, 0 disables the cache
+         */
+        public static final String INIT_ROUTE_CACHE_SIZE = ROUTING_INIT_PREFIX + "route_cache.size";
+        /**
+         * The number of threads calculating the routes of batch requests
+         */
+        public static final String INIT_BATCH_THREADS = ROUTING_INIT_PREFIX + "batch.threads";
+        /**
+         * The maximum number of routes of one batch request that are calculated or wait to be written at the same time
+         */
+        public static final String INIT_BATCH_MAX_IN_FLIGHT = ROUTING_INIT_PREFIX + "batch.max_in_flight";
     }
 
     /**
@@ -192,6 +219,21 @@ public class Parameters {
         public static final String INIT_DISABLING_ALLOWED = ROUTING_INIT_PREFIX + "lm.disabling_allowed";
     }
 
+    /**
+     * Properties for routing with customizable contraction hierarchies speedup
+     */
+    public static final class CCH {
+        public static final String PREPARE = "prepare.cch.";
+        /**
+         * This property name in HintsMap configures at runtime if CCH routing should be ignored.
+         */
+        public static final String DISABLE = "cch.disable";
+        /**
+         * This property name configures at start if the DISABLE parameter can have an effect.
+         */
+        public static final String INIT_DISABLING_ALLOWED = ROUTING_INIT_PREFIX + "cch.disabling_allowed";
+    }
+
     /**
      * Properties for non-CH routing
      */
@@ -205,6 +247,24 @@ public class Parameters {
         public static final String MAX_NON_CH_POINT_DISTANCE = ROUTING_INIT_PREFIX + NON_CH_PREFIX + "max_waypoint_distance";
     }
 
+    /**
+     * Properties for the many-to-many matrix calculation
+     */
+    public static final class Matrix {
+        /**
+         * The number of threads calculating the searches of one matrix request.
+         */
+        public static final String INIT_THREADS = ROUTING_INIT_PREFIX + "matrix.threads";
+        /**
+         * The maximum number of from times to points of one matrix request.
+         */
+        public static final String INIT_MAX_CELLS = ROUTING_INIT_PREFIX + "matrix.max_cells";
+        /**
+         * If true (default) a matrix request fails if a connection cannot be found, otherwise it is marked as missing.
+         */
+        public static final String FAIL_FAST = "fail_fast";
+    }
+
     /**
      * Properties for the details response
      */
@@ -31,6 +31,15 @@ public class PathDetail {
         this.value = value;
     }
 
+    /**
+     * Creates a copy of the specified detail with the same value and interval
+     */
+    public PathDetail(PathDetail detail) {
+        this.value = detail.value;
+        this.first = detail.first;
+        this.last = detail.last;
+    }
+
     public Object getValue() {
         return value;
     }
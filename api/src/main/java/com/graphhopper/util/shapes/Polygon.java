@@ -130,6 +130,34 @@ public class Polygon implements Shape {
 
     }
 
+    /**
+     * Returns true if the border of this polygon touches the specified rectangle. Otherwise the rectangle is either
+     * completely inside or completely outside of this polygon, which can be decided via contains for one of its
+     * points.
+     */
+    public boolean intersectsBorder(BBox bbox) {
+        if (bbox.maxLat < minLat || bbox.minLat > maxLat || bbox.maxLon < minLon || bbox.minLon > maxLon)
+            return false;
+
+        int len = this.lat.length;
+        for (int i = 0; i < len; i++) {
+            double lat1 = this.lat[i], lon1 = this.lon[i];
+            double lat2 = this.lat[(i + 1) % len], lon2 = this.lon[(i + 1) % len];
+            if (bbox.contains(lat1, lon1) || bbox.contains(lat2, lon2))
+                return true;
+            if (Math.max(lat1, lat2) < bbox.minLat || Math.min(lat1, lat2) > bbox.maxLat
+                    || Math.max(lon1, lon2) < bbox.minLon || Math.min(lon1, lon2) > bbox.maxLon)
+                continue;
+
+            if (edgesAreIntersecting(lon1, lat1, lon2, lat2, bbox.minLon, bbox.minLat, bbox.maxLon, bbox.minLat)
+                    || edgesAreIntersecting(lon1, lat1, lon2, lat2, bbox.maxLon, bbox.minLat, bbox.maxLon, bbox.maxLat)
+                    || edgesAreIntersecting(lon1, lat1, lon2, lat2, bbox.maxLon, bbox.maxLat, bbox.minLon, bbox.maxLat)
+                    || edgesAreIntersecting(lon1, lat1, lon2, lat2, bbox.minLon, bbox.maxLat, bbox.minLon, bbox.minLat))
+                return true;
+        }
+        return false;
+    }
+
     @Override
     public boolean contains(Shape s) {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -225,6 +253,21 @@ public class Polygon implements Shape {
         return maxLon;
     }
 
+    /**
+     * @return the number of points of this polygon
+     */
+    public int size() {
+        return lat.length;
+    }
+
+    public double getLat(int index) {
+        return lat[index];
+    }
+
+    public double getLon(int index) {
+        return lon[index];
+    }
+
     @Override
     public String toString() {
         return "polygon (" + lat.length + " points)";
@@ -67,4 +67,16 @@ public class PolygonTest {
 
     }
 
+    @Test
+    public void testIntersectsBorder() {
+        Polygon square = new Polygon(new double[]{0, 0, 20, 20}, new double[]{0, 20, 20, 0});
+        // completely inside or outside
+        assertFalse(square.intersectsBorder(new BBox(5, 10, 5, 10)));
+        assertFalse(square.intersectsBorder(new BBox(25, 30, 5, 10)));
+        // the rectangle contains a corner or crosses an edge
+        assertTrue(square.intersectsBorder(new BBox(15, 25, 15, 25)));
+        assertTrue(square.intersectsBorder(new BBox(5, 10, -5, 25)));
+        // the rectangle contains the whole polygon
+        assertTrue(square.intersectsBorder(new BBox(-5, 25, -5, 25)));
+    }
 }
@@ -21,9 +21,11 @@ import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.reader.dem.*;
 import com.graphhopper.routing.*;
+import com.graphhopper.routing.cch.CCHAlgoFactoryDecorator;
 import com.graphhopper.routing.ch.CHAlgoFactoryDecorator;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.lm.LMAlgoFactoryDecorator;
+import com.graphhopper.routing.matrix.*;
 import com.graphhopper.routing.profiles.DefaultEncodedValueFactory;
 import com.graphhopper.routing.profiles.EncodedValueFactory;
 import com.graphhopper.routing.profiles.EnumEncodedValue;
@@ -38,18 +40,24 @@ import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.util.parsers.DefaultTagParserFactory;
 import com.graphhopper.routing.util.parsers.TagParserFactory;
 import com.graphhopper.routing.weighting.*;
+import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.storage.*;
+import com.graphhopper.storage.change.BulkChangeResponse;
+import com.graphhopper.storage.change.BulkEdgeChanges;
 import com.graphhopper.storage.change.ChangeGraphHelper;
 import com.graphhopper.storage.change.ChangeGraphResponse;
 import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexSegmentGrid;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.*;
+import com.graphhopper.util.Parameters.CCH;
 import com.graphhopper.util.Parameters.CH;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
+import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.exceptions.PointOutOfBoundsException;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
@@ -60,9 +68,11 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.graphhopper.routing.ch.CHAlgoFactoryDecorator.EdgeBasedCHMode.EDGE_OR_NODE;
 import static com.graphhopper.routing.ch.CHAlgoFactoryDecorator.EdgeBasedCHMode.OFF;
@@ -91,11 +101,20 @@ public class GraphHopper implements GraphHopperAPI {
     private String ghLocation = "";
     private DAType dataAccessType = DAType.RAM_STORE;
     private boolean sortGraph = false;
+    private String sortOrder = "hilbert";
+    private boolean storeOSMWayIds = false;
+    private OSMWayIdStorage osmWayIdStorage;
+    private int changeEdgesThreads = Runtime.getRuntime().availableProcessors();
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
+    private boolean lockFreeReads = false;
+    private int loadThreads = Runtime.getRuntime().availableProcessors();
+    private boolean mmapPrefetch = false;
+    private ExecutorService mmapPrefetcher;
     private boolean fullyLoaded = false;
     private boolean smoothElevation = false;
+    private int elevationInterpolationThreads = Runtime.getRuntime().availableProcessors();
     // for routing
     private int maxRoundTripRetries = 3;
     private boolean simplifyResponse = true;
@@ -103,13 +122,19 @@ public class GraphHopper implements GraphHopperAPI {
     private int maxVisitedNodes = Integer.MAX_VALUE;
 
     private int nonChMaxWaypointDistance = Integer.MAX_VALUE;
+    private int matrixThreads = Runtime.getRuntime().availableProcessors();
+    private int maxMatrixCells = Integer.MAX_VALUE;
+    private int parallelLegsThreads = Runtime.getRuntime().availableProcessors();
+    private RouteCache routeCache;
     // for index
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 300;
     private int maxRegionSearch = 4;
+    private String locationIndexType = "tree";
     // for prepare
     private int minNetworkSize = 200;
     private int minOneWayNetworkSize = 0;
+    private int subnetworkThreads = Runtime.getRuntime().availableProcessors();
 
     // for LM prepare
     private final LMAlgoFactoryDecorator lmFactoryDecorator = new LMAlgoFactoryDecorator();
@@ -117,6 +142,9 @@ public class GraphHopper implements GraphHopperAPI {
     // for CH prepare
     private final CHAlgoFactoryDecorator chFactoryDecorator = new CHAlgoFactoryDecorator();
 
+    // for CCH prepare
+    private final CCHAlgoFactoryDecorator cchFactoryDecorator = new CCHAlgoFactoryDecorator();
+
     // for data reader
     private String dataReaderFile;
     private double dataReaderWayPointMaxDistance = 1;
@@ -129,16 +157,22 @@ public class GraphHopper implements GraphHopperAPI {
 
     private ElevationProvider eleProvider = ElevationProvider.NOOP;
     private FlagEncoderFactory flagEncoderFactory = FlagEncoderFactory.DEFAULT;
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    // serializes the graph changes, routing requests use the flag overlay of the storage instead of a lock
+    private final Object changeGraphLock = new Object();
+    private ExecutorService flagOverlayCompactor;
+    private final AtomicBoolean flagOverlayCompactionScheduled = new AtomicBoolean();
     private PathDetailsBuilderFactory pathBuilderFactory = new PathDetailsBuilderFactory();
 
     public GraphHopper() {
         chFactoryDecorator.setEnabled(true);
         lmFactoryDecorator.setEnabled(false);
+        cchFactoryDecorator.setEnabled(false);
 
         // order is important to use CH as base algo and set the approximation in the followed lm factory decorator
         algoDecorators.add(chFactoryDecorator);
         algoDecorators.add(lmFactoryDecorator);
+        // CCH falls back to the previous factory for requests it cannot handle
+        algoDecorators.add(cchFactoryDecorator);
     }
 
     /**
@@ -270,12 +304,32 @@ public class GraphHopper implements GraphHopperAPI {
         return this;
     }
 
+    /**
+     * Sets the location index: "tree" indexes the nodes and explores their edges, "segment_grid" indexes the segments
+     * of the edges, which makes snapping independent of the length of the edges, but requires more space.
+     */
+    public GraphHopper setLocationIndexType(String locationIndexType) {
+        ensureNotLoaded();
+        if (!"tree".equals(locationIndexType) && !"segment_grid".equals(locationIndexType))
+            throw new IllegalArgumentException("Unknown location index " + locationIndexType + ", use tree or segment_grid");
+        this.locationIndexType = locationIndexType;
+        return this;
+    }
+
+    public String getLocationIndexType() {
+        return locationIndexType;
+    }
+
     public GraphHopper setMinNetworkSize(int minNetworkSize, int minOneWayNetworkSize) {
         this.minNetworkSize = minNetworkSize;
         this.minOneWayNetworkSize = minOneWayNetworkSize;
         return this;
     }
 
+    public int getMinNetworkSize() {
+        return minNetworkSize;
+    }
+
     /**
      * This method call results in an in-memory graph.
      */
@@ -353,6 +407,58 @@ public class GraphHopper implements GraphHopperAPI {
         this.maxVisitedNodes = maxVisitedNodes;
     }
 
+    /**
+     * Sets the number of threads that calculate the searches of one matrix request in parallel.
+     */
+    public GraphHopper setMatrixThreads(int matrixThreads) {
+        this.matrixThreads = matrixThreads;
+        return this;
+    }
+
+    /**
+     * Limits the size of a matrix request to the specified number of from times to points.
+     */
+    public GraphHopper setMaxMatrixCells(int maxMatrixCells) {
+        this.maxMatrixCells = maxMatrixCells;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of threads that calculate the legs of one request if the hint parallel_legs is true.
+     */
+    public GraphHopper setParallelLegsThreads(int parallelLegsThreads) {
+        if (parallelLegsThreads < 1)
+            throw new IllegalArgumentException("parallel legs threads must be positive but was " + parallelLegsThreads);
+        this.parallelLegsThreads = parallelLegsThreads;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads that collect the edge flags of one changeEdges call in parallel.
+     */
+    public GraphHopper setChangeEdgesThreads(int changeEdgesThreads) {
+        if (changeEdgesThreads < 1)
+            throw new IllegalArgumentException("change edges threads must be positive but was " + changeEdgesThreads);
+        this.changeEdgesThreads = changeEdgesThreads;
+        return this;
+    }
+
+    /**
+     * Enables a cache for the responses of route requests with the specified maximum number of entries or disables
+     * it if size is 0. Only route uses the cache, calcPaths always calculates the paths.
+     */
+    public GraphHopper setRouteCacheSize(int size) {
+        routeCache = size > 0 ? new RouteCache(size) : null;
+        return this;
+    }
+
+    /**
+     * @return the cache for route responses or null if it is disabled
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
     /**
      * @return true if storing and fetching elevation data is enabled. Default is false
      */
@@ -368,6 +474,26 @@ public class GraphHopper implements GraphHopperAPI {
         return this;
     }
 
+    /**
+     * Sets the number of flag encoders whose subnetworks are removed in parallel.
+     */
+    public GraphHopper setSubnetworkThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("subnetwork threads must be positive but was " + threads);
+        this.subnetworkThreads = threads;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads that interpolate the elevations of bridges and of tunnels.
+     */
+    public GraphHopper setElevationInterpolationThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("elevation interpolation threads must be positive but was " + threads);
+        this.elevationInterpolationThreads = threads;
+        return this;
+    }
+
     /**
      * This methods enables gps point calculation. If disabled only distance will be calculated.
      */
@@ -457,7 +583,8 @@ public class GraphHopper implements GraphHopperAPI {
     }
 
     /**
-     * Sorts the graph which requires more RAM while import. See #12
+     * Sorts the graph right after the import, so that nodes and edges that are close to each other get close ids.
+     * This requires more RAM while import but improves the memory locality of the preparations and queries.
      */
     public GraphHopper setSortGraph(boolean sortGraph) {
         ensureNotLoaded();
@@ -465,6 +592,39 @@ public class GraphHopper implements GraphHopperAPI {
         return this;
     }
 
+    /**
+     * Sets the order of the sorted graph: "hilbert" sorts the nodes along a Hilbert curve and "dfs" in the order of a
+     * depth first search.
+     */
+    public GraphHopper setSortOrder(String sortOrder) {
+        ensureNotLoaded();
+        if (!"hilbert".equals(sortOrder) && !"dfs".equals(sortOrder))
+            throw new IllegalArgumentException("Unknown sort order " + sortOrder + ", use hilbert or dfs");
+        this.sortOrder = sortOrder;
+        return this;
+    }
+
+    public String getSortOrder() {
+        return sortOrder;
+    }
+
+    /**
+     * Stores the OSM way id of every edge while import, which is required to change the edges of OSM ways via
+     * changeEdges.
+     */
+    public GraphHopper setStoreOSMWayIds(boolean storeOSMWayIds) {
+        ensureNotLoaded();
+        this.storeOSMWayIds = storeOSMWayIds;
+        return this;
+    }
+
+    /**
+     * @return the OSM way ids of the edges or null if they are not stored, see setStoreOSMWayIds
+     */
+    public OSMWayIdStorage getOSMWayIdStorage() {
+        return osmWayIdStorage;
+    }
+
     public boolean isAllowWrites() {
         return allowWrites;
     }
@@ -478,6 +638,37 @@ public class GraphHopper implements GraphHopperAPI {
         return this;
     }
 
+    /**
+     * Avoids the synchronization of every read for memory mapped storage after loading or importing,
+     * which otherwise limits the throughput for many concurrent routing requests. Disabled by default and
+     * disabled again before the structure of the graph is changed, see changeGraphStructure.
+     */
+    public GraphHopper setLockFreeReads(boolean lockFreeReads) {
+        ensureNotLoaded();
+        this.lockFreeReads = lockFreeReads;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads that read the files of the graph storage concurrently when loading the graph.
+     */
+    public GraphHopper setLoadThreads(int loadThreads) {
+        if (loadThreads < 1)
+            throw new IllegalArgumentException("load threads must be positive but was " + loadThreads);
+        this.loadThreads = loadThreads;
+        return this;
+    }
+
+    /**
+     * Reads all memory mapped files in a background thread after loading the graph, so that the operating system
+     * keeps them in the page cache and the first requests do not have to wait for the disk.
+     */
+    public GraphHopper setMMapPrefetch(boolean mmapPrefetch) {
+        ensureNotLoaded();
+        this.mmapPrefetch = mmapPrefetch;
+        return this;
+    }
+
     public TranslationMap getTranslationMap() {
         return trMap;
     }
@@ -537,8 +728,14 @@ public class GraphHopper implements GraphHopperAPI {
 
         String graphDATypeStr = args.get("graph.dataaccess", "RAM_STORE");
         dataAccessType = DAType.fromString(graphDATypeStr);
+        lockFreeReads = args.getBool("graph.dataaccess.mmap.lock_free_reads", lockFreeReads);
+        mmapPrefetch = args.getBool("graph.dataaccess.mmap.prefetch", mmapPrefetch);
+        setLoadThreads(args.getInt("graph.dataaccess.load_threads", loadThreads));
 
         sortGraph = args.getBool("graph.do_sort", sortGraph);
+        setSortOrder(args.get("graph.sort_order", sortOrder));
+        storeOSMWayIds = args.getBool("graph.osm_way_ids", storeOSMWayIds);
+        setChangeEdgesThreads(args.getInt("graph.change_edges.threads", changeEdgesThreads));
         removeZipped = args.getBool("graph.remove_zipped", removeZipped);
         EncodingManager.Builder emBuilder = new EncodingManager.Builder();
         String flagEncodersStr = args.get("graph.flag_encoders", "");
@@ -562,6 +759,7 @@ public class GraphHopper implements GraphHopperAPI {
         // elevation
         String eleProviderStr = toLowerCase(args.get("graph.elevation.provider", "noop"));
         this.smoothElevation = args.getBool("graph.elevation.smoothing", false);
+        setElevationInterpolationThreads(args.getInt("graph.elevation.interpolation_threads", elevationInterpolationThreads));
 
         // keep fallback until 0.8
         boolean eleCalcMean = args.has("graph.elevation.calcmean")
@@ -598,11 +796,13 @@ public class GraphHopper implements GraphHopperAPI {
         if (!baseURL.isEmpty())
             tmpProvider.setBaseURL(baseURL);
         tmpProvider.setDAType(elevationDAType);
+        tmpProvider.setMaxCachedTiles(args.getInt("graph.elevation.cache_size", 32));
         setElevationProvider(tmpProvider);
 
         // optimizable prepare
         minNetworkSize = args.getInt("prepare.min_network_size", minNetworkSize);
         minOneWayNetworkSize = args.getInt("prepare.min_one_way_network_size", minOneWayNetworkSize);
+        setSubnetworkThreads(args.getInt("prepare.subnetworks.threads", subnetworkThreads));
 
         // prepare CH, LM, ...
         for (RoutingAlgorithmFactoryDecorator decorator : algoDecorators) {
@@ -617,11 +817,16 @@ public class GraphHopper implements GraphHopperAPI {
         // index
         preciseIndexResolution = args.getInt("index.high_resolution", preciseIndexResolution);
         maxRegionSearch = args.getInt("index.max_region_search", maxRegionSearch);
+        setLocationIndexType(args.get("index.type", locationIndexType));
 
         // routing
         maxVisitedNodes = args.getInt(Routing.INIT_MAX_VISITED_NODES, Integer.MAX_VALUE);
         maxRoundTripRetries = args.getInt(RoundTrip.INIT_MAX_RETRIES, maxRoundTripRetries);
         nonChMaxWaypointDistance = args.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, Integer.MAX_VALUE);
+        matrixThreads = args.getInt(Parameters.Matrix.INIT_THREADS, matrixThreads);
+        maxMatrixCells = args.getInt(Parameters.Matrix.INIT_MAX_CELLS, maxMatrixCells);
+        setParallelLegsThreads(args.getInt(Routing.INIT_PARALLEL_LEGS_THREADS, parallelLegsThreads));
+        setRouteCacheSize(args.getInt(Routing.INIT_ROUTE_CACHE_SIZE, routeCache == null ? 0 : routeCache.getMaxSize()));
 
         return this;
     }
@@ -679,8 +884,12 @@ public class GraphHopper implements GraphHopperAPI {
 
             readData();
             cleanUp();
+            if (sortGraph)
+                sortGraph();
             postProcessing(closeEarly);
             flush();
+            if (!closeEarly)
+                initLockFreeReads();
         } finally {
             if (lock != null)
                 lock.release();
@@ -710,6 +919,8 @@ public class GraphHopper implements GraphHopperAPI {
             throw new IllegalStateException("Couldn't load from existing folder: " + ghLocation
                     + " but also cannot use file for DataReader as it wasn't specified!");
 
+        if (osmWayIdStorage != null)
+            osmWayIdStorage.create(1000);
         DataReader reader = createReader(ghStorage);
         logger.info("using " + ghStorage.toString() + ", memory:" + getMemInfo());
         reader.readGraph();
@@ -776,6 +987,9 @@ public class GraphHopper implements GraphHopperAPI {
         if (lmFactoryDecorator.isEnabled())
             initLMAlgoFactoryDecorator();
 
+        if (cchFactoryDecorator.isEnabled())
+            initCCHAlgoFactoryDecorator();
+
         List<CHProfile> chProfiles;
         if (chFactoryDecorator.isEnabled()) {
             initCHAlgoFactoryDecorator();
@@ -786,6 +1000,9 @@ public class GraphHopper implements GraphHopperAPI {
 
         ghStorage =  new GraphHopperStorage(chProfiles, dir, encodingManager, hasElevation(), encodingManager.needsTurnCostsSupport());
         ghStorage.setSegmentSize(defaultSegmentSize);
+        ghStorage.setLoadThreads(loadThreads);
+        if (storeOSMWayIds)
+            osmWayIdStorage = new OSMWayIdStorage(dir);
 
         if (!new File(graphHopperFolder).exists())
             return false;
@@ -803,8 +1020,13 @@ public class GraphHopper implements GraphHopperAPI {
 
             if (!ghStorage.loadExisting())
                 return false;
+            if (osmWayIdStorage != null && !osmWayIdStorage.loadExisting())
+                throw new IllegalStateException("Cannot load the OSM way ids from " + ghLocation
+                        + ", import the graph again with graph.osm_way_ids enabled");
 
             postProcessing();
+            initLockFreeReads();
+            prefetchMMapFiles();
             fullyLoaded = true;
             return true;
         } finally {
@@ -813,6 +1035,65 @@ public class GraphHopper implements GraphHopperAPI {
         }
     }
 
+    /**
+     * Skips the per-segment synchronization of memory mapped reads after the graph and all prepared data is
+     * available. The flag changes of changeGraph and changeEdges are written into the edge storage only by the
+     * compaction of the flag overlay, which overwrites the flags of existing edges after all requests that could
+     * read the old flags from the edge storage are finished, see GraphHopperStorage.compactFlagOverlay. Structural
+     * changes grow the storage, so changeGraphStructure disables the lock free reads before.
+     */
+    private void initLockFreeReads() {
+        if (!lockFreeReads || !dataAccessType.isMMap())
+            return;
+
+        setLockFreeReads(ghStorage.getDirectory(), true);
+    }
+
+    private static void setLockFreeReads(Directory dir, boolean lockFreeReads) {
+        for (DataAccess da : dir.getAll()) {
+            if (da instanceof MMapDataAccess)
+                ((MMapDataAccess) da).setLockFreeReads(lockFreeReads);
+        }
+    }
+
+    /**
+     * Starts a background thread that reads all memory mapped files into the page cache, the graph can be used
+     * while this is in progress.
+     */
+    private void prefetchMMapFiles() {
+        if (!mmapPrefetch || !dataAccessType.isMMap())
+            return;
+
+        final List<MMapDataAccess> dataAccesses = new ArrayList<>();
+        for (DataAccess da : ghStorage.getDirectory().getAll()) {
+            if (da instanceof MMapDataAccess)
+                dataAccesses.add((MMapDataAccess) da);
+        }
+        mmapPrefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "mmap-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mmapPrefetcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                StopWatch sw = new StopWatch().start();
+                for (MMapDataAccess da : dataAccesses) {
+                    if (Thread.currentThread().isInterrupted())
+                        return;
+                    StopWatch daSW = new StopWatch().start();
+                    long bytes = da.prefetch();
+                    logger.info("prefetched " + da.getName() + " (" + bytes / Helper.MB + "MB) in " + daSW.stop().getMillis() + "ms");
+                }
+                logger.info("prefetched " + dataAccesses.size() + " memory mapped files in " + sw.stop().getSeconds() + "s");
+            }
+        });
+        mmapPrefetcher.shutdown();
+    }
+
     public RoutingAlgorithmFactory getAlgorithmFactory(HintsMap map) {
         RoutingAlgorithmFactory routingAlgorithmFactory = new RoutingAlgorithmFactorySimple();
         for (RoutingAlgorithmFactoryDecorator decorator : algoDecorators) {
@@ -877,6 +1158,22 @@ public class GraphHopper implements GraphHopperAPI {
         }
     }
 
+    public final CCHAlgoFactoryDecorator getCCHFactoryDecorator() {
+        return cchFactoryDecorator;
+    }
+
+    private void initCCHAlgoFactoryDecorator() {
+        if (cchFactoryDecorator.hasWeightings())
+            return;
+
+        for (FlagEncoder encoder : encodingManager.fetchEdgeEncoders()) {
+            for (String cchWeightingStr : cchFactoryDecorator.getWeightingsAsStrings()) {
+                Weighting weighting = createWeighting(new HintsMap(cchWeightingStr), encoder, null);
+                cchFactoryDecorator.addWeighting(weighting);
+            }
+        }
+    }
+
     /**
      * Does the preparation and creates the location index
      */
@@ -890,19 +1187,6 @@ public class GraphHopper implements GraphHopperAPI {
      * @param closeEarly release resources as early as possible
      */
     public void postProcessing(boolean closeEarly) {
-        // Later: move this into the GraphStorage.optimize method
-        // Or: Doing it after preparation to optimize shortcuts too. But not possible yet #12
-
-        if (sortGraph) {
-            if (ghStorage.isCHPossible() && isCHPrepared())
-                throw new IllegalArgumentException("Sorting a prepared CHGraph is not possible yet. See #12");
-
-            GraphHopperStorage newGraph = GHUtility.newStorage(ghStorage);
-            GHUtility.sortDFS(ghStorage, newGraph);
-            logger.info("graph sorted (" + getMemInfo() + ")");
-            ghStorage = newGraph;
-        }
-
         if (!hasInterpolated() && hasElevation()) {
             interpolateBridgesAndOrTunnels();
         }
@@ -912,6 +1196,7 @@ public class GraphHopper implements GraphHopperAPI {
         if (lmFactoryDecorator.isEnabled())
             lmFactoryDecorator.createPreparations(ghStorage, locationIndex);
         loadOrPrepareLM(closeEarly);
+        loadOrPrepareCCH();
 
         if (chFactoryDecorator.isEnabled())
             chFactoryDecorator.createPreparations(ghStorage);
@@ -929,12 +1214,25 @@ public class GraphHopper implements GraphHopperAPI {
         if (ghStorage.getEncodingManager().hasEncodedValue(RoadEnvironment.KEY)) {
             EnumEncodedValue<RoadEnvironment> roadEnvEnc = ghStorage.getEncodingManager().getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class);
             StopWatch sw = new StopWatch().start();
-            new EdgeElevationInterpolator(ghStorage, roadEnvEnc, RoadEnvironment.TUNNEL).execute();
-            float tunnel = sw.stop().getSeconds();
-            sw = new StopWatch().start();
-            new EdgeElevationInterpolator(ghStorage, roadEnvEnc, RoadEnvironment.BRIDGE).execute();
+            final EdgeElevationInterpolator tunnels = new EdgeElevationInterpolator(ghStorage, roadEnvEnc, RoadEnvironment.TUNNEL).
+                    setThreads(elevationInterpolationThreads);
+            final EdgeElevationInterpolator bridges = new EdgeElevationInterpolator(ghStorage, roadEnvEnc, RoadEnvironment.BRIDGE).
+                    setThreads(elevationInterpolationThreads);
+            // a node that is only connected to tunnels is never connected to a bridge and vice versa, so the
+            // interpolations write disjoint nodes and edges and can run at the same time
+            GHUtility.runConcurrently(Arrays.asList(new Runnable() {
+                @Override
+                public void run() {
+                    tunnels.execute();
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    bridges.execute();
+                }
+            }), 2);
             ghStorage.getProperties().put(INTERPOLATION_KEY, true);
-            logger.info("Bridge interpolation " + (int) sw.stop().getSeconds() + "s, " + "tunnel interpolation " + (int) tunnel + "s");
+            logger.info("Bridge and tunnel interpolation " + (int) sw.stop().getSeconds() + "s");
         }
     }
 
@@ -998,7 +1296,10 @@ public class GraphHopper implements GraphHopperAPI {
     @Override
     public GHResponse route(GHRequest request) {
         GHResponse response = new GHResponse();
-        calcPaths(request, response);
+        if (routeCache == null)
+            calcPaths(request, response);
+        else
+            calcPaths(request, response, routeCache);
         return response;
     }
 
@@ -1006,6 +1307,14 @@ public class GraphHopper implements GraphHopperAPI {
      * This method calculates the alternative path list using the low level Path objects.
      */
     public List<Path> calcPaths(GHRequest request, GHResponse ghRsp) {
+        return calcPaths(request, ghRsp, null);
+    }
+
+    /**
+     * @param cache the cache for the merged responses or null. The returned list is empty if the response was
+     *              taken from the cache.
+     */
+    private List<Path> calcPaths(GHRequest request, GHResponse ghRsp, RouteCache cache) {
         if (ghStorage == null || !fullyLoaded)
             throw new IllegalStateException("Do a successful call to load or importOrLoad before routing");
 
@@ -1019,12 +1328,13 @@ public class GraphHopper implements GraphHopperAPI {
             request.setVehicle(vehicle);
         }
 
-        Lock readLock = readWriteLock.readLock();
-        readLock.lock();
+        EdgeFlagOverlay flagOverlay = ghStorage.acquireFlagOverlay();
         try {
             if (!encodingManager.hasEncoder(vehicle))
                 throw new IllegalArgumentException("Vehicle not supported: " + vehicle + ". Supported are: " + encodingManager.toString());
 
+            // all edges of this request are read with the flags of its overlay, even if changes are published meanwhile
+            Graph graph = ghStorage.withFlagOverlay(flagOverlay);
             FlagEncoder encoder = encodingManager.getEncoder(vehicle);
             HintsMap hints = request.getHints();
             // we use edge-based routing if the encoder supports turn-costs *unless* the edge_based parameter is set
@@ -1066,9 +1376,11 @@ public class GraphHopper implements GraphHopperAPI {
             else if (ALT_ROUTE.equalsIgnoreCase(algoStr))
                 routingTemplate = new AlternativeRoutingTemplate(request, ghRsp, locationIndex, encodingManager);
             else
-                routingTemplate = new ViaRoutingTemplate(request, ghRsp, locationIndex, encodingManager);
+                routingTemplate = new ViaRoutingTemplate(request, ghRsp, locationIndex, encodingManager).
+                        setParallelLegsThreads(parallelLegsThreads);
 
             List<Path> altPaths = null;
+            RouteCache.Key cacheKey = null;
             int maxRetries = routingTemplate.getMaxRetries();
             Locale locale = request.getLocale();
             Translation tr = trMap.getWithFallBack(locale);
@@ -1079,7 +1391,24 @@ public class GraphHopper implements GraphHopperAPI {
                 if (ghRsp.hasErrors())
                     return Collections.emptyList();
 
+                // the retries of round trips use random points, so only cache the templates with one try
+                if (cache != null && maxRetries == 1) {
+                    cacheKey = RouteCache.createKey(request, qResults, flagOverlay.getVersion());
+                    List<PathWrapper> cachedPaths = cache.get(cacheKey);
+                    if (cachedPaths != null) {
+                        for (PathWrapper pathWrapper : cachedPaths) {
+                            ghRsp.add(pathWrapper);
+                        }
+                        ghRsp.addDebugInfo("route cache hit");
+                        return Collections.emptyList();
+                    }
+                }
+
                 RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory(hints);
+                // a CCH metric customized for other changes than the ones of this request must not be used
+                if (tmpAlgoFactory instanceof CCHAlgoFactoryDecorator.CCHRAFactory
+                        && ((CCHAlgoFactoryDecorator.CCHRAFactory) tmpAlgoFactory).getGraphVersion() != flagOverlay.getVersion())
+                    tmpAlgoFactory = ((CCHAlgoFactoryDecorator.CCHRAFactory) tmpAlgoFactory).getDefaultAlgoFactory();
                 Weighting weighting;
                 QueryGraph queryGraph;
 
@@ -1103,7 +1432,7 @@ public class GraphHopper implements GraphHopperAPI {
                     }
                 } else {
                     checkNonChMaxWaypointDistance(points);
-                    queryGraph = QueryGraph.lookup(ghStorage, qResults);
+                    queryGraph = QueryGraph.lookup(graph, qResults);
                     weighting = createWeighting(hints, encoder, queryGraph);
                 }
                 ghRsp.addDebugInfo("tmode:" + tMode.toString());
@@ -1147,8 +1476,11 @@ public class GraphHopper implements GraphHopperAPI {
                 if (request.hasFavoredHeading(0))
                     pathMerger.setFavoredHeading(request.getFavoredHeading(0));
 
-                if (routingTemplate.isReady(pathMerger, tr))
+                if (routingTemplate.isReady(pathMerger, tr)) {
+                    if (cacheKey != null && !ghRsp.hasErrors())
+                        cache.put(cacheKey, ghRsp.getAll());
                     break;
+                }
             }
 
             return altPaths;
@@ -1157,31 +1489,287 @@ public class GraphHopper implements GraphHopperAPI {
             ghRsp.addError(ex);
             return Collections.emptyList();
         } finally {
-            readLock.unlock();
+            ghStorage.releaseFlagOverlay(flagOverlay);
+        }
+    }
+
+    /**
+     * Calculates the weights, times and distances between all from and all to points of the specified request.
+     * Every point is snapped only once and all of them are added to one QueryGraph. If a node-based CH preparation
+     * exists for the requested weighting the matrix is calculated with buckets, otherwise with one Dijkstra per
+     * from point.
+     */
+    public DistanceMatrix calcMatrix(MatrixRequest request) {
+        if (ghStorage == null || !fullyLoaded)
+            throw new IllegalStateException("Do a successful call to load or importOrLoad before routing");
+
+        if (ghStorage.isClosed())
+            throw new IllegalStateException("You need to create a new GraphHopper instance as it is already closed");
+
+        String vehicle = request.getVehicle();
+        if (vehicle.isEmpty()) {
+            vehicle = getDefaultVehicle().toString();
+            request.setVehicle(vehicle);
+        }
+        // an empty weighting means fastest in createWeighting but it would not match the CH weighting
+        if (request.getWeighting().isEmpty())
+            request.setWeighting("fastest");
+
+        long cells = (long) request.getFromPoints().size() * request.getToPoints().size();
+        if (cells > maxMatrixCells)
+            throw new IllegalArgumentException("Too many points: " + request.getFromPoints().size() + "x" + request.getToPoints().size()
+                    + " exceeds the maximum of " + maxMatrixCells + " connections");
+
+        EdgeFlagOverlay flagOverlay = ghStorage.acquireFlagOverlay();
+        try {
+            if (!encodingManager.hasEncoder(vehicle))
+                throw new IllegalArgumentException("Vehicle not supported: " + vehicle + ". Supported are: " + encodingManager.toString());
+
+            FlagEncoder encoder = encodingManager.getEncoder(vehicle);
+            HintsMap hints = request.getHints();
+            int maxVisitedNodesForRequest = hints.getInt(Routing.MAX_VISITED_NODES, maxVisitedNodes);
+            if (maxVisitedNodesForRequest > maxVisitedNodes)
+                throw new IllegalArgumentException("The max_visited_nodes parameter has to be below or equal to:" + maxVisitedNodes);
+
+            checkIfPointsAreInBounds(request.getFromPoints());
+            checkIfPointsAreInBounds(request.getToPoints());
+
+            StopWatch sw = new StopWatch().start();
+            List<QueryResult> fromResults = lookupMatrixPoints(request.getFromPoints(), request.getFromPointHints(), encoder, "from_point");
+            List<QueryResult> toResults = request.isSymmetric() ? fromResults
+                    : lookupMatrixPoints(request.getToPoints(), request.getToPointHints(), encoder, "to_point");
+            // the QueryGraph must not get the same QueryResult twice
+            List<QueryResult> allResults = new ArrayList<>(fromResults);
+            if (toResults != fromResults)
+                allResults.addAll(toResults);
+            String idLookup = "idLookup:" + sw.stop().getSeconds() + "s";
+
+            CHProfile chProfile = findMatrixCHProfile(hints);
+            AbstractMatrixAlgorithm algo;
+            if (chProfile != null) {
+                CHGraph chGraph = ghStorage.getCHGraph(chProfile);
+                algo = new CHBucketMatrixAlgorithm(QueryGraph.lookup(chGraph, allResults), chGraph, chProfile.getWeighting());
+            } else {
+                QueryGraph queryGraph = QueryGraph.lookup(ghStorage.withFlagOverlay(flagOverlay), allResults);
+                algo = new OneToManyMatrixAlgorithm(queryGraph, createWeighting(hints, encoder, queryGraph));
+            }
+            algo.setMaxVisitedNodes(maxVisitedNodesForRequest).setThreads(matrixThreads);
+
+            sw = new StopWatch().start();
+            DistanceMatrix matrix = algo.calcMatrix(getClosestNodes(fromResults), getClosestNodes(toResults),
+                    request.isCalcTimes(), request.isCalcDistances());
+            return matrix.addDebugInfo(idLookup).addDebugInfo(algo + ":" + sw.stop().getSeconds() + "s");
+        } finally {
+            ghStorage.releaseFlagOverlay(flagOverlay);
+        }
+    }
+
+    private List<QueryResult> lookupMatrixPoints(List<GHPoint> points, List<String> pointHints, FlagEncoder encoder, String name) {
+        if (!pointHints.isEmpty() && pointHints.size() != points.size())
+            throw new IllegalArgumentException("If you pass " + name + "_hint, you need to pass a hint for every " + name);
+
+        EdgeFilter edgeFilter = DefaultEdgeFilter.allEdges(encoder);
+        QueryResult[] batchResults = null;
+        if (pointHints.isEmpty() && locationIndex instanceof LocationIndexTree) {
+            double[] lats = new double[points.size()];
+            double[] lons = new double[points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                lats[i] = points.get(i).lat;
+                lons[i] = points.get(i).lon;
+            }
+            batchResults = ((LocationIndexTree) locationIndex).findClosestBatch(lats, lons, edgeFilter);
+        }
+
+        List<QueryResult> results = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            GHPoint point = points.get(i);
+            QueryResult qr = null;
+            if (batchResults != null)
+                qr = batchResults[i];
+            else if (!pointHints.isEmpty())
+                qr = locationIndex.findClosest(point.lat, point.lon, new NameSimilarityEdgeFilter(edgeFilter, pointHints.get(i)));
+            if (batchResults == null && (qr == null || !qr.isValid()))
+                qr = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
+            if (!qr.isValid())
+                throw new PointNotFoundException("Cannot find " + name + " " + i + ": " + point, i);
+            results.add(qr);
+        }
+        return results;
+    }
+
+    private static int[] getClosestNodes(List<QueryResult> results) {
+        int[] nodes = new int[results.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = results.get(i).getClosestNode();
+        }
+        return nodes;
+    }
+
+    /**
+     * @return the node-based CH profile for the weighting of the specified hints or null if the matrix cannot use CH
+     */
+    private CHProfile findMatrixCHProfile(HintsMap hints) {
+        if (!chFactoryDecorator.isEnabled() || hints.has(Routing.BLOCK_AREA))
+            return null;
+        if (hints.getBool(CH.DISABLE, false)) {
+            if (!chFactoryDecorator.isDisablingAllowed())
+                throw new IllegalArgumentException("Disabling CH not allowed on the server-side");
+            return null;
         }
+        for (CHProfile chProfile : chFactoryDecorator.getCHProfiles()) {
+            if (!chProfile.isEdgeBased() && chProfile.getWeighting().matches(hints))
+                return chProfile;
+        }
+        return null;
     }
 
     /**
-     * This method applies the changes to the graph specified as feature collection. It does so by locking the routing
-     * to avoid concurrent changes which could result in incorrect routing (like when done while a Dijkstra search) or
-     * also while just reading one edge row (inconsistent edge properties).
+     * This method applies the changes to the graph specified as feature collection. The new edge flags are published
+     * as a new flag overlay of the storage, so the routing is not stopped: a running request continues with the flags
+     * of the overlay that it acquired at its start and a new request uses the changed flags. The changes are written
+     * into the edge storage in the background, see GraphHopperStorage.compactFlagOverlay.
      */
     public ChangeGraphResponse changeGraph(Collection<JsonFeature> collection) {
         // TODO allow calling this method if called before CH preparation
         if (getCHFactoryDecorator().isEnabled())
             throw new IllegalArgumentException("To use the changeGraph API you need to turn off CH");
 
-        Lock writeLock = readWriteLock.writeLock();
-        writeLock.lock();
-        try {
+        synchronized (changeGraphLock) {
             ChangeGraphHelper overlay = createChangeGraphHelper(ghStorage, locationIndex);
-            long updateCount = overlay.applyChanges(encodingManager, collection);
+            GHIntObjectHashMap<IntsRef> changedFlags = new GHIntObjectHashMap<>();
+            long updateCount = overlay.collectChanges(encodingManager, collection, changedFlags);
+            if (changedFlags.isEmpty())
+                return new ChangeGraphResponse(updateCount);
+
+            publishFlagChanges(changedFlags);
             return new ChangeGraphResponse(updateCount);
-        } finally {
-            writeLock.unlock();
         }
     }
 
+    /**
+     * This method applies the speed, access and priority changes of the specified edges or OSM ways to the graph.
+     * Changes of OSM ways require that the OSM way ids were stored while import, see setStoreOSMWayIds. Like for
+     * changeGraph the changes are published as a new flag overlay without stopping the routing.
+     *
+     * @param vehicles the names of the encoders to change or an empty list to change all encoders
+     */
+    public BulkChangeResponse changeEdges(BulkEdgeChanges changes, List<String> vehicles) {
+        if (getCHFactoryDecorator().isEnabled())
+            throw new IllegalArgumentException("To use the changeEdges API you need to turn off CH");
+
+        synchronized (changeGraphLock) {
+            StopWatch sw = new StopWatch().start();
+            ChangeGraphHelper helper = createChangeGraphHelper(ghStorage, locationIndex);
+            GHIntObjectHashMap<IntsRef> changedFlags = new GHIntObjectHashMap<>();
+            BulkChangeResponse response = helper.collectChanges(encodingManager, changes, vehicles, osmWayIdStorage,
+                    changeEdgesThreads, changedFlags);
+            if (!changedFlags.isEmpty())
+                publishFlagChanges(changedFlags);
+            logger.info("bulk changes applied: " + response.getApplied() + ", ignored: " + response.getIgnored()
+                    + ", changed edges: " + response.getEdges() + ", took: " + sw.stop().getSeconds() + "s");
+            return response;
+        }
+    }
+
+    private void publishFlagChanges(GHIntObjectHashMap<IntsRef> changedFlags) {
+        EdgeFlagOverlay flagOverlay = ghStorage.publishFlagChanges(changedFlags);
+        // the cache key contains the overlay version, clearing only frees the memory
+        if (routeCache != null)
+            routeCache.clear();
+        if (cchFactoryDecorator.isEnabled())
+            cchFactoryDecorator.customize(ghStorage.withFlagOverlay(flagOverlay), flagOverlay.getVersion());
+        scheduleFlagOverlayCompaction();
+    }
+
+    private void scheduleFlagOverlayCompaction() {
+        if (flagOverlayCompactor == null)
+            flagOverlayCompactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "flag-overlay-compaction");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        if (!flagOverlayCompactionScheduled.compareAndSet(false, true))
+            return;
+
+        flagOverlayCompactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flagOverlayCompactionScheduled.set(false);
+                try {
+                    StopWatch sw = new StopWatch().start();
+                    int edges = ghStorage.compactFlagOverlay();
+                    logger.info("compacted " + edges + " changed edges into the graph, took: " + sw.stop().getSeconds() + "s");
+                } catch (Exception ex) {
+                    logger.error("Cannot compact the changed edges into the graph", ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Changes the structure of the graph, e.g. to apply OSM change files. The flag overlay is written into the edge
+     * storage before, so that the change can modify the edges directly, and lock free reads are disabled. Afterwards
+     * the location index is created again and the landmarks and the CCH topology are removed, so that they are
+     * prepared again when the graph is loaded the next time. Until then the routing does not use them. The change waits for running requests and
+     * blocks new ones, see GraphHopperStorage.changeStructure. Like for changeEdges this is not possible with CH as
+     * the shortcuts are not updated.
+     */
+    protected void changeGraphStructure(final Runnable change) {
+        ensureWriteAccess();
+        if (getCHFactoryDecorator().isEnabled())
+            throw new IllegalArgumentException("To change the structure of the graph you need to turn off CH");
+
+        synchronized (changeGraphLock) {
+            // requests wait until the change is finished, as it modifies the storage, the location index and the
+            // prepared data that they read
+            ghStorage.changeStructure(new Runnable() {
+                @Override
+                public void run() {
+                    Directory dir = ghStorage.getDirectory();
+                    // the change can grow the storage, which is not possible while reads skip the synchronization
+                    if (lockFreeReads)
+                        setLockFreeReads(dir, false);
+                    ghStorage.compactFlagOverlay();
+                    change.run();
+
+                    Set<String> removedNames = new TreeSet<>();
+                    for (DataAccess da : new ArrayList<>(dir.getAll())) {
+                        if (isPreparedFromStructure(da.getName())) {
+                            removedNames.add(da.getName());
+                            dir.remove(da);
+                        }
+                    }
+                    String[] files = dir.getDefaultType().isStoring() ? new File(dir.getLocation()).list() : null;
+                    if (files != null) {
+                        for (String file : files) {
+                            if (isPreparedFromStructure(file) && removedNames.add(file))
+                                dir.remove(dir.find(file));
+                        }
+                    }
+                    ghStorage.getProperties().remove(Landmark.PREPARE + "done");
+                    ghStorage.getProperties().remove(CCH.PREPARE + "done");
+                    // the following requests must not use the removed data
+                    lmFactoryDecorator.setEnabled(false);
+                    cchFactoryDecorator.setEnabled(false);
+                    logger.info("removed the prepared data " + removedNames + " after changing the graph structure");
+
+                    setLocationIndex(createLocationIndex(dir));
+                    if (routeCache != null)
+                        routeCache.clear();
+                    flush();
+                }
+            });
+        }
+    }
+
+    private static boolean isPreparedFromStructure(String name) {
+        return name.startsWith("landmarks_") || name.startsWith("subnetwork_landmarks_") || name.equals("cch_topology")
+                || name.equals("location_index") || name.equals("location_index_segments");
+    }
+
     protected ChangeGraphHelper createChangeGraphHelper(Graph graph, LocationIndex locationIndex) {
         return new ChangeGraphHelper(graph, locationIndex);
     }
@@ -1218,6 +1806,17 @@ public class GraphHopper implements GraphHopperAPI {
     }
 
     protected LocationIndex createLocationIndex(Directory dir) {
+        if ("segment_grid".equals(locationIndexType)) {
+            LocationIndexSegmentGrid segmentIndex = new LocationIndexSegmentGrid(ghStorage, dir);
+            segmentIndex.setResolution(preciseIndexResolution);
+            segmentIndex.setMaxRegionSearch(maxRegionSearch);
+            if (!segmentIndex.loadExisting()) {
+                ensureWriteAccess();
+                segmentIndex.prepareIndex();
+            }
+            return segmentIndex;
+        }
+
         LocationIndexTree tmpIndex = new LocationIndexTree(ghStorage, dir);
         tmpIndex.setResolution(preciseIndexResolution);
         tmpIndex.setMaxRegionSearch(maxRegionSearch);
@@ -1281,6 +1880,43 @@ public class GraphHopper implements GraphHopperAPI {
     }
 
 
+    /**
+     * Loads or creates the CCH topology and customizes it for all CCH weightings.
+     */
+    protected void loadOrPrepareCCH() {
+        if (cchFactoryDecorator.isEnabled()) {
+            ensureWriteAccess();
+            if (cchFactoryDecorator.loadOrPrepare(ghStorage, locationIndex, ghStorage.getProperties()))
+                ghStorage.getProperties().put(CCH.PREPARE + "done", true);
+        }
+    }
+
+    /**
+     * Sorts the imported graph into a new storage and renumbers the turn costs and OSM way ids accordingly. This is
+     * done before the preparations, so the location index, LM and CH are created for the sorted graph.
+     */
+    protected void sortGraph() {
+        StopWatch sw = new StopWatch().start();
+        GraphHopperStorage newGraph = GHUtility.newStorage(ghStorage);
+        int edges = ghStorage.getEdges();
+        int[] oldToNewEdges = new int[edges];
+        if ("dfs".equals(sortOrder))
+            GHUtility.sortDFS(ghStorage, newGraph, oldToNewEdges);
+        else
+            GHUtility.sortHilbert(ghStorage, newGraph, oldToNewEdges);
+
+        if (osmWayIdStorage != null)
+            osmWayIdStorage.renumberEdges(edges, oldToNewEdges);
+        for (String key : new String[]{"datareader.import.date", "datareader.data.date"}) {
+            String value = ghStorage.getProperties().get(key);
+            if (!value.isEmpty())
+                newGraph.getProperties().put(key, value);
+        }
+        ghStorage.close();
+        ghStorage = newGraph;
+        logger.info("graph sorted in " + sortOrder + " order, took:" + sw.stop().getSeconds() + "s (" + getMemInfo() + ")");
+    }
+
     /**
      * Internal method to clean up the graph.
      */
@@ -1289,6 +1925,7 @@ public class GraphHopper implements GraphHopperAPI {
         PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(ghStorage, encodingManager.fetchEdgeEncoders());
         preparation.setMinNetworkSize(minNetworkSize);
         preparation.setMinOneWayNetworkSize(minOneWayNetworkSize);
+        preparation.setThreads(subnetworkThreads);
         preparation.doWork();
         int currNodeCount = ghStorage.getNodes();
         logger.info("edges: " + Helper.nf(ghStorage.getAllEdges().length()) + ", nodes " + Helper.nf(currNodeCount)
@@ -1301,6 +1938,8 @@ public class GraphHopper implements GraphHopperAPI {
         logger.info("flushing graph " + ghStorage.toString() + ", details:" + ghStorage.toDetailsString() + ", "
                 + getMemInfo() + ")");
         ghStorage.flush();
+        if (osmWayIdStorage != null)
+            osmWayIdStorage.flush();
         logger.info("flushed graph " + getMemInfo() + ")");
         fullyLoaded = true;
     }
@@ -1310,9 +1949,16 @@ public class GraphHopper implements GraphHopperAPI {
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close() {
+        // the background tasks use the storage, so they have to be finished before it is closed
+        shutdownAndAwait(flagOverlayCompactor);
+        shutdownAndAwait(mmapPrefetcher);
+
         if (ghStorage != null)
             ghStorage.close();
 
+        if (osmWayIdStorage != null)
+            osmWayIdStorage.close();
+
         if (locationIndex != null)
             locationIndex.close();
 
@@ -1323,6 +1969,26 @@ public class GraphHopper implements GraphHopperAPI {
         }
     }
 
+    private void shutdownAndAwait(ExecutorService executor) {
+        if (executor == null)
+            return;
+
+        // the compaction and the prefetching stop early if they are interrupted
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES))
+                    break;
+                logger.warn("Waiting for the background tasks of the graph before closing it");
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
     /**
      * Removes the on-disc routing files. Call only after calling close or before importOrLoad or
      * load
@@ -0,0 +1,182 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * A binary min-heap of non-negative int ids with double keys. In contrast to a PriorityQueue the position of
+ * every id is tracked so that the key of an id can be changed in O(log n) and no objects are created. All
+ * arrays grow on demand and are kept on clear so that an instance can be reused for many searches.
+ */
+public class IntDoubleIndexedMinHeap {
+    private int[] ids;
+    private double[] keys;
+    // the position in the heap + 1 for every id, 0 if the id is not contained
+    private int[] positions;
+    private int size;
+
+    public IntDoubleIndexedMinHeap(int initialCapacity) {
+        initialCapacity = Math.max(1, initialCapacity);
+        ids = new int[initialCapacity];
+        keys = new double[initialCapacity];
+        positions = new int[initialCapacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < positions.length && positions[id] > 0;
+    }
+
+    /**
+     * Adds the specified id which must not be contained already.
+     */
+    public void push(int id, double key) {
+        if (id < 0)
+            throw new IllegalArgumentException("id must not be negative but was " + id);
+        if (contains(id))
+            throw new IllegalStateException("id " + id + " is already contained in the heap");
+        if (id >= positions.length)
+            positions = Arrays.copyOf(positions, Math.max(id + 1, positions.length * 3 / 2));
+        if (size == ids.length) {
+            int newCapacity = Math.max(size + 1, size * 3 / 2);
+            ids = Arrays.copyOf(ids, newCapacity);
+            keys = Arrays.copyOf(keys, newCapacity);
+        }
+        size++;
+        siftUp(size - 1, id, key);
+    }
+
+    /**
+     * Changes the key of the specified id, which must be contained, to a smaller or bigger value.
+     */
+    public void update(int id, double key) {
+        if (!contains(id))
+            throw new IllegalStateException("id " + id + " is not contained in the heap");
+        int pos = positions[id] - 1;
+        if (key < keys[pos])
+            siftUp(pos, id, key);
+        else
+            siftDown(pos, id, key);
+    }
+
+    public int peekId() {
+        checkNotEmpty();
+        return ids[0];
+    }
+
+    public double peekKey() {
+        checkNotEmpty();
+        return keys[0];
+    }
+
+    /**
+     * Removes the id with the smallest key.
+     *
+     * @return the removed id
+     */
+    public int poll() {
+        checkNotEmpty();
+        int id = ids[0];
+        positions[id] = 0;
+        size--;
+        if (size > 0)
+            siftDown(0, ids[size], keys[size]);
+        return id;
+    }
+
+    /**
+     * Sets the keys of all contained ids to the values of the specified function and restores the heap order in
+     * O(size), i.e. independent of the number of ids that were ever pushed.
+     */
+    public void updateAll(IntToDoubleFunction keyFunction) {
+        for (int pos = 0; pos < size; pos++) {
+            keys[pos] = keyFunction.applyAsDouble(ids[pos]);
+        }
+        for (int pos = (size >> 1) - 1; pos >= 0; pos--) {
+            siftDown(pos, ids[pos], keys[pos]);
+        }
+    }
+
+    /**
+     * @return the maximum length of the arrays, which grow with the number of ids and the biggest id
+     */
+    public int getCapacity() {
+        return Math.max(ids.length, positions.length);
+    }
+
+    /**
+     * Removes all ids in O(size) without releasing the memory.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[ids[i]] = 0;
+        }
+        size = 0;
+    }
+
+    private void checkNotEmpty() {
+        if (size == 0)
+            throw new IllegalStateException("heap is empty");
+    }
+
+    private void siftUp(int pos, int id, double key) {
+        while (pos > 0) {
+            int parent = (pos - 1) >> 1;
+            if (keys[parent] <= key)
+                break;
+            set(pos, ids[parent], keys[parent]);
+            pos = parent;
+        }
+        set(pos, id, key);
+    }
+
+    private void siftDown(int pos, int id, double key) {
+        int half = size >> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child])
+                child = right;
+            if (key <= keys[child])
+                break;
+            set(pos, ids[child], keys[child]);
+            pos = child;
+        }
+        set(pos, id, key);
+    }
+
+    private void set(int pos, int id, double key) {
+        ids[pos] = id;
+        keys[pos] = key;
+        positions[id] = pos + 1;
+    }
+
+    @Override
+    public String toString() {
+        return "size: " + size + ", capacity: " + ids.length;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.BitMixer;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+
+/**
+ * A hash map from OSM ids to ints that is stored in a DataAccess, e.g. memory mapped or off-heap via
+ * DAType.UNSAFE_STORE, so that a huge number of OSM nodes does not need heap memory. In contrast to OSMIDMap the
+ * keys can be inserted in any order.
+ * <p>
+ * The entries are stored with open addressing and linear probing: every slot contains the key as long and the value
+ * as int. The stored key is the key with a flipped sign bit, so that the zero bytes of new DataAccess segments are
+ * empty slots. Therefore the key Long.MIN_VALUE is not supported.
+ */
+public class OSMIDHashMap implements LongIntMap {
+    private static final int SLOT_BYTES = 12;
+    private static final double MAX_LOAD_FACTOR = 0.5;
+    private final Directory dir;
+    private final DAType type;
+    private final String name;
+    private final int noEntryValue;
+    private DataAccess slots;
+    private int generation;
+    private long capacity;
+    private long mask;
+    private long size;
+
+    public OSMIDHashMap(Directory dir, DAType type, String name, int noEntryValue) {
+        this.dir = dir;
+        this.type = type;
+        this.name = name;
+        this.noEntryValue = noEntryValue;
+        slots = createSlots(1 << 16);
+    }
+
+    private DataAccess createSlots(long newCapacity) {
+        DataAccess da = dir.find(name + "_" + generation++, type);
+        da.create(newCapacity * SLOT_BYTES);
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        return da;
+    }
+
+    private long findSlot(DataAccess da, long storedKey) {
+        long slot = BitMixer.mix64(storedKey) & mask;
+        while (true) {
+            long pointer = slot * SLOT_BYTES;
+            long existingKey = readKey(da, pointer);
+            if (existingKey == 0 || existingKey == storedKey)
+                return pointer;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static long readKey(DataAccess da, long pointer) {
+        return ((long) da.getInt(pointer + 4) << 32) | (da.getInt(pointer) & 0xFFFFFFFFL);
+    }
+
+    private static void writeKey(DataAccess da, long pointer, long storedKey) {
+        da.setInt(pointer, (int) storedKey);
+        da.setInt(pointer + 4, (int) (storedKey >>> 32));
+    }
+
+    @Override
+    public int put(long key, int value) {
+        if (key == Long.MIN_VALUE)
+            throw new IllegalArgumentException("The key " + key + " is not supported");
+
+        long storedKey = key ^ Long.MIN_VALUE;
+        long pointer = findSlot(slots, storedKey);
+        if (readKey(slots, pointer) == storedKey) {
+            int oldValue = slots.getInt(pointer + 8);
+            slots.setInt(pointer + 8, value);
+            return oldValue;
+        }
+
+        writeKey(slots, pointer, storedKey);
+        slots.setInt(pointer + 8, value);
+        size++;
+        if (size > capacity * MAX_LOAD_FACTOR)
+            grow();
+        return noEntryValue;
+    }
+
+    private void grow() {
+        DataAccess oldSlots = slots;
+        long oldCapacity = capacity;
+        slots = createSlots(oldCapacity * 2);
+        for (long pointer = 0; pointer < oldCapacity * SLOT_BYTES; pointer += SLOT_BYTES) {
+            long storedKey = readKey(oldSlots, pointer);
+            if (storedKey == 0)
+                continue;
+            long newPointer = findSlot(slots, storedKey);
+            writeKey(slots, newPointer, storedKey);
+            slots.setInt(newPointer + 8, oldSlots.getInt(pointer + 8));
+        }
+        dir.remove(oldSlots);
+    }
+
+    @Override
+    public int get(long key) {
+        if (key == Long.MIN_VALUE)
+            return noEntryValue;
+
+        long storedKey = key ^ Long.MIN_VALUE;
+        long pointer = findSlot(slots, storedKey);
+        if (readKey(slots, pointer) == 0)
+            return noEntryValue;
+        return slots.getInt(pointer + 8);
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    @Override
+    public int getMemoryUsage() {
+        return Math.round(slots.getCapacity() / Helper.MB);
+    }
+
+    /**
+     * Removes the underlying DataAccess, the map cannot be used afterwards.
+     */
+    public void remove() {
+        dir.remove(slots);
+    }
+}
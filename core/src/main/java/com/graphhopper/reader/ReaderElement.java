@@ -34,7 +34,10 @@ public abstract class ReaderElement {
     public static final int FILEHEADER = 3;
     private final int type;
     private final long id;
-    private final Map<String, Object> properties;
+    private final int propertyMapSize;
+    // created when the first tag is set as most nodes have no tags
+    private Map<String, Object> properties;
+    private TagDecoder tagDecoder;
 
     protected ReaderElement(long id, int type) {
         this(id, type, 4);
@@ -43,19 +46,45 @@ public abstract class ReaderElement {
     protected ReaderElement(long id, int type, int propertyMapSize) {
         this.id = id;
         this.type = type;
-        properties = new HashMap<>(propertyMapSize);
+        this.propertyMapSize = propertyMapSize;
     }
 
     public long getId() {
         return id;
     }
 
+    /**
+     * Defers the decoding of the tags until they are accessed for the first time. This way no tags are created for
+     * elements that are skipped anyway, e.g. the nodes which are not part of a way. Replaces the existing tags.
+     */
+    public void setTagDecoder(TagDecoder tagDecoder) {
+        properties = null;
+        this.tagDecoder = tagDecoder;
+    }
+
+    private Map<String, Object> readTags() {
+        if (tagDecoder != null) {
+            TagDecoder tmpDecoder = tagDecoder;
+            tagDecoder = null;
+            tmpDecoder.decodeTags(this);
+        }
+        return properties == null ? Collections.<String, Object>emptyMap() : properties;
+    }
+
+    private Map<String, Object> writeTags() {
+        readTags();
+        if (properties == null)
+            properties = new HashMap<>(propertyMapSize);
+        return properties;
+    }
+
     protected String tagsToString() {
-        if (properties.isEmpty())
+        Map<String, Object> tags = readTags();
+        if (tags.isEmpty())
             return "<empty>";
 
         StringBuilder tagTxt = new StringBuilder();
-        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+        for (Map.Entry<String, Object> entry : tags.entrySet()) {
             tagTxt.append(entry.getKey());
             tagTxt.append("=");
             tagTxt.append(entry.getValue());
@@ -65,11 +94,11 @@ public abstract class ReaderElement {
     }
 
     protected Map<String, Object> getTags() {
-        return properties;
+        return readTags();
     }
 
     public void setTags(Map<String, String> newTags) {
-        properties.clear();
+        clearTags();
         if (newTags != null)
             for (Entry<String, String> e : newTags.entrySet()) {
                 setTag(e.getKey(), e.getValue());
@@ -77,24 +106,31 @@ public abstract class ReaderElement {
     }
 
     public boolean hasTags() {
-        return !properties.isEmpty();
+        return !readTags().isEmpty();
     }
 
     public String getTag(String name) {
-        return (String) properties.get(name);
+        return (String) readTags().get(name);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T getTag(String key, T defaultValue) {
-        T val = (T) properties.get(key);
+        T val = (T) readTags().get(key);
         if (val == null)
             return defaultValue;
         return val;
     }
 
+    /**
+     * @return the keys of all tags of this element, the returned set cannot be changed
+     */
+    public Set<String> getTagKeys() {
+        return Collections.unmodifiableSet(readTags().keySet());
+    }
+
     public List<String> getKeysWithPrefix(String keyPrefix) {
         List<String> keys = new ArrayList<>();
-        for (String key : properties.keySet()) {
+        for (String key : readTags().keySet()) {
             if (key.startsWith(keyPrefix)) {
                 keys.add(key);
             }
@@ -103,7 +139,7 @@ public abstract class ReaderElement {
     }
 
     public void setTag(String name, Object value) {
-        properties.put(name, value);
+        writeTags().put(name, value);
     }
 
     /**
@@ -118,7 +154,7 @@ public abstract class ReaderElement {
      * for presence of the tag
      */
     public boolean hasTag(String key, String... values) {
-        Object value = properties.get(key);
+        Object value = readTags().get(key);
         if (value == null)
             return false;
 
@@ -153,7 +189,7 @@ public abstract class ReaderElement {
     }
 
     public boolean hasTagWithKeyPrefix(String keyPrefix) {
-        for (String key : properties.keySet()) {
+        for (String key : readTags().keySet()) {
             if (key.startsWith(keyPrefix)) {
                 return true;
             }
@@ -173,11 +209,14 @@ public abstract class ReaderElement {
     }
 
     public void removeTag(String name) {
-        properties.remove(name);
+        readTags();
+        if (properties != null)
+            properties.remove(name);
     }
 
     public void clearTags() {
-        properties.clear();
+        tagDecoder = null;
+        properties = null;
     }
 
     public int getType() {
@@ -190,6 +229,13 @@ public abstract class ReaderElement {
 
     @Override
     public String toString() {
-        return properties.toString();
+        return readTags().toString();
+    }
+
+    /**
+     * Sets the tags of an element when they are accessed for the first time, see setTagDecoder.
+     */
+    public interface TagDecoder {
+        void decodeTags(ReaderElement element);
     }
 }
@@ -18,14 +18,18 @@
 package com.graphhopper.reader.dem;
 
 import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.util.Downloader;
+import com.graphhopper.util.Helper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Provides basic methods that are usually used in an ElevationProvider.
@@ -42,6 +46,9 @@ public abstract class AbstractElevationProvider implements ElevationProvider {
     boolean calcMean = false;
     boolean autoRemoveTemporary = true;
     long sleep = 2000;
+    int maxCachedTiles = 32;
+    // the names of all tiles that were loaded, guarded by the lock of dir
+    private final Set<String> tileNames = new HashSet<>();
 
     protected AbstractElevationProvider(String cacheDirString) {
         File cacheDir = new File(cacheDirString);
@@ -76,6 +83,11 @@ public abstract class AbstractElevationProvider implements ElevationProvider {
         return cacheDir;
     }
 
+    @Override
+    public void setMaxCachedTiles(int maxCachedTiles) {
+        this.maxCachedTiles = maxCachedTiles;
+    }
+
     @Override
     public ElevationProvider setBaseURL(String baseUrl) {
         if (baseUrl == null || baseUrl.isEmpty())
@@ -92,7 +104,7 @@ public abstract class AbstractElevationProvider implements ElevationProvider {
     }
 
 
-    protected Directory getDirectory() {
+    protected synchronized Directory getDirectory() {
         if (dir != null)
             return dir;
 
@@ -101,6 +113,48 @@ public abstract class AbstractElevationProvider implements ElevationProvider {
         return dir = new GHDirectory(cacheDir.getAbsolutePath(), daType);
     }
 
+    /**
+     * Finds the DataAccess for the heights of the tile with the specified name. The Directory is not thread-safe,
+     * so this is synchronized as tiles are loaded concurrently.
+     */
+    DataAccess findHeights(String name) {
+        Directory directory = getDirectory();
+        synchronized (directory) {
+            tileNames.add(name);
+            return directory.find(name);
+        }
+    }
+
+    /**
+     * Closes the heights of the specified tile but keeps the stored data, so that loading the tile again is cheap.
+     */
+    void unloadTile(HeightTile tile) {
+        Directory directory = getDirectory();
+        synchronized (directory) {
+            directory.close(tile.getHeights());
+        }
+    }
+
+    /**
+     * Removes the stored heights of all tiles if autoRemoveTemporary is true. This includes the tiles that are no
+     * longer in the cache and thus no longer in the Directory.
+     */
+    void removeTemporaryFiles() {
+        // for memory mapped type we create temporary unpacked files which should be removed
+        if (!autoRemoveTemporary || dir == null)
+            return;
+
+        synchronized (dir) {
+            dir.clear();
+            if (daType.isStoring()) {
+                for (String name : tileNames) {
+                    Helper.removeDir(new File(dir.getLocation(), name));
+                }
+            }
+            tileNames.clear();
+        }
+    }
+
     /**
      * Return the local file name without file ending, has to be lower case, because DataAccess only supports lower case names.
      */
@@ -17,7 +17,6 @@
  */
 package com.graphhopper.reader.dem;
 
-import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.util.BitUtil;
 import com.graphhopper.util.Downloader;
@@ -40,7 +39,7 @@ public abstract class AbstractSRTMElevationProvider extends AbstractElevationPro
     private final int WIDTH_BYTE_INDEX = 0;
     private final int DEGREE = 1;
     // use a map as an array is not quite useful if we want to hold only parts of the world
-    private final GHIntObjectHashMap<HeightTile> cacheData = new GHIntObjectHashMap<>();
+    private final HeightTileCache<Integer> cacheData;
     private final double precision = 1e7;
     private final double invPrecision = 1 / precision;
 
@@ -49,6 +48,17 @@ public abstract class AbstractSRTMElevationProvider extends AbstractElevationPro
         this.baseUrl = baseUrl;
         downloader = new Downloader(downloaderName).setTimeout(10000);
         this.DEFAULT_WIDTH = defaultWidt;
+        cacheData = new HeightTileCache<>(maxCachedTiles, new HeightTileCache.TileLoader<Integer>() {
+            @Override
+            public HeightTile load(Integer intKey, double lat, double lon) {
+                return loadTile(intKey, lat, lon);
+            }
+
+            @Override
+            public void unload(HeightTile tile) {
+                unloadTile(tile);
+            }
+        });
     }
 
     // use int key instead of string for lower memory usage
@@ -57,13 +67,16 @@ public abstract class AbstractSRTMElevationProvider extends AbstractElevationPro
         return (down(lat) + 90) * 1000 + down(lon) + 180;
     }
 
+    @Override
+    public void setMaxCachedTiles(int maxCachedTiles) {
+        super.setMaxCachedTiles(maxCachedTiles);
+        cacheData.setMaxTiles(maxCachedTiles);
+    }
+
     @Override
     public void release() {
         cacheData.clear();
-
-        // for memory mapped type we create temporary unpacked files which should be removed
-        if (autoRemoveTemporary && dir != null)
-            dir.clear();
+        removeTemporaryFiles();
     }
 
     /**
@@ -90,56 +103,50 @@ public abstract class AbstractSRTMElevationProvider extends AbstractElevationPro
 
         lat = (int) (lat * precision) / precision;
         lon = (int) (lon * precision) / precision;
-        int intKey = calcIntKey(lat, lon);
-        HeightTile demProvider = cacheData.get(intKey);
-        if (demProvider == null) {
-            if (!cacheDir.exists())
-                cacheDir.mkdirs();
+        return cacheData.getHeight(calcIntKey(lat, lon), lat, lon);
+    }
 
-            int minLat = down(lat);
-            int minLon = down(lon);
+    private HeightTile loadTile(int intKey, double lat, double lon) {
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
 
-            String fileName = getFileName(lat, lon);
-            if (fileName == null)
-                return 0;
+        int minLat = down(lat);
+        int minLon = down(lon);
 
-            DataAccess heights = getDirectory().find("dem" + intKey);
-            boolean loadExisting = false;
-            try {
-                loadExisting = heights.loadExisting();
-            } catch (Exception ex) {
-                logger.warn("cannot load dem" + intKey + ", error:" + ex.getMessage());
-            }
+        String fileName = getFileName(lat, lon);
+        if (fileName == null)
+            return null;
 
-            if (!loadExisting) {
-                try {
-                    updateHeightsFromFile(lat, lon, heights);
-                } catch (FileNotFoundException ex) {
-                    demProvider = new HeightTile(minLat, minLon, DEFAULT_WIDTH, DEFAULT_WIDTH, precision, DEGREE, DEGREE);
-                    cacheData.put(intKey, demProvider);
-                    demProvider.setHeights(heights);
-                    demProvider.setSeaLevel(true);
-                    // use small size on disc and in-memory
-                    heights.setSegmentSize(100).create(10).
-                            flush();
-                    return 0;
-                }
-            }
-
-            int width = (int) (Math.sqrt(heights.getHeader(WIDTH_BYTE_INDEX)) + 0.5);
-            if (width == 0)
-                width = DEFAULT_WIDTH;
+        DataAccess heights = findHeights("dem" + intKey);
+        boolean loadExisting = false;
+        try {
+            loadExisting = heights.loadExisting();
+        } catch (Exception ex) {
+            logger.warn("cannot load dem" + intKey + ", error:" + ex.getMessage());
+        }
 
-            demProvider = new HeightTile(minLat, minLon, width, width, precision, DEGREE, DEGREE);
-            cacheData.put(intKey, demProvider);
-            demProvider.setCalcMean(calcMean);
-            demProvider.setHeights(heights);
+        if (!loadExisting) {
+            try {
+                updateHeightsFromFile(lat, lon, heights);
+            } catch (FileNotFoundException ex) {
+                HeightTile demProvider = new HeightTile(minLat, minLon, DEFAULT_WIDTH, DEFAULT_WIDTH, precision, DEGREE, DEGREE);
+                demProvider.setHeights(heights);
+                demProvider.setSeaLevel(true);
+                // use small size on disc and in-memory
+                heights.setSegmentSize(100).create(10).
+                        flush();
+                return demProvider;
+            }
         }
 
-        if (demProvider.isSeaLevel())
-            return 0;
+        int width = (int) (Math.sqrt(heights.getHeader(WIDTH_BYTE_INDEX)) + 0.5);
+        if (width == 0)
+            width = DEFAULT_WIDTH;
 
-        return demProvider.getHeight(lat, lon);
+        HeightTile demProvider = new HeightTile(minLat, minLon, width, width, precision, DEGREE, DEGREE);
+        demProvider.setCalcMean(calcMean);
+        demProvider.setHeights(heights);
+        return demProvider;
     }
 
     private void updateHeightsFromFile(double lat, double lon, DataAccess heights) throws FileNotFoundException {
@@ -24,8 +24,6 @@ import java.awt.image.Raster;
 import java.io.File;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Provides basic methods that are usually used in an ElevationProvider that reads tiff files.
@@ -33,7 +31,7 @@ import java.util.Map;
  * @author Robin Boldt
  */
 public abstract class AbstractTiffElevationProvider extends AbstractElevationProvider {
-    private final Map<String, HeightTile> cacheData = new HashMap<>();
+    private final HeightTileCache<String> cacheData;
     final double precision = 1e7;
 
     private final int WIDTH;
@@ -52,15 +50,29 @@ public abstract class AbstractTiffElevationProvider extends AbstractElevationPro
         this.HEIGHT = height;
         this.LAT_DEGREE = latDegree;
         this.LON_DEGREE = lonDegree;
+        cacheData = new HeightTileCache<>(maxCachedTiles, new HeightTileCache.TileLoader<String>() {
+            @Override
+            public HeightTile load(String name, double lat, double lon) {
+                return loadTile(name, lat, lon);
+            }
+
+            @Override
+            public void unload(HeightTile tile) {
+                unloadTile(tile);
+            }
+        });
+    }
+
+    @Override
+    public void setMaxCachedTiles(int maxCachedTiles) {
+        super.setMaxCachedTiles(maxCachedTiles);
+        cacheData.setMaxTiles(maxCachedTiles);
     }
 
     @Override
     public void release() {
         cacheData.clear();
-
-        // for memory mapped type we create temporary unpacked files which should be removed
-        if (autoRemoveTemporary && dir != null)
-            dir.clear();
+        removeTemporaryFiles();
     }
 
     /**
@@ -91,55 +103,50 @@ public abstract class AbstractTiffElevationProvider extends AbstractElevationPro
 
         lat = (int) (lat * precision) / precision;
         lon = (int) (lon * precision) / precision;
-        String name = getFileName(lat, lon);
-        HeightTile demProvider = cacheData.get(name);
-        if (demProvider == null) {
-            if (!cacheDir.exists())
-                cacheDir.mkdirs();
-
-            int minLat = getMinLatForTile(lat);
-            int minLon = getMinLonForTile(lon);
-            // less restrictive against boundary checking
-            demProvider = new HeightTile(minLat, minLon, WIDTH, HEIGHT, LON_DEGREE * precision, LON_DEGREE, LAT_DEGREE);
-            demProvider.setCalcMean(calcMean);
-
-            cacheData.put(name, demProvider);
-            DataAccess heights = getDirectory().find(name + ".gh");
-            demProvider.setHeights(heights);
-            boolean loadExisting = false;
-            try {
-                loadExisting = heights.loadExisting();
-            } catch (Exception ex) {
-                logger.warn("cannot load " + name + ", error: " + ex.getMessage());
-            }
+        return cacheData.getHeight(getFileName(lat, lon), lat, lon);
+    }
 
-            if (!loadExisting) {
-                String zippedURL = getDownloadURL(lat, lon);
-                File file = new File(cacheDir, new File(getFileNameOfLocalFile(lat, lon)).getName());
+    private HeightTile loadTile(String name, double lat, double lon) {
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
 
-                try {
-                    downloadFile(file, zippedURL);
-                } catch (IOException e) {
-                    demProvider.setSeaLevel(true);
-                    // use small size on disc and in-memory
-                    heights.setSegmentSize(100).create(10).
-                            flush();
-                    return 0;
-                }
+        int minLat = getMinLatForTile(lat);
+        int minLon = getMinLonForTile(lon);
+        // less restrictive against boundary checking
+        HeightTile demProvider = new HeightTile(minLat, minLon, WIDTH, HEIGHT, LON_DEGREE * precision, LON_DEGREE, LAT_DEGREE);
+        demProvider.setCalcMean(calcMean);
+
+        DataAccess heights = findHeights(name + ".gh");
+        demProvider.setHeights(heights);
+        boolean loadExisting = false;
+        try {
+            loadExisting = heights.loadExisting();
+        } catch (Exception ex) {
+            logger.warn("cannot load " + name + ", error: " + ex.getMessage());
+        }
 
-                // short == 2 bytes
-                heights.create(2 * WIDTH * HEIGHT);
+        if (!loadExisting) {
+            String zippedURL = getDownloadURL(lat, lon);
+            File file = new File(cacheDir, new File(getFileNameOfLocalFile(lat, lon)).getName());
 
-                Raster raster = generateRasterFromFile(file, name + ".tif");
-                fillDataAccessWithElevationData(raster, heights, WIDTH);
+            try {
+                downloadFile(file, zippedURL);
+            } catch (IOException e) {
+                demProvider.setSeaLevel(true);
+                // use small size on disc and in-memory
+                heights.setSegmentSize(100).create(10).
+                        flush();
+                return demProvider;
+            }
 
-            } // loadExisting
-        }
+            // short == 2 bytes
+            heights.create(2 * WIDTH * HEIGHT);
 
-        if (demProvider.isSeaLevel())
-            return 0;
+            Raster raster = generateRasterFromFile(file, name + ".tif");
+            fillDataAccessWithElevationData(raster, heights, WIDTH);
 
-        return demProvider.getHeight(lat, lon);
+        } // loadExisting
+        return demProvider;
     }
 
     abstract Raster generateRasterFromFile(File file, String tifName);
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.reader.dem;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntSet;
 import com.graphhopper.coll.GHBitSet;
 import com.graphhopper.coll.GHBitSetImpl;
@@ -29,6 +30,10 @@ import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Abstract base class for tunnel/bridge edge elevation interpolators. This
  * class estimates elevation of inner nodes of a tunnel/bridge based on
@@ -49,16 +54,24 @@ import com.graphhopper.util.*;
  * Earth surface. Elevations of inner nodes are then interpolated from the outer
  * nodes using {@link NodeElevationInterpolator}. Elevations of pillar nodes are
  * calculated using linear interpolation on distances from tower nodes.
+ * <p>
+ * The connected components are independent: an inner node belongs to exactly one component and the outer nodes are
+ * only read. So the elevations of the components and afterwards of the pillar nodes of the edges can be interpolated
+ * with several threads, see {@link #setThreads(int)}. For the same reason tunnels and bridges can be interpolated
+ * at the same time.
  *
  * @author Alexey Valikov
  */
 public class EdgeElevationInterpolator {
+    // the number of edges whose pillar nodes one thread interpolates before it fetches the next edges
+    private static final int EDGE_CHUNK = 1024;
 
     private final GraphHopperStorage storage;
     protected final EnumEncodedValue<RoadEnvironment> roadEnvironmentEnc;
     private final NodeElevationInterpolator nodeElevationInterpolator;
     private final RoadEnvironment interpolateKey;
     private final ElevationInterpolator elevationInterpolator = new ElevationInterpolator();
+    private int threads = 1;
 
     public EdgeElevationInterpolator(GraphHopperStorage storage, EnumEncodedValue<RoadEnvironment> roadEnvironmentEnc, RoadEnvironment interpolateKey) {
         this.storage = storage;
@@ -75,33 +88,53 @@ public class EdgeElevationInterpolator {
         return storage;
     }
 
+    /**
+     * Sets the number of threads that interpolate the elevations. Default is 1.
+     */
+    public EdgeElevationInterpolator setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
     public void execute() {
-        interpolateElevationsOfTowerNodes();
-        interpolateElevationsOfPillarNodes();
+        IntArrayList interpolatableEdges = new IntArrayList();
+        interpolateElevationsOfTowerNodes(interpolatableEdges);
+        interpolateElevationsOfPillarNodes(interpolatableEdges);
     }
 
-    private void interpolateElevationsOfTowerNodes() {
+    private void interpolateElevationsOfTowerNodes(IntArrayList interpolatableEdges) {
         final AllEdgesIterator edge = storage.getAllEdges();
         final GHBitSet visitedEdgeIds = new GHBitSetImpl(edge.length());
         final EdgeExplorer edgeExplorer = storage.createEdgeExplorer();
+        final List<int[][]> components = new ArrayList<>();
 
         while (edge.next()) {
             final int edgeId = edge.getEdge();
             if (isInterpolatableEdge(edge)) {
+                interpolatableEdges.add(edgeId);
                 if (!visitedEdgeIds.contains(edgeId)) {
-                    interpolateEdge(edge, visitedEdgeIds, edgeExplorer);
+                    final IntSet outerNodeIds = new GHIntHashSet();
+                    final GHIntHashSet innerNodeIds = new GHIntHashSet();
+                    gatherOuterAndInnerNodeIds(edgeExplorer, edge, visitedEdgeIds, outerNodeIds, innerNodeIds);
+                    components.add(new int[][]{outerNodeIds.toArray(), innerNodeIds.toArray()});
                 }
             }
             visitedEdgeIds.add(edgeId);
         }
-    }
 
-    private void interpolateEdge(final EdgeIteratorState interpolatableEdge,
-                                 final GHBitSet visitedEdgeIds, final EdgeExplorer edgeExplorer) {
-        final IntSet outerNodeIds = new GHIntHashSet();
-        final GHIntHashSet innerNodeIds = new GHIntHashSet();
-        gatherOuterAndInnerNodeIds(edgeExplorer, interpolatableEdge, visitedEdgeIds, outerNodeIds, innerNodeIds);
-        nodeElevationInterpolator.interpolateElevationsOfInnerNodes(outerNodeIds.toArray(), innerNodeIds.toArray());
+        final AtomicInteger nextComponent = new AtomicInteger();
+        GHUtility.runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = nextComponent.getAndIncrement()) < components.size()) {
+                    int[][] component = components.get(index);
+                    nodeElevationInterpolator.interpolateElevationsOfInnerNodes(component[0], component[1]);
+                }
+            }
+        }, threads);
     }
 
     public void gatherOuterAndInnerNodeIds(final EdgeExplorer edgeExplorer,
@@ -130,35 +163,51 @@ public class EdgeElevationInterpolator {
         gatherOuterAndInnerNodeIdsSearch.start(edgeExplorer, interpolatableEdge.getBaseNode());
     }
 
-    private void interpolateElevationsOfPillarNodes() {
-        final EdgeIterator edge = storage.getAllEdges();
-        final NodeAccess nodeAccess = storage.getNodeAccess();
-        while (edge.next()) {
-            if (isInterpolatableEdge(edge)) {
-                int firstNodeId = edge.getBaseNode();
-                int secondNodeId = edge.getAdjNode();
-
-                double lat0 = nodeAccess.getLat(firstNodeId);
-                double lon0 = nodeAccess.getLon(firstNodeId);
-                double ele0 = nodeAccess.getEle(firstNodeId);
-
-                double lat1 = nodeAccess.getLat(secondNodeId);
-                double lon1 = nodeAccess.getLon(secondNodeId);
-                double ele1 = nodeAccess.getEle(secondNodeId);
-
-                final PointList pointList = edge.fetchWayGeometry(3);
-                final int count = pointList.size();
-                for (int index = 1; index < count - 1; index++) {
-                    double lat = pointList.getLat(index);
-                    double lon = pointList.getLon(index);
-                    double ele = elevationInterpolator.calculateElevationBasedOnTwoPoints(lat, lon,
-                            lat0, lon0, ele0, lat1, lon1, ele1);
-                    pointList.set(index, lat, lon, ele);
+    private void interpolateElevationsOfPillarNodes(final IntArrayList interpolatableEdges) {
+        final AtomicInteger nextChunk = new AtomicInteger();
+        GHUtility.runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                int from;
+                while ((from = nextChunk.getAndAdd(EDGE_CHUNK)) < interpolatableEdges.size()) {
+                    interpolateElevationsOfPillarNodes(interpolatableEdges, from,
+                            Math.min(from + EDGE_CHUNK, interpolatableEdges.size()));
                 }
-                if (count > 2)
-                    edge.setWayGeometry(pointList.shallowCopy(1, count - 1, false));
-                edge.setDistance(pointList.calcDistance(Helper.DIST_3D));
             }
+        }, threads);
+    }
+
+    /**
+     * Interpolates the pillar nodes of the edges in the specified range of the list. The way geometry keeps its size
+     * and so it is overwritten in place, which makes it safe to call this for different edges in parallel.
+     */
+    private void interpolateElevationsOfPillarNodes(IntArrayList edges, int from, int to) {
+        final NodeAccess nodeAccess = storage.getNodeAccess();
+        for (int i = from; i < to; i++) {
+            EdgeIteratorState edge = storage.getEdgeIteratorState(edges.get(i), Integer.MIN_VALUE);
+            int firstNodeId = edge.getBaseNode();
+            int secondNodeId = edge.getAdjNode();
+
+            double lat0 = nodeAccess.getLat(firstNodeId);
+            double lon0 = nodeAccess.getLon(firstNodeId);
+            double ele0 = nodeAccess.getEle(firstNodeId);
+
+            double lat1 = nodeAccess.getLat(secondNodeId);
+            double lon1 = nodeAccess.getLon(secondNodeId);
+            double ele1 = nodeAccess.getEle(secondNodeId);
+
+            final PointList pointList = edge.fetchWayGeometry(3);
+            final int count = pointList.size();
+            for (int index = 1; index < count - 1; index++) {
+                double lat = pointList.getLat(index);
+                double lon = pointList.getLon(index);
+                double ele = elevationInterpolator.calculateElevationBasedOnTwoPoints(lat, lon,
+                        lat0, lon0, ele0, lat1, lon1, ele1);
+                pointList.set(index, lat, lon, ele);
+            }
+            if (count > 2)
+                edge.setWayGeometry(pointList.shallowCopy(1, count - 1, false));
+            edge.setDistance(pointList.calcDistance(Helper.DIST_3D));
         }
     }
 }
@@ -50,6 +50,10 @@ public interface ElevationProvider {
         @Override
         public void setCalcMean(boolean eleCalcMean) {
         }
+
+        @Override
+        public void setMaxCachedTiles(int maxCachedTiles) {
+        }
     };
 
     /**
@@ -74,6 +78,13 @@ public interface ElevationProvider {
      */
     void setCalcMean(boolean calcMean);
 
+    /**
+     * Specifies how many tiles are kept loaded. If more tiles are needed the least recently used tiles are unloaded,
+     * but their unpacked data is kept, so that loading them again does not download or unpack them again. Default is
+     * 32.
+     */
+    void setMaxCachedTiles(int maxCachedTiles);
+
     /**
      * Release resources.
      */
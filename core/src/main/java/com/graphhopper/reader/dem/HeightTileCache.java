@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A thread-safe cache for the height tiles of an elevation provider. It holds at most maxTiles tiles and unloads the
+ * least recently used tiles if more tiles are needed. Tiles that are currently read are never unloaded, so the cache
+ * can temporarily contain more tiles if more threads than maxTiles read different tiles at the same time.
+ * <p>
+ * A tile is loaded only once even if several threads request it at the same time, but different tiles are loaded
+ * concurrently as the lock of the cache is not held while loading.
+ */
+class HeightTileCache<K> {
+    interface TileLoader<K> {
+        /**
+         * Loads the tile that contains the specified coordinate.
+         *
+         * @return the tile or null if there is no elevation data for the tile
+         */
+        HeightTile load(K key, double lat, double lon);
+
+        /**
+         * Releases the resources of the specified tile, it can be loaded again afterwards.
+         */
+        void unload(HeightTile tile);
+    }
+
+    private final TileLoader<K> loader;
+    // the access order makes the first entry the least recently used one
+    private final LinkedHashMap<K, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxTiles;
+
+    HeightTileCache(int maxTiles, TileLoader<K> loader) {
+        setMaxTiles(maxTiles);
+        this.loader = loader;
+    }
+
+    synchronized void setMaxTiles(int maxTiles) {
+        if (maxTiles < 1)
+            throw new IllegalArgumentException("At least one tile has to be cached but was " + maxTiles);
+        this.maxTiles = maxTiles;
+        evict();
+    }
+
+    /**
+     * @return the height of the specified coordinate, 0 if the tile is at sea level or has no data
+     */
+    double getHeight(K key, double lat, double lon) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+            entry.users++;
+        }
+
+        try {
+            HeightTile tile = entry.getTile(key, lat, lon);
+            if (tile == null || tile.isSeaLevel())
+                return 0;
+            return tile.getHeight(lat, lon);
+        } finally {
+            synchronized (this) {
+                entry.users--;
+                evict();
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iter = entries.values().iterator();
+        while (entries.size() > maxTiles && iter.hasNext()) {
+            Entry entry = iter.next();
+            if (entry.users > 0)
+                continue;
+
+            iter.remove();
+            if (entry.tile != null)
+                loader.unload(entry.tile);
+        }
+    }
+
+    synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Unloads all tiles.
+     */
+    synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            if (entry.tile != null)
+                loader.unload(entry.tile);
+        }
+        entries.clear();
+    }
+
+    private class Entry {
+        // guarded by the lock of the cache
+        int users;
+        volatile boolean loaded;
+        volatile HeightTile tile;
+
+        HeightTile getTile(K key, double lat, double lon) {
+            if (!loaded) {
+                synchronized (this) {
+                    if (!loaded) {
+                        tile = loader.load(key, lat, lon);
+                        loaded = true;
+                    }
+                }
+            }
+            return tile;
+        }
+    }
+}
@@ -82,6 +82,12 @@ public class MultiSourceElevationProvider implements ElevationProvider {
         globalProvider.setCalcMean(calcMean);
     }
 
+    @Override
+    public void setMaxCachedTiles(int maxCachedTiles) {
+        srtmProvider.setMaxCachedTiles(maxCachedTiles);
+        globalProvider.setMaxCachedTiles(maxCachedTiles);
+    }
+
     @Override
     public void release() {
         srtmProvider.release();
@@ -21,8 +21,13 @@ import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.PointList;
 
+import java.util.Arrays;
+
 /**
  * Interpolates elevations of inner nodes based on elevations of outer nodes.
+ * <p>
+ * This can be called for disjoint sets of inner nodes in parallel: the elevations are calculated without a lock
+ * and only the writes into the node access, which also update the bounds of the graph, are synchronized.
  *
  * @author Alexey Valikov
  */
@@ -52,12 +57,9 @@ public class NodeElevationInterpolator {
 
     private void interpolateElevationsOfInnerNodesForOneOuterNode(int outerNodeId, int[] innerNodeIds) {
         NodeAccess nodeAccess = storage.getNodeAccess();
-        double ele = nodeAccess.getEle(outerNodeId);
-        for (int innerNodeId : innerNodeIds) {
-            double lat = nodeAccess.getLat(innerNodeId);
-            double lon = nodeAccess.getLon(innerNodeId);
-            nodeAccess.setNode(innerNodeId, lat, lon, ele);
-        }
+        double[] eles = new double[innerNodeIds.length];
+        Arrays.fill(eles, nodeAccess.getEle(outerNodeId));
+        setElevations(nodeAccess, innerNodeIds, eles);
     }
 
     private void interpolateElevationsOfInnerNodesForTwoOuterNodes(int firstOuterNodeId,
@@ -71,13 +73,14 @@ public class NodeElevationInterpolator {
         double lon1 = nodeAccess.getLon(secondOuterNodeId);
         double ele1 = nodeAccess.getEle(secondOuterNodeId);
 
-        for (int innerNodeId : innerNodeIds) {
-            double lat = nodeAccess.getLat(innerNodeId);
-            double lon = nodeAccess.getLon(innerNodeId);
-            double ele = elevationInterpolator.calculateElevationBasedOnTwoPoints(lat, lon, lat0, lon0, ele0,
+        double[] eles = new double[innerNodeIds.length];
+        for (int i = 0; i < innerNodeIds.length; i++) {
+            double lat = nodeAccess.getLat(innerNodeIds[i]);
+            double lon = nodeAccess.getLon(innerNodeIds[i]);
+            eles[i] = elevationInterpolator.calculateElevationBasedOnTwoPoints(lat, lon, lat0, lon0, ele0,
                     lat1, lon1, ele1);
-            nodeAccess.setNode(innerNodeId, lat, lon, ele);
         }
+        setElevations(nodeAccess, innerNodeIds, eles);
     }
 
     private void interpolateElevationsOfInnerNodesForThreeOuterNodes(int firstOuterNodeId, int secondOuterNodeId,
@@ -95,13 +98,14 @@ public class NodeElevationInterpolator {
         double lon2 = nodeAccess.getLon(thirdOuterNodeId);
         double ele2 = nodeAccess.getEle(thirdOuterNodeId);
 
-        for (int innerNodeId : innerNodeIds) {
-            double lat = nodeAccess.getLat(innerNodeId);
-            double lon = nodeAccess.getLon(innerNodeId);
-            double ele = elevationInterpolator.calculateElevationBasedOnThreePoints(lat, lon, lat0,
+        double[] eles = new double[innerNodeIds.length];
+        for (int i = 0; i < innerNodeIds.length; i++) {
+            double lat = nodeAccess.getLat(innerNodeIds[i]);
+            double lon = nodeAccess.getLon(innerNodeIds[i]);
+            eles[i] = elevationInterpolator.calculateElevationBasedOnThreePoints(lat, lon, lat0,
                     lon0, ele0, lat1, lon1, ele1, lat2, lon2, ele2);
-            nodeAccess.setNode(innerNodeId, lat, lon, ele);
         }
+        setElevations(nodeAccess, innerNodeIds, eles);
     }
 
     private void interpolateElevationsOfInnerNodesForNOuterNodes(int[] outerNodeIds,
@@ -112,11 +116,21 @@ public class NodeElevationInterpolator {
             pointList.add(nodeAccess.getLat(outerNodeId), nodeAccess.getLon(outerNodeId),
                     nodeAccess.getEle(outerNodeId));
         }
-        for (int innerNodeId : innerNodeIds) {
-            double lat = nodeAccess.getLat(innerNodeId);
-            double lon = nodeAccess.getLon(innerNodeId);
-            double ele = elevationInterpolator.calculateElevationBasedOnPointList(lat, lon, pointList);
-            nodeAccess.setNode(innerNodeId, lat, lon, ele);
+        double[] eles = new double[innerNodeIds.length];
+        for (int i = 0; i < innerNodeIds.length; i++) {
+            double lat = nodeAccess.getLat(innerNodeIds[i]);
+            double lon = nodeAccess.getLon(innerNodeIds[i]);
+            eles[i] = elevationInterpolator.calculateElevationBasedOnPointList(lat, lon, pointList);
+        }
+        setElevations(nodeAccess, innerNodeIds, eles);
+    }
+
+    private static void setElevations(NodeAccess nodeAccess, int[] innerNodeIds, double[] eles) {
+        synchronized (nodeAccess) {
+            for (int i = 0; i < innerNodeIds.length; i++) {
+                int innerNodeId = innerNodeIds[i];
+                nodeAccess.setNode(innerNodeId, nodeAccess.getLat(innerNodeId), nodeAccess.getLon(innerNodeId), eles[i]);
+            }
         }
     }
 }
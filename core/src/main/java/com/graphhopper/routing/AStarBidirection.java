@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing;
 
+import com.graphhopper.coll.IntDoubleIndexedMinHeap;
 import com.graphhopper.routing.AStar.AStarEntry;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.BeelineWeightApproximator;
@@ -30,6 +31,8 @@ import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.Parameters;
 
+import java.util.function.IntToDoubleFunction;
+
 /**
  * This class implements a bidirectional A* algorithm. It is interesting to note that a
  * bidirectional dijkstra is far more efficient than a single direction one. The same does not hold
@@ -127,35 +130,24 @@ public class AStarBidirection extends AbstractBidirAlgo implements Recalculation
 
     @Override
     public void afterHeuristicChange(boolean forward, boolean backward) {
-        if (forward) {
-
-            // update PQ due to heuristic change (i.e. weight changed)
-            if (!pqOpenSetFrom.isEmpty()) {
-                // copy into temporary array to avoid pointer change of PQ
-                AStarEntry[] entries = pqOpenSetFrom.toArray(new AStarEntry[pqOpenSetFrom.size()]);
-                pqOpenSetFrom.clear();
-                for (AStarEntry value : entries) {
-                    value.weight = value.weightOfVisitedPath + weightApprox.approximate(value.adjNode, false);
-                    // does not work for edge based
-                    // ignoreExplorationFrom.add(value.adjNode);
-
-                    pqOpenSetFrom.add(value);
-                }
-            }
-        }
-
-        if (backward) {
-            if (!pqOpenSetTo.isEmpty()) {
-                AStarEntry[] entries = pqOpenSetTo.toArray(new AStarEntry[pqOpenSetTo.size()]);
-                pqOpenSetTo.clear();
-                for (AStarEntry value : entries) {
-                    value.weight = value.weightOfVisitedPath + weightApprox.approximate(value.adjNode, true);
-                    // ignoreExplorationTo.add(value.adjNode);
-
-                    pqOpenSetTo.add(value);
-                }
+        // update the open sets due to heuristic change (i.e. weight changed)
+        if (forward)
+            updateOpenSet(pqOpenSetFrom, bestWeightMapFrom, false);
+
+        if (backward)
+            updateOpenSet(pqOpenSetTo, bestWeightMapTo, true);
+    }
+
+    private void updateOpenSet(IntDoubleIndexedMinHeap openSet, final SPTEntryMap bestWeightMap, final boolean reverse) {
+        // only the entries of the open set and not all visited entries are updated
+        openSet.updateAll(new IntToDoubleFunction() {
+            @Override
+            public double applyAsDouble(int slot) {
+                AStarEntry value = (AStarEntry) bestWeightMap.getBySlot(slot);
+                value.weight = value.weightOfVisitedPath + weightApprox.approximate(value.adjNode, reverse);
+                return value.weight;
             }
-        }
+        });
     }
 
     @Override
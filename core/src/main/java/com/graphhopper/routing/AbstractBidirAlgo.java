@@ -17,8 +17,7 @@
  */
 package com.graphhopper.routing;
 
-import com.carrotsearch.hppc.IntObjectMap;
-import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.coll.IntDoubleIndexedMinHeap;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
@@ -29,8 +28,6 @@ import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.GHUtility;
 
-import java.util.PriorityQueue;
-
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
 
 /**
@@ -45,16 +42,18 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
     protected int to;
     protected int fromOutEdge;
     protected int toInEdge;
-    protected IntObjectMap<SPTEntry> bestWeightMapFrom;
-    protected IntObjectMap<SPTEntry> bestWeightMapTo;
-    protected IntObjectMap<SPTEntry> bestWeightMapOther;
+    protected SPTEntryMap bestWeightMapFrom;
+    protected SPTEntryMap bestWeightMapTo;
+    protected SPTEntryMap bestWeightMapOther;
     protected SPTEntry currFrom;
     protected SPTEntry currTo;
     protected SPTEntry bestFwdEntry;
     protected SPTEntry bestBwdEntry;
     protected double bestWeight;
-    PriorityQueue<SPTEntry> pqOpenSetFrom;
-    PriorityQueue<SPTEntry> pqOpenSetTo;
+    // the open sets contain the slots of the entries in the best weight maps
+    IntDoubleIndexedMinHeap pqOpenSetFrom;
+    IntDoubleIndexedMinHeap pqOpenSetTo;
+    private int initialCapacity;
     private boolean updateBestPath = true;
     protected boolean finishedFrom;
     protected boolean finishedTo;
@@ -70,12 +69,19 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
         initCollections(size);
     }
 
+    /**
+     * Sets the initial capacity of the collections. They are only created if the search is not started via
+     * {@link #calcPath(int, int, int, int)} which uses the pooled collections of a {@link BidirSearchWorkspace} instead.
+     */
     protected void initCollections(int size) {
-        pqOpenSetFrom = new PriorityQueue<>(size);
-        bestWeightMapFrom = new GHIntObjectHashMap<>(size);
+        initialCapacity = size;
+    }
 
-        pqOpenSetTo = new PriorityQueue<>(size);
-        bestWeightMapTo = new GHIntObjectHashMap<>(size);
+    private void useWorkspace(BidirSearchWorkspace workspace) {
+        pqOpenSetFrom = workspace.openSetFrom;
+        bestWeightMapFrom = workspace.bestWeightMapFrom;
+        pqOpenSetTo = workspace.openSetTo;
+        bestWeightMapTo = workspace.bestWeightMapTo;
     }
 
     /**
@@ -118,9 +124,16 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
         this.fromOutEdge = fromOutEdge;
         this.toInEdge = toInEdge;
         checkAlreadyRun();
-        init(from, 0, to, 0);
-        runAlgo();
-        return extractPath();
+        int traversalIds = traversalMode.isEdgeBased() ? 2 * graph.getEdges() : graph.getNodes();
+        BidirSearchWorkspace workspace = BidirSearchWorkspace.acquire(traversalIds);
+        useWorkspace(workspace);
+        try {
+            init(from, 0, to, 0);
+            runAlgo();
+            return extractPath();
+        } finally {
+            workspace.release();
+        }
     }
 
     protected BidirPathExtractor createPathExtractor(Graph graph, Weighting weighting) {
@@ -136,19 +149,45 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
     protected void initFrom(int from, double weight) {
         this.from = from;
         currFrom = createStartEntry(from, weight, false);
-        pqOpenSetFrom.add(currFrom);
-        if (!traversalMode.isEdgeBased()) {
-            bestWeightMapFrom.put(from, currFrom);
+        if (bestWeightMapFrom == null) {
+            pqOpenSetFrom = new IntDoubleIndexedMinHeap(initialCapacity);
+            bestWeightMapFrom = new SPTEntryMap(initialCapacity);
         }
+        currFrom = initStartEntry(from, currFrom, bestWeightMapFrom, pqOpenSetFrom);
     }
 
     protected void initTo(int to, double weight) {
         this.to = to;
         currTo = createStartEntry(to, weight, true);
-        pqOpenSetTo.add(currTo);
-        if (!traversalMode.isEdgeBased()) {
-            bestWeightMapTo.put(to, currTo);
+        if (bestWeightMapTo == null) {
+            pqOpenSetTo = new IntDoubleIndexedMinHeap(initialCapacity);
+            bestWeightMapTo = new SPTEntryMap(initialCapacity);
+        }
+        currTo = initStartEntry(to, currTo, bestWeightMapTo, pqOpenSetTo);
+    }
+
+    /**
+     * Adds the start entry to the open set. The same node can be used as start more than once, e.g. when several
+     * landmarks are explored together, in which case only the entry with the smaller weight is kept.
+     *
+     * @return the start entry that is stored for the node
+     */
+    private SPTEntry initStartEntry(int node, SPTEntry entry, SPTEntryMap bestWeightMap, IntDoubleIndexedMinHeap openSet) {
+        if (traversalMode.isEdgeBased()) {
+            openSet.push(bestWeightMap.add(entry), entry.weight);
+            return entry;
         }
+
+        SPTEntry existing = bestWeightMap.get(node);
+        if (existing != null && existing.weight <= entry.weight)
+            return existing;
+
+        int slot = bestWeightMap.put(node, entry);
+        if (openSet.contains(slot))
+            openSet.update(slot, entry.weight);
+        else
+            openSet.push(slot, entry.weight);
+        return entry;
     }
 
     protected void postInit(int from, int to) {
@@ -252,7 +291,7 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
         if (pqOpenSetFrom.isEmpty()) {
             return false;
         }
-        currFrom = pqOpenSetFrom.poll();
+        currFrom = bestWeightMapFrom.getBySlot(pqOpenSetFrom.poll());
         visitedCountFrom++;
         if (fromEntryCanBeSkipped()) {
             return true;
@@ -269,7 +308,7 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
         if (pqOpenSetTo.isEmpty()) {
             return false;
         }
-        currTo = pqOpenSetTo.poll();
+        currTo = bestWeightMapTo.getBySlot(pqOpenSetTo.poll());
         visitedCountTo++;
         if (toEntryCanBeSkipped()) {
             return true;
@@ -282,8 +321,8 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
         return true;
     }
 
-    private void fillEdges(SPTEntry currEdge, PriorityQueue<SPTEntry> prioQueue,
-                           IntObjectMap<SPTEntry> bestWeightMap, EdgeExplorer explorer, boolean reverse) {
+    private void fillEdges(SPTEntry currEdge, IntDoubleIndexedMinHeap prioQueue,
+                           SPTEntryMap bestWeightMap, EdgeExplorer explorer, boolean reverse) {
         EdgeIterator iter = explorer.setBaseNode(currEdge.adjNode);
         while (iter.next()) {
             if (!accept(iter, currEdge, reverse))
@@ -295,15 +334,19 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
             }
             final int origEdgeId = getOrigEdgeId(iter, reverse);
             final int traversalId = getTraversalId(iter, origEdgeId, reverse);
-            SPTEntry entry = bestWeightMap.get(traversalId);
-            if (entry == null) {
+            int slot = bestWeightMap.getSlot(traversalId);
+            SPTEntry entry;
+            if (slot < 0) {
                 entry = createEntry(iter, origEdgeId, weight, currEdge, reverse);
-                bestWeightMap.put(traversalId, entry);
-                prioQueue.add(entry);
-            } else if (entry.getWeightOfVisitedPath() > weight) {
-                prioQueue.remove(entry);
+                slot = bestWeightMap.put(traversalId, entry);
+                prioQueue.push(slot, entry.weight);
+            } else if ((entry = bestWeightMap.getBySlot(slot)).getWeightOfVisitedPath() > weight) {
                 updateEntry(entry, iter, origEdgeId, weight, currEdge, reverse);
-                prioQueue.add(entry);
+                // an already settled entry is added again
+                if (prioQueue.contains(slot))
+                    prioQueue.update(slot, entry.weight);
+                else
+                    prioQueue.push(slot, entry.weight);
             } else
                 continue;
 
@@ -393,15 +436,15 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
         return currTo.weight;
     }
 
-    IntObjectMap<SPTEntry> getBestFromMap() {
+    SPTEntryMap getBestFromMap() {
         return bestWeightMapFrom;
     }
 
-    IntObjectMap<SPTEntry> getBestToMap() {
+    SPTEntryMap getBestToMap() {
         return bestWeightMapTo;
     }
 
-    void setBestOtherMap(IntObjectMap<SPTEntry> other) {
+    void setBestOtherMap(SPTEntryMap other) {
         bestWeightMapOther = other;
     }
 
@@ -0,0 +1,103 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.IntDoubleIndexedMinHeap;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The open sets and shortest path tree maps of a bidirectional search. The instances are reused for the searches
+ * started via {@link AbstractBidirAlgo#calcPath(int, int, int, int)} so that the arrays are not allocated for every
+ * search. As the arrays indexed by the traversal id are sized to the graph, at most one pooled workspace per
+ * processor is created and shared by all threads. A search that finds no pooled workspace, e.g. if more searches run
+ * at the same time or if it is started from within another search, gets a sparse instance whose memory only depends
+ * on the number of explored entries and which is not pooled.
+ */
+final class BidirSearchWorkspace {
+    static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final BlockingQueue<BidirSearchWorkspace> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final AtomicInteger CREATED = new AtomicInteger();
+    final IntDoubleIndexedMinHeap openSetFrom;
+    final SPTEntryMap bestWeightMapFrom;
+    final IntDoubleIndexedMinHeap openSetTo;
+    final SPTEntryMap bestWeightMapTo;
+    private final boolean pooled;
+
+    BidirSearchWorkspace(int initialCapacity, boolean pooled) {
+        this.pooled = pooled;
+        openSetFrom = new IntDoubleIndexedMinHeap(initialCapacity);
+        bestWeightMapFrom = new SPTEntryMap(initialCapacity, !pooled);
+        openSetTo = new IntDoubleIndexedMinHeap(initialCapacity);
+        bestWeightMapTo = new SPTEntryMap(initialCapacity, !pooled);
+    }
+
+    /**
+     * @param traversalIds the number of traversal ids of the graph that is searched
+     * @return a pooled workspace that can hold the specified number of traversal ids without growing or a sparse
+     * workspace if all pooled workspaces are in use
+     */
+    static BidirSearchWorkspace acquire(int traversalIds) {
+        BidirSearchWorkspace workspace = POOL.poll();
+        if (workspace == null) {
+            if (CREATED.incrementAndGet() <= POOL_SIZE) {
+                workspace = new BidirSearchWorkspace(1000, true);
+            } else {
+                CREATED.decrementAndGet();
+                return new BidirSearchWorkspace(1000, false);
+            }
+        }
+        workspace.bestWeightMapFrom.ensureKeyCapacity(traversalIds);
+        workspace.bestWeightMapTo.ensureKeyCapacity(traversalIds);
+        return workspace;
+    }
+
+    /**
+     * Clears the collections so that they do not keep the shortest path trees alive and returns this workspace
+     * to the pool if it was taken from there.
+     */
+    void release() {
+        openSetFrom.clear();
+        bestWeightMapFrom.clear();
+        openSetTo.clear();
+        bestWeightMapTo.clear();
+        if (pooled)
+            POOL.offer(this);
+    }
+
+    boolean isPooled() {
+        return pooled;
+    }
+
+    /**
+     * @return the maximum number of elements of the arrays of the collections
+     */
+    int getCapacity() {
+        return Math.max(Math.max(openSetFrom.getCapacity(), openSetTo.getCapacity()),
+                Math.max(bestWeightMapFrom.getCapacity(), bestWeightMapTo.getCapacity()));
+    }
+
+    /**
+     * @return the number of workspaces in the pool
+     */
+    static int getPooled() {
+        return POOL.size();
+    }
+}
@@ -40,6 +40,7 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
     private static final int EMPTY_PARENT = -1;
     private static final int NOT_FOUND = -1;
     private final IntArrayListWithCap changedNodes;
+    private final int nodes;
     protected double[] weights;
     private int[] parents;
     private int[] edgeIds;
@@ -51,20 +52,22 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
     private double weightLimit = Double.MAX_VALUE;
 
     public DijkstraOneToMany(Graph graph, Weighting weighting, TraversalMode tMode) {
-        super(graph, weighting, tMode);
-
-        parents = new int[graph.getNodes()];
-        Arrays.fill(parents, EMPTY_PARENT);
-
-        edgeIds = new int[graph.getNodes()];
-        Arrays.fill(edgeIds, EdgeIterator.NO_EDGE);
-
-        weights = new double[graph.getNodes()];
-
-        Arrays.fill(weights, Double.MAX_VALUE);
+        this(graph, weighting, tMode, new Workspace());
+    }
 
-        heap = new IntDoubleBinaryHeap(1000);
-        changedNodes = new IntArrayListWithCap();
+    /**
+     * Creates the algorithm with the arrays of the specified workspace, which only grow if the graph has more nodes
+     * than the graphs of the previous searches. The workspace must not be used by another instance at the same time.
+     */
+    public DijkstraOneToMany(Graph graph, Weighting weighting, TraversalMode tMode, Workspace workspace) {
+        super(graph, weighting, tMode);
+        nodes = graph.getNodes();
+        workspace.init(nodes);
+        parents = workspace.parents;
+        edgeIds = workspace.edgeIds;
+        weights = workspace.weights;
+        heap = workspace.heap;
+        changedNodes = workspace.changedNodes;
     }
 
     @Override
@@ -116,8 +119,22 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
         return weights[endNode];
     }
 
+    /**
+     * @return the edge via which the current search reached the specified node or NO_EDGE for the start node
+     */
+    public int getIncomingEdge(int node) {
+        return edgeIds[node];
+    }
+
+    /**
+     * @return the node from which the current search reached the specified node
+     */
+    public int getParent(int node) {
+        return parents[node];
+    }
+
     public int findEndNode(int from, int to) {
-        if (weights.length < 2)
+        if (nodes < 2)
             return NOT_FOUND;
 
         this.to = to;
@@ -246,6 +263,48 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
                 + "MB";
     }
 
+    /**
+     * The arrays of a search, which can be reused by the searches on different graphs to avoid allocating arrays
+     * for all nodes of the graph for every search.
+     */
+    public static final class Workspace {
+        private int[] parents = new int[0];
+        private int[] edgeIds = new int[0];
+        private double[] weights = new double[0];
+        private final IntDoubleBinaryHeap heap = new IntDoubleBinaryHeap(1000);
+        private final IntArrayListWithCap changedNodes = new IntArrayListWithCap();
+
+        void init(int nodes) {
+            // only the nodes changed by the previous search have to be reset
+            int vn = changedNodes.size();
+            for (int i = 0; i < vn; i++) {
+                int n = changedNodes.get(i);
+                weights[n] = Double.MAX_VALUE;
+                parents[n] = EMPTY_PARENT;
+                edgeIds[n] = EdgeIterator.NO_EDGE;
+            }
+            changedNodes.elementsCount = 0;
+            heap.clear();
+
+            int oldLength = weights.length;
+            if (oldLength >= nodes)
+                return;
+            parents = Arrays.copyOf(parents, nodes);
+            Arrays.fill(parents, oldLength, nodes, EMPTY_PARENT);
+            edgeIds = Arrays.copyOf(edgeIds, nodes);
+            Arrays.fill(edgeIds, oldLength, nodes, EdgeIterator.NO_EDGE);
+            weights = Arrays.copyOf(weights, nodes);
+            Arrays.fill(weights, oldLength, nodes, Double.MAX_VALUE);
+        }
+
+        /**
+         * @return the length of the arrays
+         */
+        public int getCapacity() {
+            return weights.length;
+        }
+    }
+
     private static class IntArrayListWithCap extends IntArrayList {
         public IntArrayListWithCap() {
         }
@@ -0,0 +1,200 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.shapes.GHPoint3D;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache for the merged responses of route requests. The key is built from the snapped locations and
+ * not from the query coordinates, so requests from slightly different coordinates near the same junction share an
+ * entry. All request properties that can change the response are part of the key too.
+ * <p>
+ * The cache stores copies of the PathWrapper objects and returns new copies for every hit, so the responses can be
+ * modified, see PathWrapper.copy. The cache has to be cleared whenever the graph changes or the version of the graph
+ * changes has to be part of the key.
+ */
+public class RouteCache {
+    private final int maxSize;
+    private final Map<Key, List<PathWrapper>> map;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public RouteCache(final int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("The size of the route cache must be positive but was " + maxSize);
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<Key, List<PathWrapper>>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<PathWrapper>> eldest) {
+                if (size() <= maxSize)
+                    return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param queryResults the results of the lookup, before they are passed to the QueryGraph
+     * @param graphVersion the version of the graph changes that the request uses, see EdgeFlagOverlay.getVersion
+     */
+    public static Key createKey(GHRequest request, List<QueryResult> queryResults, long graphVersion) {
+        int[] edges = new int[queryResults.size() * 4];
+        double[] points = new double[queryResults.size() * 2];
+        for (int i = 0; i < queryResults.size(); i++) {
+            QueryResult qr = queryResults.get(i);
+            edges[i * 4] = qr.getClosestEdge().getEdge();
+            edges[i * 4 + 1] = qr.getClosestNode();
+            edges[i * 4 + 2] = qr.getWayIndex();
+            edges[i * 4 + 3] = qr.getSnappedPosition().ordinal();
+            GHPoint3D snappedPoint = qr.getSnappedPoint();
+            points[i * 2] = snappedPoint.lat;
+            points[i * 2 + 1] = snappedPoint.lon;
+        }
+
+        List<Double> headings = new ArrayList<>(request.getPoints().size());
+        for (int i = 0; i < request.getPoints().size(); i++) {
+            headings.add(request.hasFavoredHeading(i) ? request.getFavoredHeading(i) : Double.NaN);
+        }
+        // the vehicle, weighting and all other hints are in the hints map
+        String requestString = graphVersion + "|" + request.getAlgorithm() + "|" + request.getLocale() + "|" + request.isInstructionFiltering()
+                + "|" + headings + "|" + request.getCurbsides() + "|" + request.getPathDetails()
+                + "|" + new TreeMap<>(request.getHints().toMap());
+        return new Key(edges, points, requestString);
+    }
+
+    /**
+     * @return copies of the cached paths or null if there is no entry for the specified key
+     */
+    public List<PathWrapper> get(Key key) {
+        List<PathWrapper> paths;
+        synchronized (map) {
+            paths = map.get(key);
+        }
+        if (paths == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(paths);
+    }
+
+    /**
+     * Stores copies of the specified paths, so that they can still be modified afterwards.
+     */
+    public void put(Key key, List<PathWrapper> paths) {
+        List<PathWrapper> copies = copy(paths);
+        synchronized (map) {
+            map.put(key, copies);
+        }
+    }
+
+    private static List<PathWrapper> copy(List<PathWrapper> paths) {
+        List<PathWrapper> copies = new ArrayList<>(paths.size());
+        for (PathWrapper path : paths) {
+            copies.add(path.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Removes all entries, e.g. after the graph was changed.
+     */
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+        invalidations.incrementAndGet();
+    }
+
+    public int getSize() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries that were removed because the cache was full
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of calls to clear
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "route cache size: " + getSize() + "/" + maxSize + ", hits: " + getHits() + ", misses: " + getMisses()
+                + ", evictions: " + getEvictions() + ", invalidations: " + getInvalidations();
+    }
+
+    public static final class Key {
+        private final int[] edges;
+        private final double[] points;
+        private final String request;
+        private final int hashCode;
+
+        Key(int[] edges, double[] points, String request) {
+            this.edges = edges;
+            this.points = points;
+            this.request = request;
+            this.hashCode = 31 * (31 * Arrays.hashCode(edges) + Arrays.hashCode(points)) + request.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && Arrays.equals(edges, other.edges)
+                    && Arrays.equals(points, other.points) && request.equals(other.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
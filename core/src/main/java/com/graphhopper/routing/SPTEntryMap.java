@@ -0,0 +1,212 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.predicates.IntObjectPredicate;
+import com.carrotsearch.hppc.procedures.IntObjectProcedure;
+import com.graphhopper.storage.SPTEntry;
+
+import java.util.Arrays;
+
+/**
+ * Maps the traversal ids of a search to their shortest path tree entries. Every stored entry gets a slot
+ * which is used as id in the open set of the search. Instead of hashing, the slot of a traversal id is kept in
+ * an array indexed by the traversal id and is only valid if its stamp equals the current version. So clear is
+ * O(number of entries) and an instance can be reused without creating garbage, see {@link BidirSearchWorkspace}.
+ * The arrays indexed by the traversal id grow on demand, i.e. up to 8 bytes per node or edge key of the graph.
+ * A sparse instance keeps the slots in a hash map instead, which is preferable for a short-lived instance that
+ * is used for a single search only.
+ */
+public class SPTEntryMap {
+    private static final int NO_KEY = -1;
+    private int[] stamps;
+    private int[] slotsByKey;
+    private final IntIntHashMap sparseSlotsByKey;
+    private int version = 1;
+    private SPTEntry[] entries;
+    private int[] keys;
+    private int slots;
+    private int size;
+
+    public SPTEntryMap(int initialCapacity) {
+        this(initialCapacity, false);
+    }
+
+    SPTEntryMap(int initialCapacity, boolean sparse) {
+        initialCapacity = Math.max(1, initialCapacity);
+        if (sparse) {
+            stamps = new int[0];
+            slotsByKey = new int[0];
+            sparseSlotsByKey = new IntIntHashMap(initialCapacity);
+        } else {
+            stamps = new int[initialCapacity];
+            slotsByKey = new int[initialCapacity];
+            sparseSlotsByKey = null;
+        }
+        entries = new SPTEntry[initialCapacity];
+        keys = new int[initialCapacity];
+    }
+
+    public SPTEntry get(int key) {
+        int slot = getSlot(key);
+        return slot < 0 ? null : entries[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return getSlot(key) >= 0;
+    }
+
+    /**
+     * Stores the entry for the specified traversal id and replaces a previous entry.
+     *
+     * @return the slot of the entry
+     */
+    public int put(int key, SPTEntry entry) {
+        if (key < 0)
+            throw new IllegalArgumentException("traversal id must not be negative but was " + key);
+        int slot = getSlot(key);
+        if (slot >= 0) {
+            entries[slot] = entry;
+            return slot;
+        }
+        if (sparseSlotsByKey != null) {
+            slot = addSlot(key, entry);
+            sparseSlotsByKey.put(key, slot);
+            size++;
+            return slot;
+        }
+        ensureKeyCapacity(key + 1);
+        slot = addSlot(key, entry);
+        stamps[key] = version;
+        slotsByKey[key] = slot;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Grows the arrays indexed by the traversal id so that they can hold the specified number of traversal ids
+     * without copying. Does nothing for a sparse instance.
+     */
+    void ensureKeyCapacity(int keyCount) {
+        if (sparseSlotsByKey == null && keyCount > stamps.length) {
+            int newLength = Math.max(keyCount, stamps.length * 3 / 2);
+            stamps = Arrays.copyOf(stamps, newLength);
+            slotsByKey = Arrays.copyOf(slotsByKey, newLength);
+        }
+    }
+
+    /**
+     * Stores an entry that is not reachable via a traversal id, e.g. the start entry of an edge-based search.
+     *
+     * @return the slot of the entry
+     */
+    int add(SPTEntry entry) {
+        return addSlot(NO_KEY, entry);
+    }
+
+    private int addSlot(int key, SPTEntry entry) {
+        if (slots == entries.length) {
+            int newLength = Math.max(slots + 1, slots * 3 / 2);
+            entries = Arrays.copyOf(entries, newLength);
+            keys = Arrays.copyOf(keys, newLength);
+        }
+        entries[slots] = entry;
+        keys[slots] = key;
+        return slots++;
+    }
+
+    /**
+     * @return the slot of the specified traversal id or -1 if not contained
+     */
+    int getSlot(int key) {
+        if (sparseSlotsByKey != null)
+            return sparseSlotsByKey.getOrDefault(key, -1);
+        if (key < 0 || key >= stamps.length || stamps[key] != version)
+            return -1;
+        return slotsByKey[key];
+    }
+
+    SPTEntry getBySlot(int slot) {
+        return entries[slot];
+    }
+
+    int getSlots() {
+        return slots;
+    }
+
+    /**
+     * @return the number of traversal ids with an entry
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the maximum length of the arrays indexed by the traversal id or by the slot
+     */
+    public int getCapacity() {
+        return Math.max(stamps.length, entries.length);
+    }
+
+    public <T extends IntObjectProcedure<? super SPTEntry>> T forEach(T procedure) {
+        for (int slot = 0; slot < slots; slot++) {
+            if (keys[slot] != NO_KEY)
+                procedure.apply(keys[slot], entries[slot]);
+        }
+        return procedure;
+    }
+
+    /**
+     * Iterates the entries in insertion order until the predicate returns false.
+     */
+    public <T extends IntObjectPredicate<? super SPTEntry>> T forEach(T predicate) {
+        for (int slot = 0; slot < slots; slot++) {
+            if (keys[slot] != NO_KEY && !predicate.apply(keys[slot], entries[slot]))
+                break;
+        }
+        return predicate;
+    }
+
+    /**
+     * Removes all entries without releasing the memory.
+     */
+    public void clear() {
+        Arrays.fill(entries, 0, slots, null);
+        slots = 0;
+        size = 0;
+        if (sparseSlotsByKey != null) {
+            sparseSlotsByKey.clear();
+            return;
+        }
+        version++;
+        if (version == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            version = 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "size: " + size + ", slots: " + slots;
+    }
+}
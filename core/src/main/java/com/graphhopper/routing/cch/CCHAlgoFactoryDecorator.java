@@ -0,0 +1,327 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.cch;
+
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.RoutingAlgorithmFactoryDecorator;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.weighting.BlockAreaWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.EdgeFlagOverlay;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphEdgeIdFinder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.StorableProperties;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Parameters.CCH;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.Shape;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static com.graphhopper.util.Helper.*;
+import static com.graphhopper.util.Parameters.Algorithms.ASTAR_BI;
+import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
+
+/**
+ * This class implements the customizable contraction hierarchies (CCH) decorator. In contrast to CH the
+ * contraction order and the shortcuts do not depend on a weighting and are shared by all vehicles. For every
+ * configured weighting a metric is customized after import or load. Requests with a block_area on top of
+ * such a weighting get their own metric where only the arcs depending on the blocked edges are customized
+ * again.
+ */
+public class CCHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator {
+    private final Logger LOGGER = LoggerFactory.getLogger(CCHAlgoFactoryDecorator.class);
+    // input weighting list from configuration file
+    private final List<String> weightingsAsStrings = new ArrayList<>();
+    private final List<Weighting> weightings = new ArrayList<>();
+    private volatile List<CCHMetric> metrics = Collections.emptyList();
+    private CCHTopology topology;
+    private LocationIndex locationIndex;
+    private boolean enabled = false;
+    private boolean disablingAllowed = false;
+    private int leafSize = 16;
+
+    @Override
+    public void init(CmdArgs args) {
+        leafSize = args.getInt(CCH.PREPARE + "leaf_size", leafSize);
+        String cchWeightingsStr = args.get(CCH.PREPARE + "weightings", "");
+        if (!cchWeightingsStr.isEmpty() && !cchWeightingsStr.equalsIgnoreCase("no") && !cchWeightingsStr.equalsIgnoreCase("false"))
+            setWeightingsAsStrings(Arrays.asList(cchWeightingsStr.split(",")));
+
+        boolean enableThis = !weightingsAsStrings.isEmpty();
+        setEnabled(enableThis);
+        if (enableThis)
+            setDisablingAllowed(args.getBool(CCH.INIT_DISABLING_ALLOWED, isDisablingAllowed()));
+    }
+
+    public CCHAlgoFactoryDecorator setDisablingAllowed(boolean disablingAllowed) {
+        this.disablingAllowed = disablingAllowed;
+        return this;
+    }
+
+    public final boolean isDisablingAllowed() {
+        return disablingAllowed || !isEnabled();
+    }
+
+    /**
+     * Enables or disables this decorator. This speed-up mode is disabled by default.
+     */
+    public final CCHAlgoFactoryDecorator setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    @Override
+    public final boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param weightingList A list containing multiple weightings like: "fastest", "shortest" or
+     *                      your own weight-calculation type.
+     */
+    public CCHAlgoFactoryDecorator setWeightingsAsStrings(List<String> weightingList) {
+        if (weightingList.isEmpty())
+            throw new IllegalArgumentException("It is not allowed to pass an empty weightingList");
+
+        weightingsAsStrings.clear();
+        for (String strWeighting : weightingList) {
+            weightingsAsStrings.add(toLowerCase(strWeighting).trim());
+        }
+        return this;
+    }
+
+    public List<String> getWeightingsAsStrings() {
+        if (this.weightingsAsStrings.isEmpty())
+            throw new IllegalStateException("Potential bug: weightingsAsStrings is empty");
+
+        return this.weightingsAsStrings;
+    }
+
+    /**
+     * Decouple weightings from the metrics as we need weightings for the graphstorage and the
+     * graphstorage for the topology.
+     */
+    public CCHAlgoFactoryDecorator addWeighting(Weighting weighting) {
+        weightings.add(weighting);
+        return this;
+    }
+
+    public boolean hasWeightings() {
+        return !weightings.isEmpty();
+    }
+
+    public List<Weighting> getWeightings() {
+        return weightings;
+    }
+
+    public List<CCHMetric> getMetrics() {
+        return metrics;
+    }
+
+    public CCHTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Loads the topology or creates it if not yet existent and then customizes the metrics for all weightings.
+     *
+     * @param locationIndex finds the edges blocked by the shapes of a block_area request
+     * @return true if the topology was created
+     */
+    public boolean loadOrPrepare(GraphHopperStorage ghStorage, LocationIndex locationIndex, StorableProperties properties) {
+        if (weightings.isEmpty())
+            throw new IllegalStateException("No CCH weightings found");
+
+        this.locationIndex = locationIndex;
+        boolean prepared = false;
+        topology = new CCHTopology(ghStorage, ghStorage.getDirectory());
+        if (!topology.loadExisting()) {
+            LOGGER.info("Creating CCH topology for " + nf(ghStorage.getNodes()) + " nodes ... (" + getMemInfo() + ")");
+            StopWatch sw = new StopWatch().start();
+            int[] rankToNode = new NestedDissectionOrdering(ghStorage).setLeafSize(leafSize).calcRankToNode();
+            float orderTime = sw.stop().getSeconds();
+            sw = new StopWatch().start();
+            topology.create(1000);
+            topology.build(rankToNode);
+            topology.flush();
+            LOGGER.info(topology + ", order: " + orderTime + "s, contraction: " + sw.stop().getSeconds() + "s (" + getMemInfo() + ")");
+            properties.put(CCH.PREPARE + "date", createFormatter().format(new Date()));
+            prepared = true;
+        }
+        EdgeFlagOverlay flagOverlay = ghStorage.acquireFlagOverlay();
+        try {
+            customize(ghStorage.withFlagOverlay(flagOverlay), flagOverlay.getVersion());
+        } finally {
+            ghStorage.releaseFlagOverlay(flagOverlay);
+        }
+        return prepared;
+    }
+
+    /**
+     * Customizes the metrics for all weightings again, e.g. after the graph was changed. Requests that use other
+     * graph changes have to check the version of the metric, see CCHRAFactory.getGraphVersion.
+     *
+     * @param graph        the graph to read the edges from, e.g. the view of the current flag overlay
+     * @param graphVersion the version of the graph changes that the graph contains, see EdgeFlagOverlay.getVersion
+     */
+    public void customize(Graph graph, long graphVersion) {
+        if (topology == null)
+            throw new IllegalStateException("Call loadOrPrepare before customizing");
+
+        List<CCHMetric> tmpMetrics = new ArrayList<>(weightings.size());
+        for (Weighting weighting : weightings) {
+            StopWatch sw = new StopWatch().start();
+            CCHMetric metric = CCHMetric.customize(topology, graph, graphVersion, weighting);
+            LOGGER.info("Customized " + metric + " in " + sw.stop().getSeconds() + "s");
+            tmpMetrics.add(metric);
+        }
+        metrics = Collections.unmodifiableList(tmpMetrics);
+    }
+
+    public void close() {
+        if (topology != null)
+            topology.close();
+    }
+
+    @Override
+    public RoutingAlgorithmFactory getDecoratedAlgorithmFactory(RoutingAlgorithmFactory defaultAlgoFactory, HintsMap map) {
+        boolean disableCCH = map.getBool(CCH.DISABLE, false);
+        // do not replace a CH preparation which is faster for its fixed weighting
+        if (!isEnabled() || disablingAllowed && disableCCH || defaultAlgoFactory instanceof PrepareContractionHierarchies)
+            return defaultAlgoFactory;
+
+        List<CCHMetric> tmpMetrics = metrics;
+        if (tmpMetrics.isEmpty())
+            throw new IllegalStateException("No metrics customized for this decorator");
+
+        // if no weighting or vehicle is specified for this request and there is only one metric, use it
+        if ((map.getWeighting().isEmpty() || map.getVehicle().isEmpty()) && tmpMetrics.size() == 1)
+            return new CCHRAFactory(tmpMetrics.get(0), locationIndex, defaultAlgoFactory);
+
+        for (CCHMetric metric : tmpMetrics) {
+            if (metric.getWeighting().matches(map))
+                return new CCHRAFactory(metric, locationIndex, defaultAlgoFactory);
+        }
+        return defaultAlgoFactory;
+    }
+
+    /**
+     * @return the explicitly blocked edges of the specified BlockArea and the edges with a node within one of its
+     * shapes. These edges are found via the location index, so only the area of the shapes is searched and not the
+     * whole graph.
+     */
+    static GHIntHashSet findBlockedEdges(Graph graph, LocationIndex locationIndex, GraphEdgeIdFinder.BlockArea blockArea) {
+        final GHIntHashSet blockedEdges = new GHIntHashSet(blockArea.getBlockedEdges());
+        final NodeAccess na = graph.getNodeAccess();
+        for (final Shape shape : blockArea.getBlockedShapes()) {
+            locationIndex.query(shape.getBounds(), new LocationIndex.EdgeVisitor(graph.createEdgeExplorer()) {
+                @Override
+                public void onEdge(EdgeIteratorState edge, int nodeA, int nodeB) {
+                    if (shape.contains(na.getLatitude(nodeA), na.getLongitude(nodeA))
+                            || shape.contains(na.getLatitude(nodeB), na.getLongitude(nodeB)))
+                        blockedEdges.add(edge.getEdge());
+                }
+            });
+        }
+        return blockedEdges;
+    }
+
+    public static class CCHRAFactory implements RoutingAlgorithmFactory {
+        private final RoutingAlgorithmFactory defaultAlgoFactory;
+        private final CCHMetric metric;
+        private final LocationIndex locationIndex;
+        // the via point legs of one request use the same weighting, so customize a block area only once
+        private Weighting lastWeighting;
+        private CCHMetric lastMetric;
+
+        public CCHRAFactory(CCHMetric metric, LocationIndex locationIndex, RoutingAlgorithmFactory defaultAlgoFactory) {
+            this.defaultAlgoFactory = defaultAlgoFactory;
+            this.metric = metric;
+            this.locationIndex = locationIndex;
+        }
+
+        public RoutingAlgorithmFactory getDefaultAlgoFactory() {
+            return defaultAlgoFactory;
+        }
+
+        /**
+         * @return the version of the graph changes that the metric of this factory was customized for
+         */
+        public long getGraphVersion() {
+            return metric.getGraphVersion();
+        }
+
+        @Override
+        public RoutingAlgorithm createAlgo(Graph g, AlgorithmOptions opts) {
+            String algoStr = opts.getAlgorithm();
+            CCHMetric tmpMetric = null;
+            if (!opts.getTraversalMode().isEdgeBased() && (DIJKSTRA_BI.equalsIgnoreCase(algoStr) || ASTAR_BI.equalsIgnoreCase(algoStr)))
+                tmpMetric = getMetric(opts.getWeighting());
+
+            if (tmpMetric == null)
+                return defaultAlgoFactory.createAlgo(g, opts);
+
+            CCHAlgorithm algo = new CCHAlgorithm(g, tmpMetric, opts.getWeighting());
+            algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+            return algo;
+        }
+
+        /**
+         * @return the metric for the specified weighting or null if it cannot be derived from the prepared metric
+         */
+        private synchronized CCHMetric getMetric(Weighting weighting) {
+            if (isSameWeighting(weighting, metric.getWeighting()))
+                return metric;
+            if (!(weighting instanceof BlockAreaWeighting))
+                return null;
+
+            BlockAreaWeighting blockAreaWeighting = (BlockAreaWeighting) weighting;
+            if (!isSameWeighting(blockAreaWeighting.getSuperWeighting(), metric.getWeighting()))
+                return null;
+            GraphEdgeIdFinder.BlockArea blockArea = blockAreaWeighting.getBlockArea();
+            if (blockArea.hasBlockedShapes() && locationIndex == null)
+                return null;
+            if (lastWeighting != weighting) {
+                GHIntHashSet changedEdges = blockArea.hasBlockedShapes()
+                        ? findBlockedEdges(metric.getTopology().getGraph(), locationIndex, blockArea) : blockArea.getBlockedEdges();
+                lastMetric = metric.customize(weighting, changedEdges);
+                lastWeighting = weighting;
+            }
+            return lastMetric;
+        }
+
+        private static boolean isSameWeighting(Weighting requested, Weighting prepared) {
+            return requested.getClass() == prepared.getClass() && requested.toString().equals(prepared.toString());
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.cch;
+
+import com.carrotsearch.hppc.IntArrayDeque;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.coll.GHIntArrayList;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Calculates the shortest path for a customized CCH metric. The query graph can contain virtual nodes, these
+ * are not part of the topology: a small Dijkstra from the start and the end node finds the tower nodes
+ * which then are the seeds for the search in the elimination tree. There both directions only visit the
+ * ancestors of their seeds in increasing rank order, no priority queue and no stall-on-demand is needed.
+ * <p>
+ * Only node-based traversal is supported.
+ */
+public class CCHAlgorithm extends AbstractRoutingAlgorithm {
+    private static final int NO_ARC = -1;
+    private final CCHMetric metric;
+    private final CCHTopology topology;
+    private final int mainNodes;
+    private final IntIntHashMap fromParentArcs = new IntIntHashMap();
+    private final IntIntHashMap toParentArcs = new IntIntHashMap();
+    private int visitedNodes;
+    private int from;
+    private int to;
+    private boolean searched;
+    private SPTEntry directEntry;
+    private GHIntObjectHashMap<SPTEntry> fromTowerEntries;
+    private GHIntObjectHashMap<SPTEntry> toTowerEntries;
+    private double bestWeight = Double.POSITIVE_INFINITY;
+    private int bestRank = -1;
+
+    /**
+     * @param graph     the base graph or a query graph on top of it
+     * @param metric    the metric created for a weighting that calculates the same weights as the specified one
+     * @param weighting the weighting of the request that is used for the virtual edges and the resulting path
+     */
+    public CCHAlgorithm(Graph graph, CCHMetric metric, Weighting weighting) {
+        super(graph, weighting, TraversalMode.NODE_BASED);
+        this.metric = metric;
+        this.topology = metric.getTopology();
+        this.mainNodes = topology.getNodes();
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        checkAlreadyRun();
+        this.from = from;
+        this.to = to;
+        if (from != to)
+            runSearch();
+        searched = true;
+        return extractPath();
+    }
+
+    /**
+     * Searches upwards in the elimination tree from both sides and finds the rank where the searches meet with the
+     * smallest weight.
+     */
+    private void runSearch() {
+        fromTowerEntries = findTowerEntries(from, to, false);
+        toTowerEntries = findTowerEntries(to, -1, true);
+
+        IntDoubleHashMap fromWeights = new IntDoubleHashMap();
+        int[] fromRanks = searchUp(fromTowerEntries, true, fromWeights, fromParentArcs);
+        IntDoubleHashMap toWeights = new IntDoubleHashMap();
+        searchUp(toTowerEntries, false, toWeights, toParentArcs);
+
+        if (directEntry != null)
+            bestWeight = directEntry.weight;
+        for (int rank : fromRanks) {
+            int index = toWeights.indexOf(rank);
+            if (!toWeights.indexExists(index))
+                continue;
+            double weight = fromWeights.get(rank) + toWeights.indexGet(index);
+            if (weight < bestWeight) {
+                bestWeight = weight;
+                bestRank = rank;
+            }
+        }
+    }
+
+    @Override
+    protected boolean finished() {
+        return searched;
+    }
+
+    @Override
+    protected Path extractPath() {
+        if (!finished())
+            throw new IllegalStateException("Call calcPath before extracting the path");
+
+        CCHPath path = new CCHPath(graph);
+        path.init(from, to);
+        if (from == to) {
+            path.setFound(true);
+            path.setWeight(0);
+            return path;
+        }
+        if (Double.isInfinite(bestWeight))
+            return path;
+
+        GHIntArrayList edges = new GHIntArrayList();
+        if (bestRank < 0) {
+            addFromEntries(directEntry, edges);
+        } else {
+            IntArrayList fromArcs = new IntArrayList();
+            int rank = bestRank;
+            for (int arc = fromParentArcs.get(rank); arc != NO_ARC; arc = fromParentArcs.get(rank)) {
+                fromArcs.add(arc);
+                rank = topology.getTail(arc);
+            }
+            addFromEntries(fromTowerEntries.get(topology.getNode(rank)), edges);
+            for (int i = fromArcs.size() - 1; i >= 0; i--) {
+                unpack(fromArcs.get(i), true, edges);
+            }
+
+            rank = bestRank;
+            for (int arc = toParentArcs.get(rank); arc != NO_ARC; arc = toParentArcs.get(rank)) {
+                unpack(arc, false, edges);
+                rank = topology.getTail(arc);
+            }
+            addToEntries(toTowerEntries.get(topology.getNode(rank)), edges);
+        }
+        path.calcValues(from, edges, weighting);
+        return path;
+    }
+
+    /**
+     * Finds the tower nodes reachable from the specified node via virtual nodes. For a tower node this is
+     * just the node itself.
+     */
+    private GHIntObjectHashMap<SPTEntry> findTowerEntries(int node, int target, boolean reverse) {
+        GHIntObjectHashMap<SPTEntry> towerEntries = new GHIntObjectHashMap<>();
+        if (!isVirtualNode(node)) {
+            towerEntries.put(node, new SPTEntry(node, 0));
+            return towerEntries;
+        }
+
+        EdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        GHIntObjectHashMap<SPTEntry> entries = new GHIntObjectHashMap<>();
+        PriorityQueue<SPTEntry> heap = new PriorityQueue<>();
+        SPTEntry startEntry = new SPTEntry(node, 0);
+        entries.put(node, startEntry);
+        heap.add(startEntry);
+        while (!heap.isEmpty()) {
+            SPTEntry curr = heap.poll();
+            if (entries.get(curr.adjNode) != curr)
+                continue;
+
+            visitedNodes++;
+            if (!isVirtualNode(curr.adjNode)) {
+                towerEntries.put(curr.adjNode, curr);
+                continue;
+            }
+            if (curr.adjNode == target) {
+                directEntry = curr;
+                continue;
+            }
+
+            EdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, curr.edge))
+                    continue;
+
+                double weight = weighting.calcWeight(iter, reverse, curr.edge) + curr.weight;
+                if (Double.isInfinite(weight))
+                    continue;
+
+                SPTEntry entry = entries.get(iter.getAdjNode());
+                if (entry == null || weight < entry.weight) {
+                    entry = new SPTEntry(iter.getEdge(), iter.getAdjNode(), weight);
+                    entry.parent = curr;
+                    entries.put(iter.getAdjNode(), entry);
+                    heap.add(entry);
+                }
+            }
+        }
+        return towerEntries;
+    }
+
+    /**
+     * Relaxes the upward arcs of all ancestors of the specified tower nodes in the order of their rank.
+     *
+     * @return the visited ranks in ascending order
+     */
+    private int[] searchUp(GHIntObjectHashMap<SPTEntry> towerEntries, boolean up,
+                                  IntDoubleHashMap weights, IntIntHashMap parentArcs) {
+        IntArrayList ranks = new IntArrayList();
+        for (IntObjectCursor<SPTEntry> cursor : towerEntries) {
+            for (int rank = topology.getRank(cursor.key); rank >= 0 && !weights.containsKey(rank); rank = topology.getParent(rank)) {
+                weights.put(rank, Double.POSITIVE_INFINITY);
+                parentArcs.put(rank, NO_ARC);
+                ranks.add(rank);
+            }
+        }
+        for (IntObjectCursor<SPTEntry> cursor : towerEntries) {
+            weights.put(topology.getRank(cursor.key), cursor.value.weight);
+        }
+
+        int[] sorted = ranks.toArray();
+        Arrays.sort(sorted);
+        for (int tail : sorted) {
+            double weight = weights.get(tail);
+            visitedNodes++;
+            if (Double.isInfinite(weight))
+                continue;
+
+            for (int arc = topology.getUpFirst(tail); arc < topology.getUpFirst(tail + 1); arc++) {
+                int head = topology.getUpHead(arc);
+                double tmpWeight = weight + (up ? metric.getUpWeight(arc) : metric.getDownWeight(arc));
+                if (tmpWeight < weights.get(head)) {
+                    weights.put(head, tmpWeight);
+                    parentArcs.put(head, arc);
+                }
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Adds the original edges of the specified arc in travel direction. If up is true the arc is traversed
+     * from its tail to its head, otherwise from its head to its tail.
+     */
+    private void unpack(int arc, boolean up, GHIntArrayList edges) {
+        IntArrayDeque stack = new IntArrayDeque();
+        stack.addLast(arc << 1 | (up ? 1 : 0));
+        while (!stack.isEmpty()) {
+            int value = stack.removeLast();
+            int currArc = value >>> 1;
+            boolean currUp = (value & 1) == 1;
+            int via = currUp ? metric.getUpVia(currArc) : metric.getDownVia(currArc);
+            if (CCHMetric.isEdge(via)) {
+                edges.add(via);
+                continue;
+            }
+            if (via == CCHMetric.NO_VIA)
+                throw new IllegalStateException("Cannot unpack arc " + currArc + " without finite weight");
+
+            // the arc is the shortcut of the lower triangle tail-middle-head
+            int middle = CCHMetric.toMiddleRank(via);
+            int tail = topology.getTail(currArc);
+            int head = topology.getUpHead(currArc);
+            int middleTailArc = topology.findArcByRank(middle, tail);
+            int middleHeadArc = topology.findArcByRank(middle, head);
+            // push in reverse order
+            if (currUp) {
+                stack.addLast(middleHeadArc << 1 | 1);
+                stack.addLast(middleTailArc << 1);
+            } else {
+                stack.addLast(middleTailArc << 1 | 1);
+                stack.addLast(middleHeadArc << 1);
+            }
+        }
+    }
+
+    private static void addFromEntries(SPTEntry entry, GHIntArrayList edges) {
+        int start = edges.size();
+        for (; EdgeIterator.Edge.isValid(entry.edge); entry = entry.parent) {
+            edges.add(entry.edge);
+        }
+        // the entries lead back to the start node
+        for (int i = start, j = edges.size() - 1; i < j; i++, j--) {
+            int tmp = edges.get(i);
+            edges.set(i, edges.get(j));
+            edges.set(j, tmp);
+        }
+    }
+
+    private static void addToEntries(SPTEntry entry, GHIntArrayList edges) {
+        for (; EdgeIterator.Edge.isValid(entry.edge); entry = entry.parent) {
+            edges.add(entry.edge);
+        }
+    }
+
+    private boolean isVirtualNode(int node) {
+        return node >= mainNodes;
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName() {
+        return "cch";
+    }
+
+    private static class CCHPath extends Path {
+        CCHPath(Graph graph) {
+            super(graph);
+        }
+
+        void init(int from, int to) {
+            setFromNode(from);
+            setEndNode(to);
+        }
+
+        /**
+         * Adds the specified edges in travel direction and calculates the exact weight, distance and time.
+         */
+        void calcValues(int from, GHIntArrayList edges, Weighting weighting) {
+            int node = from;
+            int prevEdge = EdgeIterator.NO_EDGE;
+            double weight = 0;
+            for (int i = 0; i < edges.size(); i++) {
+                int edge = edges.get(i);
+                EdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+                int next = edgeState.getBaseNode() == node ? edgeState.getAdjNode() : edgeState.getBaseNode();
+                edgeState = graph.getEdgeIteratorState(edge, next);
+                weight += weighting.calcWeight(edgeState, false, prevEdge);
+                addDistance(edgeState.getDistance());
+                addTime(weighting.calcMillis(edgeState, false, prevEdge));
+                addEdge(edge);
+                prevEdge = edge;
+                node = next;
+            }
+            if (node != getEndNode())
+                throw new IllegalStateException("Unpacked CCH path ends at " + node + " instead of " + getEndNode());
+            setWeight(weight);
+            setFound(true);
+        }
+    }
+}
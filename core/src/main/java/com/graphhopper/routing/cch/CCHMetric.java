@@ -0,0 +1,310 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.cch;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.routing.profiles.BooleanEncodedValue;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * The weights of all CCH arcs for one Weighting. The customization first takes the minimum weight of the
+ * original edges of an arc and then improves it via all lower triangles, processing the arcs in the order
+ * of their tail. Afterwards every arc has the weight of the shortest path between its nodes and a CCH
+ * query does not need to consider anything else.
+ * <p>
+ * Per-request changes like blocked edges do not need a full customization: see customize(Weighting, GHIntHashSet)
+ * which creates a metric on top of this one that only stores the arcs depending on the changed edges. Instances
+ * are immutable after customization and can be used from multiple threads.
+ */
+public class CCHMetric {
+    static final int NO_VIA = -1;
+    private final CCHTopology topology;
+    private final Graph graph;
+    private final long graphVersion;
+    private final Weighting weighting;
+    private final BooleanEncodedValue accessEnc;
+    // the full metric for a metric created per request, otherwise null
+    private final CCHMetric base;
+    // maps the arcs that differ from the base metric to their index in the arrays below
+    private final IntIntHashMap changedArcs;
+    // the weight from the tail to the head of an arc
+    private float[] upWeights;
+    // the weight from the head to the tail of an arc
+    private float[] downWeights;
+    // >= 0 for an original edge, otherwise the rank of the middle node of the lower triangle encoded via toVia
+    private int[] upVias;
+    private int[] downVias;
+
+    private CCHMetric(CCHTopology topology, Graph graph, long graphVersion, Weighting weighting, CCHMetric base, int size) {
+        this.topology = topology;
+        this.graph = graph;
+        this.graphVersion = graphVersion;
+        this.weighting = weighting;
+        this.accessEnc = weighting.getFlagEncoder().getAccessEnc();
+        this.base = base;
+        this.changedArcs = base == null ? null : new IntIntHashMap();
+        this.upWeights = new float[size];
+        this.downWeights = new float[size];
+        this.upVias = new int[size];
+        this.downVias = new int[size];
+    }
+
+    /**
+     * Calculates the weights of all arcs for the specified weighting from the edges of the topology graph.
+     */
+    public static CCHMetric customize(CCHTopology topology, Weighting weighting) {
+        return customize(topology, topology.getGraph(), 0, weighting);
+    }
+
+    /**
+     * Calculates the weights of all arcs for the specified weighting.
+     *
+     * @param graph        the graph to read the edges from, e.g. the view of a flag overlay of the topology graph
+     * @param graphVersion the version of the graph changes that the graph contains, see EdgeFlagOverlay.getVersion
+     */
+    public static CCHMetric customize(CCHTopology topology, Graph graph, long graphVersion, Weighting weighting) {
+        int arcs = topology.getArcs();
+        CCHMetric metric = new CCHMetric(topology, graph, graphVersion, weighting, null, arcs);
+        int tail = 0;
+        for (int arc = 0; arc < arcs; arc++) {
+            while (topology.getUpFirst(tail + 1) <= arc) {
+                tail++;
+            }
+            metric.calcArc(arc, tail);
+        }
+        return metric;
+    }
+
+    /**
+     * Creates a metric for the specified weighting assuming that only the weights of the specified edges changed.
+     * Only the arcs that depend on these edges are customized again and only the arcs that change are stored, all
+     * other arcs are read from this metric. This is a lot faster than a full customization if the changes are
+     * local, e.g. for a blocked area.
+     */
+    public CCHMetric customize(Weighting newWeighting, GHIntHashSet changedEdges) {
+        if (base != null)
+            throw new IllegalStateException("Customize the full metric and not the metric of a request");
+
+        CCHMetric metric = new CCHMetric(topology, graph, graphVersion, newWeighting, this, Math.max(16, changedEdges.size()));
+        // arc ids are sorted by their tail and an arc only depends on arcs with a lower tail
+        PriorityQueue<Integer> queue = new PriorityQueue<>();
+        GHIntHashSet queued = new GHIntHashSet();
+        for (IntCursor cursor : changedEdges) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(cursor.value, Integer.MIN_VALUE);
+            int arc = topology.findArc(edge.getBaseNode(), edge.getAdjNode());
+            if (arc >= 0 && queued.add(arc))
+                queue.add(arc);
+        }
+
+        while (!queue.isEmpty()) {
+            int arc = queue.poll();
+            int tail = topology.getTail(arc);
+            float oldUp = metric.getUpWeight(arc), oldDown = metric.getDownWeight(arc);
+            metric.calcArc(arc, tail);
+            if (oldUp == metric.getUpWeight(arc) && oldDown == metric.getDownWeight(arc))
+                continue;
+
+            // this arc is a side of the upper triangles formed with all other upper neighbors of its tail
+            int head = topology.getUpHead(arc);
+            for (int other = topology.getUpFirst(tail); other < topology.getUpFirst(tail + 1); other++) {
+                int otherHead = topology.getUpHead(other);
+                if (otherHead == head)
+                    continue;
+                int dependent = topology.findArcByRank(Math.min(head, otherHead), Math.max(head, otherHead));
+                if (queued.add(dependent))
+                    queue.add(dependent);
+            }
+        }
+        return metric;
+    }
+
+    private void calcArc(int arc, int tail) {
+        float up = Float.POSITIVE_INFINITY, down = Float.POSITIVE_INFINITY;
+        int upVia = NO_VIA, downVia = NO_VIA;
+        int tailNode = topology.getNode(tail);
+        int headNode = topology.getNode(topology.getUpHead(arc));
+        for (int i = topology.getArcEdgeFirst(arc); i < topology.getArcEdgeFirst(arc + 1); i++) {
+            int edge = topology.getArcEdge(i);
+            // use the same orientation as an EdgeExplorer would, i.e. the adjacent node is the node we travel to
+            EdgeIteratorState upState = graph.getEdgeIteratorState(edge, headNode);
+            if (upState.get(accessEnc)) {
+                float tmpUp = (float) weighting.calcWeight(upState, false, EdgeIterator.NO_EDGE);
+                if (tmpUp < up) {
+                    up = tmpUp;
+                    upVia = edge;
+                }
+            }
+            EdgeIteratorState downState = graph.getEdgeIteratorState(edge, tailNode);
+            if (downState.get(accessEnc)) {
+                float tmpDown = (float) weighting.calcWeight(downState, false, EdgeIterator.NO_EDGE);
+                if (tmpDown < down) {
+                    down = tmpDown;
+                    downVia = edge;
+                }
+            }
+        }
+
+        // lower triangles: all nodes below the tail that are connected to tail and head
+        int head = topology.getUpHead(arc);
+        int i = topology.getDownFirst(tail), iEnd = topology.getDownFirst(tail + 1);
+        int j = topology.getDownFirst(head), jEnd = topology.getDownFirst(head + 1);
+        while (i < iEnd && j < jEnd) {
+            int middleOfTail = topology.getDownTail(i);
+            int middleOfHead = topology.getDownTail(j);
+            if (middleOfTail < middleOfHead) {
+                i++;
+            } else if (middleOfTail > middleOfHead) {
+                j++;
+            } else {
+                int tailArc = topology.getDownArc(i);
+                int headArc = topology.getDownArc(j);
+                float tmpUp = getDownWeight(tailArc) + getUpWeight(headArc);
+                if (tmpUp < up) {
+                    up = tmpUp;
+                    upVia = toVia(middleOfTail);
+                }
+                float tmpDown = getDownWeight(headArc) + getUpWeight(tailArc);
+                if (tmpDown < down) {
+                    down = tmpDown;
+                    downVia = toVia(middleOfTail);
+                }
+                i++;
+                j++;
+            }
+        }
+        setArc(arc, up, down, upVia, downVia);
+    }
+
+    private void setArc(int arc, float up, float down, int upVia, int downVia) {
+        int index = arc;
+        if (base != null) {
+            index = changedArcs.getOrDefault(arc, -1);
+            if (index < 0) {
+                if (up == base.upWeights[arc] && down == base.downWeights[arc]
+                        && upVia == base.upVias[arc] && downVia == base.downVias[arc])
+                    return;
+                index = changedArcs.size();
+                changedArcs.put(arc, index);
+                if (index == upWeights.length) {
+                    int newSize = 2 * index;
+                    upWeights = Arrays.copyOf(upWeights, newSize);
+                    downWeights = Arrays.copyOf(downWeights, newSize);
+                    upVias = Arrays.copyOf(upVias, newSize);
+                    downVias = Arrays.copyOf(downVias, newSize);
+                }
+            }
+        }
+        upWeights[index] = up;
+        downWeights[index] = down;
+        upVias[index] = upVia;
+        downVias[index] = downVia;
+    }
+
+    /**
+     * @return the index of the specified arc in the arrays of this metric or -1 if it is stored in the base metric
+     */
+    private int getIndex(int arc) {
+        return base == null ? arc : changedArcs.getOrDefault(arc, -1);
+    }
+
+    static int toVia(int middleRank) {
+        return -2 - middleRank;
+    }
+
+    static boolean isEdge(int via) {
+        return via >= 0;
+    }
+
+    static int toMiddleRank(int via) {
+        return -2 - via;
+    }
+
+    public CCHTopology getTopology() {
+        return topology;
+    }
+
+    public Weighting getWeighting() {
+        return weighting;
+    }
+
+    /**
+     * @return the version of the graph changes that this metric was customized for
+     */
+    public long getGraphVersion() {
+        return graphVersion;
+    }
+
+    /**
+     * @return the weight from the tail to the head of the specified arc
+     */
+    public float getUpWeight(int arc) {
+        int index = getIndex(arc);
+        return index < 0 ? base.upWeights[arc] : upWeights[index];
+    }
+
+    /**
+     * @return the weight from the head to the tail of the specified arc
+     */
+    public float getDownWeight(int arc) {
+        int index = getIndex(arc);
+        return index < 0 ? base.downWeights[arc] : downWeights[index];
+    }
+
+    int getUpVia(int arc) {
+        int index = getIndex(arc);
+        return index < 0 ? base.upVias[arc] : upVias[index];
+    }
+
+    int getDownVia(int arc) {
+        int index = getIndex(arc);
+        return index < 0 ? base.downVias[arc] : downVias[index];
+    }
+
+    /**
+     * @return the number of arcs stored in this metric, which is less than the number of all arcs for a metric
+     * created per request
+     */
+    public int getStoredArcs() {
+        return base == null ? topology.getArcs() : changedArcs.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CCH metric " + weighting + ", infinite arcs:" + countInfinite();
+    }
+
+    private int countInfinite() {
+        int count = 0;
+        for (int arc = 0; arc < topology.getArcs(); arc++) {
+            if (Float.isInfinite(getUpWeight(arc)))
+                count++;
+            if (Float.isInfinite(getDownWeight(arc)))
+                count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,358 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.cch;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.Storable;
+
+import java.util.Arrays;
+
+/**
+ * The metric independent part of the customizable contraction hierarchies (CCH). All nodes are contracted
+ * in the order of their rank without witness searches, i.e. all upper neighbors of a contracted node get
+ * connected. The resulting arcs are stored in both directions with the lower ranked node as tail: for
+ * every rank the upward arcs are sorted by the rank of the head and the arc ids are sorted by their tail.
+ * <p>
+ * Every arc knows its original edges, the shortcuts are resolved via lower triangles while customizing
+ * see CCHMetric. The topology is stored via a DataAccess object and kept in memory for the queries.
+ */
+public class CCHTopology implements Storable<CCHTopology> {
+    private static final int VERSION = 1;
+    private final Graph graph;
+    private final DataAccess da;
+    private int nodes;
+    private int[] rankToNode;
+    private int[] nodeToRank;
+    // upward arcs
+    private int[] upFirst;
+    private int[] upHead;
+    // downward arcs sorted by tail, i.e. the lower rank
+    private int[] downFirst;
+    private int[] downTail;
+    private int[] downArc;
+    // original edges for every arc
+    private int[] arcEdgeFirst;
+    private int[] arcEdges;
+
+    public CCHTopology(Graph graph, Directory dir) {
+        this.graph = graph;
+        this.da = dir.find("cch_topology");
+    }
+
+    /**
+     * Contracts the graph in the specified order and stores the result.
+     */
+    public void build(int[] rankToNode) {
+        if (rankToNode.length != graph.getNodes())
+            throw new IllegalArgumentException("Node order has to contain all " + graph.getNodes() + " nodes but was " + rankToNode.length);
+
+        this.nodes = rankToNode.length;
+        this.rankToNode = rankToNode;
+        initNodeToRank();
+
+        int[][] up = new int[nodes][];
+        int[] upSize = new int[nodes];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int baseRank = nodeToRank[iter.getBaseNode()], adjRank = nodeToRank[iter.getAdjNode()];
+            if (baseRank != adjRank)
+                add(up, upSize, Math.min(baseRank, adjRank), Math.max(baseRank, adjRank));
+        }
+
+        int arcs = 0;
+        for (int rank = 0; rank < nodes; rank++) {
+            int size = sortAndRemoveDuplicates(up[rank], upSize[rank]);
+            upSize[rank] = size;
+            arcs += size;
+            // connect all upper neighbors. It is sufficient to add them to the lowest one as this
+            // node will be contracted next and then passes them on to its own lowest upper neighbor
+            for (int i = 1; i < size; i++) {
+                add(up, upSize, up[rank][0], up[rank][i]);
+            }
+        }
+
+        upFirst = new int[nodes + 1];
+        upHead = new int[arcs];
+        int arc = 0;
+        for (int rank = 0; rank < nodes; rank++) {
+            upFirst[rank] = arc;
+            if (upSize[rank] > 0)
+                System.arraycopy(up[rank], 0, upHead, arc, upSize[rank]);
+            arc += upSize[rank];
+            up[rank] = null;
+        }
+        upFirst[nodes] = arc;
+        initArcEdges();
+        initDownArcs();
+    }
+
+    private static void add(int[][] lists, int[] sizes, int index, int value) {
+        int[] list = lists[index];
+        if (list == null) {
+            list = new int[4];
+            lists[index] = list;
+        } else if (sizes[index] == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            lists[index] = list;
+        }
+        list[sizes[index]++] = value;
+    }
+
+    private static int sortAndRemoveDuplicates(int[] list, int size) {
+        if (size == 0)
+            return 0;
+        Arrays.sort(list, 0, size);
+        int newSize = 1;
+        for (int i = 1; i < size; i++) {
+            if (list[i] != list[newSize - 1])
+                list[newSize++] = list[i];
+        }
+        return newSize;
+    }
+
+    private void initNodeToRank() {
+        nodeToRank = new int[nodes];
+        Arrays.fill(nodeToRank, -1);
+        for (int rank = 0; rank < nodes; rank++) {
+            if (nodeToRank[rankToNode[rank]] >= 0)
+                throw new IllegalArgumentException("Node " + rankToNode[rank] + " occurs more than once in the node order");
+            nodeToRank[rankToNode[rank]] = rank;
+        }
+    }
+
+    private void initArcEdges() {
+        int arcs = getArcs();
+        arcEdgeFirst = new int[arcs + 1];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int arc = findArc(iter.getBaseNode(), iter.getAdjNode());
+            if (arc >= 0)
+                arcEdgeFirst[arc + 1]++;
+        }
+        for (int i = 0; i < arcs; i++) {
+            arcEdgeFirst[i + 1] += arcEdgeFirst[i];
+        }
+        arcEdges = new int[arcEdgeFirst[arcs]];
+        int[] pos = Arrays.copyOf(arcEdgeFirst, arcs);
+        iter = graph.getAllEdges();
+        while (iter.next()) {
+            int arc = findArc(iter.getBaseNode(), iter.getAdjNode());
+            if (arc >= 0)
+                arcEdges[pos[arc]++] = iter.getEdge();
+        }
+    }
+
+    private void initDownArcs() {
+        int arcs = getArcs();
+        downFirst = new int[nodes + 1];
+        for (int arc = 0; arc < arcs; arc++) {
+            downFirst[upHead[arc] + 1]++;
+        }
+        for (int i = 0; i < nodes; i++) {
+            downFirst[i + 1] += downFirst[i];
+        }
+        downTail = new int[arcs];
+        downArc = new int[arcs];
+        int[] pos = Arrays.copyOf(downFirst, nodes);
+        // iterating the tails in increasing order keeps the downward arcs sorted by tail
+        for (int tail = 0; tail < nodes; tail++) {
+            for (int arc = upFirst[tail]; arc < upFirst[tail + 1]; arc++) {
+                int p = pos[upHead[arc]]++;
+                downTail[p] = tail;
+                downArc[p] = arc;
+            }
+        }
+    }
+
+    /**
+     * @return the arc between the specified nodes or -1 if there is none or if both nodes are identical
+     */
+    public int findArc(int nodeA, int nodeB) {
+        int rankA = nodeToRank[nodeA], rankB = nodeToRank[nodeB];
+        if (rankA == rankB)
+            return -1;
+        return findArcByRank(Math.min(rankA, rankB), Math.max(rankA, rankB));
+    }
+
+    /**
+     * @return the arc from the lower rank to the higher rank or -1 if there is none
+     */
+    public int findArcByRank(int lowerRank, int higherRank) {
+        int index = Arrays.binarySearch(upHead, upFirst[lowerRank], upFirst[lowerRank + 1], higherRank);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @return the lower ranked node of the specified arc
+     */
+    public int getTail(int arc) {
+        // upFirst is sorted and can contain the same value several times, so find the last rank starting before arc
+        int index = Arrays.binarySearch(upFirst, 0, nodes + 1, arc);
+        if (index < 0)
+            return -index - 2;
+        while (index < nodes && upFirst[index + 1] == arc) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * The parent of a node in the elimination tree is its lowest ranked upper neighbor. All upper neighbors
+     * of a node are ancestors in this tree.
+     *
+     * @return the rank of the parent or -1 for a root
+     */
+    public int getParent(int rank) {
+        return upFirst[rank] == upFirst[rank + 1] ? -1 : upHead[upFirst[rank]];
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getArcs() {
+        return upFirst[nodes];
+    }
+
+    public int getRank(int node) {
+        return nodeToRank[node];
+    }
+
+    public int getNode(int rank) {
+        return rankToNode[rank];
+    }
+
+    public int getUpFirst(int rank) {
+        return upFirst[rank];
+    }
+
+    public int getUpHead(int arc) {
+        return upHead[arc];
+    }
+
+    public int getDownFirst(int rank) {
+        return downFirst[rank];
+    }
+
+    public int getDownTail(int index) {
+        return downTail[index];
+    }
+
+    public int getDownArc(int index) {
+        return downArc[index];
+    }
+
+    public int getArcEdgeFirst(int arc) {
+        return arcEdgeFirst[arc];
+    }
+
+    public int getArcEdge(int index) {
+        return arcEdges[index];
+    }
+
+    Graph getGraph() {
+        return graph;
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+
+        if (da.getHeader(0 * 4) != VERSION)
+            throw new IllegalStateException("The CCH topology has version " + da.getHeader(0 * 4) + " but expected " + VERSION + ". Remove the graph folder and import again.");
+        nodes = da.getHeader(1 * 4);
+        if (nodes != graph.getNodes())
+            throw new IllegalStateException("The CCH topology was created for " + nodes + " nodes but the graph has " + graph.getNodes());
+        int arcs = da.getHeader(2 * 4);
+        int arcEdgeCount = da.getHeader(3 * 4);
+        long pointer = 0;
+        rankToNode = new int[nodes];
+        pointer = read(rankToNode, pointer);
+        upFirst = new int[nodes + 1];
+        pointer = read(upFirst, pointer);
+        upHead = new int[arcs];
+        pointer = read(upHead, pointer);
+        arcEdgeFirst = new int[arcs + 1];
+        pointer = read(arcEdgeFirst, pointer);
+        arcEdges = new int[arcEdgeCount];
+        read(arcEdges, pointer);
+        initNodeToRank();
+        initDownArcs();
+        return true;
+    }
+
+    @Override
+    public CCHTopology create(long byteCount) {
+        da.create(byteCount);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        long bytes = 4L * (2L * nodes + 2L * getArcs() + arcEdges.length + 2);
+        da.ensureCapacity(bytes);
+        long pointer = write(rankToNode, 0);
+        pointer = write(upFirst, pointer);
+        pointer = write(upHead, pointer);
+        pointer = write(arcEdgeFirst, pointer);
+        write(arcEdges, pointer);
+        da.setHeader(0 * 4, VERSION);
+        da.setHeader(1 * 4, nodes);
+        da.setHeader(2 * 4, getArcs());
+        da.setHeader(3 * 4, arcEdges.length);
+        da.flush();
+    }
+
+    private long read(int[] values, long pointer) {
+        for (int i = 0; i < values.length; i++, pointer += 4) {
+            values[i] = da.getInt(pointer);
+        }
+        return pointer;
+    }
+
+    private long write(int[] values, long pointer) {
+        for (int i = 0; i < values.length; i++, pointer += 4) {
+            da.setInt(pointer, values[i]);
+        }
+        return pointer;
+    }
+
+    @Override
+    public void close() {
+        da.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+
+    @Override
+    public String toString() {
+        return "CCH topology nodes:" + nodes + ", arcs:" + (upFirst == null ? 0 : getArcs());
+    }
+}
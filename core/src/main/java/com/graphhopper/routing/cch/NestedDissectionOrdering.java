@@ -0,0 +1,233 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.cch;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+
+import java.util.Arrays;
+
+/**
+ * Calculates a node order for the customizable contraction hierarchies that does not depend on any
+ * weighting. The graph is recursively split into two halves at the median of the longer side of the
+ * bounding box. The nodes of the smaller boundary between both halves form the separator which gets
+ * the highest ranks of the current cell, i.e. it is contracted after both halves. This keeps the fill-in
+ * of the contraction without witness searches small for road networks.
+ */
+public class NestedDissectionOrdering {
+    private static final int REMOVED = -1;
+    private final Graph graph;
+    private final NodeAccess nodeAccess;
+    private int leafSize = 16;
+    // undirected adjacency of the graph in compressed sparse row format
+    private int[] adjFirst;
+    private int[] adj;
+    private int[] cellIds;
+    private int[] nodes;
+    private int[] rankToNode;
+    private long[] tmpKeys;
+    private int nextRank;
+    private int nextCellId;
+
+    public NestedDissectionOrdering(Graph graph) {
+        this.graph = graph;
+        this.nodeAccess = graph.getNodeAccess();
+    }
+
+    /**
+     * Cells with less or equal nodes than the specified size are not split further.
+     */
+    public NestedDissectionOrdering setLeafSize(int leafSize) {
+        if (leafSize < 1)
+            throw new IllegalArgumentException("leaf size must be positive but was " + leafSize);
+        this.leafSize = leafSize;
+        return this;
+    }
+
+    /**
+     * @return the nodes sorted by their rank, i.e. the node at index 0 is contracted first
+     */
+    public int[] calcRankToNode() {
+        int nodeCount = graph.getNodes();
+        initAdjacency(nodeCount);
+        nodes = new int[nodeCount];
+        cellIds = new int[nodeCount];
+        tmpKeys = new long[nodeCount];
+        rankToNode = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i] = i;
+        }
+        nextRank = 0;
+        nextCellId = 0;
+        dissect(0, nodeCount);
+        if (nextRank != nodeCount)
+            throw new IllegalStateException("Not all nodes were ordered: " + nextRank + " vs. " + nodeCount);
+
+        int[] result = rankToNode;
+        adjFirst = null;
+        adj = null;
+        nodes = null;
+        cellIds = null;
+        tmpKeys = null;
+        rankToNode = null;
+        return result;
+    }
+
+    private void initAdjacency(int nodeCount) {
+        adjFirst = new int[nodeCount + 1];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (iter.getBaseNode() == iter.getAdjNode())
+                continue;
+            adjFirst[iter.getBaseNode() + 1]++;
+            adjFirst[iter.getAdjNode() + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            adjFirst[i + 1] += adjFirst[i];
+        }
+        adj = new int[adjFirst[nodeCount]];
+        int[] pos = Arrays.copyOf(adjFirst, nodeCount);
+        iter = graph.getAllEdges();
+        while (iter.next()) {
+            int base = iter.getBaseNode(), adjNode = iter.getAdjNode();
+            if (base == adjNode)
+                continue;
+            adj[pos[base]++] = adjNode;
+            adj[pos[adjNode]++] = base;
+        }
+    }
+
+    /**
+     * Orders all nodes in nodes[from, to). All of these nodes need to have the same cell id.
+     */
+    private void dissect(int from, int to) {
+        int size = to - from;
+        if (size <= leafSize) {
+            for (int i = from; i < to; i++) {
+                cellIds[nodes[i]] = REMOVED;
+                rankToNode[nextRank++] = nodes[i];
+            }
+            return;
+        }
+
+        sortByLongerSide(from, to);
+        int mid = from + size / 2;
+        int lowerId = ++nextCellId;
+        int upperId = ++nextCellId;
+        for (int i = from; i < mid; i++) {
+            cellIds[nodes[i]] = lowerId;
+        }
+        for (int i = mid; i < to; i++) {
+            cellIds[nodes[i]] = upperId;
+        }
+
+        int lowerBoundary = countBoundary(from, mid, upperId);
+        int upperBoundary = countBoundary(mid, to, lowerId);
+        // use the smaller boundary as separator and move it to the end of the range
+        int sepFrom;
+        if (lowerBoundary <= upperBoundary) {
+            markBoundary(from, mid, upperId);
+            sepFrom = to - lowerBoundary;
+        } else {
+            markBoundary(mid, to, lowerId);
+            sepFrom = to - upperBoundary;
+        }
+        int lowerEnd = compact(from, to, lowerId, upperId);
+
+        dissect(from, lowerEnd);
+        dissect(lowerEnd, sepFrom);
+        for (int i = sepFrom; i < to; i++) {
+            rankToNode[nextRank++] = nodes[i];
+        }
+    }
+
+    private void sortByLongerSide(int from, int to) {
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE, minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double lat = nodeAccess.getLatitude(nodes[i]);
+            double lon = nodeAccess.getLongitude(nodes[i]);
+            minLat = Math.min(minLat, lat);
+            maxLat = Math.max(maxLat, lat);
+            minLon = Math.min(minLon, lon);
+            maxLon = Math.max(maxLon, lon);
+        }
+        double lonFactor = Math.cos(Math.toRadians((minLat + maxLat) / 2));
+        boolean useLat = maxLat - minLat >= (maxLon - minLon) * lonFactor;
+        for (int i = from; i < to; i++) {
+            int node = nodes[i];
+            double coord = useLat ? nodeAccess.getLatitude(node) + 90 : nodeAccess.getLongitude(node) + 180;
+            // the coordinate is positive and fits into the upper int, the node id into the lower int
+            tmpKeys[i] = ((long) (coord * 1e6) << 32) | node;
+        }
+        Arrays.sort(tmpKeys, from, to);
+        for (int i = from; i < to; i++) {
+            nodes[i] = (int) tmpKeys[i];
+        }
+    }
+
+    private int countBoundary(int from, int to, int otherCellId) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (isBoundary(nodes[i], otherCellId))
+                count++;
+        }
+        return count;
+    }
+
+    private void markBoundary(int from, int to, int otherCellId) {
+        for (int i = from; i < to; i++) {
+            if (isBoundary(nodes[i], otherCellId))
+                cellIds[nodes[i]] = REMOVED;
+        }
+    }
+
+    private boolean isBoundary(int node, int otherCellId) {
+        for (int j = adjFirst[node]; j < adjFirst[node + 1]; j++) {
+            if (cellIds[adj[j]] == otherCellId)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reorders nodes[from, to) into the lower cell, the upper cell and the separator.
+     *
+     * @return the end of the lower cell
+     */
+    private int compact(int from, int to, int lowerId, int upperId) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (cellIds[nodes[i]] == lowerId)
+                tmpKeys[from + count++] = nodes[i];
+        }
+        int lowerEnd = from + count;
+        for (int i = from; i < to; i++) {
+            if (cellIds[nodes[i]] == upperId)
+                tmpKeys[from + count++] = nodes[i];
+        }
+        for (int i = from; i < to; i++) {
+            if (cellIds[nodes[i]] == REMOVED)
+                tmpKeys[from + count++] = nodes[i];
+        }
+        for (int i = from; i < to; i++) {
+            nodes[i] = (int) tmpKeys[i];
+        }
+        return lowerEnd;
+    }
+}
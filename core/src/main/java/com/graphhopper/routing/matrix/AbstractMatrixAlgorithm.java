@@ -0,0 +1,107 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.matrix;
+
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.GHUtility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calculates a matrix for the nodes of a QueryGraph that already contains all from and to points. The searches
+ * are split into blocks of consecutive indices and the blocks are processed in parallel. Every block has its own
+ * search data structures, which are reused for all indices of the block.
+ */
+public abstract class AbstractMatrixAlgorithm {
+    protected final Graph graph;
+    protected final Weighting weighting;
+    protected int maxVisitedNodes = Integer.MAX_VALUE;
+    private int threads = 1;
+
+    protected AbstractMatrixAlgorithm(Graph graph, Weighting weighting) {
+        this.graph = graph;
+        this.weighting = weighting;
+    }
+
+    public AbstractMatrixAlgorithm setMaxVisitedNodes(int maxVisitedNodes) {
+        this.maxVisitedNodes = maxVisitedNodes;
+        return this;
+    }
+
+    /**
+     * @param threads the maximum number of threads used for one matrix. Blocks of searches are executed in the
+     *                common ForkJoinPool and in the calling thread.
+     */
+    public AbstractMatrixAlgorithm setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param fromNodes the (virtual) nodes of the from points in the graph
+     * @param toNodes   the (virtual) nodes of the to points in the graph
+     * @param calcTimes     false if the times are not needed, which is faster
+     * @param calcDistances false if the distances are not needed. If neither times nor distances are needed only the
+     *                      weights are calculated, which is faster.
+     */
+    public abstract DistanceMatrix calcMatrix(int[] fromNodes, int[] toNodes, boolean calcTimes, boolean calcDistances);
+
+    public abstract String getName();
+
+    /**
+     * Calls the block task for all indices in [0, count) and waits until all blocks are finished. If a block fails the
+     * blocks that did not yet start are skipped and this method still waits for the running blocks before it throws,
+     * so that no block uses the graph after this method returned.
+     */
+    protected void runInBlocks(int count, final BlockTask task) {
+        int blocks = Math.min(threads, count);
+        if (blocks <= 1) {
+            task.run(0, count);
+            return;
+        }
+
+        int blockSize = (count + blocks - 1) / blocks;
+        List<Runnable> blockTasks = new ArrayList<>(blocks);
+        for (int start = 0; start < count; start += blockSize) {
+            final int tmpStart = start, tmpEnd = Math.min(count, start + blockSize);
+            blockTasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    task.run(tmpStart, tmpEnd);
+                }
+            });
+        }
+        GHUtility.runConcurrently(blockTasks, blocks);
+    }
+
+    protected interface BlockTask {
+        /**
+         * Processes the indices in [start, end)
+         */
+        void run(int start, int end);
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "|" + weighting;
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.matrix;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.coll.IntDoubleIndexedMinHeap;
+import com.graphhopper.routing.ch.PreparationWeighting;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.LevelEdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.ShortcutUnpacker;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the matrix on a node-based contraction hierarchy with buckets, see 'Computing Many-to-Many Shortest
+ * Paths Using Highway Hierarchies' by Knopp et al. First the backward upward search of every to point stores its
+ * weight at every reached node in a bucket. Then the forward upward search of every from point scans the buckets
+ * of all reached nodes, which yields the weights to all to points at once. Both phases run in parallel.
+ * <p>
+ * Times and distances are calculated by unpacking the shortcuts of the search trees. Every tree edge is unpacked
+ * at most once, no matter how many connections use it.
+ */
+public class CHBucketMatrixAlgorithm extends AbstractMatrixAlgorithm {
+    private final CHGraph chGraph;
+    private final Weighting prepareWeighting;
+
+    /**
+     * @param graph     the QueryGraph on top of the CHGraph
+     * @param weighting the weighting of the CH preparation
+     */
+    public CHBucketMatrixAlgorithm(Graph graph, CHGraph chGraph, Weighting weighting) {
+        super(graph, weighting);
+        this.chGraph = chGraph;
+        this.prepareWeighting = new PreparationWeighting(weighting);
+    }
+
+    @Override
+    public DistanceMatrix calcMatrix(final int[] fromNodes, final int[] toNodes, final boolean calcTimes,
+                                     final boolean calcDistances) {
+        final boolean calcTimesAndDistances = calcTimes || calcDistances;
+        final DistanceMatrix matrix = new DistanceMatrix(fromNodes.length, toNodes.length);
+        final SearchTree[] toTrees = new SearchTree[toNodes.length];
+        runInBlocks(toNodes.length, new BlockTask() {
+            @Override
+            public void run(int start, int end) {
+                UpwardSearch search = new UpwardSearch(true, calcTimes, calcDistances);
+                for (int toIndex = start; toIndex < end; toIndex++) {
+                    toTrees[toIndex] = search.run(toNodes[toIndex]);
+                }
+                matrix.addVisitedNodes(search.visitedNodes);
+            }
+        });
+
+        final GHIntObjectHashMap<Bucket> buckets = new GHIntObjectHashMap<>();
+        for (int toIndex = 0; toIndex < toTrees.length; toIndex++) {
+            SearchTree tree = toTrees[toIndex];
+            for (int entry = 0; entry < tree.size; entry++) {
+                Bucket bucket = buckets.get(tree.nodes[entry]);
+                if (bucket == null) {
+                    bucket = new Bucket();
+                    buckets.put(tree.nodes[entry], bucket);
+                }
+                bucket.add(toIndex, entry);
+            }
+        }
+
+        // the entry of the to tree for every connection, used to add the backward part of the times and distances
+        final int[][] toEntries = new int[fromNodes.length][];
+        runInBlocks(fromNodes.length, new BlockTask() {
+            @Override
+            public void run(int start, int end) {
+                UpwardSearch search = new UpwardSearch(false, calcTimes, calcDistances);
+                int[] fromEntries = new int[toNodes.length];
+                for (int fromIndex = start; fromIndex < end; fromIndex++) {
+                    SearchTree tree = search.run(fromNodes[fromIndex]);
+                    int[] tmpToEntries = new int[toNodes.length];
+                    for (int entry = 0; entry < tree.size; entry++) {
+                        Bucket bucket = buckets.get(tree.nodes[entry]);
+                        if (bucket == null)
+                            continue;
+                        for (int i = 0; i < bucket.size; i++) {
+                            int toIndex = bucket.toIndices.get(i);
+                            int toEntry = bucket.toEntries.get(i);
+                            double weight = tree.weights[entry] + toTrees[toIndex].weights[toEntry];
+                            if (weight < matrix.getWeight(fromIndex, toIndex)) {
+                                matrix.setWeight(fromIndex, toIndex, weight);
+                                fromEntries[toIndex] = entry;
+                                tmpToEntries[toIndex] = toEntry;
+                            }
+                        }
+                    }
+
+                    if (calcTimesAndDistances) {
+                        for (int toIndex = 0; toIndex < toNodes.length; toIndex++) {
+                            if (matrix.isConnected(fromIndex, toIndex)) {
+                                int entry = fromEntries[toIndex];
+                                tree.calcTimeAndDistance(entry, search.unpacker);
+                                matrix.addTimeAndDistance(fromIndex, toIndex, tree.times[entry], tree.distances[entry]);
+                            }
+                        }
+                        toEntries[fromIndex] = tmpToEntries;
+                    }
+                }
+                matrix.addVisitedNodes(search.visitedNodes);
+            }
+        });
+
+        if (calcTimesAndDistances) {
+            runInBlocks(toNodes.length, new BlockTask() {
+                @Override
+                public void run(int start, int end) {
+                    TimeAndDistanceUnpacker unpacker = new TimeAndDistanceUnpacker(true, calcTimes, calcDistances);
+                    for (int toIndex = start; toIndex < end; toIndex++) {
+                        SearchTree tree = toTrees[toIndex];
+                        for (int fromIndex = 0; fromIndex < fromNodes.length; fromIndex++) {
+                            if (matrix.isConnected(fromIndex, toIndex)) {
+                                int entry = toEntries[fromIndex][toIndex];
+                                tree.calcTimeAndDistance(entry, unpacker);
+                                matrix.addTimeAndDistance(fromIndex, toIndex, tree.times[entry], tree.distances[entry]);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        return matrix;
+    }
+
+    @Override
+    public String getName() {
+        return "ch_buckets";
+    }
+
+    /**
+     * The nodes settled by an upward search, the entries are in the order they were reached.
+     */
+    private static class SearchTree {
+        int size;
+        int[] nodes = new int[16];
+        double[] weights = new double[16];
+        int[] edges = new int[16];
+        int[] parents = new int[16];
+        // calculated on demand, -1 if not yet known
+        long[] times;
+        double[] distances;
+
+        int add(int node, double weight, int edge, int parent) {
+            if (size == nodes.length) {
+                int newLength = size * 2;
+                nodes = Arrays.copyOf(nodes, newLength);
+                weights = Arrays.copyOf(weights, newLength);
+                edges = Arrays.copyOf(edges, newLength);
+                parents = Arrays.copyOf(parents, newLength);
+            }
+            nodes[size] = node;
+            weights[size] = weight;
+            edges[size] = edge;
+            parents[size] = parent;
+            return size++;
+        }
+
+        void calcTimeAndDistance(int entry, TimeAndDistanceUnpacker unpacker) {
+            if (times == null) {
+                times = new long[size];
+                Arrays.fill(times, -1);
+                distances = new double[size];
+            }
+            // walk up to the root or the first known entry and then calculate the entries in reverse order
+            IntArrayList stack = unpacker.stack;
+            stack.elementsCount = 0;
+            while (entry >= 0 && times[entry] < 0) {
+                stack.add(entry);
+                entry = parents[entry];
+            }
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                int tmpEntry = stack.get(i);
+                int parent = parents[tmpEntry];
+                if (parent < 0) {
+                    times[tmpEntry] = 0;
+                    distances[tmpEntry] = 0;
+                } else {
+                    unpacker.unpack(edges[tmpEntry], nodes[tmpEntry]);
+                    times[tmpEntry] = times[parent] + unpacker.time;
+                    distances[tmpEntry] = distances[parent] + unpacker.distance;
+                }
+            }
+        }
+    }
+
+    private static class Bucket {
+        int size;
+        final IntArrayList toIndices = new IntArrayList(4);
+        final IntArrayList toEntries = new IntArrayList(4);
+
+        void add(int toIndex, int toEntry) {
+            toIndices.add(toIndex);
+            toEntries.add(toEntry);
+            size++;
+        }
+    }
+
+    /**
+     * A Dijkstra that only relaxes edges to higher level nodes and does not stop before all of them are settled.
+     * An instance is reused for all searches of one block.
+     */
+    private class UpwardSearch {
+        private final boolean reverse;
+        private final EdgeExplorer explorer;
+        private final LevelEdgeFilter levelFilter;
+        private final IntDoubleIndexedMinHeap heap = new IntDoubleIndexedMinHeap(128);
+        private final IntIntHashMap entries = new IntIntHashMap(128);
+        private final TimeAndDistanceUnpacker unpacker;
+        long visitedNodes;
+
+        UpwardSearch(boolean reverse, boolean calcTimes, boolean calcDistances) {
+            this.reverse = reverse;
+            explorer = graph.createEdgeExplorer(reverse
+                    ? DefaultEdgeFilter.inEdges(weighting.getFlagEncoder())
+                    : DefaultEdgeFilter.outEdges(weighting.getFlagEncoder()));
+            levelFilter = new LevelEdgeFilter(chGraph);
+            unpacker = new TimeAndDistanceUnpacker(reverse, calcTimes, calcDistances);
+        }
+
+        SearchTree run(int startNode) {
+            SearchTree tree = new SearchTree();
+            heap.clear();
+            entries.clear();
+            entries.put(startNode, tree.add(startNode, 0, EdgeIterator.NO_EDGE, -1));
+            heap.push(0, 0);
+            int settled = 0;
+            while (!heap.isEmpty() && settled < maxVisitedNodes) {
+                int entry = heap.poll();
+                settled++;
+                double currWeight = tree.weights[entry];
+                EdgeIterator iter = explorer.setBaseNode(tree.nodes[entry]);
+                while (iter.next()) {
+                    if (!levelFilter.accept(iter))
+                        continue;
+                    double weight = currWeight + prepareWeighting.calcWeight(iter, reverse, EdgeIterator.NO_EDGE);
+                    if (Double.isInfinite(weight))
+                        continue;
+
+                    int adjNode = iter.getAdjNode();
+                    int index = entries.indexOf(adjNode);
+                    if (index < 0) {
+                        int adjEntry = tree.add(adjNode, weight, iter.getEdge(), entry);
+                        entries.indexInsert(index, adjNode, adjEntry);
+                        heap.push(adjEntry, weight);
+                    } else {
+                        int adjEntry = entries.indexGet(index);
+                        if (heap.contains(adjEntry) && weight < tree.weights[adjEntry]) {
+                            tree.weights[adjEntry] = weight;
+                            tree.edges[adjEntry] = iter.getEdge();
+                            tree.parents[adjEntry] = entry;
+                            heap.update(adjEntry, weight);
+                        }
+                    }
+                }
+            }
+            visitedNodes += settled;
+            // not settled entries are not part of the tree as their weight is not final
+            while (!heap.isEmpty()) {
+                tree.weights[heap.poll()] = Double.POSITIVE_INFINITY;
+            }
+            return tree;
+        }
+    }
+
+    /**
+     * Sums up the time and distance of the original edges of an edge or shortcut, if they are needed.
+     */
+    private class TimeAndDistanceUnpacker {
+        private final boolean reverse;
+        private final ShortcutUnpacker shortcutUnpacker;
+        final IntArrayList stack = new IntArrayList();
+        long time;
+        double distance;
+
+        TimeAndDistanceUnpacker(boolean reverse, final boolean calcTimes, final boolean calcDistances) {
+            this.reverse = reverse;
+            shortcutUnpacker = new ShortcutUnpacker(graph, new ShortcutUnpacker.Visitor() {
+                @Override
+                public void visit(EdgeIteratorState edge, boolean reverse, int prevOrNextEdgeId) {
+                    if (calcTimes)
+                        time += weighting.calcMillis(edge, reverse, EdgeIterator.NO_EDGE);
+                    if (calcDistances)
+                        distance += edge.getDistance();
+                }
+            }, false);
+        }
+
+        /**
+         * @param adjNode the node the search reached via the specified edge
+         */
+        void unpack(int edge, int adjNode) {
+            time = 0;
+            distance = 0;
+            if (reverse)
+                shortcutUnpacker.visitOriginalEdgesBwd(edge, adjNode, false, EdgeIterator.NO_EDGE);
+            else
+                shortcutUnpacker.visitOriginalEdgesFwd(edge, adjNode, false, EdgeIterator.NO_EDGE);
+        }
+    }
+}
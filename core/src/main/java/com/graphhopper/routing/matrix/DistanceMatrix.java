@@ -0,0 +1,114 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.matrix;
+
+import java.util.Arrays;
+
+/**
+ * The result of a matrix calculation. Every row belongs to a from point and every column to a to point. If a
+ * connection was not found its weight is infinite.
+ */
+public class DistanceMatrix {
+    private final int fromCount;
+    private final int toCount;
+    private final double[][] weights;
+    private final long[][] times;
+    private final double[][] distances;
+    private long visitedNodes;
+    private String debugInfo = "";
+
+    public DistanceMatrix(int fromCount, int toCount) {
+        this.fromCount = fromCount;
+        this.toCount = toCount;
+        weights = new double[fromCount][toCount];
+        times = new long[fromCount][toCount];
+        distances = new double[fromCount][toCount];
+        for (double[] row : weights) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+    }
+
+    public int getFromCount() {
+        return fromCount;
+    }
+
+    public int getToCount() {
+        return toCount;
+    }
+
+    public boolean isConnected(int from, int to) {
+        return !Double.isInfinite(weights[from][to]);
+    }
+
+    public double getWeight(int from, int to) {
+        return weights[from][to];
+    }
+
+    /**
+     * @return the time in milliseconds
+     */
+    public long getTime(int from, int to) {
+        return times[from][to];
+    }
+
+    /**
+     * @return the distance in meter
+     */
+    public double getDistance(int from, int to) {
+        return distances[from][to];
+    }
+
+    void set(int from, int to, double weight, long time, double distance) {
+        weights[from][to] = weight;
+        times[from][to] = time;
+        distances[from][to] = distance;
+    }
+
+    void setWeight(int from, int to, double weight) {
+        weights[from][to] = weight;
+    }
+
+    void addTimeAndDistance(int from, int to, long time, double distance) {
+        times[from][to] += time;
+        distances[from][to] += distance;
+    }
+
+    synchronized void addVisitedNodes(long visitedNodes) {
+        this.visitedNodes += visitedNodes;
+    }
+
+    public long getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    public DistanceMatrix addDebugInfo(String debugInfo) {
+        if (!this.debugInfo.isEmpty())
+            this.debugInfo += ", ";
+        this.debugInfo += debugInfo;
+        return this;
+    }
+
+    public String getDebugInfo() {
+        return debugInfo;
+    }
+
+    @Override
+    public String toString() {
+        return fromCount + "x" + toCount + ", visited nodes: " + visitedNodes;
+    }
+}
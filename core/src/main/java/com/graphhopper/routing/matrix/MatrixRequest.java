@@ -0,0 +1,134 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.matrix;
+
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request for the weights, times and distances between all from and all to points.
+ */
+public class MatrixRequest {
+    private final List<GHPoint> fromPoints;
+    private final List<GHPoint> toPoints;
+    private List<String> fromPointHints = new ArrayList<>();
+    private List<String> toPointHints = new ArrayList<>();
+    private final HintsMap hints = new HintsMap();
+    private boolean calcTimes = true;
+    private boolean calcDistances = true;
+
+    /**
+     * Creates a symmetric request where the from and to points are the same.
+     */
+    public MatrixRequest(List<GHPoint> points) {
+        this(points, points);
+    }
+
+    public MatrixRequest(List<GHPoint> fromPoints, List<GHPoint> toPoints) {
+        if (fromPoints.isEmpty() || toPoints.isEmpty())
+            throw new IllegalArgumentException("At least one from and one to point have to be specified");
+        this.fromPoints = fromPoints;
+        this.toPoints = toPoints;
+    }
+
+    public List<GHPoint> getFromPoints() {
+        return fromPoints;
+    }
+
+    public List<GHPoint> getToPoints() {
+        return toPoints;
+    }
+
+    /**
+     * @return true if the from and the to points are the same so that they need to be snapped only once
+     */
+    public boolean isSymmetric() {
+        return fromPoints == toPoints || fromPoints.equals(toPoints) && fromPointHints.equals(toPointHints);
+    }
+
+    public MatrixRequest setFromPointHints(List<String> fromPointHints) {
+        this.fromPointHints = fromPointHints;
+        return this;
+    }
+
+    public List<String> getFromPointHints() {
+        return fromPointHints;
+    }
+
+    public MatrixRequest setToPointHints(List<String> toPointHints) {
+        this.toPointHints = toPointHints;
+        return this;
+    }
+
+    public List<String> getToPointHints() {
+        return toPointHints;
+    }
+
+    public MatrixRequest setVehicle(String vehicle) {
+        if (vehicle != null)
+            hints.setVehicle(vehicle);
+        return this;
+    }
+
+    public String getVehicle() {
+        return hints.getVehicle();
+    }
+
+    public MatrixRequest setWeighting(String weighting) {
+        if (weighting != null)
+            hints.setWeighting(weighting);
+        return this;
+    }
+
+    public String getWeighting() {
+        return hints.getWeighting();
+    }
+
+    public HintsMap getHints() {
+        return hints;
+    }
+
+    /**
+     * Times and distances require to unpack the paths and can be skipped if only the weights are needed.
+     */
+    public MatrixRequest setCalcTimes(boolean calcTimes) {
+        this.calcTimes = calcTimes;
+        return this;
+    }
+
+    public boolean isCalcTimes() {
+        return calcTimes;
+    }
+
+    public MatrixRequest setCalcDistances(boolean calcDistances) {
+        this.calcDistances = calcDistances;
+        return this;
+    }
+
+    public boolean isCalcDistances() {
+        return calcDistances;
+    }
+
+    @Override
+    public String toString() {
+        return fromPoints.size() + "x" + toPoints.size() + " " + hints;
+    }
+}
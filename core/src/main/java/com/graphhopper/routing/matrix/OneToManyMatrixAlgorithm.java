@@ -0,0 +1,120 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.matrix;
+
+import com.graphhopper.routing.DijkstraOneToMany;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Calculates the matrix with one DijkstraOneToMany search per from point. The search of a from point is continued
+ * for every to point instead of starting again, so the tree is only built once per row. As every block needs arrays
+ * for all nodes of the graph, the number of threads is limited to MAX_THREADS and the arrays are pooled and reused
+ * by the following blocks and matrices.
+ */
+public class OneToManyMatrixAlgorithm extends AbstractMatrixAlgorithm {
+    static final int MAX_THREADS = 4;
+    private static final BlockingQueue<DijkstraOneToMany.Workspace> WORKSPACES = new ArrayBlockingQueue<>(MAX_THREADS);
+
+    public OneToManyMatrixAlgorithm(Graph graph, Weighting weighting) {
+        super(graph, weighting);
+    }
+
+    /**
+     * @param threads the maximum number of threads, which is limited to MAX_THREADS
+     */
+    @Override
+    public OneToManyMatrixAlgorithm setThreads(int threads) {
+        super.setThreads(Math.min(threads, MAX_THREADS));
+        return this;
+    }
+
+    @Override
+    public DistanceMatrix calcMatrix(final int[] fromNodes, final int[] toNodes, final boolean calcTimes,
+                                     final boolean calcDistances) {
+        final DistanceMatrix matrix = new DistanceMatrix(fromNodes.length, toNodes.length);
+        runInBlocks(fromNodes.length, new BlockTask() {
+            @Override
+            public void run(int start, int end) {
+                DijkstraOneToMany.Workspace workspace = WORKSPACES.poll();
+                if (workspace == null)
+                    workspace = new DijkstraOneToMany.Workspace();
+                try {
+                    run(start, end, new DijkstraOneToMany(graph, weighting, TraversalMode.NODE_BASED, workspace));
+                } finally {
+                    // the workspace does not reference the graph, more workspaces than threads are not kept
+                    WORKSPACES.offer(workspace);
+                }
+            }
+
+            private void run(int start, int end, DijkstraOneToMany algo) {
+                algo.setMaxVisitedNodes(maxVisitedNodes);
+                long visitedNodes = 0;
+                for (int fromIndex = start; fromIndex < end; fromIndex++) {
+                    algo.clear();
+                    for (int toIndex = 0; toIndex < toNodes.length; toIndex++) {
+                        if (fromNodes[fromIndex] == toNodes[toIndex]) {
+                            matrix.set(fromIndex, toIndex, 0, 0, 0);
+                            continue;
+                        }
+                        int endNode = algo.findEndNode(fromNodes[fromIndex], toNodes[toIndex]);
+                        visitedNodes += algo.getVisitedNodes();
+                        if (endNode < 0)
+                            continue;
+                        matrix.setWeight(fromIndex, toIndex, algo.getWeight(endNode));
+                        if (calcTimes || calcDistances)
+                            addTimeAndDistance(algo, endNode, fromIndex, toIndex);
+                    }
+                }
+                matrix.addVisitedNodes(visitedNodes);
+            }
+
+            private void addTimeAndDistance(DijkstraOneToMany algo, int endNode, int fromIndex, int toIndex) {
+                long time = 0;
+                double distance = 0;
+                for (int node = endNode; EdgeIterator.Edge.isValid(algo.getIncomingEdge(node)); node = algo.getParent(node)) {
+                    EdgeIteratorState edgeState = graph.getEdgeIteratorState(algo.getIncomingEdge(node), node);
+                    if (calcTimes)
+                        time += weighting.calcMillis(edgeState, false, EdgeIterator.NO_EDGE);
+                    if (calcDistances)
+                        distance += edgeState.getDistance();
+                }
+                matrix.addTimeAndDistance(fromIndex, toIndex, time, distance);
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * @return the number of pooled workspaces
+     */
+    static int getPooledWorkspaces() {
+        return WORKSPACES.size();
+    }
+
+    @Override
+    public String getName() {
+        return "one_to_many";
+    }
+}
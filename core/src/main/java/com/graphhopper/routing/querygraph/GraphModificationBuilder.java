@@ -39,23 +39,21 @@ import java.util.List;
  * Builds the data structures that represent the changes to a graph as realized by {@link QueryGraph}
  */
 class GraphModificationBuilder {
+    private final Graph graph;
     private final int firstVirtualNodeId;
     private final int firstVirtualEdgeId;
     private final boolean is3D;
     private GraphModification graphModification;
 
     public static GraphModification build(Graph graph, List<QueryResult> queryResults) {
-        return build(graph.getNodes(), graph.getEdges(), graph.getNodeAccess().is3D(), queryResults);
+        return new GraphModificationBuilder(graph).build(queryResults);
     }
 
-    public static GraphModification build(int firstVirtualNodeId, int firstVirtualEdgeId, boolean is3D, List<QueryResult> queryResults) {
-        return new GraphModificationBuilder(firstVirtualNodeId, firstVirtualEdgeId, is3D).build(queryResults);
-    }
-
-    private GraphModificationBuilder(int firstVirtualNodeId, int firstVirtualEdgeId, boolean is3D) {
-        this.firstVirtualNodeId = firstVirtualNodeId;
-        this.firstVirtualEdgeId = firstVirtualEdgeId;
-        this.is3D = is3D;
+    private GraphModificationBuilder(Graph graph) {
+        this.graph = graph;
+        this.firstVirtualNodeId = graph.getNodes();
+        this.firstVirtualEdgeId = graph.getEdges();
+        this.is3D = graph.getNodeAccess().is3D();
     }
 
     private GraphModification build(List<QueryResult> resList) {
@@ -130,6 +128,9 @@ class GraphModificationBuilder {
                 // we can expect at least one entry in the results
                 EdgeIteratorState closestEdge = results.get(0).getClosestEdge();
                 final PointList fullPL = closestEdge.fetchWayGeometry(3);
+                // the flags of the closest edge were read when the point was snapped, read them again from the graph
+                // as it might use other flags, e.g. the ones of the flag overlay of a request
+                IntsRef edgeFlags = graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE).getFlags();
                 int baseNode = closestEdge.getBaseNode();
                 Collections.sort(results, new Comparator<QueryResult>() {
                     @Override
@@ -179,7 +180,7 @@ class GraphModificationBuilder {
                     createEdges(origEdgeKey, origRevEdgeKey,
                             prevPoint, prevWayIndex, isPillar,
                             res.getSnappedPoint(), res.getWayIndex(),
-                            fullPL, closestEdge, prevNodeId, virtNodeId);
+                            fullPL, closestEdge, edgeFlags, prevNodeId, virtNodeId);
 
                     graphModification.getVirtualNodes().add(currSnapped.lat, currSnapped.lon, currSnapped.ele);
 
@@ -202,7 +203,7 @@ class GraphModificationBuilder {
                     createEdges(origEdgeKey, origRevEdgeKey,
                             prevPoint, prevWayIndex, false,
                             fullPL.get(fullPL.getSize() - 1), fullPL.getSize() - 2,
-                            fullPL, closestEdge, virtNodeId - 1, adjNode);
+                            fullPL, closestEdge, edgeFlags, virtNodeId - 1, adjNode);
 
                 return true;
             }
@@ -211,7 +212,7 @@ class GraphModificationBuilder {
 
     private void createEdges(int origEdgeKey, int origRevEdgeKey,
                              GHPoint3D prevSnapped, int prevWayIndex, boolean isPillar, GHPoint3D currSnapped, int wayIndex,
-                             PointList fullPL, EdgeIteratorState closestEdge,
+                             PointList fullPL, EdgeIteratorState closestEdge, IntsRef edgeFlags,
                              int prevNodeId, int nodeId) {
         int max = wayIndex + 1;
         PointList basePoints = new PointList(max - prevWayIndex + 1, is3D);
@@ -232,9 +233,9 @@ class GraphModificationBuilder {
         boolean reverse = closestEdge.get(EdgeIteratorState.REVERSE_STATE);
         // edges between base and snapped point
         VirtualEdgeIteratorState baseEdge = new VirtualEdgeIteratorState(origEdgeKey,
-                virtEdgeId, prevNodeId, nodeId, baseDistance, closestEdge.getFlags(), closestEdge.getName(), basePoints, reverse);
+                virtEdgeId, prevNodeId, nodeId, baseDistance, edgeFlags, closestEdge.getName(), basePoints, reverse);
         VirtualEdgeIteratorState baseReverseEdge = new VirtualEdgeIteratorState(origRevEdgeKey,
-                virtEdgeId, nodeId, prevNodeId, baseDistance, IntsRef.deepCopyOf(closestEdge.getFlags()), closestEdge.getName(), baseReversePoints, !reverse);
+                virtEdgeId, nodeId, prevNodeId, baseDistance, IntsRef.deepCopyOf(edgeFlags), closestEdge.getName(), baseReversePoints, !reverse);
 
         baseEdge.setReverseEdge(baseReverseEdge);
         baseReverseEdge.setReverseEdge(baseEdge);
@@ -18,6 +18,7 @@
 package com.graphhopper.routing.subnetwork;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntIndexedContainer;
 import com.graphhopper.coll.GHBitSet;
 import com.graphhopper.coll.GHBitSetImpl;
@@ -32,6 +33,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -39,6 +41,10 @@ import java.util.concurrent.atomic.AtomicInteger;
  * also small subnetworks which could be bugs in OSM data or indicate otherwise disconnected areas
  * e.g. via barriers or one way problems - see #86.
  * <p>
+ * The subnetworks of the encoders are found and removed in parallel. The passes are independent as every encoder
+ * only changes its own access bits. But the bits of all encoders can share the same ints of the edge flags, so
+ * changing the flags is synchronized to not lose the changes of other threads.
+ * <p>
  *
  * @author Peter Karich
  */
@@ -50,7 +56,9 @@ public class PrepareRoutingSubnetworks {
     private final List<BooleanEncodedValue> accessEncList;
     private int minNetworkSize = 200;
     private int minOneWayNetworkSize = 0;
+    private final Object flagsLock = new Object();
     private int subnetworks = -1;
+    private int threads = 1;
 
     public PrepareRoutingSubnetworks(GraphHopperStorage ghStorage, List<FlagEncoder> encoders) {
         this.ghStorage = ghStorage;
@@ -71,28 +79,62 @@ public class PrepareRoutingSubnetworks {
         return this;
     }
 
+    /**
+     * Sets the number of encoders that are processed in parallel. Every thread needs memory for the subnetworks of
+     * the whole graph.
+     */
+    public PrepareRoutingSubnetworks setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
     public void doWork() {
         if (minNetworkSize <= 0 && minOneWayNetworkSize <= 0)
             return;
 
-        logger.info("start finding subnetworks (min:" + minNetworkSize + ", min one way:" + minOneWayNetworkSize + ") " + Helper.getMemInfo());
-        int unvisitedDeadEnds = 0;
-        for (FlagEncoder encoder : encoders) {
-            // mark edges for one vehicle as inaccessible
-            DefaultEdgeFilter filter = DefaultEdgeFilter.allEdges(encoder);
-            if (minOneWayNetworkSize > 0)
-                unvisitedDeadEnds += removeDeadEndUnvisitedNetworks(filter);
-
-            List<IntArrayList> components = findSubnetworks(filter);
-            keepLargeNetworks(filter, components);
-            subnetworks = Math.max(components.size(), subnetworks);
-            logger.info(components.size() + " subnetworks found for " + encoder + ", " + Helper.getMemInfo());
+        logger.info("start finding subnetworks (min:" + minNetworkSize + ", min one way:" + minOneWayNetworkSize
+                + ", threads:" + threads + ") " + Helper.getMemInfo());
+        final AtomicInteger unvisitedDeadEnds = new AtomicInteger();
+        ExecutorService threadPool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, encoders.size())));
+        ExecutorCompletionService<Integer> completionService = new ExecutorCompletionService<>(threadPool);
+        for (final FlagEncoder encoder : encoders) {
+            completionService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    Thread.currentThread().setName("subnetworks-" + encoder);
+                    // mark edges for one vehicle as inaccessible
+                    DefaultEdgeFilter filter = DefaultEdgeFilter.allEdges(encoder);
+                    if (minOneWayNetworkSize > 0)
+                        unvisitedDeadEnds.addAndGet(removeDeadEndUnvisitedNetworks(filter));
+
+                    List<IntArrayList> components = findSubnetworks(filter);
+                    keepLargeNetworks(filter, components);
+                    logger.info(components.size() + " subnetworks found for " + encoder + ", " + Helper.getMemInfo());
+                    return components.size();
+                }
+            });
+        }
+        threadPool.shutdown();
+
+        try {
+            for (int i = 0; i < encoders.size(); i++) {
+                subnetworks = Math.max(completionService.take().get(), subnetworks);
+            }
+        } catch (ExecutionException ex) {
+            threadPool.shutdownNow();
+            throw GHUtility.toRuntimeException(ex);
+        } catch (InterruptedException ex) {
+            threadPool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
         }
 
         markNodesRemovedIfUnreachable();
 
         logger.info("optimize to remove subnetworks (" + subnetworks + "), "
-                + "unvisited-dead-end-nodes (" + unvisitedDeadEnds + "), "
+                + "unvisited-dead-end-nodes (" + unvisitedDeadEnds.get() + "), "
                 + "maxEdges/node (" + maxEdgesPerNode.get() + ")");
         ghStorage.optimize();
     }
@@ -101,6 +143,69 @@ public class PrepareRoutingSubnetworks {
         return subnetworks;
     }
 
+    /**
+     * Removes the access to the edges of the subnetworks that contain one of the specified nodes and are smaller
+     * than the minimum network size, e.g. after edges were changed. In contrast to doWork only the subnetworks of
+     * these nodes are explored and the search stops as soon as a subnetwork is large enough, so this is fast for
+     * small changes of a big graph. The one way subnetworks and the nodes are not removed.
+     *
+     * @return number of removed edges
+     */
+    public int removeSmallNetworks(IntIndexedContainer nodes) {
+        if (minNetworkSize <= 0)
+            return 0;
+
+        int removedEdges = 0;
+        for (FlagEncoder encoder : encoders) {
+            BooleanEncodedValue accessEnc = encoder.getAccessEnc();
+            EdgeExplorer explorer = ghStorage.createEdgeExplorer(DefaultEdgeFilter.allEdges(encoder));
+            // the nodes of the subnetworks that were already explored
+            GHBitSet explored = new GHBitSetImpl(ghStorage.getNodes());
+            for (int i = 0; i < nodes.size(); i++) {
+                int start = nodes.get(i);
+                if (explored.contains(start))
+                    continue;
+
+                IntArrayList component = findSmallNetwork(explorer, accessEnc, explored, start);
+                if (component != null)
+                    removedEdges += removeEdges(explorer, accessEnc, component, minNetworkSize);
+            }
+        }
+        return removedEdges;
+    }
+
+    /**
+     * @return the nodes of the subnetwork of the start node or null if it has at least minNetworkSize nodes
+     */
+    private IntArrayList findSmallNetwork(EdgeExplorer explorer, BooleanEncodedValue accessEnc, GHBitSet explored, int start) {
+        IntArrayList component = new IntArrayList();
+        IntHashSet visited = new IntHashSet();
+        visited.add(start);
+        component.add(start);
+        boolean large = false;
+        for (int index = 0; index < component.size() && !large; index++) {
+            EdgeIterator iter = explorer.setBaseNode(component.get(index));
+            while (iter.next()) {
+                int adjNode = iter.getAdjNode();
+                if (visited.contains(adjNode) || !iter.get(accessEnc) && !iter.getReverse(accessEnc))
+                    continue;
+
+                // small subnetworks are explored completely, so this is part of a large one
+                if (explored.contains(adjNode) || component.size() + 1 >= minNetworkSize) {
+                    large = true;
+                    break;
+                }
+                visited.add(adjNode);
+                component.add(adjNode);
+            }
+        }
+
+        for (int i = 0; i < component.size(); i++) {
+            explored.add(component.get(i));
+        }
+        return large ? null : component;
+    }
+
     /**
      * This method finds the double linked components according to the specified filter.
      */
@@ -226,11 +331,14 @@ public class PrepareRoutingSubnetworks {
     int removeEdges(EdgeExplorer explorer, BooleanEncodedValue accessEnc, IntIndexedContainer component, int min) {
         int removedEdges = 0;
         if (component.size() < min) {
-            for (int i = 0; i < component.size(); i++) {
-                EdgeIterator edge = explorer.setBaseNode(component.get(i));
-                while (edge.next()) {
-                    edge.set(accessEnc, false).setReverse(accessEnc, false);
-                    removedEdges++;
+            // the flags are read and written while holding the lock, see the class comment
+            synchronized (flagsLock) {
+                for (int i = 0; i < component.size(); i++) {
+                    EdgeIterator edge = explorer.setBaseNode(component.get(i));
+                    while (edge.next()) {
+                        edge.set(accessEnc, false).setReverse(accessEnc, false);
+                        removedEdges++;
+                    }
                 }
             }
         }
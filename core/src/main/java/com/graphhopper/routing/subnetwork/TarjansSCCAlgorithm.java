@@ -27,14 +27,19 @@ import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Stack;
 
 /**
  * Implementation of Tarjan's algorithm using an explicit stack. The traditional recursive approach
  * runs into stack overflow pretty quickly. The algorithm is used within GraphHopper to find
  * strongly connected components to detect dead-ends leading to routes not found.
  * <p>
+ * The stack of the depth first search consists of two int arrays with the node and the number of its already
+ * explored edges for every level, and all levels share one EdgeExplorer. So no objects are created per node. When
+ * the search returns to a node its edge iteration is restarted and the explored edges are skipped, which is cheap
+ * for the small node degrees of road networks.
+ * <p>
  * See http://en.wikipedia.org/wiki/Tarjan's_strongly_connected_components_algorithm. See
  * http://www.timl.id.au/?p=327 and http://homepages.ecs.vuw.ac.nz/~djp/files/P05.pdf
  */
@@ -42,27 +47,29 @@ public class TarjansSCCAlgorithm {
     private final ArrayList<IntArrayList> components = new ArrayList<>();
     // TODO use just the Graph interface here
     private final GraphHopperStorage graph;
+    private final EdgeExplorer explorer;
     private final IntArrayDeque nodeStack;
     private final GHBitSet onStack;
     private final GHBitSet ignoreSet;
     private final int[] nodeIndex;
     private final int[] nodeLowLink;
-    private final EdgeFilter edgeFilter;
+    // the stack of the depth first search
+    private int[] dfsNodes = new int[64];
+    private int[] dfsExploredEdges = new int[64];
     private int index = 1;
 
     public TarjansSCCAlgorithm(GraphHopperStorage ghStorage, final EdgeFilter edgeFilter, boolean ignoreSingleEntries) {
         this.graph = ghStorage;
+        this.explorer = ghStorage.createEdgeExplorer(edgeFilter);
         this.nodeStack = new IntArrayDeque();
         this.onStack = new GHBitSetImpl(ghStorage.getNodes());
         this.nodeIndex = new int[ghStorage.getNodes()];
         this.nodeLowLink = new int[ghStorage.getNodes()];
-        this.edgeFilter = edgeFilter;
 
         if (ignoreSingleEntries) {
             // Very important case to boost performance - see #520. Exclude single entry components as we don't need them! 
             // But they'll be created a lot for multiple vehicles because many nodes e.g. for foot are not accessible at all for car.
             // We can ignore these single entry components as they are already set 'not accessible'
-            EdgeExplorer explorer = ghStorage.createEdgeExplorer(edgeFilter);
             int nodes = ghStorage.getNodes();
             ignoreSet = new GHBitSetImpl(ghStorage.getNodes());
             for (int start = 0; start < nodes; start++) {
@@ -103,95 +110,77 @@ public class TarjansSCCAlgorithm {
      * @param firstNode start search of SCC at this node
      */
     private void strongConnect(int firstNode) {
-        final Stack<TarjanState> stateStack = new Stack<>();
-        stateStack.push(TarjanState.startState(firstNode));
-
-        // nextState label is equivalent to the function entry point in the recursive Tarjan's algorithm.
-        nextState:
-
-        while (!stateStack.empty()) {
-            TarjanState state = stateStack.pop();
-            final int start = state.start;
-            final EdgeIterator iter;
-
-            if (state.isStart()) {
-                // We're traversing a new node 'start'.  Set the depth index for this node to the smallest unused index.
-                nodeIndex[start] = index;
-                nodeLowLink[start] = index;
-                index++;
-                nodeStack.addLast(start);
-                onStack.add(start);
-
-                iter = graph.createEdgeExplorer(edgeFilter).setBaseNode(start);
-
-            } else {
-                // We're resuming iteration over the next child of 'start', set lowLink as appropriate.
-                iter = state.iter;
-
-                int prevConnectedId = iter.getAdjNode();
-                nodeLowLink[start] = Math.min(nodeLowLink[start], nodeLowLink[prevConnectedId]);
+        int depth = 0;
+        visit(depth, firstNode);
+
+        while (depth >= 0) {
+            final int node = dfsNodes[depth];
+            int exploredEdges = dfsExploredEdges[depth];
+            EdgeIterator iter = explorer.setBaseNode(node);
+            // We're resuming iteration over the edges of 'node' after returning from a child.
+            for (int i = 0; i < exploredEdges; i++) {
+                iter.next();
             }
 
             // Each element (excluding the first) in the current component should be able to find
             // a successor with a lower nodeLowLink.
+            boolean descend = false;
             while (iter.next()) {
+                exploredEdges++;
                 int connectedId = iter.getAdjNode();
-                if (ignoreSet.contains(start))
-                    continue;
-
                 if (nodeIndex[connectedId] == 0) {
-                    // Push resume and start states onto state stack to continue our DFS through the graph after the jump.
-                    // Ideally we'd just call strongConnectIterative(connectedId);
-                    stateStack.push(TarjanState.resumeState(start, iter));
-                    stateStack.push(TarjanState.startState(connectedId));
-                    continue nextState;
+                    // Continue the DFS with the child, this node is resumed after the child is finished.
+                    dfsExploredEdges[depth] = exploredEdges;
+                    depth++;
+                    visit(depth, connectedId);
+                    descend = true;
+                    break;
                 } else if (onStack.contains(connectedId)) {
-                    nodeLowLink[start] = Math.min(nodeLowLink[start], nodeIndex[connectedId]);
+                    nodeLowLink[node] = Math.min(nodeLowLink[node], nodeIndex[connectedId]);
                 }
             }
+            if (descend)
+                continue;
 
             // If nodeLowLink == nodeIndex, then we are the first element in a component.
             // Add all nodes higher up on nodeStack to this component.
-            if (nodeIndex[start] == nodeLowLink[start]) {
+            if (nodeIndex[node] == nodeLowLink[node]) {
                 IntArrayList component = new IntArrayList();
-                int node;
-                while ((node = nodeStack.removeLast()) != start) {
-                    component.add(node);
-                    onStack.remove(node);
+                int stackNode;
+                while ((stackNode = nodeStack.removeLast()) != node) {
+                    component.add(stackNode);
+                    onStack.remove(stackNode);
                 }
-                component.add(start);
+                component.add(node);
                 component.trimToSize();
-                onStack.remove(start);
+                onStack.remove(node);
                 components.add(component);
             }
+
+            depth--;
+            if (depth >= 0) {
+                // the parent takes the lowLink of the finished child into account
+                int parent = dfsNodes[depth];
+                nodeLowLink[parent] = Math.min(nodeLowLink[parent], nodeLowLink[node]);
+            }
         }
     }
 
     /**
-     * Internal stack state of algorithm, used to avoid recursive function calls and hitting stack
-     * overflow exceptions. State is either 'start' for new nodes or 'resume' for partially
-     * traversed nodes.
+     * Set the depth index for the new node to the smallest unused index and push it on the stacks.
      */
-    private static class TarjanState {
-        final int start;
-        final EdgeIterator iter;
-
-        private TarjanState(final int start, final EdgeIterator iter) {
-            this.start = start;
-            this.iter = iter;
-        }
-
-        public static TarjanState startState(int start) {
-            return new TarjanState(start, null);
-        }
-
-        public static TarjanState resumeState(int start, EdgeIterator iter) {
-            return new TarjanState(start, iter);
-        }
-
-        // Iterator only present in 'resume' state.
-        boolean isStart() {
-            return iter == null;
+    private void visit(int depth, int node) {
+        if (depth == dfsNodes.length) {
+            dfsNodes = Arrays.copyOf(dfsNodes, 2 * depth);
+            dfsExploredEdges = Arrays.copyOf(dfsExploredEdges, 2 * depth);
         }
+        dfsNodes[depth] = node;
+        dfsExploredEdges[depth] = 0;
+
+        nodeIndex[node] = index;
+        nodeLowLink[node] = index;
+        index++;
+        nodeStack.addLast(node);
+        onStack.add(node);
     }
 }
@@ -28,6 +28,7 @@ import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.Parameters.Routing;
 import com.graphhopper.util.PathMerger;
 import com.graphhopper.util.StopWatch;
@@ -55,6 +56,10 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
     protected final EncodingManager encodingManager;
     // result from route
     protected List<Path> pathList;
+    // the paths without the heading constraints if requested via the alternative_without_heading hint
+    private List<Path> noHeadingPathList;
+    private long visitedNodesSum;
+    private int parallelLegsThreads = 1;
 
     public ViaRoutingTemplate(GHRequest ghRequest, GHResponse ghRsp, LocationIndex locationIndex, EncodingManager encodingManager) {
         this.locationIndex = locationIndex;
@@ -91,10 +96,17 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
         return queryResults;
     }
 
+    /**
+     * Sets the maximum number of threads that calculate the legs of a request with the hint parallel_legs=true
+     */
+    public ViaRoutingTemplate setParallelLegsThreads(int parallelLegsThreads) {
+        this.parallelLegsThreads = parallelLegsThreads;
+        return this;
+    }
+
     @Override
     public List<Path> calcPaths(QueryGraph queryGraph, RoutingAlgorithmFactory algoFactory, AlgorithmOptions algoOpts, FlagEncoder encoder) {
-        long visitedNodesSum = 0L;
-        final boolean viaTurnPenalty = ghRequest.getHints().getBool(Routing.PASS_THROUGH, false);
+        visitedNodesSum = 0L;
         final int pointsCount = ghRequest.getPoints().size();
         pathList = new ArrayList<>(pointsCount - 1);
 
@@ -107,82 +119,172 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
             }
         }
 
-        final boolean forceCurbsides = ghRequest.getHints().getBool(Routing.FORCE_CURBSIDE, true);
-        QueryResult fromQResult = queryResults.get(0);
-        StopWatch sw;
+        Leg[] legs = new Leg[pointsCount - 1];
+        if (ghRequest.getHints().getBool(Routing.PARALLEL_LEGS, false) && parallelLegsThreads > 1 && legs.length > 1)
+            calcIndependentLegs(legs, queryGraph, algoFactory, algoOpts, directions);
+
         for (int placeIndex = 1; placeIndex < pointsCount; placeIndex++) {
-            if (placeIndex == 1) {
-                // enforce start direction
-                queryGraph.enforceHeading(fromQResult.getClosestNode(), ghRequest.getFavoredHeading(0), false);
-            } else if (viaTurnPenalty) {
-                // enforce straight start after via stop
-                Path prevRoute = pathList.get(placeIndex - 2);
-                if (prevRoute.getEdgeCount() > 0) {
-                    EdgeIteratorState incomingVirtualEdge = prevRoute.getFinalEdge();
-                    queryGraph.unfavorVirtualEdgePair(fromQResult.getClosestNode(), incomingVirtualEdge.getEdge());
-                }
-            }
+            if (legs[placeIndex - 1] == null)
+                legs[placeIndex - 1] = calcLeg(placeIndex, queryGraph, algoFactory, algoOpts, directions, pathList, true);
+            addLeg(legs[placeIndex - 1], pathList, algoOpts);
+        }
 
-            QueryResult toQResult = queryResults.get(placeIndex);
+        noHeadingPathList = null;
+        if (ghRequest.getHints().getBool(Routing.ALTERNATIVE_WITHOUT_HEADING, false))
+            calcNoHeadingPaths(legs, queryGraph, algoFactory, algoOpts, directions);
 
-            // enforce end direction
-            queryGraph.enforceHeading(toQResult.getClosestNode(), ghRequest.getFavoredHeading(placeIndex), true);
+        ghResponse.getHints().put("visited_nodes.sum", visitedNodesSum);
+        ghResponse.getHints().put("visited_nodes.average", (float) visitedNodesSum / (pointsCount - 1));
+
+        return pathList;
+    }
+
+    /**
+     * The heading and pass_through constraints unfavor virtual edges in the QueryGraph, which all legs share. So
+     * only the legs without such a constraint are calculated here in parallel. The other legs are calculated
+     * afterwards one after the other, as before.
+     */
+    private void calcIndependentLegs(final Leg[] legs, final QueryGraph queryGraph, final RoutingAlgorithmFactory algoFactory,
+                                     final AlgorithmOptions algoOpts, final List<DirectionResolverResult> directions) {
+        boolean viaTurnPenalty = ghRequest.getHints().getBool(Routing.PASS_THROUGH, false);
+        List<Runnable> tasks = new ArrayList<>(legs.length);
+        for (int placeIndex = 1; placeIndex <= legs.length; placeIndex++) {
+            boolean constrained = placeIndex == 1 && isHeadingEnforced(queryGraph, 0)
+                    || placeIndex > 1 && viaTurnPenalty
+                    || isHeadingEnforced(queryGraph, placeIndex);
+            if (constrained)
+                continue;
 
-            sw = new StopWatch().start();
-            RoutingAlgorithm algo = algoFactory.createAlgo(queryGraph, algoOpts);
-            String debug = ", algoInit:" + sw.stop().getSeconds() + "s";
-
-            sw = new StopWatch().start();
-
-            // calculate paths
-            List<Path> tmpPathList;
-            if (!directions.isEmpty()) {
-                assert ghRequest.getCurbsides().size() == directions.size();
-                if (!(algo instanceof AbstractBidirAlgo)) {
-                    throw new IllegalArgumentException("To make use of the " + Routing.CURBSIDE + " parameter you need a bidirectional algorithm, got: " + algo.getName());
-                } else {
-                    int sourceOutEdge = DirectionResolverResult.getOutEdge(directions.get(placeIndex - 1), ghRequest.getCurbsides().get(placeIndex - 1));
-                    int targetInEdge = DirectionResolverResult.getInEdge(directions.get(placeIndex), ghRequest.getCurbsides().get(placeIndex));
-                    sourceOutEdge = ignoreThrowOrAcceptImpossibleCurbsides(sourceOutEdge, placeIndex - 1, forceCurbsides);
-                    targetInEdge = ignoreThrowOrAcceptImpossibleCurbsides(targetInEdge, placeIndex, forceCurbsides);
-                    // todo: enable curbside feature for alternative routes as well ?
-                    tmpPathList = Collections.singletonList(((AbstractBidirAlgo) algo)
-                            .calcPath(fromQResult.getClosestNode(), toQResult.getClosestNode(), sourceOutEdge, targetInEdge));
+            final int tmpPlaceIndex = placeIndex;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    legs[tmpPlaceIndex - 1] = calcLeg(tmpPlaceIndex, queryGraph, algoFactory, algoOpts, directions, null, false);
                 }
+            });
+        }
+        // waits for all legs even on errors as they still use the QueryGraph
+        GHUtility.runConcurrently(tasks, parallelLegsThreads);
+    }
+
+    /**
+     * Calculates the route without the heading constraints with the same QueryGraph. Only the legs that start or
+     * end with an enforced heading are searched again, all other legs are the same for both routes. With
+     * pass_through every leg depends on the previous one and all legs are searched again.
+     */
+    private void calcNoHeadingPaths(Leg[] legs, QueryGraph queryGraph, RoutingAlgorithmFactory algoFactory,
+                                    AlgorithmOptions algoOpts, List<DirectionResolverResult> directions) {
+        boolean viaTurnPenalty = ghRequest.getHints().getBool(Routing.PASS_THROUGH, false);
+        boolean searched = false;
+        List<Path> noHeadingPaths = new ArrayList<>(legs.length);
+        for (int placeIndex = 1; placeIndex <= legs.length; placeIndex++) {
+            boolean headingEnforced = placeIndex == 1 && isHeadingEnforced(queryGraph, 0)
+                    || isHeadingEnforced(queryGraph, placeIndex);
+            if (headingEnforced || viaTurnPenalty && searched) {
+                searched = true;
+                Leg leg = calcLeg(placeIndex, queryGraph, algoFactory, algoOpts, directions, noHeadingPaths, false);
+                // the route with the headings was found, so only skip the alternative
+                if (leg.visitedNodes >= algoOpts.getMaxVisitedNodes()) {
+                    altResponse.addDebugInfo("route without heading skipped, maximum nodes exceeded for leg " + placeIndex);
+                    return;
+                }
+                addLeg(leg, noHeadingPaths, algoOpts);
             } else {
-                tmpPathList = algo.calcPaths(fromQResult.getClosestNode(), toQResult.getClosestNode());
+                noHeadingPaths.addAll(legs[placeIndex - 1].paths);
             }
-            debug += ", " + algo.getName() + "-routing:" + sw.stop().getSeconds() + "s";
-            if (tmpPathList.isEmpty())
-                throw new IllegalStateException("At least one path has to be returned for " + fromQResult + " -> " + toQResult);
-
-            int idx = 0;
-            for (Path path : tmpPathList) {
-                if (path.getTime() < 0)
-                    throw new RuntimeException("Time was negative " + path.getTime() + " for index " + idx + ". Please report as bug and include:" + ghRequest);
-
-                pathList.add(path);
-                debug += ", " + path.getDebugInfo();
-                idx++;
+        }
+        if (searched)
+            noHeadingPathList = noHeadingPaths;
+    }
+
+    private boolean isHeadingEnforced(QueryGraph queryGraph, int placeIndex) {
+        return !Double.isNaN(ghRequest.getFavoredHeading(placeIndex))
+                && queryGraph.isVirtualNode(queryResults.get(placeIndex).getClosestNode());
+    }
+
+    /**
+     * Calculates the path(s) from the point placeIndex - 1 to the point placeIndex.
+     *
+     * @param previousPaths   the paths of the previous legs, which are required for pass_through. Null if this
+     *                        constraint can be skipped because it does not exist for this leg
+     * @param enforceHeadings false if the heading constraints should be ignored or do not exist for this leg
+     */
+    private Leg calcLeg(int placeIndex, QueryGraph queryGraph, RoutingAlgorithmFactory algoFactory, AlgorithmOptions algoOpts,
+                        List<DirectionResolverResult> directions, List<Path> previousPaths, boolean enforceHeadings) {
+        QueryResult fromQResult = queryResults.get(placeIndex - 1);
+        QueryResult toQResult = queryResults.get(placeIndex);
+        if (placeIndex == 1) {
+            // enforce start direction
+            if (enforceHeadings)
+                queryGraph.enforceHeading(fromQResult.getClosestNode(), ghRequest.getFavoredHeading(0), false);
+        } else if (previousPaths != null && ghRequest.getHints().getBool(Routing.PASS_THROUGH, false)) {
+            // enforce straight start after via stop
+            Path prevRoute = previousPaths.get(placeIndex - 2);
+            if (prevRoute.getEdgeCount() > 0) {
+                EdgeIteratorState incomingVirtualEdge = prevRoute.getFinalEdge();
+                queryGraph.unfavorVirtualEdgePair(fromQResult.getClosestNode(), incomingVirtualEdge.getEdge());
             }
+        }
+
+        // enforce end direction
+        if (enforceHeadings)
+            queryGraph.enforceHeading(toQResult.getClosestNode(), ghRequest.getFavoredHeading(placeIndex), true);
+
+        StopWatch sw = new StopWatch().start();
+        RoutingAlgorithm algo = algoFactory.createAlgo(queryGraph, algoOpts);
+        String debug = ", algoInit:" + sw.stop().getSeconds() + "s";
 
-            altResponse.addDebugInfo(debug);
+        sw = new StopWatch().start();
+
+        // calculate paths
+        List<Path> tmpPathList;
+        if (!directions.isEmpty()) {
+            assert ghRequest.getCurbsides().size() == directions.size();
+            if (!(algo instanceof AbstractBidirAlgo)) {
+                throw new IllegalArgumentException("To make use of the " + Routing.CURBSIDE + " parameter you need a bidirectional algorithm, got: " + algo.getName());
+            } else {
+                final boolean forceCurbsides = ghRequest.getHints().getBool(Routing.FORCE_CURBSIDE, true);
+                int sourceOutEdge = DirectionResolverResult.getOutEdge(directions.get(placeIndex - 1), ghRequest.getCurbsides().get(placeIndex - 1));
+                int targetInEdge = DirectionResolverResult.getInEdge(directions.get(placeIndex), ghRequest.getCurbsides().get(placeIndex));
+                sourceOutEdge = ignoreThrowOrAcceptImpossibleCurbsides(sourceOutEdge, placeIndex - 1, forceCurbsides);
+                targetInEdge = ignoreThrowOrAcceptImpossibleCurbsides(targetInEdge, placeIndex, forceCurbsides);
+                // todo: enable curbside feature for alternative routes as well ?
+                tmpPathList = Collections.singletonList(((AbstractBidirAlgo) algo)
+                        .calcPath(fromQResult.getClosestNode(), toQResult.getClosestNode(), sourceOutEdge, targetInEdge));
+            }
+        } else {
+            tmpPathList = algo.calcPaths(fromQResult.getClosestNode(), toQResult.getClosestNode());
+        }
+        debug += ", " + algo.getName() + "-routing:" + sw.stop().getSeconds() + "s";
+        if (tmpPathList.isEmpty())
+            throw new IllegalStateException("At least one path has to be returned for " + fromQResult + " -> " + toQResult);
 
+        if (enforceHeadings || previousPaths != null)
             // reset all direction enforcements in queryGraph to avoid influencing next path
             queryGraph.clearUnfavoredStatus();
 
-            if (algo.getVisitedNodes() >= algoOpts.getMaxVisitedNodes())
-                throw new IllegalArgumentException("No path found due to maximum nodes exceeded " + algoOpts.getMaxVisitedNodes());
+        return new Leg(tmpPathList, debug, algo.getVisitedNodes());
+    }
+
+    private void addLeg(Leg leg, List<Path> paths, AlgorithmOptions algoOpts) {
+        String debug = leg.debug;
+        int idx = 0;
+        for (Path path : leg.paths) {
+            if (path.getTime() < 0)
+                throw new RuntimeException("Time was negative " + path.getTime() + " for index " + idx + ". Please report as bug and include:" + ghRequest);
 
-            visitedNodesSum += algo.getVisitedNodes();
-            altResponse.addDebugInfo("visited nodes sum: " + visitedNodesSum);
-            fromQResult = toQResult;
+            paths.add(path);
+            debug += ", " + path.getDebugInfo();
+            idx++;
         }
 
-        ghResponse.getHints().put("visited_nodes.sum", visitedNodesSum);
-        ghResponse.getHints().put("visited_nodes.average", (float) visitedNodesSum / (pointsCount - 1));
+        altResponse.addDebugInfo(debug);
 
-        return pathList;
+        if (leg.visitedNodes >= algoOpts.getMaxVisitedNodes())
+            throw new IllegalArgumentException("No path found due to maximum nodes exceeded " + algoOpts.getMaxVisitedNodes());
+
+        visitedNodesSum += leg.visitedNodes;
+        altResponse.addDebugInfo("visited nodes sum: " + visitedNodesSum);
     }
 
     private int ignoreThrowOrAcceptImpossibleCurbsides(int edge, int placeIndex, boolean forceCurbsides) {
@@ -208,6 +310,14 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
         altResponse.setWaypoints(getWaypoints());
         ghResponse.add(altResponse);
         pathMerger.doWork(altResponse, pathList, encodingManager, tr);
+        if (noHeadingPathList != null && !altResponse.hasErrors()) {
+            PathWrapper noHeadingResponse = new PathWrapper();
+            noHeadingResponse.setWaypoints(getWaypoints());
+            // the instructions of these paths must not be compared with the heading they were calculated without
+            pathMerger.withoutFavoredHeading().doWork(noHeadingResponse, noHeadingPathList, encodingManager, tr);
+            if (!noHeadingResponse.hasErrors() && noHeadingResponse.getDistance() != altResponse.getDistance())
+                ghResponse.add(noHeadingResponse);
+        }
         return true;
     }
 
@@ -216,4 +326,15 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
         return 1;
     }
 
+    private static class Leg {
+        final List<Path> paths;
+        final String debug;
+        final int visitedNodes;
+
+        Leg(List<Path> paths, String debug, int visitedNodes) {
+            this.paths = paths;
+            this.debug = debug;
+            this.visitedNodes = visitedNodes;
+        }
+    }
 }
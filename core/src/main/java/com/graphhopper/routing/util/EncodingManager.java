@@ -22,6 +22,7 @@ import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.routing.profiles.*;
 import com.graphhopper.routing.util.parsers.OSMRoundaboutParser;
+import com.graphhopper.routing.util.parsers.KeyFilteredTagParser;
 import com.graphhopper.routing.util.parsers.TagParser;
 import com.graphhopper.routing.util.parsers.TagParserFactory;
 import com.graphhopper.routing.weighting.TurnWeighting;
@@ -55,6 +56,10 @@ public class EncodingManager implements EncodedValueLookup {
     private final List<AbstractFlagEncoder> edgeEncoders = new ArrayList<>();
     private final Map<String, EncodedValue> encodedValueMap = new LinkedHashMap<>();
     private final List<TagParser> tagParserList = new ArrayList<>();
+    // the indices of the KeyFilteredTagParsers in tagParserList that are interested in a tag key
+    private final Map<String, int[]> tagParsersByKey = new HashMap<>();
+    // true for the TagParsers that are called for every way
+    private boolean[] unfilteredTagParsers = new boolean[0];
 //    private final Map<EncodedValue, TagParser> sharedEncodedValueMap = new LinkedHashMap<>();
     private int nextNodeBit = 0;
     private int nextRelBit = 0;
@@ -227,7 +232,7 @@ public class EncodingManager implements EncodedValueLookup {
             for (EncodedValue ev : list) {
                 em.addEncodedValue(ev, false);
             }
-            em.tagParserList.add(tagParser);
+            em.addTagParser(tagParser);
             return this;
         }
 /*
@@ -254,6 +259,21 @@ public class EncodingManager implements EncodedValueLookup {
         }
     }
 
+    private void addTagParser(TagParser tagParser) {
+        int index = tagParserList.size();
+        tagParserList.add(tagParser);
+        unfilteredTagParsers = Arrays.copyOf(unfilteredTagParsers, tagParserList.size());
+        unfilteredTagParsers[index] = !(tagParser instanceof KeyFilteredTagParser);
+        if (tagParser instanceof KeyFilteredTagParser) {
+            for (String key : ((KeyFilteredTagParser) tagParser).getTagKeys()) {
+                int[] parsers = tagParsersByKey.get(key);
+                parsers = parsers == null ? new int[1] : Arrays.copyOf(parsers, parsers.length + 1);
+                parsers[parsers.length - 1] = index;
+                tagParsersByKey.put(key, parsers);
+            }
+        }
+    }
+
     static List<FlagEncoder> parseEncoderString(FlagEncoderFactory factory, String encoderList) {
         if (encoderList.contains(":"))
             throw new IllegalArgumentException("EncodingManager does no longer use reflection instantiate encoders directly.");
@@ -518,11 +538,28 @@ public class EncodingManager implements EncodedValueLookup {
         IntsRef edgeFlags = createEdgeFlags();
         // return if way or ferry
         Access access = acceptWay.getAccess();
-        for (TagParser parser : tagParserList) {
-            parser.handleWayTags(edgeFlags, way, access, relationFlags);
+        // a KeyFilteredTagParser is only called if the way has one of its keys, so the effort depends on the tags
+        // of the way. The parsers are still called in the order they were added as a parser can add tags for others.
+        boolean[] callParser = unfilteredTagParsers.clone();
+        if (!tagParsersByKey.isEmpty()) {
+            for (String key : way.getTagKeys()) {
+                int[] parsers = tagParsersByKey.get(key);
+                if (parsers == null)
+                    continue;
+                for (int parser : parsers) {
+                    callParser[parser] = true;
+                }
+            }
+        }
+        for (int i = 0; i < callParser.length; i++) {
+            if (callParser[i])
+                tagParserList.get(i).handleWayTags(edgeFlags, way, access, relationFlags);
         }
         for (AbstractFlagEncoder encoder : edgeEncoders) {
-            encoder.handleWayTags(edgeFlags, way, acceptWay.get(encoder.toString()), relationFlags & encoder.getRelBitMask());
+            Access encoderAccess = acceptWay.get(encoder.toString());
+            // all encoders ignore ways they cannot use
+            if (!encoderAccess.canSkip())
+                encoder.handleWayTags(edgeFlags, way, encoderAccess, relationFlags & encoder.getRelBitMask());
         }
         return edgeFlags;
     }
@@ -0,0 +1,33 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.util.parsers;
+
+import java.util.Collection;
+
+/**
+ * A TagParser that changes the edge flags only for ways that have at least one of its tag keys. The EncodingManager
+ * skips it for all other ways, so that the parsing cost of a way depends on its tags and not on the number of
+ * TagParsers.
+ */
+public interface KeyFilteredTagParser extends TagParser {
+
+    /**
+     * @return the keys of all tags that can change the result of handleWayTags
+     */
+    Collection<String> getTagKeys();
+}
@@ -1,5 +1,7 @@
 package com.graphhopper.routing.util.parsers;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import com.graphhopper.reader.ReaderWay;
@@ -10,8 +12,10 @@ import com.graphhopper.routing.profiles.Hazmat;
 import com.graphhopper.routing.util.EncodingManager.Access;
 import com.graphhopper.storage.IntsRef;
 
-public class OSMHazmatParser implements TagParser {
-    
+public class OSMHazmatParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Collections.singletonList("hazmat");
+
     private final EnumEncodedValue<Hazmat> hazEnc;
     
     public OSMHazmatParser() {
@@ -33,4 +37,8 @@ public class OSMHazmatParser implements TagParser {
         return edgeFlags;
     }
 
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
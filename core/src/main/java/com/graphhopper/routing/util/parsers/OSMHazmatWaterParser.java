@@ -1,5 +1,7 @@
 package com.graphhopper.routing.util.parsers;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import com.graphhopper.reader.ReaderWay;
@@ -10,8 +12,10 @@ import com.graphhopper.routing.profiles.HazmatWater;
 import com.graphhopper.routing.util.EncodingManager.Access;
 import com.graphhopper.storage.IntsRef;
 
-public class OSMHazmatWaterParser implements TagParser {
-    
+public class OSMHazmatWaterParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Collections.singletonList("hazmat:water");
+
     private final EnumEncodedValue<HazmatWater> hazWaterEnc;
     
     public OSMHazmatWaterParser() {
@@ -35,4 +39,8 @@ public class OSMHazmatWaterParser implements TagParser {
         return edgeFlags;
     }
 
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
@@ -26,10 +26,13 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.parsers.helpers.OSMValueExtractor;
 import com.graphhopper.storage.IntsRef;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
-public class OSMMaxAxleLoadParser implements TagParser {
+public class OSMMaxAxleLoadParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Collections.singletonList("maxaxleload");
 
     private final DecimalEncodedValue maxAxleLoadEncoder;
     private final boolean enableLog;
@@ -51,8 +54,12 @@ public class OSMMaxAxleLoadParser implements TagParser {
     @Override
     public IntsRef handleWayTags(IntsRef edgeFlags, ReaderWay way, EncodingManager.Access access,
                                  long relationFlags) {
-        OSMValueExtractor.extractTons(edgeFlags, way, maxAxleLoadEncoder,
-                Collections.singletonList("maxaxleload"), enableLog);
+        OSMValueExtractor.extractTons(edgeFlags, way, maxAxleLoadEncoder, KEYS, enableLog);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
@@ -27,9 +27,13 @@ import com.graphhopper.routing.util.parsers.helpers.OSMValueExtractor;
 import com.graphhopper.storage.IntsRef;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
-public class OSMMaxHeightParser implements TagParser {
+public class OSMMaxHeightParser implements KeyFilteredTagParser {
+
+    // the OSM tag "height" is not used for the height of a road, so omit it here!
+    private static final List<String> KEYS = Arrays.asList("maxheight", "maxheight:physical");
 
     private final DecimalEncodedValue heightEncoder;
     private final boolean enableLog;
@@ -50,8 +54,12 @@ public class OSMMaxHeightParser implements TagParser {
 
     @Override
     public IntsRef handleWayTags(IntsRef edgeFlags, ReaderWay way, EncodingManager.Access access, long relationFlags) {
-        List<String> heightTags = Arrays.asList("maxheight", "maxheight:physical"/*, the OSM tag "height" is not used for the height of a road, so omit it here! */);
-        OSMValueExtractor.extractMeter(edgeFlags, way, heightEncoder, heightTags, enableLog);
+        OSMValueExtractor.extractMeter(edgeFlags, way, heightEncoder, KEYS, enableLog);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
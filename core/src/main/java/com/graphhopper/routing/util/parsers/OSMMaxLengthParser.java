@@ -26,10 +26,13 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.parsers.helpers.OSMValueExtractor;
 import com.graphhopper.storage.IntsRef;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
-public class OSMMaxLengthParser implements TagParser {
+public class OSMMaxLengthParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Collections.singletonList("maxlength");
 
     private final DecimalEncodedValue lengthEncoder;
     private final boolean enableLog;
@@ -51,8 +54,12 @@ public class OSMMaxLengthParser implements TagParser {
     @Override
     public IntsRef handleWayTags(IntsRef edgeFlags, ReaderWay way, EncodingManager.Access access,
                                  long relationFlags) {
-        OSMValueExtractor.extractMeter(edgeFlags, way, lengthEncoder,
-                Collections.singletonList("maxlength"), enableLog);
+        OSMValueExtractor.extractMeter(edgeFlags, way, lengthEncoder, KEYS, enableLog);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
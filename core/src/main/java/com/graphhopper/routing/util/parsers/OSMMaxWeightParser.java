@@ -27,9 +27,12 @@ import com.graphhopper.routing.util.parsers.helpers.OSMValueExtractor;
 import com.graphhopper.storage.IntsRef;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
-public class OSMMaxWeightParser implements TagParser {
+public class OSMMaxWeightParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Arrays.asList("maxweight", "maxgcweight");
 
     private DecimalEncodedValue weightEncoder;
     private boolean enableLog;
@@ -51,8 +54,12 @@ public class OSMMaxWeightParser implements TagParser {
     @Override
     public IntsRef handleWayTags(IntsRef edgeFlags, ReaderWay way, EncodingManager.Access access, long relationFlags) {
         // do not include OSM tag "height" here as it has completely different meaning (height of peak)
-        List<String> weightTags = Arrays.asList("maxweight", "maxgcweight");
-        OSMValueExtractor.extractTons(edgeFlags, way, weightEncoder, weightTags, enableLog);
+        OSMValueExtractor.extractTons(edgeFlags, way, weightEncoder, KEYS, enableLog);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
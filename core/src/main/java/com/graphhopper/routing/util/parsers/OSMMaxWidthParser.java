@@ -27,9 +27,12 @@ import com.graphhopper.routing.util.parsers.helpers.OSMValueExtractor;
 import com.graphhopper.storage.IntsRef;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
-public class OSMMaxWidthParser implements TagParser {
+public class OSMMaxWidthParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Arrays.asList("maxwidth", "maxwidth:physical", "width");
 
     private final DecimalEncodedValue widthEncoder;
     private final boolean enableLog;
@@ -50,8 +53,12 @@ public class OSMMaxWidthParser implements TagParser {
 
     @Override
     public IntsRef handleWayTags(IntsRef edgeFlags, ReaderWay way, EncodingManager.Access access, long relationFlags) {
-        List<String> widthTags = Arrays.asList("maxwidth", "maxwidth:physical", "width");
-        OSMValueExtractor.extractMeter(edgeFlags, way, widthEncoder, widthTags, enableLog);
+        OSMValueExtractor.extractMeter(edgeFlags, way, widthEncoder, KEYS, enableLog);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
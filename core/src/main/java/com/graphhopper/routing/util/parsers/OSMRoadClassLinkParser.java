@@ -23,9 +23,12 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.util.Helper;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
-public class OSMRoadClassLinkParser implements TagParser {
+public class OSMRoadClassLinkParser implements KeyFilteredTagParser {
+    private static final List<String> KEYS = Collections.singletonList("highway");
     private final BooleanEncodedValue linkEnc;
 
     public OSMRoadClassLinkParser() {
@@ -44,4 +47,9 @@ public class OSMRoadClassLinkParser implements TagParser {
             linkEnc.setBool(false, edgeFlags, true);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
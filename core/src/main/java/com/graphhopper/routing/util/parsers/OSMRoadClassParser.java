@@ -25,11 +25,15 @@ import com.graphhopper.routing.profiles.RoadClass;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.IntsRef;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static com.graphhopper.routing.profiles.RoadClass.OTHER;
 
-public class OSMRoadClassParser implements TagParser {
+public class OSMRoadClassParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Collections.singletonList("highway");
 
     private final EnumEncodedValue<RoadClass> roadClassEnc;
 
@@ -58,4 +62,9 @@ public class OSMRoadClassParser implements TagParser {
             roadClassEnc.setEnum(false, edgeFlags, roadClass);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
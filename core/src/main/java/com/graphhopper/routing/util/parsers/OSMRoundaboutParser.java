@@ -25,9 +25,13 @@ import com.graphhopper.routing.profiles.Roundabout;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.IntsRef;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
-public class OSMRoundaboutParser implements TagParser {
+public class OSMRoundaboutParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Collections.singletonList("junction");
 
     private final BooleanEncodedValue roundaboutEnc;
 
@@ -53,4 +57,9 @@ public class OSMRoundaboutParser implements TagParser {
             roundaboutEnc.setBool(false, edgeFlags, true);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
@@ -26,11 +26,15 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.util.Helper;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static com.graphhopper.routing.profiles.Surface.*;
 
-public class OSMSurfaceParser implements TagParser {
+public class OSMSurfaceParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Collections.singletonList("surface");
 
     private final EnumEncodedValue<Surface> surfaceEnc;
 
@@ -66,4 +70,9 @@ public class OSMSurfaceParser implements TagParser {
             surfaceEnc.setEnum(false, edgeFlags, surface);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
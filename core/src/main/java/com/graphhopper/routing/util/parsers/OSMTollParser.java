@@ -25,9 +25,13 @@ import com.graphhopper.routing.profiles.Toll;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.IntsRef;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
-public class OSMTollParser implements TagParser {
+public class OSMTollParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Arrays.asList("toll", "toll:hgv", "toll:N2", "toll:N3");
 
     private final EnumEncodedValue<Toll> tollEnc;
 
@@ -53,4 +57,9 @@ public class OSMTollParser implements TagParser {
             tollEnc.setEnum(false, edgeFlags, Toll.HGV);
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
@@ -25,11 +25,15 @@ import com.graphhopper.routing.profiles.TrackType;
 import com.graphhopper.routing.util.EncodingManager.Access;
 import com.graphhopper.storage.IntsRef;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static com.graphhopper.routing.profiles.TrackType.OTHER;
 
-public class OSMTrackTypeParser implements TagParser {
+public class OSMTrackTypeParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Collections.singletonList("tracktype");
 
     private final EnumEncodedValue<TrackType> trackTypeEnc;
 
@@ -57,4 +61,8 @@ public class OSMTrackTypeParser implements TagParser {
         return edgeFlags;
     }
 
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
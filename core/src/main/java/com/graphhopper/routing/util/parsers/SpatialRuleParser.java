@@ -25,9 +25,13 @@ import com.graphhopper.routing.util.spatialrules.SpatialRuleLookup;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.util.shapes.GHPoint;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
-public class SpatialRuleParser implements TagParser {
+public class SpatialRuleParser implements KeyFilteredTagParser {
+
+    private static final List<String> KEYS = Collections.singletonList("estimated_center");
 
     private final IntEncodedValue spatialRuleEnc;
     private SpatialRuleLookup spatialRuleLookup;
@@ -58,4 +62,9 @@ public class SpatialRuleParser implements TagParser {
         }
         return edgeFlags;
     }
+
+    @Override
+    public Collection<String> getTagKeys() {
+        return KEYS;
+    }
 }
@@ -2,6 +2,7 @@ package com.graphhopper.routing.util.spatialrules;
 
 import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.json.geo.JsonFeatureCollection;
+import com.graphhopper.storage.Directory;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.Polygon;
 import org.locationtech.jts.geom.Geometry;
@@ -39,6 +40,17 @@ public class SpatialRuleLookupBuilder {
      */
     public static SpatialRuleLookup buildIndex(JsonFeatureCollection jsonFeatureCollection, String jsonIdField,
                                                SpatialRuleFactory spatialRuleFactory, double resolution, BBox maxBBox) {
+        return buildIndex(jsonFeatureCollection, jsonIdField, spatialRuleFactory, resolution, maxBBox, null, "");
+    }
+
+    /**
+     * Like {@link #buildIndex(JsonFeatureCollection, String, SpatialRuleFactory, double, BBox)} but the index is
+     * stored with the specified name in the specified Directory, so that it is only calculated again if the rules
+     * change. If dir is null the index is not stored.
+     */
+    public static SpatialRuleLookup buildIndex(JsonFeatureCollection jsonFeatureCollection, String jsonIdField,
+                                               SpatialRuleFactory spatialRuleFactory, double resolution, BBox maxBBox,
+                                               Directory dir, String name) {
         BBox polygonBounds = BBox.createInverse(false);
         List<SpatialRule> spatialRules = new ArrayList<>();
 
@@ -74,7 +86,9 @@ public class SpatialRuleLookupBuilder {
         if (calculatedBounds == null)
             return SpatialRuleLookup.EMPTY;
 
-        SpatialRuleLookup spatialRuleLookup = new SpatialRuleLookupArray(spatialRules, resolution, true, calculatedBounds);
+        SpatialRuleLookup spatialRuleLookup = dir == null
+                ? new SpatialRuleLookupQuadtree(spatialRules, resolution, calculatedBounds)
+                : SpatialRuleLookupQuadtree.createOrLoad(spatialRules, resolution, calculatedBounds, dir, name);
 
         logger.info("Created the SpatialRuleLookup with the following rules: " + Arrays.toString(spatialRules.toArray()));
 
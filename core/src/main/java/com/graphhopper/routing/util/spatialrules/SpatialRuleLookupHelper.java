@@ -23,8 +23,10 @@ import com.graphhopper.routing.profiles.Country;
 import com.graphhopper.routing.util.parsers.TagParserFactory;
 import com.graphhopper.routing.util.parsers.SpatialRuleParser;
 import com.graphhopper.routing.util.parsers.TagParser;
+import com.graphhopper.storage.Directory;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,8 +41,19 @@ public class SpatialRuleLookupHelper {
     private static final Logger logger = LoggerFactory.getLogger(SpatialRuleLookupHelper.class);
 
     public static void buildAndInjectSpatialRuleIntoGH(GraphHopper graphHopper, BBox maxBounds, JsonFeatureCollection jsonFeatureCollection) {
-        final SpatialRuleLookup index = SpatialRuleLookupBuilder.buildIndex(jsonFeatureCollection, "ISO_A3", new CountriesSpatialRuleFactory(), .1, maxBounds);
-        logger.info("Set spatial rule lookup with " + index.size() + " rules");
+        buildAndInjectSpatialRuleIntoGH(graphHopper, maxBounds, jsonFeatureCollection, false);
+    }
+
+    /**
+     * Like {@link #buildAndInjectSpatialRuleIntoGH(GraphHopper, BBox, JsonFeatureCollection)} but if store is true
+     * the index is stored in the Directory of the graph, so that it is loaded instead of calculated if the graph is
+     * imported again with the same rules. As the Directory is created when the graph is loaded, the index is only
+     * created when it is first used, i.e. on import.
+     */
+    public static void buildAndInjectSpatialRuleIntoGH(final GraphHopper graphHopper, final BBox maxBounds,
+                                                       final JsonFeatureCollection jsonFeatureCollection, boolean store) {
+        final SpatialRuleLookup index = store ? new StoredSpatialRuleLookup(graphHopper, maxBounds, jsonFeatureCollection)
+                : buildIndex(maxBounds, jsonFeatureCollection, null);
         final TagParserFactory oldTPF = graphHopper.getTagParserFactory();
         graphHopper.setTagParserFactory(new TagParserFactory() {
 
@@ -53,4 +66,69 @@ public class SpatialRuleLookupHelper {
             }
         });
     }
+
+    private static SpatialRuleLookup buildIndex(BBox maxBounds, JsonFeatureCollection jsonFeatureCollection, Directory dir) {
+        SpatialRuleLookup index = SpatialRuleLookupBuilder.buildIndex(jsonFeatureCollection, "ISO_A3",
+                new CountriesSpatialRuleFactory(), .1, maxBounds, dir, "spatial_rule_index");
+        logger.info("Set spatial rule lookup with " + index.size() + " rules");
+        return index;
+    }
+
+    /**
+     * Creates or loads the index in the Directory of the graph when it is used the first time.
+     */
+    private static class StoredSpatialRuleLookup implements SpatialRuleLookup {
+        private final GraphHopper graphHopper;
+        private final BBox maxBounds;
+        private final JsonFeatureCollection jsonFeatureCollection;
+        private volatile SpatialRuleLookup index;
+
+        StoredSpatialRuleLookup(GraphHopper graphHopper, BBox maxBounds, JsonFeatureCollection jsonFeatureCollection) {
+            this.graphHopper = graphHopper;
+            this.maxBounds = maxBounds;
+            this.jsonFeatureCollection = jsonFeatureCollection;
+        }
+
+        private SpatialRuleLookup getIndex() {
+            SpatialRuleLookup tmpIndex = index;
+            if (tmpIndex == null) {
+                synchronized (this) {
+                    if (index == null)
+                        index = buildIndex(maxBounds, jsonFeatureCollection, graphHopper.getGraphHopperStorage().getDirectory());
+                    tmpIndex = index;
+                }
+            }
+            return tmpIndex;
+        }
+
+        @Override
+        public SpatialRule lookupRule(double lat, double lon) {
+            return getIndex().lookupRule(lat, lon);
+        }
+
+        @Override
+        public SpatialRule lookupRule(GHPoint point) {
+            return getIndex().lookupRule(point);
+        }
+
+        @Override
+        public int getSpatialId(SpatialRule rule) {
+            return getIndex().getSpatialId(rule);
+        }
+
+        @Override
+        public SpatialRule getSpatialRule(int spatialId) {
+            return getIndex().getSpatialRule(spatialId);
+        }
+
+        @Override
+        public int size() {
+            return getIndex().size();
+        }
+
+        @Override
+        public BBox getBounds() {
+            return getIndex().getBounds();
+        }
+    }
 }
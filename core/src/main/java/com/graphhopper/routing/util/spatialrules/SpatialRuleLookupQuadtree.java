@@ -0,0 +1,360 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.util.spatialrules;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import com.graphhopper.util.shapes.Polygon;
+
+import java.util.*;
+
+/**
+ * SpatialRuleLookup implementation using a quadtree. Every cell of the tree is either completely inside of one or
+ * more rules, completely outside of all rules or mixed, i.e. the border of a rule crosses the cell. Only mixed cells
+ * are split further until their size is smaller than the resolution, so a lookup needs at most a few steps to find its
+ * leaf and the polygon containment checks are only necessary for mixed leaves.
+ * <p>
+ * The tree is precomputed and can be stored in a Directory, e.g. next to the graph, so that it is only calculated
+ * again if the rules change.
+ */
+public class SpatialRuleLookupQuadtree implements SpatialRuleLookup {
+    private static final int VERSION = 1;
+    private static final int EMPTY_CONTAINER = 0;
+    private static final int INSIDE = 0, OUTSIDE = 1, CROSSING = 2;
+
+    private final BBox bounds;
+    private final int maxDepth;
+    private final List<SpatialRule> singleRules = new ArrayList<>();
+    private final Map<SpatialRule, Integer> singleRulesIndices = new HashMap<>();
+    // a cell is either an inner cell that contains the index of its first of four children or a leaf that contains
+    // the negative index of its rule container, see leaf
+    private int[] tree;
+    private final List<SpatialRuleContainer> ruleContainers = new ArrayList<>();
+    private final Map<SpatialRuleContainer, Integer> ruleContainerIndices = new HashMap<>();
+
+    /**
+     * @param spatialRules the spatial rules, if several rules contain a location the first one is used
+     * @param resolution   mixed cells are not split further if they are smaller than this resolution in degrees
+     * @param bounds       create the SpatialRuleLookup for the given BBox
+     */
+    public SpatialRuleLookupQuadtree(List<SpatialRule> spatialRules, double resolution, BBox bounds) {
+        this(spatialRules, resolution, bounds, true);
+    }
+
+    private SpatialRuleLookupQuadtree(List<SpatialRule> spatialRules, double resolution, BBox bounds, boolean build) {
+        if (!bounds.isValid())
+            throw new IllegalStateException("Bounds are not valid: " + bounds);
+        if (resolution < 1e-100)
+            throw new IllegalArgumentException("resolution cannot be that high " + resolution);
+
+        this.bounds = bounds;
+        double maxSide = Math.max(bounds.maxLat - bounds.minLat, bounds.maxLon - bounds.minLon);
+        this.maxDepth = Math.max(0, (int) Math.ceil(Math.log(maxSide / resolution) / Math.log(2)));
+
+        addSingleRule(SpatialRule.EMPTY);
+        addRuleContainer(new SpatialRuleContainer().addRule(SpatialRule.EMPTY));
+        for (SpatialRule rule : spatialRules) {
+            if (rule == null)
+                throw new IllegalArgumentException("rule cannot be null");
+            if (rule.equals(SpatialRule.EMPTY))
+                throw new IllegalArgumentException("rule cannot be EMPTY");
+            addSingleRule(rule);
+        }
+        if (build)
+            build();
+    }
+
+    /**
+     * Creates the lookup and loads its tree from the specified Directory if it was stored for the same rules before.
+     * Otherwise the tree is calculated and stored.
+     */
+    public static SpatialRuleLookupQuadtree createOrLoad(List<SpatialRule> spatialRules, double resolution, BBox bounds,
+                                                         Directory dir, String name) {
+        SpatialRuleLookupQuadtree lookup = new SpatialRuleLookupQuadtree(spatialRules, resolution, bounds, false);
+        DataAccess da = dir.find(name);
+        if (!lookup.load(da)) {
+            // the stored tree is missing or outdated
+            dir.remove(da);
+            da = dir.find(name);
+            lookup.build();
+            lookup.store(da);
+        }
+        dir.close(da);
+        return lookup;
+    }
+
+    private void addSingleRule(SpatialRule rule) {
+        if (singleRulesIndices.containsKey(rule))
+            throw new IllegalArgumentException("Rule " + rule + " already contained at " + singleRulesIndices.get(rule));
+
+        singleRulesIndices.put(rule, singleRules.size());
+        singleRules.add(rule);
+    }
+
+    private int addRuleContainer(SpatialRuleContainer container) {
+        Integer index = ruleContainerIndices.get(container);
+        if (index != null)
+            return index;
+
+        ruleContainerIndices.put(container, ruleContainers.size());
+        ruleContainers.add(container);
+        return ruleContainers.size() - 1;
+    }
+
+    private static int leaf(int containerIndex, boolean mixed) {
+        return -(2 * containerIndex + (mixed ? 1 : 0)) - 1;
+    }
+
+    private void build() {
+        // the candidates are pairs of rule index and polygon in the order of the rules
+        IntArrayList candidateRules = new IntArrayList();
+        List<Polygon> candidatePolygons = new ArrayList<>();
+        for (int ruleIndex = 1; ruleIndex < singleRules.size(); ruleIndex++) {
+            for (Polygon polygon : singleRules.get(ruleIndex).getBorders()) {
+                candidateRules.add(ruleIndex);
+                candidatePolygons.add(polygon);
+            }
+        }
+
+        IntArrayList cells = new IntArrayList();
+        cells.add(0);
+        buildCell(cells, 0, bounds, 0, new TreeSet<Integer>(), candidateRules, candidatePolygons);
+        tree = cells.toArray();
+    }
+
+    private void buildCell(IntArrayList cells, int cell, BBox cellBounds, int depth, SortedSet<Integer> insideRules,
+                           IntArrayList candidateRules, List<Polygon> candidatePolygons) {
+        SortedSet<Integer> cellInsideRules = new TreeSet<>(insideRules);
+        IntArrayList crossingRules = new IntArrayList();
+        List<Polygon> crossingPolygons = new ArrayList<>();
+        for (int i = 0; i < candidateRules.size(); i++) {
+            int ruleIndex = candidateRules.get(i);
+            if (cellInsideRules.contains(ruleIndex))
+                continue;
+
+            int relation = getRelation(candidatePolygons.get(i), cellBounds);
+            if (relation == INSIDE) {
+                cellInsideRules.add(ruleIndex);
+            } else if (relation == CROSSING) {
+                crossingRules.add(ruleIndex);
+                crossingPolygons.add(candidatePolygons.get(i));
+            }
+        }
+
+        // the cell is decided if no rule crosses it or if a rule that contains it comes before all crossing rules
+        int firstCrossing = Integer.MAX_VALUE;
+        for (int i = 0; i < crossingRules.size(); i++) {
+            if (!cellInsideRules.contains(crossingRules.get(i)))
+                firstCrossing = Math.min(firstCrossing, crossingRules.get(i));
+        }
+        if (firstCrossing == Integer.MAX_VALUE || !cellInsideRules.isEmpty() && cellInsideRules.first() < firstCrossing) {
+            cells.set(cell, leaf(cellInsideRules.isEmpty() ? EMPTY_CONTAINER : addRuleContainer(toContainer(cellInsideRules)), false));
+            return;
+        }
+
+        if (depth >= maxDepth) {
+            SortedSet<Integer> mixedRules = new TreeSet<>(cellInsideRules);
+            for (int i = 0; i < crossingRules.size(); i++) {
+                mixedRules.add(crossingRules.get(i));
+            }
+            cells.set(cell, leaf(addRuleContainer(toContainer(mixedRules)), true));
+            return;
+        }
+
+        int firstChild = cells.size();
+        cells.set(cell, firstChild);
+        for (int i = 0; i < 4; i++) {
+            cells.add(0);
+        }
+        double midLat = (cellBounds.minLat + cellBounds.maxLat) / 2;
+        double midLon = (cellBounds.minLon + cellBounds.maxLon) / 2;
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            BBox childBounds = new BBox(
+                    (quadrant & 1) == 0 ? cellBounds.minLon : midLon, (quadrant & 1) == 0 ? midLon : cellBounds.maxLon,
+                    (quadrant & 2) == 0 ? cellBounds.minLat : midLat, (quadrant & 2) == 0 ? midLat : cellBounds.maxLat);
+            buildCell(cells, firstChild + quadrant, childBounds, depth + 1, cellInsideRules, crossingRules, crossingPolygons);
+        }
+    }
+
+    private static int getRelation(Polygon polygon, BBox cellBounds) {
+        if (polygon.intersectsBorder(cellBounds))
+            return CROSSING;
+        return polygon.contains((cellBounds.minLat + cellBounds.maxLat) / 2, (cellBounds.minLon + cellBounds.maxLon) / 2)
+                ? INSIDE : OUTSIDE;
+    }
+
+    private SpatialRuleContainer toContainer(Collection<Integer> ruleIndices) {
+        SpatialRuleContainer container = new SpatialRuleContainer();
+        for (int ruleIndex : ruleIndices) {
+            container.addRule(singleRules.get(ruleIndex));
+        }
+        return container;
+    }
+
+    @Override
+    public SpatialRule lookupRule(double lat, double lon) {
+        if (lon < bounds.minLon || lon > bounds.maxLon || lat < bounds.minLat || lat > bounds.maxLat)
+            return SpatialRule.EMPTY;
+
+        double minLat = bounds.minLat, maxLat = bounds.maxLat, minLon = bounds.minLon, maxLon = bounds.maxLon;
+        int value = tree[0];
+        while (value >= 0) {
+            double midLat = (minLat + maxLat) / 2;
+            double midLon = (minLon + maxLon) / 2;
+            int quadrant = 0;
+            if (lon >= midLon) {
+                quadrant |= 1;
+                minLon = midLon;
+            } else {
+                maxLon = midLon;
+            }
+            if (lat >= midLat) {
+                quadrant |= 2;
+                minLat = midLat;
+            } else {
+                maxLat = midLat;
+            }
+            value = tree[value + quadrant];
+        }
+
+        int leaf = -value - 1;
+        SpatialRuleContainer ruleContainer = ruleContainers.get(leaf / 2);
+        if ((leaf & 1) == 0)
+            return ruleContainer.first();
+
+        for (SpatialRule rule : ruleContainer.getRules()) {
+            for (Polygon p : rule.getBorders()) {
+                if (p.contains(lat, lon))
+                    return rule;
+            }
+        }
+        return SpatialRule.EMPTY;
+    }
+
+    @Override
+    public SpatialRule lookupRule(GHPoint point) {
+        return lookupRule(point.getLat(), point.getLon());
+    }
+
+    @Override
+    public int getSpatialId(SpatialRule rule) {
+        if (rule == null)
+            throw new IllegalArgumentException("rule parameter cannot be null");
+
+        Integer integ = singleRulesIndices.get(rule);
+        if (integ == null)
+            throw new IllegalArgumentException("Cannot find rule " + rule);
+        return integ;
+    }
+
+    @Override
+    public SpatialRule getSpatialRule(int id) {
+        if (id < 0 || id >= singleRules.size())
+            throw new IllegalArgumentException("SpatialRuleId " + id + " is illegal");
+        return singleRules.get(id);
+    }
+
+    @Override
+    public int size() {
+        return singleRules.size();
+    }
+
+    @Override
+    public BBox getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return the number of cells of the tree
+     */
+    int getCells() {
+        return tree.length;
+    }
+
+    /**
+     * A hash of everything the tree depends on, so that a stored tree is not used for different rules.
+     */
+    private int calcFingerprint() {
+        int hash = Objects.hash(bounds.minLat, bounds.maxLat, bounds.minLon, bounds.maxLon, maxDepth);
+        // skip the EMPTY rule as it has no borders
+        for (SpatialRule rule : singleRules.subList(1, singleRules.size())) {
+            hash = 31 * hash + Objects.hashCode(rule.getId());
+            for (Polygon polygon : rule.getBorders()) {
+                hash = 31 * hash + Objects.hash(polygon.getMinLat(), polygon.getMaxLat(), polygon.getMinLon(),
+                        polygon.getMaxLon(), polygon.size());
+                for (int i = 0; i < polygon.size(); i++) {
+                    hash = 31 * hash + Double.hashCode(polygon.getLat(i));
+                    hash = 31 * hash + Double.hashCode(polygon.getLon(i));
+                }
+            }
+        }
+        return hash;
+    }
+
+    private void store(DataAccess da) {
+        IntArrayList ints = new IntArrayList();
+        ints.add(tree);
+        ints.add(ruleContainers.size());
+        for (SpatialRuleContainer container : ruleContainers) {
+            ints.add(container.size());
+            for (SpatialRule rule : container.getRules()) {
+                ints.add(getSpatialId(rule));
+            }
+        }
+
+        da.create(4L * ints.size());
+        for (int i = 0; i < ints.size(); i++) {
+            da.setInt(4L * i, ints.get(i));
+        }
+        da.setHeader(0, VERSION);
+        da.setHeader(4, calcFingerprint());
+        da.setHeader(2 * 4, tree.length);
+        da.flush();
+    }
+
+    private boolean load(DataAccess da) {
+        if (!da.loadExisting())
+            return false;
+        if (da.getHeader(0) != VERSION || da.getHeader(4) != calcFingerprint())
+            return false;
+
+        tree = new int[da.getHeader(2 * 4)];
+        long pointer = 0;
+        for (int i = 0; i < tree.length; i++, pointer += 4) {
+            tree[i] = da.getInt(pointer);
+        }
+        int containers = da.getInt(pointer);
+        pointer += 4;
+        ruleContainers.clear();
+        ruleContainerIndices.clear();
+        for (int i = 0; i < containers; i++) {
+            int size = da.getInt(pointer);
+            pointer += 4;
+            SpatialRuleContainer container = new SpatialRuleContainer();
+            for (int j = 0; j < size; j++, pointer += 4) {
+                container.addRule(getSpatialRule(da.getInt(pointer)));
+            }
+            ruleContainerIndices.put(container, ruleContainers.size());
+            ruleContainers.add(container);
+        }
+        return true;
+    }
+}
@@ -40,6 +40,10 @@ public abstract class AbstractAdjustedWeighting implements Weighting {
         return superWeighting.calcMillis(edgeState, reverse, prevOrNextEdgeId);
     }
 
+    public Weighting getSuperWeighting() {
+        return superWeighting;
+    }
+
     /**
      * Returns the flagEncoder of the superWeighting. Usually we do not have a FlagEncoder here.
      */
@@ -15,6 +15,10 @@ public class BlockAreaWeighting extends AbstractAdjustedWeighting {
         this.blockArea = blockArea;
     }
 
+    public GraphEdgeIdFinder.BlockArea getBlockArea() {
+        return blockArea;
+    }
+
     @Override
     public double getMinWeight(double distance) {
         return superWeighting.getMinWeight(distance);
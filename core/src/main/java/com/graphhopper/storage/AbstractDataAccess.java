@@ -34,6 +34,8 @@ public abstract class AbstractDataAccess implements DataAccess {
     protected static final int HEADER_OFFSET = 20 * 4 + 20;
     protected static final byte[] EMPTY = new byte[1024];
     private static final int SEGMENT_SIZE_DEFAULT = 1 << 20;
+    // the maximum number of bytes that are requested from the file system with one read while loading
+    protected static final int MAX_READ_BYTES = 1 << 26;
     protected final ByteOrder byteOrder;
     protected final BitUtil bitUtil;
     private final String location;
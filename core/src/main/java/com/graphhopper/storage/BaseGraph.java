@@ -17,8 +17,11 @@
  */
 package com.graphhopper.storage;
 
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.graphhopper.coll.GHBitSet;
 import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.coll.SparseIntIntArray;
 import com.graphhopper.routing.profiles.BooleanEncodedValue;
 import com.graphhopper.routing.profiles.DecimalEncodedValue;
@@ -33,6 +36,9 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 
 import static com.graphhopper.util.Helper.nf;
@@ -97,6 +103,11 @@ class BaseGraph implements Graph {
     private int edgeEntryIndex, nodeEntryIndex;
     private long maxGeoRef;
     private boolean frozen = false;
+    // the flag overlays are replaced under this lock, the current overlay is read without it
+    private final Object flagOverlayLock = new Object();
+    private volatile EdgeFlagOverlay flagOverlay = EdgeFlagOverlay.createEmpty(0);
+    // replaced overlays that were still acquired by a request when they were replaced
+    private final List<EdgeFlagOverlay> replacedFlagOverlays = new ArrayList<>();
 
     public BaseGraph(Directory dir, final EncodingManager encodingManager, boolean withElevation,
                      InternalGraphEventListener listener, boolean withTurnCosts) {
@@ -449,6 +460,14 @@ class BaseGraph implements Graph {
     }
 
     public void flush() {
+        // like the compaction this waits until the requests that acquired an older overlay are finished, they must
+        // not read the changes. The loop repeats if changes were published while waiting
+        if (!edges.isClosed()) {
+            while (!flagOverlay.isEmpty()) {
+                compactFlagOverlay();
+            }
+        }
+
         if (!wayGeometry.isClosed()) {
             setWayGeometryHeader();
             wayGeometry.flush();
@@ -494,28 +513,30 @@ class BaseGraph implements Graph {
     }
 
     void loadExisting(String dim) {
-        if (!nodes.loadExisting())
-            throw new IllegalStateException("Cannot load nodes. corrupt file or directory? " + dir);
+        StorableLoader loader = new StorableLoader(1);
+        addStorables(loader);
+        loader.loadExisting(dir.toString());
+        initLoaded(dim);
+    }
+
+    /**
+     * Adds the storables of this graph to the specified loader, they can be loaded independently of each other.
+     */
+    void addStorables(StorableLoader loader) {
+        loader.add("nodes", nodes).add("edges", edges).add("geometry", wayGeometry).
+                add("name index", nameIndex).add("node name index", nodeNameIndex);
+        if (supportsTurnCosts())
+            loader.add("turn costs", turnCostExtension);
+    }
 
+    /**
+     * Reads the headers after the storables of this graph were loaded via addStorables.
+     */
+    void initLoaded(String dim) {
         if (!dim.equalsIgnoreCase("" + nodeAccess.getDimension()))
             throw new IllegalStateException("Configured dimension (" + nodeAccess.getDimension() + ") is not equal "
                     + "to dimension of loaded graph (" + dim + ")");
 
-        if (!edges.loadExisting())
-            throw new IllegalStateException("Cannot load edges. corrupt file or directory? " + dir);
-
-        if (!wayGeometry.loadExisting())
-            throw new IllegalStateException("Cannot load geometry. corrupt file or directory? " + dir);
-
-        if (!nameIndex.loadExisting())
-            throw new IllegalStateException("Cannot load name index. corrupt file or directory? " + dir);
-
-        if (!nodeNameIndex.loadExisting())
-            throw new IllegalStateException("Cannot load node name index. corrupt file or directory? " + dir);
-
-        if (supportsTurnCosts() && !turnCostExtension.loadExisting())
-            throw new IllegalStateException("Cannot load turn cost storage. corrupt file or directory? " + dir);
-
         // first define header indices of this storage
         initStorage();
 
@@ -598,6 +619,139 @@ class BaseGraph implements Graph {
         return new EdgeIterable(this, edgeAccess, filter);
     }
 
+    /**
+     * The methods with a flag overlay create edge iterators that read the changed flags of the specified overlay
+     * instead of the current one, see GraphHopperStorage.withFlagOverlay
+     */
+    EdgeExplorer createEdgeExplorer(EdgeFilter filter, EdgeFlagOverlay overlay) {
+        EdgeIterable iter = new EdgeIterable(this, edgeAccess, filter);
+        iter.setFlagOverlay(overlay);
+        return iter;
+    }
+
+    EdgeIteratorState getEdgeIteratorState(int edgeId, int adjNode, EdgeFlagOverlay overlay) {
+        if (!edgeAccess.isInBounds(edgeId) || edgeId <= EdgeIterator.NO_EDGE)
+            throw new IllegalStateException("edgeId " + edgeId + " out of bounds");
+        checkAdjNodeBounds(adjNode);
+        EdgeIterable edge = edgeAccess.createSingleEdge(EdgeFilter.ALL_EDGES);
+        edge.setFlagOverlay(overlay);
+        return edge.init(edgeId, adjNode) ? edge : null;
+    }
+
+    AllEdgesIterator getAllEdges(EdgeFlagOverlay overlay) {
+        AllEdgeIterator iter = new AllEdgeIterator(this, edgeAccess);
+        iter.setFlagOverlay(overlay);
+        return iter;
+    }
+
+    /**
+     * @return the current flag overlay without acquiring it
+     */
+    EdgeFlagOverlay getFlagOverlay() {
+        return flagOverlay;
+    }
+
+    /**
+     * @return the current flag overlay. It has to be released via releaseFlagOverlay
+     */
+    EdgeFlagOverlay acquireFlagOverlay() {
+        while (true) {
+            EdgeFlagOverlay overlay = flagOverlay;
+            overlay.pin();
+            // only an overlay that is still current after pinning it is protected against the compaction
+            if (overlay == flagOverlay)
+                return overlay;
+            overlay.unpin();
+        }
+    }
+
+    void releaseFlagOverlay(EdgeFlagOverlay overlay) {
+        overlay.unpin();
+    }
+
+    /**
+     * Creates a new flag overlay from the current overlay and the specified changes and makes it the current one.
+     * The edge storage is not changed.
+     */
+    EdgeFlagOverlay publishFlagChanges(IntObjectMap<IntsRef> changedFlags) {
+        synchronized (flagOverlayLock) {
+            EdgeFlagOverlay oldOverlay = flagOverlay;
+            GHIntObjectHashMap<int[]> flags = new GHIntObjectHashMap<>(oldOverlay.size() + changedFlags.size());
+            flags.putAll(oldOverlay.getFlags());
+            for (IntObjectCursor<IntsRef> cursor : changedFlags) {
+                if (cursor.key < 0 || cursor.key >= edgeCount)
+                    throw new IllegalArgumentException("edgeId " + cursor.key + " out of bounds [0," + nf(edgeCount) + ")");
+                IntsRef edgeFlags = cursor.value;
+                if (edgeFlags.length != intsForFlags)
+                    throw new IllegalArgumentException("Flags of edge " + cursor.key + " must have " + intsForFlags + " ints but had " + edgeFlags.length);
+                int[] ints = new int[intsForFlags];
+                System.arraycopy(edgeFlags.ints, edgeFlags.offset, ints, 0, intsForFlags);
+                flags.put(cursor.key, ints);
+            }
+            EdgeFlagOverlay newOverlay = new EdgeFlagOverlay(oldOverlay.getVersion() + 1, flags);
+            replaceFlagOverlay(newOverlay);
+            return newOverlay;
+        }
+    }
+
+    /**
+     * Writes the changes of the current flag overlay into the edge storage and replaces it with an empty overlay.
+     * Before writing this method waits until all requests that acquired an older overlay are finished as they
+     * must not see these changes. Requests that use the current overlay are not affected as the overlay shadows
+     * the written flags. The lock is not held while waiting, so changes can be published in the meantime. Then
+     * nothing is written as the new overlay has to be compacted with its own older overlays.
+     *
+     * @return the number of edges written into the edge storage
+     */
+    int compactFlagOverlay() {
+        EdgeFlagOverlay overlay;
+        List<EdgeFlagOverlay> olderOverlays;
+        synchronized (flagOverlayLock) {
+            overlay = flagOverlay;
+            if (overlay.isEmpty())
+                return 0;
+            removeReleasedFlagOverlays();
+            olderOverlays = new ArrayList<>(replacedFlagOverlays);
+        }
+
+        try {
+            // older overlays cannot be acquired again
+            for (EdgeFlagOverlay olderOverlay : olderOverlays) {
+                olderOverlay.awaitReleased();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Compaction of " + overlay + " was interrupted", ex);
+        }
+
+        synchronized (flagOverlayLock) {
+            if (overlay != flagOverlay)
+                return 0;
+
+            for (IntObjectCursor<int[]> cursor : overlay.getFlags()) {
+                edgeAccess.writeFlags(edgeAccess.toPointer(cursor.key), new IntsRef(cursor.value, 0, cursor.value.length));
+            }
+            replaceFlagOverlay(EdgeFlagOverlay.createEmpty(overlay.getVersion()));
+            return overlay.size();
+        }
+    }
+
+    private void replaceFlagOverlay(EdgeFlagOverlay newOverlay) {
+        EdgeFlagOverlay oldOverlay = flagOverlay;
+        flagOverlay = newOverlay;
+        // the old overlay cannot be acquired anymore, we only need to remember it if it is still in use
+        if (oldOverlay.isPinned())
+            replacedFlagOverlays.add(oldOverlay);
+    }
+
+    private void removeReleasedFlagOverlays() {
+        Iterator<EdgeFlagOverlay> iter = replacedFlagOverlays.iterator();
+        while (iter.hasNext()) {
+            if (!iter.next().isPinned())
+                iter.remove();
+        }
+    }
+
     @Override
     public EdgeExplorer createEdgeExplorer() {
         return createEdgeExplorer(EdgeFilter.ALL_EDGES);
@@ -856,6 +1010,13 @@ class BaseGraph implements Graph {
         return edgeAccess.isAdjacentToNode(node, edgePointer);
     }
 
+    /**
+     * @return true if the edge was removed from the graph, e.g. with its subnetwork
+     */
+    boolean isEdgeRemoved(int edge) {
+        return EdgeAccess.isInvalidNodeB(edgeAccess.getNodeB(edgeAccess.toPointer(edge)));
+    }
+
 
     private void setDist(long edgePointer, double distance) {
         edges.setInt(edgePointer + E_DIST, distToInt(distance));
@@ -1111,6 +1272,7 @@ class BaseGraph implements Graph {
                 throw new IllegalStateException("call next before detaching or setEdgeId (edgeId:" + edgeId + " vs. next " + nextEdgeId + ")");
 
             EdgeIterable iter = edgeAccess.createSingleEdge(filter);
+            iter.flagOverlay = flagOverlay;
             boolean ret;
             if (reverseArg) {
                 ret = iter.init(edgeId, baseNode);
@@ -1170,6 +1332,7 @@ class BaseGraph implements Graph {
                 throw new IllegalStateException("call next before detaching");
 
             AllEdgeIterator iter = new AllEdgeIterator(baseGraph, edgeAccess);
+            iter.flagOverlay = flagOverlay;
             iter.edgeId = edgeId;
             iter.edgePointer = edgePointer;
             if (reverseArg) {
@@ -1200,12 +1363,20 @@ class BaseGraph implements Graph {
         int edgeId = -1;
         private final IntsRef baseIntsRef;
         int chFlags;
+        // null if no flags were changed at runtime, the changes are then shadowing the edge storage
+        EdgeFlagOverlay flagOverlay;
 
         public CommonEdgeIterator(long edgePointer, EdgeAccess edgeAccess, BaseGraph baseGraph) {
             this.edgePointer = edgePointer;
             this.edgeAccess = edgeAccess;
             this.baseGraph = baseGraph;
             this.baseIntsRef = new IntsRef(baseGraph.intsForFlags);
+            setFlagOverlay(baseGraph.flagOverlay);
+        }
+
+        final void setFlagOverlay(EdgeFlagOverlay overlay) {
+            this.flagOverlay = overlay.isEmpty() ? null : overlay;
+            freshFlags = false;
         }
 
         @Override
@@ -1232,7 +1403,11 @@ class BaseGraph implements Graph {
         @Override
         public IntsRef getFlags() {
             if (!freshFlags) {
-                edgeAccess.readFlags(edgePointer, baseIntsRef);
+                int[] changedFlags = flagOverlay == null ? null : flagOverlay.get(edgeId);
+                if (changedFlags == null)
+                    edgeAccess.readFlags(edgePointer, baseIntsRef);
+                else
+                    System.arraycopy(changedFlags, 0, baseIntsRef.ints, 0, changedFlags.length);
                 freshFlags = true;
             }
             return baseIntsRef;
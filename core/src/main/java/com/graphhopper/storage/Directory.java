@@ -57,6 +57,12 @@ public interface Directory {
      */
     void remove(DataAccess da);
 
+    /**
+     * Closes the specified object and removes it from the directory without removing its stored data, so it can
+     * be found and loaded again.
+     */
+    void close(DataAccess da);
+
     /**
      * @return the default type of a newly created DataAccess object
      */
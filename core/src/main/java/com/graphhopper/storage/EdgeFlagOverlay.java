@@ -0,0 +1,112 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable snapshot of changed edge flags that shadow the flags in the edge storage. Changes of the graph at
+ * runtime are published as a new snapshot that contains all previous changes, see
+ * GraphHopperStorage.publishFlagChanges, so requests can continue to read the old snapshot without a lock.
+ * <p>
+ * Edge iterators use the snapshot that was current when they were created. A request should acquire a snapshot at
+ * its start, read the graph only via GraphHopperStorage.withFlagOverlay and release the snapshot at the end. This
+ * way all edge iterators of the request see the same flags and the changes are not written into the edge storage
+ * while the request could still read the old flags, see GraphHopperStorage.compactFlagOverlay.
+ */
+public final class EdgeFlagOverlay {
+    private final long version;
+    private final IntObjectMap<int[]> flags;
+    private final AtomicInteger pins = new AtomicInteger();
+
+    EdgeFlagOverlay(long version, IntObjectMap<int[]> flags) {
+        this.version = version;
+        this.flags = flags;
+    }
+
+    static EdgeFlagOverlay createEmpty(long version) {
+        return new EdgeFlagOverlay(version, new GHIntObjectHashMap<int[]>(0));
+    }
+
+    /**
+     * @return the number of published changes that this snapshot contains. Compacting the changes into the edge
+     * storage does not change the version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the changed flags of the specified edge or null if the flags of the edge storage are valid
+     */
+    int[] get(int edgeId) {
+        return flags.get(edgeId);
+    }
+
+    IntObjectMap<int[]> getFlags() {
+        return flags;
+    }
+
+    /**
+     * @return the number of changed edges in this snapshot
+     */
+    public int size() {
+        return flags.size();
+    }
+
+    public boolean isEmpty() {
+        return flags.isEmpty();
+    }
+
+    void pin() {
+        pins.incrementAndGet();
+    }
+
+    void unpin() {
+        int tmpPins = pins.decrementAndGet();
+        if (tmpPins < 0)
+            throw new IllegalStateException("Flag overlay " + version + " was released more often than acquired");
+        if (tmpPins == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    boolean isPinned() {
+        return pins.get() > 0;
+    }
+
+    /**
+     * Waits until this overlay is not pinned anymore. This only makes sense if it cannot be pinned again, i.e. if
+     * it is not the current overlay anymore.
+     */
+    synchronized void awaitReleased() throws InterruptedException {
+        while (isPinned()) {
+            wait();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "flag overlay version: " + version + ", changed edges: " + size();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.shapes.BBox;
+
+/**
+ * A read only view of the base graph whose edge iterators read the changed flags of one flag overlay, even if
+ * newer changes are published while they are used. See GraphHopperStorage.withFlagOverlay.
+ */
+class FlagOverlayGraph implements Graph {
+    private final GraphHopperStorage ghStorage;
+    private final BaseGraph baseGraph;
+    private final EdgeFlagOverlay overlay;
+
+    FlagOverlayGraph(GraphHopperStorage ghStorage, BaseGraph baseGraph, EdgeFlagOverlay overlay) {
+        this.ghStorage = ghStorage;
+        this.baseGraph = baseGraph;
+        this.overlay = overlay;
+    }
+
+    @Override
+    public Graph getBaseGraph() {
+        return this;
+    }
+
+    @Override
+    public int getNodes() {
+        return ghStorage.getNodes();
+    }
+
+    @Override
+    public int getEdges() {
+        return ghStorage.getEdges();
+    }
+
+    @Override
+    public NodeAccess getNodeAccess() {
+        return ghStorage.getNodeAccess();
+    }
+
+    @Override
+    public BBox getBounds() {
+        return ghStorage.getBounds();
+    }
+
+    @Override
+    public EdgeIteratorState edge(int a, int b) {
+        throw exc();
+    }
+
+    @Override
+    public EdgeIteratorState edge(int a, int b, double distance, boolean bothDirections) {
+        throw exc();
+    }
+
+    @Override
+    public EdgeIteratorState getEdgeIteratorState(int edgeId, int adjNode) {
+        return baseGraph.getEdgeIteratorState(edgeId, adjNode, overlay);
+    }
+
+    @Override
+    public int getOtherNode(int edge, int node) {
+        return ghStorage.getOtherNode(edge, node);
+    }
+
+    @Override
+    public boolean isAdjacentToNode(int edge, int node) {
+        return ghStorage.isAdjacentToNode(edge, node);
+    }
+
+    @Override
+    public AllEdgesIterator getAllEdges() {
+        return baseGraph.getAllEdges(overlay);
+    }
+
+    @Override
+    public EdgeExplorer createEdgeExplorer(EdgeFilter filter) {
+        return baseGraph.createEdgeExplorer(filter, overlay);
+    }
+
+    @Override
+    public EdgeExplorer createEdgeExplorer() {
+        return createEdgeExplorer(EdgeFilter.ALL_EDGES);
+    }
+
+    @Override
+    public Graph copyTo(Graph g) {
+        throw exc();
+    }
+
+    @Override
+    public TurnCostExtension getTurnCostExtension() {
+        return ghStorage.getTurnCostExtension();
+    }
+
+    private UnsupportedOperationException exc() {
+        return new UnsupportedOperationException("The view of " + overlay + " cannot be changed");
+    }
+
+    @Override
+    public String toString() {
+        return ghStorage + ", " + overlay;
+    }
+}
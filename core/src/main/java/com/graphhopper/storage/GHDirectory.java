@@ -131,6 +131,16 @@ public class GHDirectory implements Directory {
         removeDA(da, da.getName(), true);
     }
 
+    @Override
+    public void close(DataAccess da) {
+        removeFromMap(da.getName());
+        // the mapped buffers are cleaned explicitly, avoid the slow clean hack for every closed object
+        if (da instanceof MMapDataAccess)
+            ((MMapDataAccess) da).close(false);
+        else
+            da.close();
+    }
+
     void removeDA(DataAccess da, String name, boolean forceClean) {
         if (da instanceof MMapDataAccess)
             ((MMapDataAccess) da).close(forceClean);
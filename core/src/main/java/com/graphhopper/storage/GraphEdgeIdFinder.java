@@ -202,6 +202,24 @@ public class GraphEdgeIdFinder {
             blockedShapes.add(shape);
         }
 
+        /**
+         * @return the ids of the explicitly blocked edges. Edges blocked via a shape are not included.
+         */
+        public GHIntHashSet getBlockedEdges() {
+            return blockedEdges;
+        }
+
+        public boolean hasBlockedShapes() {
+            return !blockedShapes.isEmpty();
+        }
+
+        /**
+         * @return the shapes of this BlockArea. An edge is blocked if one of its nodes is within one of them.
+         */
+        public List<Shape> getBlockedShapes() {
+            return blockedShapes;
+        }
+
         /**
          * @return true if the specified edgeState is part of this BlockArea
          */
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.storage;
 
+import com.carrotsearch.hppc.IntObjectMap;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
@@ -28,6 +29,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class manages all storage related methods and delegates the calls to the associated graphs.
@@ -44,8 +47,12 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
     private final EncodingManager encodingManager;
     private final StorableProperties properties;
     private final BaseGraph baseGraph;
+    // a request holds the read lock as long as it holds a flag overlay, a structural change needs the write lock
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
     // same flush order etc
     private final Collection<CHGraphImpl> chGraphs;
+    private int loadThreads = 1;
+    private Map<String, Long> loadTimes = Collections.emptyMap();
 
     public GraphHopperStorage(Directory dir, EncodingManager encodingManager, boolean withElevation) {
         this(dir, encodingManager, withElevation, false);
@@ -161,6 +168,23 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
         }
     }
 
+    /**
+     * Sets the number of threads that read the files of this storage in loadExisting.
+     */
+    public GraphHopperStorage setLoadThreads(int loadThreads) {
+        if (loadThreads < 1)
+            throw new IllegalArgumentException("At least one thread is required to load the storage but was " + loadThreads);
+        this.loadThreads = loadThreads;
+        return this;
+    }
+
+    /**
+     * @return the milliseconds that every part of this storage needed in loadExisting
+     */
+    public Map<String, Long> getLoadTimes() {
+        return loadTimes;
+    }
+
     /**
      * After configuring this storage you need to create it explicitly.
      */
@@ -255,16 +279,17 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
             if (!byteOrder.equalsIgnoreCase("" + dir.getByteOrder()))
                 throw new IllegalStateException("Configured graph.byte_order (" + dir.getByteOrder() + ") is not equal to loaded " + byteOrder + "");
 
-            String dim = properties.get("graph.dimension");
-            baseGraph.loadExisting(dim);
-
             checkIfConfiguredAndLoadedWeightingsCompatible();
 
+            // the base graph and the CH graphs consist of independent files that can be read concurrently
+            StorableLoader loader = new StorableLoader(loadThreads);
+            baseGraph.addStorables(loader);
             for (CHGraphImpl cg : getAllCHGraphs()) {
-                if (!cg.loadExisting())
-                    throw new IllegalStateException("Cannot load " + cg);
+                loader.add(cg.toString(), cg);
             }
-
+            loader.loadExisting(dir.getLocation());
+            loadTimes = loader.getLoadTimes();
+            baseGraph.initLoaded(properties.get("graph.dimension"));
             return true;
         }
         return false;
@@ -306,6 +331,81 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
         return result;
     }
 
+    /**
+     * @return the flag overlay that new edge iterators use, without acquiring it
+     */
+    public EdgeFlagOverlay getFlagOverlay() {
+        return baseGraph.getFlagOverlay();
+    }
+
+    /**
+     * Acquires the current flag overlay for one request. The changes that are published later are not written into
+     * the edge storage until the overlay is released via releaseFlagOverlay. This waits while the structure of the
+     * graph is changed, see changeStructure. The overlay has to be released by the same thread.
+     */
+    public EdgeFlagOverlay acquireFlagOverlay() {
+        structureLock.readLock().lock();
+        return baseGraph.acquireFlagOverlay();
+    }
+
+    public void releaseFlagOverlay(EdgeFlagOverlay overlay) {
+        try {
+            baseGraph.releaseFlagOverlay(overlay);
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the specified change of the graph structure, e.g. new nodes and edges, exclusively. It waits until all
+     * acquired flag overlays are released, and requests that acquire a flag overlay meanwhile wait until the change
+     * is finished.
+     *
+     * @throws IllegalStateException if the current thread holds a flag overlay
+     */
+    public void changeStructure(Runnable change) {
+        if (structureLock.getReadHoldCount() > 0)
+            throw new IllegalStateException("The structure of the graph cannot be changed while a flag overlay is acquired");
+
+        structureLock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return a read only view of this graph whose edge iterators read the flags of the specified overlay, even if
+     * newer changes are published. A request should use it for all graph access while it holds the overlay, see
+     * acquireFlagOverlay.
+     */
+    public Graph withFlagOverlay(EdgeFlagOverlay overlay) {
+        return new FlagOverlayGraph(this, baseGraph, overlay);
+    }
+
+    /**
+     * Publishes the specified edge flags as a new flag overlay without blocking readers. Edge iterators that are
+     * created afterwards see the new flags, existing ones keep the flags they were created with. The flags of these
+     * edges must not be changed via the edge iterators until the overlay was compacted.
+     *
+     * @param changedFlags the new flags per edge id
+     * @return the new overlay
+     */
+    public EdgeFlagOverlay publishFlagChanges(IntObjectMap<IntsRef> changedFlags) {
+        return baseGraph.publishFlagChanges(changedFlags);
+    }
+
+    /**
+     * Writes the published flag changes into the edge storage. This waits for requests that still use an older
+     * overlay, but it does not block new requests.
+     *
+     * @return the number of edges written into the edge storage
+     */
+    public int compactFlagOverlay() {
+        return baseGraph.compactFlagOverlay();
+    }
+
     @Override
     public void flush() {
         for (CHGraphImpl cg : getAllCHGraphs()) {
@@ -352,7 +452,7 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
             baseGraph.freeze();
     }
 
-    boolean isFrozen() {
+    public boolean isFrozen() {
         return baseGraph.isFrozen();
     }
 
@@ -455,6 +555,14 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
         return baseGraph.isAdjacentToNode(edge, node);
     }
 
+    /**
+     * @return true if the edge was removed from the graph, e.g. with its subnetwork. The edge id stays valid, but
+     * the edge cannot be fetched via getEdgeIteratorState anymore.
+     */
+    public boolean isEdgeRemoved(int edge) {
+        return baseGraph.isEdgeRemoved(edge);
+    }
+
     private Collection<CHGraphImpl> getAllCHGraphs() {
         return chGraphs;
     }
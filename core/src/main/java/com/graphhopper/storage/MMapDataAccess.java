@@ -50,6 +50,10 @@ import java.util.StringTokenizer;
  * This class itself is intended to be as thread-safe as other DataAccess
  * implementations are.
  *
+ * Once the data is fully written (e.g. after loading or importing a graph) the per-segment monitors
+ * can be skipped for reads via setLockFreeReads. Reads then use absolute ByteBuffer access only,
+ * which does not touch the position of the shared buffer. This is disabled by default.
+ *
  * The exact behavior of memory-mapping is reported to be wildly platform-dependent.
  *
  * <p>
@@ -64,12 +68,29 @@ public final class MMapDataAccess extends AbstractDataAccess {
     private final boolean allowWrites;
     private RandomAccessFile raFile;
     private List<ByteBuffer> segments = new ArrayList<>();
+    private boolean lockFreeReads;
+    // guards the unmapping of segments against a concurrent prefetch
+    private final Object prefetchLock = new Object();
 
     MMapDataAccess(String name, String location, ByteOrder order, boolean allowWrites) {
         super(name, location, order);
         this.allowWrites = allowWrites;
     }
 
+    /**
+     * Skips the synchronization of the read methods if enabled. Only enable this if this object does not
+     * grow while it is read and if concurrent writes do not modify the data that is read at the same time.
+     * This method itself is not thread-safe and has to be called while no other thread uses this object.
+     */
+    public MMapDataAccess setLockFreeReads(boolean lockFreeReads) {
+        this.lockFreeReads = lockFreeReads;
+        return this;
+    }
+
+    public boolean isLockFreeReads() {
+        return lockFreeReads;
+    }
+
     public static boolean jreIsMinimumJava9() {
         final StringTokenizer st = new StringTokenizer(System.getProperty("java.specification.version"), ".");
         int JVM_MAJOR_VERSION = Integer.parseInt(st.nextToken());
@@ -303,6 +324,29 @@ public final class MMapDataAccess extends AbstractDataAccess {
         }
     }
 
+    /**
+     * Touches every page of the mapped file, so that the operating system reads it into the page cache and later
+     * reads do not have to wait for the disk. This can be called from a background thread, it stops if this object
+     * is closed or the thread is interrupted.
+     *
+     * @return the number of prefetched bytes
+     */
+    public long prefetch() {
+        long bytes = 0;
+        for (int i = 0; !Thread.currentThread().isInterrupted(); i++) {
+            synchronized (prefetchLock) {
+                if (isClosed() || i >= segments.size())
+                    break;
+                ByteBuffer bb = segments.get(i);
+                if (bb instanceof MappedByteBuffer) {
+                    ((MappedByteBuffer) bb).load();
+                    bytes += bb.capacity();
+                }
+            }
+        }
+        return bytes;
+    }
+
     @Override
     public void flush() {
         if (isClosed())
@@ -336,8 +380,10 @@ public final class MMapDataAccess extends AbstractDataAccess {
      *                   to cleanup the mmap resources. Set false if you need to close many MMapDataAccess objects.
      */
     void close(boolean forceClean) {
-        clean(0, segments.size());
-        segments.clear();
+        synchronized (prefetchLock) {
+            clean(0, segments.size());
+            segments.clear();
+        }
         Helper.close(raFile);
         if (forceClean)
             Helper.cleanHack();
@@ -358,6 +404,9 @@ public final class MMapDataAccess extends AbstractDataAccess {
         int bufferIndex = (int) (bytePos >> segmentSizePower);
         int index = (int) (bytePos & indexDivisor);
         ByteBuffer byteBuffer = segments.get(bufferIndex);
+        if (lockFreeReads)
+            return byteBuffer.getInt(index);
+
         synchronized (byteBuffer) {
             return byteBuffer.getInt(index);
         }
@@ -378,6 +427,9 @@ public final class MMapDataAccess extends AbstractDataAccess {
         int bufferIndex = (int) (bytePos >>> segmentSizePower);
         int index = (int) (bytePos & indexDivisor);
         ByteBuffer byteBuffer = segments.get(bufferIndex);
+        if (lockFreeReads)
+            return byteBuffer.getShort(index);
+
         synchronized (byteBuffer) {
             return byteBuffer.getShort(index);
         }
@@ -414,6 +466,22 @@ public final class MMapDataAccess extends AbstractDataAccess {
         int bufferIndex = (int) (bytePos >>> segmentSizePower);
         int index = (int) (bytePos & indexDivisor);
         int delta = index + length - segmentSizeInBytes;
+        if (lockFreeReads) {
+            // avoid the relative bulk get as it modifies the position of the shared buffer
+            ByteBuffer bb = segments.get(bufferIndex);
+            int firstLength = delta > 0 ? length - delta : length;
+            for (int i = 0; i < firstLength; i++) {
+                values[i] = bb.get(index + i);
+            }
+            if (delta > 0) {
+                bb = segments.get(bufferIndex + 1);
+                for (int i = 0; i < delta; i++) {
+                    values[firstLength + i] = bb.get(i);
+                }
+            }
+            return;
+        }
+
         final ByteBuffer bb1 = segments.get(bufferIndex);
         synchronized (bb1) {
             bb1.position(index);
@@ -475,9 +543,11 @@ public final class MMapDataAccess extends AbstractDataAccess {
             remainingSegNo++;
         }
 
-        clean(remainingSegNo, segments.size());
+        synchronized (prefetchLock) {
+            clean(remainingSegNo, segments.size());
+            segments = new ArrayList<>(segments.subList(0, remainingSegNo));
+        }
         Helper.cleanHack();
-        segments = new ArrayList<>(segments.subList(0, remainingSegNo));
 
         try {
             // windows does not allow changing the length of an open files
@@ -0,0 +1,247 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.LongIntMap;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.LongObjectMap;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.util.BitUtil;
+
+import java.util.Arrays;
+
+/**
+ * This class stores the OSM way id for every edge, like the node and edge mapping of the osm-id-mapping example.
+ * It is filled while importing and is used to find the edges of an OSM way, e.g. for bulk updates of the speed.
+ * <p>
+ * Additionally the OSM node ids of the base and adjacent node of every edge are stored. They are stored per edge
+ * and not per node as the nodes are moved when subnetworks are removed, and they make it possible to connect new
+ * ways to the existing tower nodes when OSM changes are applied.
+ */
+public class OSMWayIdStorage implements Storable<OSMWayIdStorage> {
+    private static final int EMPTY = 0;
+    private static final int WAY_ID = 0, BASE_NODE_ID = 8, ADJ_NODE_ID = 16, BYTES_PER_EDGE = 24;
+    private final DataAccess da;
+    private final BitUtil bitUtil;
+    private volatile LongObjectMap<int[]> wayIndex;
+
+    public OSMWayIdStorage(Directory dir) {
+        da = dir.find("osm_way_ids");
+        bitUtil = BitUtil.get(dir.getByteOrder());
+    }
+
+    private void setLong(long pointer, long value) {
+        da.setInt(pointer, bitUtil.getIntLow(value));
+        da.setInt(pointer + 4, bitUtil.getIntHigh(value));
+    }
+
+    private long getLong(int edgeId, int offset) {
+        long pointer = (long) BYTES_PER_EDGE * edgeId;
+        if (pointer + BYTES_PER_EDGE > da.getCapacity())
+            return EMPTY;
+        return bitUtil.combineIntsToLong(da.getInt(pointer + offset), da.getInt(pointer + offset + 4));
+    }
+
+    /**
+     * Stores the OSM way id of the specified edge. The index of getEdges is updated if it was already created, so
+     * this must not be called concurrently to getEdges.
+     */
+    public void setOSMWayId(int edgeId, long osmWayId) {
+        long pointer = (long) BYTES_PER_EDGE * edgeId;
+        da.ensureCapacity(pointer + BYTES_PER_EDGE);
+        long oldOSMWayId = getOSMWayId(edgeId);
+        setLong(pointer + WAY_ID, osmWayId);
+
+        LongObjectMap<int[]> tmpIndex = wayIndex;
+        if (tmpIndex != null && oldOSMWayId != osmWayId) {
+            if (oldOSMWayId != EMPTY)
+                removeFromIndex(tmpIndex, oldOSMWayId, edgeId);
+            if (osmWayId != EMPTY)
+                addToIndex(tmpIndex, osmWayId, edgeId);
+        }
+    }
+
+    /**
+     * @return the OSM way id of the specified edge or 0 if none is stored
+     */
+    public long getOSMWayId(int edgeId) {
+        return getLong(edgeId, WAY_ID);
+    }
+
+    /**
+     * Stores the OSM node ids of the base and adjacent node of the specified edge, 0 means unknown.
+     */
+    public void setOSMNodeIds(int edgeId, long baseOSMNodeId, long adjOSMNodeId) {
+        long pointer = (long) BYTES_PER_EDGE * edgeId;
+        da.ensureCapacity(pointer + BYTES_PER_EDGE);
+        setLong(pointer + BASE_NODE_ID, baseOSMNodeId);
+        setLong(pointer + ADJ_NODE_ID, adjOSMNodeId);
+    }
+
+    /**
+     * @return the OSM node id of the base node of the edge as it was created or 0 if none is stored
+     */
+    public long getBaseOSMNodeId(int edgeId) {
+        return getLong(edgeId, BASE_NODE_ID);
+    }
+
+    /**
+     * @return the OSM node id of the adjacent node of the edge as it was created or 0 if none is stored
+     */
+    public long getAdjOSMNodeId(int edgeId) {
+        return getLong(edgeId, ADJ_NODE_ID);
+    }
+
+    /**
+     * Moves the stored ids of the first edges to their new edge ids, e.g. after sorting the graph. The ids of edges
+     * that are not mapped (-1) are removed.
+     */
+    public void renumberEdges(int edges, int[] oldToNewEdges) {
+        long[] values = new long[3 * edges];
+        for (int edge = 0; edge < edges; edge++) {
+            values[3 * edge] = getOSMWayId(edge);
+            values[3 * edge + 1] = getBaseOSMNodeId(edge);
+            values[3 * edge + 2] = getAdjOSMNodeId(edge);
+        }
+        long capacity = Math.min(da.getCapacity(), (long) BYTES_PER_EDGE * edges);
+        for (long pointer = 0; pointer < capacity; pointer += 4) {
+            da.setInt(pointer, EMPTY);
+        }
+        for (int edge = 0; edge < edges; edge++) {
+            int newEdge = oldToNewEdges[edge];
+            if (newEdge < 0)
+                continue;
+            long pointer = (long) BYTES_PER_EDGE * newEdge;
+            da.ensureCapacity(pointer + BYTES_PER_EDGE);
+            setLong(pointer + WAY_ID, values[3 * edge]);
+            setLong(pointer + BASE_NODE_ID, values[3 * edge + 1]);
+            setLong(pointer + ADJ_NODE_ID, values[3 * edge + 2]);
+        }
+        wayIndex = null;
+    }
+
+    /**
+     * Creates a map from the stored OSM node ids to the tower nodes of the specified graph. Removed edges are
+     * skipped as they are not included in the edge iterator.
+     */
+    public LongIntMap createNodeIndex(Graph graph) {
+        LongIntMap index = new LongIntHashMap();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            long baseOSMNodeId = getBaseOSMNodeId(iter.getEdge());
+            if (baseOSMNodeId != EMPTY)
+                index.put(baseOSMNodeId, iter.getBaseNode());
+            long adjOSMNodeId = getAdjOSMNodeId(iter.getEdge());
+            if (adjOSMNodeId != EMPTY)
+                index.put(adjOSMNodeId, iter.getAdjNode());
+        }
+        return index;
+    }
+
+    /**
+     * @return the ids of all edges of the specified graph that were created from the specified OSM way or an empty
+     * array
+     */
+    public int[] getEdges(Graph graph, long osmWayId) {
+        LongObjectMap<int[]> tmpIndex = wayIndex;
+        if (tmpIndex == null)
+            wayIndex = tmpIndex = createWayIndex(graph);
+        int[] edges = tmpIndex.get(osmWayId);
+        return edges == null ? new int[0] : edges;
+    }
+
+    /**
+     * Collects the edges per OSM way. Removed edges are skipped as they are not included in the edge iterator.
+     */
+    private LongObjectMap<int[]> createWayIndex(Graph graph) {
+        LongObjectMap<int[]> index = new LongObjectHashMap<>();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            long osmWayId = getOSMWayId(iter.getEdge());
+            if (osmWayId != EMPTY)
+                addToIndex(index, osmWayId, iter.getEdge());
+        }
+        return index;
+    }
+
+    private static void addToIndex(LongObjectMap<int[]> index, long osmWayId, int edgeId) {
+        int[] edges = index.get(osmWayId);
+        if (edges == null) {
+            edges = new int[]{edgeId};
+        } else {
+            edges = Arrays.copyOf(edges, edges.length + 1);
+            edges[edges.length - 1] = edgeId;
+        }
+        index.put(osmWayId, edges);
+    }
+
+    private static void removeFromIndex(LongObjectMap<int[]> index, long osmWayId, int edgeId) {
+        int[] edges = index.get(osmWayId);
+        if (edges == null)
+            return;
+        int[] newEdges = new int[edges.length];
+        int size = 0;
+        for (int edge : edges) {
+            if (edge != edgeId)
+                newEdges[size++] = edge;
+        }
+        if (size == 0)
+            index.remove(osmWayId);
+        else
+            index.put(osmWayId, Arrays.copyOf(newEdges, size));
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        if (da.getHeader(0) != BYTES_PER_EDGE)
+            throw new IllegalStateException("The OSM ids of the edges have an old format with " + da.getHeader(0)
+                    + " bytes per edge instead of " + BYTES_PER_EDGE + ", a new import is necessary");
+        return true;
+    }
+
+    @Override
+    public OSMWayIdStorage create(long byteCount) {
+        da.create(2000);
+        da.ensureCapacity(byteCount);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        da.setHeader(0, BYTES_PER_EDGE);
+        da.flush();
+    }
+
+    @Override
+    public void close() {
+        da.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+}
@@ -22,7 +22,9 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 /**
@@ -139,15 +141,28 @@ public class RAMDataAccess extends AbstractDataAccess {
                 if (byteCount % segmentSizeInBytes != 0)
                     segmentCount++;
 
-                segments = new byte[segmentCount][];
+                byte[][] newSegments = new byte[segmentCount][];
+                ByteBuffer[] buffers = new ByteBuffer[segmentCount];
                 for (int s = 0; s < segmentCount; s++) {
-                    byte[] bytes = new byte[segmentSizeInBytes];
-                    int read = raFile.read(bytes);
-                    if (read <= 0)
+                    newSegments[s] = new byte[segmentSizeInBytes];
+                    buffers[s] = ByteBuffer.wrap(newSegments[s]);
+                }
+                // a scattering read fills many segments with one large sequential read
+                FileChannel channel = raFile.getChannel();
+                int segmentsPerRead = Math.max(1, MAX_READ_BYTES / segmentSizeInBytes);
+                int s = 0;
+                while (s < segmentCount) {
+                    if (channel.read(buffers, s, Math.min(segmentsPerRead, segmentCount - s)) < 0)
+                        break;
+                    while (s < segmentCount && !buffers[s].hasRemaining()) {
+                        s++;
+                    }
+                }
+                for (; s < segmentCount; s++) {
+                    if (buffers[s].position() == 0)
                         throw new IllegalStateException("segment " + s + " is empty? " + toString());
-
-                    segments[s] = bytes;
                 }
+                segments = newSegments;
                 return true;
             } finally {
                 raFile.close();
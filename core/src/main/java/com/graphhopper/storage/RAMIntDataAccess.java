@@ -20,7 +20,9 @@ package com.graphhopper.storage;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 /**
@@ -133,22 +135,28 @@ class RAMIntDataAccess extends AbstractDataAccess {
                 if (byteCount < 0) {
                     return false;
                 }
-                byte[] bytes = new byte[segmentSizeInBytes];
                 raFile.seek(HEADER_OFFSET);
                 // raFile.readInt() <- too slow                
                 int segmentCount = (int) (byteCount / segmentSizeInBytes);
                 if (byteCount % segmentSizeInBytes != 0)
                     segmentCount++;
 
-                segments = new int[segmentCount][];
+                // read whole segments via the channel and convert them with the int view of the buffer
+                FileChannel channel = raFile.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocateDirect(segmentSizeInBytes).order(byteOrder);
+                int[][] newSegments = new int[segmentCount][];
                 for (int s = 0; s < segmentCount; s++) {
-                    int read = raFile.read(bytes) / 4;
-                    int area[] = new int[read];
-                    for (int j = 0; j < read; j++) {
-                        area[j] = bitUtil.toInt(bytes, j * 4);
+                    buffer.clear();
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer) < 0)
+                            break;
                     }
-                    segments[s] = area;
+                    buffer.flip();
+                    int area[] = new int[buffer.remaining() / 4];
+                    buffer.asIntBuffer().get(area);
+                    newSegments[s] = area;
                 }
+                segments = newSegments;
                 return true;
             } finally {
                 raFile.close();
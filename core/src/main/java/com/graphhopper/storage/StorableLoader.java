@@ -0,0 +1,120 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Calls loadExisting of several independent storables concurrently, e.g. for the nodes, edges and CH graphs of a
+ * GraphHopperStorage, and reports how long every storable took.
+ */
+class StorableLoader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorableLoader.class);
+    private final Map<String, Storable<?>> storables = new LinkedHashMap<>();
+    private final Map<String, Long> loadTimes = new LinkedHashMap<>();
+    private final int threads;
+
+    StorableLoader(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is required to load the storage but was " + threads);
+        this.threads = threads;
+    }
+
+    StorableLoader add(String name, Storable<?> storable) {
+        if (storables.put(name, storable) != null)
+            throw new IllegalArgumentException("Storable " + name + " was already added");
+        return this;
+    }
+
+    /**
+     * Loads all added storables and throws an exception if one of them cannot be loaded.
+     *
+     * @param location the location of the storage for the error message
+     */
+    void loadExisting(String location) {
+        StopWatch sw = new StopWatch().start();
+        List<String> failed = new ArrayList<>();
+        if (threads == 1 || storables.size() < 2) {
+            for (Map.Entry<String, Storable<?>> entry : storables.entrySet()) {
+                if (!load(entry.getKey(), entry.getValue()))
+                    failed.add(entry.getKey());
+            }
+        } else {
+            loadConcurrently(failed);
+        }
+
+        if (!failed.isEmpty())
+            throw new IllegalStateException("Cannot load " + failed + ". corrupt file or directory? " + location);
+        LOGGER.info("loaded " + location + " in " + sw.stop().getMillis() + "ms with " + threads + " thread(s): " + loadTimes);
+    }
+
+    private void loadConcurrently(List<String> failed) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, storables.size()));
+        ExecutorCompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+        for (final Map.Entry<String, Storable<?>> entry : storables.entrySet()) {
+            completionService.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    Thread.currentThread().setName("load " + entry.getKey());
+                    return load(entry.getKey(), entry.getValue()) ? null : entry.getKey();
+                }
+            });
+        }
+        executor.shutdown();
+
+        try {
+            for (int i = 0; i < storables.size(); i++) {
+                String name = completionService.take().get();
+                if (name != null)
+                    failed.add(name);
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            executor.shutdownNow();
+            throw GHUtility.toRuntimeException(ex);
+        }
+    }
+
+    private boolean load(String name, Storable<?> storable) {
+        StopWatch sw = new StopWatch().start();
+        boolean loaded = storable.loadExisting();
+        long millis = sw.stop().getMillis();
+        synchronized (loadTimes) {
+            loadTimes.put(name, millis);
+        }
+        return loaded;
+    }
+
+    /**
+     * @return the milliseconds every storable needed to load in the order they finished
+     */
+    Map<String, Long> getLoadTimes() {
+        synchronized (loadTimes) {
+            return new LinkedHashMap<>(loadTimes);
+        }
+    }
+}
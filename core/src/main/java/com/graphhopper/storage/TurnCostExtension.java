@@ -17,6 +17,7 @@
  */
 package com.graphhopper.storage;
 
+import com.carrotsearch.hppc.IntIndexedContainer;
 import com.graphhopper.util.EdgeIterator;
 
 /**
@@ -225,6 +226,29 @@ public class TurnCostExtension implements Storable<TurnCostExtension> {
         return turnCostExtension;
     }
 
+    /**
+     * Copies the turn cost entries of the first nodes into the specified extension and renumbers the nodes and
+     * edges while doing so, e.g. after sorting the graph. Entries of edges that are not mapped (-1) are skipped.
+     */
+    public void copyRenumberedTo(TurnCostExtension turnCostExtension, int nodes, IntIndexedContainer oldToNewNodes,
+                                 int[] oldToNewEdges) {
+        for (int node = 0; node < nodes; node++) {
+            int newNode = oldToNewNodes.get(node);
+            if (newNode < 0)
+                continue;
+            int turnCostIndex = nodeAccess.getTurnCostIndex(node);
+            while (turnCostIndex != NO_TURN_ENTRY) {
+                long turnCostPtr = (long) turnCostIndex * BYTES_PER_ENTRY;
+                int newFromEdge = oldToNewEdges[turnCosts.getInt(turnCostPtr + TC_FROM)];
+                int newToEdge = oldToNewEdges[turnCosts.getInt(turnCostPtr + TC_TO)];
+                if (newFromEdge >= 0 && newToEdge >= 0)
+                    turnCostExtension.mergeOrOverwriteTurnInfo(newFromEdge, newNode, newToEdge,
+                            turnCosts.getInt(turnCostPtr + TC_FLAGS), false);
+                turnCostIndex = turnCosts.getInt(turnCostPtr + TC_NEXT);
+            }
+        }
+    }
+
     @Override
     public boolean isClosed() {
         return turnCosts.isClosed();
@@ -0,0 +1,54 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.change;
+
+/**
+ * This class describes the result of GraphHopper.changeEdges
+ */
+public class BulkChangeResponse {
+    private final long applied;
+    private final long ignored;
+    private final long edges;
+
+    public BulkChangeResponse(long applied, long ignored, long edges) {
+        this.applied = applied;
+        this.ignored = ignored;
+        this.edges = edges;
+    }
+
+    /**
+     * @return the number of changes that were applied to at least one edge
+     */
+    public long getApplied() {
+        return applied;
+    }
+
+    /**
+     * @return the number of changes that were ignored as their edge or OSM way does not exist in the graph
+     */
+    public long getIgnored() {
+        return ignored;
+    }
+
+    /**
+     * @return the number of changed edges
+     */
+    public long getEdges() {
+        return edges;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.change;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * A list of speed, access and priority changes of edges that are specified by their edge id or by the id of the
+ * OSM way they were created from. In contrast to the features of GraphHopper.changeGraph no spatial lookup is
+ * necessary, which makes it possible to change many edges quickly, see GraphHopper.changeEdges.
+ * <p>
+ * The changes can be read from CSV with the columns type,id,speed,access,priority where type is 'edge' or 'way' and
+ * an empty value means that the property is not changed, e.g. "way,4711,,false," blocks all edges of the OSM way
+ * 4711. The binary format starts with the magic number 'GHBU' and the version 1 as two ints followed by the records
+ * until the end of the stream. Every record contains the type as byte (0=edge, 1=way), the id as long, the speed as
+ * float (NaN if unchanged), the access as byte (0=false, 1=true, -1 if unchanged) and the priority as float (NaN if
+ * unchanged). All numbers are in big-endian order, like written by DataOutputStream.
+ */
+public class BulkEdgeChanges {
+    public static final byte EDGE = 0;
+    public static final byte WAY = 1;
+    public static final int BINARY_MAGIC = 0x47484255;
+    public static final int BINARY_VERSION = 1;
+
+    private byte[] types = new byte[16];
+    private long[] ids = new long[16];
+    private float[] speeds = new float[16];
+    private byte[] access = new byte[16];
+    private float[] priorities = new float[16];
+    private int size;
+
+    /**
+     * Adds a change of the specified edge or OSM way.
+     *
+     * @param speed    the new speed or NaN if the speed is not changed
+     * @param access   the new access or null if the access is not changed
+     * @param priority the new priority factor between 0 and 1 or NaN if the priority is not changed
+     */
+    public BulkEdgeChanges add(byte type, long id, double speed, Boolean access, double priority) {
+        if (type != EDGE && type != WAY)
+            throw new IllegalArgumentException("Unknown type " + type + " of change " + size);
+        if (speed < 0)
+            throw new IllegalArgumentException("Speed of change " + size + " cannot be negative: " + speed);
+        if (priority < 0)
+            throw new IllegalArgumentException("Priority of change " + size + " cannot be negative: " + priority);
+
+        if (size == types.length) {
+            int newCapacity = size * 2;
+            types = Arrays.copyOf(types, newCapacity);
+            ids = Arrays.copyOf(ids, newCapacity);
+            speeds = Arrays.copyOf(speeds, newCapacity);
+            this.access = Arrays.copyOf(this.access, newCapacity);
+            priorities = Arrays.copyOf(priorities, newCapacity);
+        }
+        types[size] = type;
+        ids[size] = id;
+        speeds[size] = (float) speed;
+        this.access[size] = access == null ? -1 : (byte) (access ? 1 : 0);
+        priorities[size] = (float) priority;
+        size++;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public boolean hasSpeed(int index) {
+        return !Float.isNaN(speeds[index]);
+    }
+
+    public double getSpeed(int index) {
+        return speeds[index];
+    }
+
+    public boolean hasAccess(int index) {
+        return access[index] >= 0;
+    }
+
+    public boolean getAccess(int index) {
+        return access[index] == 1;
+    }
+
+    public boolean hasPriority(int index) {
+        return !Float.isNaN(priorities[index]);
+    }
+
+    public double getPriority(int index) {
+        return priorities[index];
+    }
+
+    public static BulkEdgeChanges readCSV(Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        BulkEdgeChanges changes = new BulkEdgeChanges();
+        String line;
+        int lineNumber = 0;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || lineNumber == 1 && line.startsWith("type"))
+                continue;
+
+            String[] values = line.split(",", -1);
+            if (values.length < 2 || values.length > 5)
+                throw new IllegalArgumentException("Line " + lineNumber + " must have the columns type,id,speed,access,priority but was: " + line);
+            try {
+                byte type;
+                String typeStr = values[0].trim();
+                if ("edge".equals(typeStr))
+                    type = EDGE;
+                else if ("way".equals(typeStr))
+                    type = WAY;
+                else
+                    throw new IllegalArgumentException("type must be 'edge' or 'way' but was '" + typeStr + "'");
+
+                long id = Long.parseLong(values[1].trim());
+                double speed = values.length > 2 && !values[2].trim().isEmpty() ? Double.parseDouble(values[2].trim()) : Double.NaN;
+                Boolean access = values.length > 3 ? parseAccess(values[3].trim()) : null;
+                double priority = values.length > 4 && !values[4].trim().isEmpty() ? Double.parseDouble(values[4].trim()) : Double.NaN;
+                changes.add(type, id, speed, access, priority);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Cannot parse line " + lineNumber + ": " + ex.getMessage(), ex);
+            }
+        }
+        return changes;
+    }
+
+    private static Boolean parseAccess(String str) {
+        if (str.isEmpty())
+            return null;
+        if ("true".equals(str) || "1".equals(str))
+            return true;
+        if ("false".equals(str) || "0".equals(str))
+            return false;
+        throw new IllegalArgumentException("access must be true or false but was '" + str + "'");
+    }
+
+    public static BulkEdgeChanges readBinary(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+        int magic, version;
+        try {
+            magic = input.readInt();
+            version = input.readInt();
+        } catch (EOFException ex) {
+            throw new IllegalArgumentException("The binary changes have no header");
+        }
+        if (magic != BINARY_MAGIC)
+            throw new IllegalArgumentException("Unknown format of the binary changes, the magic number was " + Integer.toHexString(magic));
+        if (version != BINARY_VERSION)
+            throw new IllegalArgumentException("Unsupported version " + version + " of the binary changes, expected " + BINARY_VERSION);
+
+        BulkEdgeChanges changes = new BulkEdgeChanges();
+        int type;
+        while ((type = input.read()) >= 0) {
+            try {
+                long id = input.readLong();
+                float speed = input.readFloat();
+                byte access = input.readByte();
+                float priority = input.readFloat();
+                changes.add((byte) type, id, speed, access < 0 ? null : access == 1, priority);
+            } catch (EOFException ex) {
+                throw new IllegalArgumentException("The binary changes end within change " + changes.size());
+            }
+        }
+        return changes;
+    }
+
+    public void writeBinary(OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.writeInt(BINARY_MAGIC);
+        output.writeInt(BINARY_VERSION);
+        for (int i = 0; i < size; i++) {
+            output.writeByte(types[i]);
+            output.writeLong(ids[i]);
+            output.writeFloat(speeds[i]);
+            output.writeByte(access[i]);
+            output.writeFloat(priorities[i]);
+        }
+        output.flush();
+    }
+}
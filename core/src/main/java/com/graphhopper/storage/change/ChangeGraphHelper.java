@@ -17,8 +17,12 @@
  */
 package com.graphhopper.storage.change;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.routing.profiles.BooleanEncodedValue;
 import com.graphhopper.routing.profiles.DecimalEncodedValue;
@@ -28,18 +32,21 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphEdgeIdFinder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.storage.OSMWayIdStorage;
 import com.graphhopper.storage.index.LocationIndex;
-import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This graph applies permanent changes passed as JsonFeature to the specified graph.
+ * This graph applies permanent changes passed as JsonFeature or as BulkEdgeChanges to the specified graph. The
+ * changes are either written directly into the graph or collected as new edge flags, e.g. for
+ * GraphHopperStorage.publishFlagChanges
  * <p>
  * This class is not thread-safe. It is currently only safe to use it via GraphHopper.changeGraph
  *
@@ -66,6 +73,22 @@ public class ChangeGraphHelper {
      * @return number of successfully applied edge changes
      */
     public long applyChanges(EncodingManager em, Collection<JsonFeature> features) {
+        GHIntObjectHashMap<IntsRef> changedFlags = new GHIntObjectHashMap<>();
+        long updates = collectChanges(em, features, changedFlags);
+        for (IntObjectCursor<IntsRef> cursor : changedFlags) {
+            graph.getEdgeIteratorState(cursor.key, Integer.MIN_VALUE).setFlags(cursor.value);
+        }
+        return updates;
+    }
+
+    /**
+     * This method calculates the new flags of all edges that are changed by the json features without changing
+     * the graph.
+     *
+     * @param changedFlags the new flags per edge id are added to this map
+     * @return number of successfully applied edge changes
+     */
+    public long collectChanges(EncodingManager em, Collection<JsonFeature> features, IntObjectMap<IntsRef> changedFlags) {
         if (em == null)
             throw new NullPointerException("EncodingManager cannot be null to change existing graph");
 
@@ -77,11 +100,11 @@ public class ChangeGraphHelper {
             List<String> encodersAsStr = (List) jsonFeature.getProperty("vehicles");
             if (encodersAsStr == null) {
                 for (FlagEncoder encoder : em.fetchEdgeEncoders()) {
-                    updates += applyChange(jsonFeature, encoder);
+                    updates += applyChange(jsonFeature, encoder, changedFlags);
                 }
             } else {
                 for (String encoderStr : encodersAsStr) {
-                    updates += applyChange(jsonFeature, em.getEncoder(encoderStr));
+                    updates += applyChange(jsonFeature, em.getEncoder(encoderStr), changedFlags);
                 }
             }
         }
@@ -89,7 +112,7 @@ public class ChangeGraphHelper {
         return updates;
     }
 
-    private long applyChange(JsonFeature jsonFeature, FlagEncoder encoder) {
+    private long applyChange(JsonFeature jsonFeature, FlagEncoder encoder, IntObjectMap<IntsRef> changedFlags) {
         BooleanEncodedValue accessEnc = encoder.getAccessEnc();
         DecimalEncodedValue avSpeedEnc = encoder.getAverageSpeedEnc();
         long updates = 0;
@@ -106,26 +129,161 @@ public class ChangeGraphHelper {
         Map<String, Object> props = jsonFeature.getProperties();
         while (iter.hasNext()) {
             int edgeId = iter.next().value;
-            EdgeIteratorState edge = graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+            // the flags are in storage direction, like for getEdgeIteratorState(edgeId, Integer.MIN_VALUE)
+            IntsRef flags = changedFlags.get(edgeId);
+            if (flags == null)
+                flags = IntsRef.deepCopyOf(graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE).getFlags());
             if (props.containsKey("access")) {
                 boolean value = (boolean) props.get("access");
                 updates++;
                 if (enableLogging)
                     logger.info(encoder.toString() + " - access change via feature " + jsonFeature.getId());
-                edge.set(accessEnc, value).setReverse(accessEnc, value);
+                accessEnc.setBool(false, flags, value);
+                accessEnc.setBool(true, flags, value);
+                changedFlags.put(edgeId, flags);
 
             } else if (props.containsKey("speed")) {
                 // TODO use different speed for the different directions (see e.g. Bike2WeightFlagEncoder)
                 double value = ((Number) props.get("speed")).doubleValue();
-                double oldSpeed = edge.get(avSpeedEnc);
+                double oldSpeed = avSpeedEnc.getDecimal(false, flags);
                 if (oldSpeed != value) {
                     updates++;
                     if (enableLogging)
                         logger.info(encoder.toString() + " - speed change via feature " + jsonFeature.getId() + ". Old: " + oldSpeed + ", new:" + value);
-                    edge.set(avSpeedEnc, value);
+                    avSpeedEnc.setDecimal(false, flags, value);
+                    changedFlags.put(edgeId, flags);
                 }
             }
         }
         return updates;
     }
+
+    /**
+     * This method calculates the new flags of all edges that are changed by the specified bulk changes without
+     * changing the graph. The edges are split into chunks of contiguous edge ids and the chunks are calculated in
+     * parallel, the changes of one edge are applied in the order of the bulk changes.
+     *
+     * @param vehicles     the names of the encoders to change or an empty list to change all encoders
+     * @param osmWayIds    the OSM way ids of the edges, only required if the changes contain OSM way ids
+     * @param threads      the maximum number of threads, including the calling thread
+     * @param changedFlags the new flags per edge id are added to this map
+     */
+    public BulkChangeResponse collectChanges(EncodingManager em, final BulkEdgeChanges changes, List<String> vehicles,
+                                             OSMWayIdStorage osmWayIds, int threads, final IntObjectMap<IntsRef> changedFlags) {
+        if (em == null)
+            throw new NullPointerException("EncodingManager cannot be null to change existing graph");
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+
+        final List<FlagEncoder> encoders = new ArrayList<>();
+        if (vehicles == null || vehicles.isEmpty())
+            encoders.addAll(em.fetchEdgeEncoders());
+        else
+            for (String vehicle : vehicles) {
+                encoders.add(em.getEncoder(vehicle));
+            }
+        final DecimalEncodedValue[] priorityEncs = new DecimalEncodedValue[encoders.size()];
+        for (int i = 0; i < encoders.size(); i++) {
+            String key = EncodingManager.getKey(encoders.get(i), "priority");
+            if (em.hasEncodedValue(key))
+                priorityEncs[i] = em.getDecimalEncodedValue(key);
+        }
+
+        // resolve the edges of every change and assign them to the chunks of contiguous edge ids, the edges of a
+        // chunk are in change order
+        int edgeCount = graph.getAllEdges().length();
+        final int chunks = threads == 1 ? 1 : Math.max(1, Math.min(threads * 4, edgeCount));
+        final IntArrayList[] chunkEdges = new IntArrayList[chunks];
+        final IntArrayList[] chunkChanges = new IntArrayList[chunks];
+        for (int i = 0; i < chunks; i++) {
+            chunkEdges[i] = new IntArrayList();
+            chunkChanges[i] = new IntArrayList();
+        }
+        long applied = 0, ignored = 0;
+        for (int change = 0; change < changes.size(); change++) {
+            int[] edges;
+            long id = changes.getId(change);
+            if (changes.getType(change) == BulkEdgeChanges.WAY) {
+                if (osmWayIds == null)
+                    throw new IllegalArgumentException("Cannot change OSM way " + id + " as the OSM way ids are not stored, see graph.osm_way_ids");
+                edges = osmWayIds.getEdges(graph, id);
+            } else {
+                edges = id >= 0 && id < edgeCount && !isRemoved((int) id) ? new int[]{(int) id} : new int[0];
+            }
+            if (edges.length == 0) {
+                ignored++;
+                continue;
+            }
+            applied++;
+            for (int edge : edges) {
+                int chunk = (int) ((long) edge * chunks / edgeCount);
+                chunkEdges[chunk].add(edge);
+                chunkChanges[chunk].add(change);
+            }
+        }
+
+        final List<IntObjectMap<IntsRef>> chunkFlags = new ArrayList<>(Collections.<IntObjectMap<IntsRef>>nCopies(chunks, null));
+        final AtomicInteger next = new AtomicInteger();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                for (int chunk = next.getAndIncrement(); chunk < chunks; chunk = next.getAndIncrement()) {
+                    IntObjectMap<IntsRef> flagsOfChunk = new GHIntObjectHashMap<>(chunkEdges[chunk].size());
+                    for (int i = 0; i < chunkEdges[chunk].size(); i++) {
+                        int edgeId = chunkEdges[chunk].get(i);
+                        // the flags are in storage direction, like for getEdgeIteratorState(edgeId, Integer.MIN_VALUE)
+                        IntsRef flags = flagsOfChunk.get(edgeId);
+                        if (flags == null) {
+                            IntsRef oldFlags = changedFlags.get(edgeId);
+                            flags = IntsRef.deepCopyOf(oldFlags == null ? graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE).getFlags() : oldFlags);
+                            flagsOfChunk.put(edgeId, flags);
+                        }
+                        for (int e = 0; e < encoders.size(); e++) {
+                            applyChange(changes, chunkChanges[chunk].get(i), encoders.get(e), priorityEncs[e], flags);
+                        }
+                    }
+                    chunkFlags.set(chunk, flagsOfChunk);
+                }
+            }
+        };
+        GHUtility.runConcurrently(worker, Math.min(threads, chunks));
+
+        long changedEdges = 0;
+        for (IntObjectMap<IntsRef> flagsOfChunk : chunkFlags) {
+            for (IntObjectCursor<IntsRef> cursor : flagsOfChunk) {
+                changedFlags.put(cursor.key, cursor.value);
+            }
+            changedEdges += flagsOfChunk.size();
+        }
+        if (enableLogging)
+            logger.info("bulk changes applied: " + applied + ", ignored: " + ignored + ", changed edges: " + changedEdges);
+        return new BulkChangeResponse(applied, ignored, changedEdges);
+    }
+
+    private boolean isRemoved(int edgeId) {
+        // only the storage can have removed edges, e.g. of removed subnetworks
+        return graph instanceof GraphHopperStorage && ((GraphHopperStorage) graph).isEdgeRemoved(edgeId);
+    }
+
+    private static void applyChange(BulkEdgeChanges changes, int change, FlagEncoder encoder,
+                                    DecimalEncodedValue priorityEnc, IntsRef flags) {
+        if (changes.hasSpeed(change)) {
+            DecimalEncodedValue avSpeedEnc = encoder.getAverageSpeedEnc();
+            double speed = Math.min(changes.getSpeed(change), encoder.getMaxSpeed());
+            avSpeedEnc.setDecimal(false, flags, speed);
+            if (avSpeedEnc.isStoreTwoDirections())
+                avSpeedEnc.setDecimal(true, flags, speed);
+        }
+        if (changes.hasAccess(change)) {
+            BooleanEncodedValue accessEnc = encoder.getAccessEnc();
+            accessEnc.setBool(false, flags, changes.getAccess(change));
+            accessEnc.setBool(true, flags, changes.getAccess(change));
+        }
+        if (changes.hasPriority(change) && priorityEnc != null) {
+            double priority = Math.min(changes.getPriority(change), 1);
+            priorityEnc.setDecimal(false, flags, priority);
+            if (priorityEnc.isStoreTwoDirections())
+                priorityEnc.setDecimal(true, flags, priority);
+        }
+    }
 }
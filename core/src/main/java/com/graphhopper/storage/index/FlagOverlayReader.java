@@ -0,0 +1,64 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.index;
+
+import com.graphhopper.storage.EdgeFlagOverlay;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
+
+/**
+ * Holds the flag overlay that one lookup of a location index reads the edges with. While it is acquired, changes
+ * that are published later are not compacted into the edge storage, see GraphHopperStorage.acquireFlagOverlay.
+ * Graphs without flag overlays are read directly.
+ */
+final class FlagOverlayReader {
+    private final GraphHopperStorage ghStorage;
+    private final EdgeFlagOverlay overlay;
+    private final Graph graph;
+
+    private FlagOverlayReader(Graph graph) {
+        if (graph instanceof GraphHopperStorage) {
+            ghStorage = (GraphHopperStorage) graph;
+            overlay = ghStorage.acquireFlagOverlay();
+            this.graph = ghStorage.withFlagOverlay(overlay);
+        } else {
+            ghStorage = null;
+            overlay = null;
+            this.graph = graph;
+        }
+    }
+
+    /**
+     * @return a reader that has to be released via release
+     */
+    static FlagOverlayReader acquire(Graph graph) {
+        return new FlagOverlayReader(graph);
+    }
+
+    /**
+     * @return the graph whose edges are read with the acquired flag overlay
+     */
+    Graph getGraph() {
+        return graph;
+    }
+
+    void release() {
+        if (overlay != null)
+            ghStorage.releaseFlagOverlay(overlay);
+    }
+}
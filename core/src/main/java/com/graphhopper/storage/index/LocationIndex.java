@@ -117,6 +117,14 @@ public interface LocationIndex extends Storable<LocationIndex> {
             }
         }
 
+        /**
+         * Visits the specified edge without exploring its nodes, e.g. for an index that stores edges instead of nodes.
+         */
+        final void visitEdge(EdgeIteratorState edge) {
+            if (edgeIds.add(edge.getEdge()))
+                onEdge(edge, edge.getBaseNode(), edge.getAdjNode());
+        }
+
         public abstract void onEdge(EdgeIteratorState edge, int nodeA, int nodeB);
     }
 }
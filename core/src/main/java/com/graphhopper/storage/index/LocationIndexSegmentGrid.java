@@ -0,0 +1,589 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.index;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.BBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class implements a location index that stores the segments of the edges, i.e. the lines between their tower
+ * and pillar nodes, in a uniform grid. Every segment is stored with its coordinates in all cells it crosses. Unlike
+ * LocationIndexTree, which stores nodes and explores the edges from them, the time to find the closest edge does not
+ * depend on the length of the edges or on the distance between their nodes, e.g. for long cycle paths through areas
+ * without junctions.
+ * <p>
+ * The cells are searched in rings around the cell of the query point until the next ring cannot contain a closer
+ * segment. The DataAccess contains the offsets of the entries of all cells followed by the entries. An entry consists
+ * of the edge id, the segment index and the coordinates of the segment.
+ */
+public class LocationIndexSegmentGrid implements LocationIndex {
+    private static final int MAGIC_INT = Integer.MAX_VALUE / 22319;
+    // edge, segment index and last segment flag, lat and lon of the start and of the end
+    private static final int ENTRY_INTS = 6;
+    // the resolution is reduced for large areas to limit the size of the offsets
+    private static final long MAX_CELLS = 1L << 26;
+    private static final double EPSILON = 1e-9;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Graph graph;
+    private final NodeAccess nodeAccess;
+    private final DataAccess dataAccess;
+    private DistanceCalc distCalc = Helper.DIST_PLANE;
+    private int resolution = 300;
+    private int maxRegionSearch = 4;
+    private int cols;
+    private int rows;
+    private double minLat;
+    private double minLon;
+    private double deltaLat;
+    private double deltaLon;
+    private boolean initialized = false;
+
+    public LocationIndexSegmentGrid(Graph graph, Directory dir) {
+        if (graph instanceof CHGraph)
+            throw new IllegalArgumentException("Use base graph for LocationIndexSegmentGrid instead of CHGraph");
+
+        this.graph = graph;
+        this.nodeAccess = graph.getNodeAccess();
+        dataAccess = dir.find("location_index_segments", DAType.getPreferredInt(dir.getDefaultType()));
+    }
+
+    /**
+     * Sets the width of the cells in meter. Smaller cells contain less segments but more cells have to be searched for
+     * query points far away from the next edge.
+     */
+    @Override
+    public LocationIndexSegmentGrid setResolution(int resolution) {
+        if (resolution <= 0)
+            throw new IllegalArgumentException("Resolution of location index must be positive but was " + resolution);
+
+        this.resolution = resolution;
+        return this;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Limits the search of findClosest to resolution * numCells meters around the query point. Default is 4.
+     */
+    public LocationIndexSegmentGrid setMaxRegionSearch(int numCells) {
+        if (numCells < 1)
+            throw new IllegalArgumentException("Region of location index must be at least 1 but was " + numCells);
+
+        this.maxRegionSearch = numCells;
+        return this;
+    }
+
+    @Override
+    public LocationIndex setApproximation(boolean approx) {
+        if (approx)
+            distCalc = Helper.DIST_PLANE;
+        else
+            distCalc = Helper.DIST_EARTH;
+        return this;
+    }
+
+    @Override
+    public void setSegmentSize(int bytes) {
+        dataAccess.setSegmentSize(bytes);
+    }
+
+    @Override
+    public LocationIndexSegmentGrid create(long size) {
+        throw new UnsupportedOperationException("Not supported. Use prepareIndex instead.");
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (initialized)
+            throw new IllegalStateException("Call loadExisting only once");
+
+        if (!dataAccess.loadExisting())
+            return false;
+
+        if (dataAccess.getHeader(0) != MAGIC_INT)
+            throw new IllegalStateException("incorrect location index version, expected:" + MAGIC_INT);
+
+        if (dataAccess.getHeader(1 * 4) != calcChecksum())
+            throw new IllegalStateException("location index was opened with incorrect graph: "
+                    + dataAccess.getHeader(1 * 4) + " vs. " + calcChecksum());
+
+        resolution = dataAccess.getHeader(2 * 4);
+        cols = dataAccess.getHeader(3 * 4);
+        rows = dataAccess.getHeader(4 * 4);
+        minLat = getDoubleHeader(5);
+        minLon = getDoubleHeader(7);
+        deltaLat = getDoubleHeader(9);
+        deltaLon = getDoubleHeader(11);
+        initialized = true;
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        dataAccess.setHeader(0, MAGIC_INT);
+        dataAccess.setHeader(1 * 4, calcChecksum());
+        dataAccess.setHeader(2 * 4, resolution);
+        dataAccess.setHeader(3 * 4, cols);
+        dataAccess.setHeader(4 * 4, rows);
+        setDoubleHeader(5, minLat);
+        setDoubleHeader(7, minLon);
+        setDoubleHeader(9, deltaLat);
+        setDoubleHeader(11, deltaLon);
+        dataAccess.flush();
+    }
+
+    private void setDoubleHeader(int index, double value) {
+        long bits = Double.doubleToLongBits(value);
+        dataAccess.setHeader(index * 4, BitUtil.LITTLE.getIntLow(bits));
+        dataAccess.setHeader((index + 1) * 4, BitUtil.LITTLE.getIntHigh(bits));
+    }
+
+    private double getDoubleHeader(int index) {
+        return Double.longBitsToDouble(BitUtil.LITTLE.combineIntsToLong(
+                dataAccess.getHeader(index * 4), dataAccess.getHeader((index + 1) * 4)));
+    }
+
+    int calcChecksum() {
+        return graph.getNodes();
+    }
+
+    @Override
+    public LocationIndex prepareIndex() {
+        if (initialized)
+            throw new IllegalStateException("Call prepareIndex only once");
+
+        StopWatch sw = new StopWatch().start();
+        initGrid(calcBounds());
+        int cells = cols * rows;
+
+        // count the entries per cell first to store them sorted by cell without keeping them in memory
+        int[] counts = new int[cells];
+        IntArrayList cellList = new IntArrayList();
+        long entries = 0;
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            PointList pointList = iter.fetchWayGeometry(3);
+            for (int i = 0; i + 1 < pointList.getSize(); i++) {
+                if (distCalc.isCrossBoundary(pointList.getLon(i), pointList.getLon(i + 1)))
+                    continue;
+                fillCells(pointList.getLat(i), pointList.getLon(i), pointList.getLat(i + 1), pointList.getLon(i + 1), cellList);
+                for (int j = 0; j < cellList.size(); j++) {
+                    counts[cellList.get(j)]++;
+                }
+                entries += cellList.size();
+            }
+        }
+        if (entries > Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many segments for location index: " + entries + ", increase the resolution");
+
+        dataAccess.create(64 * 1024);
+        dataAccess.ensureCapacity(4L * (cells + 1 + entries * ENTRY_INTS));
+        int offset = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            dataAccess.setInt(4L * cell, offset);
+            int count = counts[cell];
+            // from now on the position of the next entry of the cell
+            counts[cell] = offset;
+            offset += count;
+        }
+        dataAccess.setInt(4L * cells, offset);
+
+        iter = graph.getAllEdges();
+        while (iter.next()) {
+            PointList pointList = iter.fetchWayGeometry(3);
+            int lastSegment = pointList.getSize() - 2;
+            for (int i = 0; i <= lastSegment; i++) {
+                double lat1 = pointList.getLat(i), lon1 = pointList.getLon(i);
+                double lat2 = pointList.getLat(i + 1), lon2 = pointList.getLon(i + 1);
+                // like LocationIndexTree segments crossing the boundary of -180 and 180 degree are skipped
+                if (distCalc.isCrossBoundary(lon1, lon2))
+                    continue;
+                fillCells(lat1, lon1, lat2, lon2, cellList);
+                for (int j = 0; j < cellList.size(); j++) {
+                    int cell = cellList.get(j);
+                    long pointer = 4 * getEntryIntPointer(counts[cell]++);
+                    dataAccess.setInt(pointer, iter.getEdge());
+                    dataAccess.setInt(pointer + 4, i << 1 | (i == lastSegment ? 1 : 0));
+                    dataAccess.setInt(pointer + 8, toInt(lat1));
+                    dataAccess.setInt(pointer + 12, toInt(lon1));
+                    dataAccess.setInt(pointer + 16, toInt(lat2));
+                    dataAccess.setInt(pointer + 20, toInt(lon2));
+                }
+            }
+        }
+
+        flush();
+        initialized = true;
+        logger.info("location index with segments created in " + sw.stop().getSeconds()
+                + "s, cells:" + cols + "x" + rows + ", entries:" + Helper.nf(entries)
+                + ", resolution:" + resolution + ", entriesPerCell:" + (float) entries / cells);
+        return this;
+    }
+
+    /**
+     * @return the bounds of the graph extended by the pillar nodes, as all segments have to be within the grid
+     */
+    private BBox calcBounds() {
+        BBox bounds = graph.getBounds().clone();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            PointList pillars = iter.fetchWayGeometry(0);
+            for (int i = 0; i < pillars.getSize(); i++) {
+                bounds.update(pillars.getLat(i), pillars.getLon(i));
+            }
+        }
+        return bounds;
+    }
+
+    private void initGrid(BBox bounds) {
+        if (graph.getNodes() == 0)
+            throw new IllegalStateException("Cannot create location index of empty graph!");
+
+        if (!bounds.isValid())
+            throw new IllegalStateException("Cannot create location index when graph has invalid bounds: " + bounds);
+
+        minLat = bounds.minLat;
+        minLon = bounds.minLon;
+        double centerLat = (bounds.minLat + bounds.maxLat) / 2;
+        deltaLat = resolution * 360 / DistanceCalcEarth.C;
+        deltaLon = resolution * 360 / Helper.DIST_EARTH.calcCircumference(centerLat);
+        double latCells = Math.max(1, (bounds.maxLat - bounds.minLat) / deltaLat);
+        double lonCells = Math.max(1, (bounds.maxLon - bounds.minLon) / deltaLon);
+        if (latCells * lonCells > MAX_CELLS) {
+            double factor = Math.sqrt(latCells * lonCells / MAX_CELLS);
+            deltaLat *= factor;
+            deltaLon *= factor;
+        }
+        rows = Math.max(1, (int) Math.ceil((bounds.maxLat - bounds.minLat) / deltaLat));
+        cols = Math.max(1, (int) Math.ceil((bounds.maxLon - bounds.minLon) / deltaLon));
+    }
+
+    /**
+     * Converts the coordinate of a node into the int it is stored with in the graph. Helper.degreeToInt truncates and
+     * would be one off for some coordinates, which were already converted from an int.
+     */
+    private static int toInt(double deg) {
+        int value = Helper.degreeToInt(deg);
+        int other = deg < 0 ? value - 1 : value + 1;
+        return Math.abs(Helper.intToDegree(other) - deg) < Math.abs(Helper.intToDegree(value) - deg) ? other : value;
+    }
+
+    private long getEntryIntPointer(int entry) {
+        return (long) cols * rows + 1 + (long) entry * ENTRY_INTS;
+    }
+
+    private int getRow(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat - minLat) / deltaLat)));
+    }
+
+    private int getCol(double lon) {
+        return Math.max(0, Math.min(cols - 1, (int) Math.floor((lon - minLon) / deltaLon)));
+    }
+
+    /**
+     * Fills the specified list with the cells that are crossed by the specified segment. For every row between the
+     * start and end the longitudes of the segment within the row determine the crossed columns.
+     */
+    void fillCells(double lat1, double lon1, double lat2, double lon2, IntArrayList cells) {
+        cells.clear();
+        double segMinLat = Math.min(lat1, lat2), segMaxLat = Math.max(lat1, lat2);
+        int minRow = getRow(segMinLat - EPSILON), maxRow = getRow(segMaxLat + EPSILON);
+        for (int row = minRow; row <= maxRow; row++) {
+            double rowMinLon, rowMaxLon;
+            if (minRow == maxRow || lat1 == lat2) {
+                rowMinLon = Math.min(lon1, lon2);
+                rowMaxLon = Math.max(lon1, lon2);
+            } else {
+                double fromLat = Math.max(segMinLat, minLat + row * deltaLat);
+                double toLat = Math.min(segMaxLat, minLat + (row + 1) * deltaLat);
+                double fromLon = lon1 + (fromLat - lat1) / (lat2 - lat1) * (lon2 - lon1);
+                double toLon = lon1 + (toLat - lat1) / (lat2 - lat1) * (lon2 - lon1);
+                rowMinLon = Math.min(fromLon, toLon);
+                rowMaxLon = Math.max(fromLon, toLon);
+            }
+            int maxCol = getCol(rowMaxLon + EPSILON);
+            for (int col = getCol(rowMinLon - EPSILON); col <= maxCol; col++) {
+                cells.add(row * cols + col);
+            }
+        }
+    }
+
+    @Override
+    public QueryResult findClosest(double queryLat, double queryLon, EdgeFilter edgeFilter) {
+        return findClosest(queryLat, queryLon, edgeFilter, (double) resolution * maxRegionSearch);
+    }
+
+    /**
+     * Finds the closest edge within the specified distance. The search stops as soon as the cells that were not yet
+     * searched are further away than the closest segment found so far or than maxDistance.
+     *
+     * @param maxDistance in meter
+     */
+    public QueryResult findClosest(double queryLat, double queryLon, EdgeFilter edgeFilter, double maxDistance) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+
+        // the edges are read with an acquired flag overlay, so that newer changes are not compacted meanwhile
+        FlagOverlayReader reader = FlagOverlayReader.acquire(graph);
+        try {
+            return findClosest(new SegmentSearch(queryLat, queryLon, edgeFilter, maxDistance, reader.getGraph()));
+        } finally {
+            reader.release();
+        }
+    }
+
+    private QueryResult findClosest(SegmentSearch search) {
+        double queryLat = search.queryLat, queryLon = search.queryLon, maxDistance = search.maxDistance;
+        int queryCol = (int) Math.floor((queryLon - minLon) / deltaLon);
+        int queryRow = (int) Math.floor((queryLat - minLat) / deltaLat);
+        for (int ring = 0; ; ring++) {
+            if (ring > 0) {
+                // all cells were searched
+                if (queryCol - ring < 0 && queryCol + ring >= cols && queryRow - ring < 0 && queryRow + ring >= rows)
+                    break;
+
+                double ringDistance = calcRingDistance(queryLat, queryLon, queryCol, queryRow, ring);
+                if (ringDistance > maxDistance || distCalc.calcNormalizedDist(ringDistance) >= search.normedDist)
+                    break;
+            }
+
+            for (int row = queryRow - ring; row <= queryRow + ring; row++) {
+                if (row < 0 || row >= rows)
+                    continue;
+                boolean border = row == queryRow - ring || row == queryRow + ring;
+                int colStep = border || ring == 0 ? 1 : 2 * ring;
+                for (int col = queryCol - ring; col <= queryCol + ring; col += colStep) {
+                    if (col >= 0 && col < cols)
+                        search.searchCell(row * cols + col);
+                }
+            }
+        }
+        return search.createResult();
+    }
+
+    /**
+     * @return the distance in meter from the query point to the closest cell of the specified ring
+     */
+    private double calcRingDistance(double queryLat, double queryLon, int queryCol, int queryRow, int ring) {
+        double southLat = minLat + (queryRow - ring + 1) * deltaLat;
+        double northLat = minLat + (queryRow + ring) * deltaLat;
+        double westLon = minLon + (queryCol - ring + 1) * deltaLon;
+        double eastLon = minLon + (queryCol + ring) * deltaLon;
+        double latDist = distCalc.calcDist(queryLat, queryLon,
+                queryLat - southLat < northLat - queryLat ? southLat : northLat, queryLon);
+        double lonDist = distCalc.calcDist(queryLat, queryLon, queryLat,
+                queryLon - westLon < eastLon - queryLon ? westLon : eastLon);
+        return Math.min(latDist, lonDist);
+    }
+
+    /**
+     * Visits the edges with a segment in the cells that intersect the specified bounding box. An EdgeVisitor gets
+     * these edges directly, other visitors get their tower nodes. Nodes without edges are not visited.
+     */
+    @Override
+    public void query(BBox queryBBox, Visitor function) {
+        if (queryBBox.maxLat < minLat || queryBBox.minLat > minLat + rows * deltaLat
+                || queryBBox.maxLon < minLon || queryBBox.minLon > minLon + cols * deltaLon)
+            return;
+
+        FlagOverlayReader reader = FlagOverlayReader.acquire(graph);
+        try {
+            query(queryBBox, function, reader.getGraph());
+        } finally {
+            reader.release();
+        }
+    }
+
+    private void query(BBox queryBBox, Visitor function, Graph readGraph) {
+        IntHashSet edges = new IntHashSet();
+        IntHashSet nodes = new IntHashSet();
+        int maxRow = getRow(queryBBox.maxLat), maxCol = getCol(queryBBox.maxLon);
+        for (int row = getRow(queryBBox.minLat); row <= maxRow; row++) {
+            for (int col = getCol(queryBBox.minLon); col <= maxCol; col++) {
+                if (function.isTileInfo()) {
+                    double cellMinLat = minLat + row * deltaLat, cellMinLon = minLon + col * deltaLon;
+                    function.onTile(new BBox(cellMinLon, cellMinLon + deltaLon, cellMinLat, cellMinLat + deltaLat), 0);
+                }
+
+                int cell = row * cols + col;
+                int end = dataAccess.getInt(4L * (cell + 1));
+                for (int entry = dataAccess.getInt(4L * cell); entry < end; entry++) {
+                    long pointer = 4 * getEntryIntPointer(entry);
+                    int edge = dataAccess.getInt(pointer);
+                    if (edges.contains(edge) || !intersects(queryBBox, pointer))
+                        continue;
+
+                    edges.add(edge);
+                    EdgeIteratorState edgeState = readGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+                    if (function instanceof EdgeVisitor) {
+                        ((EdgeVisitor) function).visitEdge(edgeState);
+                    } else {
+                        if (nodes.add(edgeState.getBaseNode()))
+                            function.onNode(edgeState.getBaseNode());
+                        if (nodes.add(edgeState.getAdjNode()))
+                            function.onNode(edgeState.getAdjNode());
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean intersects(BBox bbox, long pointer) {
+        double lat1 = Helper.intToDegree(dataAccess.getInt(pointer + 8));
+        double lon1 = Helper.intToDegree(dataAccess.getInt(pointer + 12));
+        double lat2 = Helper.intToDegree(dataAccess.getInt(pointer + 16));
+        double lon2 = Helper.intToDegree(dataAccess.getInt(pointer + 20));
+        return Math.max(lat1, lat2) >= bbox.minLat && Math.min(lat1, lat2) <= bbox.maxLat
+                && Math.max(lon1, lon2) >= bbox.minLon && Math.min(lon1, lon2) <= bbox.maxLon;
+    }
+
+    @Override
+    public void close() {
+        dataAccess.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return dataAccess.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return dataAccess.getCapacity();
+    }
+
+    /**
+     * The state of one findClosest call: the closest accepted segment so far and the edges already checked by the
+     * filter, as an edge is stored once per segment and cell.
+     */
+    private class SegmentSearch {
+        final double queryLat;
+        final double queryLon;
+        final EdgeFilter edgeFilter;
+        final double maxDistance;
+        final double maxNormedDist;
+        final Graph readGraph;
+        final GHIntHashSet acceptedEdges = new GHIntHashSet();
+        final GHIntHashSet rejectedEdges = new GHIntHashSet();
+        double normedDist = Double.MAX_VALUE;
+        int edge = -1;
+        int wayIndex;
+        QueryResult.Position position;
+
+        SegmentSearch(double queryLat, double queryLon, EdgeFilter edgeFilter, double maxDistance, Graph readGraph) {
+            this.queryLat = queryLat;
+            this.queryLon = queryLon;
+            this.edgeFilter = edgeFilter;
+            this.maxDistance = maxDistance;
+            this.maxNormedDist = distCalc.calcNormalizedDist(maxDistance);
+            this.readGraph = readGraph;
+        }
+
+        void searchCell(int cell) {
+            int end = dataAccess.getInt(4L * (cell + 1));
+            for (int entry = dataAccess.getInt(4L * cell); entry < end; entry++) {
+                long pointer = 4 * getEntryIntPointer(entry);
+                int segment = dataAccess.getInt(pointer + 4);
+                double lat1 = Helper.intToDegree(dataAccess.getInt(pointer + 8));
+                double lon1 = Helper.intToDegree(dataAccess.getInt(pointer + 12));
+                double lat2 = Helper.intToDegree(dataAccess.getInt(pointer + 16));
+                double lon2 = Helper.intToDegree(dataAccess.getInt(pointer + 20));
+
+                double tmpNormedDist;
+                int tmpWayIndex = segment >>> 1;
+                QueryResult.Position tmpPosition;
+                if (distCalc.validEdgeDistance(queryLat, queryLon, lat1, lon1, lat2, lon2)) {
+                    tmpNormedDist = distCalc.calcNormalizedEdgeDistance(queryLat, queryLon, lat1, lon1, lat2, lon2);
+                    tmpPosition = QueryResult.Position.EDGE;
+                } else {
+                    double startDist = distCalc.calcNormalizedDist(queryLat, queryLon, lat1, lon1);
+                    double endDist = distCalc.calcNormalizedDist(queryLat, queryLon, lat2, lon2);
+                    if (startDist <= endDist) {
+                        tmpNormedDist = startDist;
+                        tmpPosition = tmpWayIndex == 0 ? QueryResult.Position.TOWER : QueryResult.Position.PILLAR;
+                    } else {
+                        tmpNormedDist = endDist;
+                        tmpPosition = (segment & 1) == 1 ? QueryResult.Position.TOWER : QueryResult.Position.PILLAR;
+                        tmpWayIndex++;
+                    }
+                }
+
+                if (tmpNormedDist >= normedDist || tmpNormedDist > maxNormedDist)
+                    continue;
+
+                int tmpEdge = dataAccess.getInt(pointer);
+                if (!accept(tmpEdge))
+                    continue;
+
+                normedDist = tmpNormedDist;
+                edge = tmpEdge;
+                wayIndex = tmpWayIndex;
+                position = tmpPosition;
+            }
+        }
+
+        boolean accept(int edgeId) {
+            if (edgeFilter == EdgeFilter.ALL_EDGES || acceptedEdges.contains(edgeId))
+                return true;
+            if (rejectedEdges.contains(edgeId))
+                return false;
+
+            if (edgeFilter.accept(readGraph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE))) {
+                acceptedEdges.add(edgeId);
+                return true;
+            }
+            rejectedEdges.add(edgeId);
+            return false;
+        }
+
+        QueryResult createResult() {
+            QueryResult result = new QueryResult(queryLat, queryLon);
+            if (edge < 0)
+                return result;
+
+            EdgeIteratorState edgeState = readGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            int baseNode = edgeState.getBaseNode(), adjNode = edgeState.getAdjNode();
+            int closestNode;
+            if (position == QueryResult.Position.TOWER) {
+                closestNode = wayIndex == 0 ? baseNode : adjNode;
+            } else {
+                double baseDist = distCalc.calcNormalizedDist(queryLat, queryLon, nodeAccess.getLat(baseNode), nodeAccess.getLon(baseNode));
+                double adjDist = distCalc.calcNormalizedDist(queryLat, queryLon, nodeAccess.getLat(adjNode), nodeAccess.getLon(adjNode));
+                closestNode = adjDist < baseDist ? adjNode : baseNode;
+            }
+
+            result.setClosestNode(closestNode);
+            result.setClosestEdge(edgeState.detach(false));
+            result.setWayIndex(wayIndex);
+            result.setSnappedPosition(position);
+            result.setQueryDistance(distCalc.calcDenormalizedDist(normedDist));
+            result.calcSnappedPoint(distCalc);
+            return result;
+        }
+    }
+}
@@ -19,6 +19,8 @@ package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.LongObjectMap;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.carrotsearch.hppc.predicates.IntPredicate;
 import com.graphhopper.coll.GHBitSet;
@@ -60,6 +62,9 @@ import java.util.*;
 public class LocationIndexTree implements LocationIndex {
     // do not start with 0 as a positive value means leaf and a negative means "entry with subentries"
     static final int START_POINTER = 1;
+    // limit the tiles and edges that findClosestBatch keeps in memory, as the points are sorted older ones are rarely needed
+    private static final int MAX_CACHED_LEAFS = 4096;
+    private static final int MAX_CACHED_GEOMETRIES = 16384;
     protected final Graph graph;
     final DataAccess dataAccess;
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -524,24 +529,29 @@ public class LocationIndexTree implements LocationIndex {
      */
     final boolean findNetworkEntries(double queryLat, double queryLon,
                                      GHIntHashSet foundEntries, int iteration) {
+        return findNetworkEntries(queryLat, queryLon, foundEntries, iteration, null);
+    }
+
+    private boolean findNetworkEntries(double queryLat, double queryLon,
+                                       GHIntHashSet foundEntries, int iteration, LongObjectMap<int[]> leafCache) {
         // find entries in border of searchbox
         for (int yreg = -iteration; yreg <= iteration; yreg++) {
             double subqueryLat = queryLat + yreg * deltaLat;
             double subqueryLonA = queryLon - iteration * deltaLon;
             double subqueryLonB = queryLon + iteration * deltaLon;
-            findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonA);
+            findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonA, leafCache);
 
             // minor optimization for iteration == 0
             if (iteration > 0)
-                findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonB);
+                findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonB, leafCache);
         }
 
         for (int xreg = -iteration + 1; xreg <= iteration - 1; xreg++) {
             double subqueryLon = queryLon + xreg * deltaLon;
             double subqueryLatA = queryLat - iteration * deltaLat;
             double subqueryLatB = queryLat + iteration * deltaLat;
-            findNetworkEntriesSingleRegion(foundEntries, subqueryLatA, subqueryLon);
-            findNetworkEntriesSingleRegion(foundEntries, subqueryLatB, subqueryLon);
+            findNetworkEntriesSingleRegion(foundEntries, subqueryLatA, subqueryLon, leafCache);
+            findNetworkEntriesSingleRegion(foundEntries, subqueryLatB, subqueryLon, leafCache);
         }
 
         if (iteration % 2 != 0) {
@@ -583,23 +593,104 @@ public class LocationIndexTree implements LocationIndex {
         fillIDs(keyPart, START_POINTER, storedNetworkEntryIds, 0);
     }
 
+    /**
+     * Like findNetworkEntriesSingleRegion but the node IDs of the tile are taken from the specified cache if they were
+     * already read for a previous query of the same tile.
+     */
+    private void findNetworkEntriesSingleRegion(GHIntHashSet storedNetworkEntryIds, double queryLat, double queryLon,
+                                                LongObjectMap<int[]> leafCache) {
+        if (leafCache == null) {
+            findNetworkEntriesSingleRegion(storedNetworkEntryIds, queryLat, queryLon);
+            return;
+        }
+
+        long key = keyAlgo.encode(queryLat, queryLon);
+        int[] nodes = leafCache.get(key);
+        if (nodes == null) {
+            GHIntHashSet set = new GHIntHashSet();
+            fillIDs(createReverseKey(key), START_POINTER, set, 0);
+            nodes = set.toArray();
+            if (leafCache.size() >= MAX_CACHED_LEAFS)
+                leafCache.clear();
+            leafCache.put(key, nodes);
+        }
+        for (int node : nodes) {
+            storedNetworkEntryIds.add(node);
+        }
+    }
+
     @Override
     public QueryResult findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter) {
         if (isClosed())
             throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
 
-        GHIntHashSet allCollectedEntryIds = new GHIntHashSet();
+        // the edges are read with an acquired flag overlay, so that newer changes are not compacted meanwhile
+        FlagOverlayReader reader = FlagOverlayReader.acquire(graph);
+        try {
+            return findClosest(queryLat, queryLon, edgeFilter, new SearchScratch(reader.getGraph().createEdgeExplorer(), false));
+        } finally {
+            reader.release();
+        }
+    }
+
+    /**
+     * Snaps all specified points at once and returns the same results as calling findClosest for every point. The
+     * points are processed in the order of their tiles, so nearby points share the node IDs read from the tree and
+     * the fetched edge geometries, and the search structures are reused for all points. This method is thread-safe like findClosest.
+     *
+     * @return the results in the order of the specified points
+     */
+    public QueryResult[] findClosestBatch(double[] lats, double[] lons, EdgeFilter edgeFilter) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("The number of latitudes " + lats.length
+                    + " does not match the number of longitudes " + lons.length);
+
+        // the spatial key is a z-order curve, i.e. points with a similar key are in the same or in neighbouring tiles
+        long[] keyAndIndex = new long[lats.length];
+        int indexBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(lats.length));
+        int keyShift = Math.max(0, keyAlgo.getBits() + indexBits - 63);
+        for (int i = 0; i < lats.length; i++) {
+            keyAndIndex[i] = (keyAlgo.encode(lats[i], lons[i]) >>> keyShift) << indexBits | i;
+        }
+        Arrays.sort(keyAndIndex);
+
+        long indexMask = (1L << indexBits) - 1;
+        FlagOverlayReader reader = FlagOverlayReader.acquire(graph);
+        try {
+            SearchScratch scratch = new SearchScratch(reader.getGraph().createEdgeExplorer(), true);
+            QueryResult[] results = new QueryResult[lats.length];
+            for (long value : keyAndIndex) {
+                int i = (int) (value & indexMask);
+                results[i] = findClosest(lats[i], lons[i], edgeFilter, scratch);
+            }
+            return results;
+        } finally {
+            reader.release();
+        }
+    }
+
+    private QueryResult findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter,
+                                    SearchScratch scratch) {
+        GHIntHashSet allCollectedEntryIds = scratch.allCollectedEntryIds;
+        allCollectedEntryIds.clear();
         final QueryResult closestMatch = new QueryResult(queryLat, queryLon);
         for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
-            GHIntHashSet storedNetworkEntryIds = new GHIntHashSet();
-            boolean earlyFinish = findNetworkEntries(queryLat, queryLon, storedNetworkEntryIds, iteration);
+            GHIntHashSet storedNetworkEntryIds = scratch.storedNetworkEntryIds;
+            storedNetworkEntryIds.clear();
+            boolean earlyFinish = findNetworkEntries(queryLat, queryLon, storedNetworkEntryIds, iteration, scratch.leafCache);
             storedNetworkEntryIds.removeAll(allCollectedEntryIds);
             allCollectedEntryIds.addAll(storedNetworkEntryIds);
 
             // clone storedIds to avoid interference with forEach
-            final GHBitSet checkBitset = new GHTBitSet(new GHIntHashSet(storedNetworkEntryIds));
+            GHIntHashSet checkedIds = scratch.checkedIds;
+            checkedIds.clear();
+            checkedIds.addAll(storedNetworkEntryIds);
+            final GHBitSet checkBitset = new GHTBitSet(checkedIds);
             // find nodes from the network entries which are close to 'point'
-            final EdgeExplorer explorer = graph.createEdgeExplorer();
+            final EdgeExplorer explorer = scratch.explorer;
+            final LongObjectMap<PointList> geometryCache = scratch.geometryCache;
             storedNetworkEntryIds.forEach(new IntPredicate() {
                 @Override
                 public boolean apply(int networkEntryNodeId) {
@@ -621,6 +712,23 @@ public class LocationIndexTree implements LocationIndex {
                             }
                             return false;
                         }
+
+                        @Override
+                        protected PointList fetchWayGeometry(EdgeIteratorState edge) {
+                            // the geometry of a loop depends on the direction and not on the base node
+                            if (geometryCache == null || edge.getBaseNode() == edge.getAdjNode())
+                                return super.fetchWayGeometry(edge);
+
+                            long key = (long) edge.getEdge() << 32 | edge.getBaseNode();
+                            PointList pointList = geometryCache.get(key);
+                            if (pointList == null) {
+                                pointList = super.fetchWayGeometry(edge);
+                                if (geometryCache.size() >= MAX_CACHED_GEOMETRIES)
+                                    geometryCache.clear();
+                                geometryCache.put(key, pointList);
+                            }
+                            return pointList;
+                        }
                     }.start(explorer, networkEntryNodeId);
                     return true;
                 }
@@ -654,6 +762,16 @@ public class LocationIndexTree implements LocationIndex {
      */
     public List<QueryResult> findNClosest(final double queryLat, final double queryLon,
                                           final EdgeFilter edgeFilter, double radius) {
+        FlagOverlayReader reader = FlagOverlayReader.acquire(graph);
+        try {
+            return findNClosest(queryLat, queryLon, edgeFilter, radius, reader.getGraph());
+        } finally {
+            reader.release();
+        }
+    }
+
+    private List<QueryResult> findNClosest(final double queryLat, final double queryLon,
+                                           final EdgeFilter edgeFilter, double radius, Graph readGraph) {
         // Return ALL results which are very close and e.g. within the GPS signal accuracy.
         // Also important to get all edges if GPS point is close to a junction.
         final double returnAllResultsWithin = distCalc.calcNormalizedDist(radius);
@@ -668,7 +786,7 @@ public class LocationIndexTree implements LocationIndex {
             findNetworkEntries(queryLat, queryLon, set, iteration);
 
             final GHBitSet exploredNodes = new GHTBitSet(new GHIntHashSet(set));
-            final EdgeExplorer explorer = graph.createEdgeExplorer(edgeFilter);
+            final EdgeExplorer explorer = readGraph.createEdgeExplorer(edgeFilter);
 
             set.forEach(new IntPredicate() {
 
@@ -753,6 +871,25 @@ public class LocationIndexTree implements LocationIndex {
         return queryResults;
     }
 
+    /**
+     * The structures of one findClosest search that can be reused for the next search in the same thread.
+     */
+    private static class SearchScratch {
+        final GHIntHashSet allCollectedEntryIds = new GHIntHashSet();
+        final GHIntHashSet storedNetworkEntryIds = new GHIntHashSet();
+        final GHIntHashSet checkedIds = new GHIntHashSet();
+        final EdgeExplorer explorer;
+        // the node IDs per spatial key of a tile and the geometries per edge and base node, null if not cached
+        final LongObjectMap<int[]> leafCache;
+        final LongObjectMap<PointList> geometryCache;
+
+        SearchScratch(EdgeExplorer explorer, boolean cache) {
+            this.explorer = explorer;
+            this.leafCache = cache ? new LongObjectHashMap<int[]>() : null;
+            this.geometryCache = cache ? new LongObjectHashMap<PointList>() : null;
+        }
+    }
+
     // make entries static as otherwise we get an additional reference to this class (memory waste)
     interface InMemEntry {
         boolean isLeaf();
@@ -1074,7 +1211,7 @@ public class LocationIndexTree implements LocationIndex {
             double tmpLat = currLat;
             double tmpLon = currLon;
             double tmpNormedDist;
-            PointList pointList = currEdge.fetchWayGeometry(2);
+            PointList pointList = fetchWayGeometry(currEdge);
             int len = pointList.getSize();
             for (int pointIndex = 0; pointIndex < len; pointIndex++) {
                 double wayLat = pointList.getLatitude(pointIndex);
@@ -1110,6 +1247,13 @@ public class LocationIndexTree implements LocationIndex {
             return getQueryDistance() > equalNormedDelta;
         }
 
+        /**
+         * @return the geometry of the specified edge from its base node including the adjacent node
+         */
+        protected PointList fetchWayGeometry(EdgeIteratorState edge) {
+            return edge.fetchWayGeometry(2);
+        }
+
         protected abstract double getQueryDistance();
 
         protected abstract boolean check(int node, double normedDist, int wayIndex, EdgeIteratorState iter, QueryResult.Position pos);
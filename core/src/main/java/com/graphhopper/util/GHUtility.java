@@ -34,7 +34,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.graphhopper.util.Helper.DIST_EARTH;
 
@@ -301,9 +305,6 @@ public class GHUtility {
     }
 
     public static Graph shuffle(Graph g, Graph sortedGraph) {
-        if (g.getTurnCostExtension() != null) {
-            throw new IllegalArgumentException("Shuffling the graph is currently not supported in the presence of turn costs");
-        }
         int nodes = g.getNodes();
         GHIntArrayList list = new GHIntArrayList(nodes);
         list.fill(nodes, -1);
@@ -320,7 +321,7 @@ public class GHUtility {
         }
         edgesList.shuffle(new Random());
 
-        return createSortedGraph(g, sortedGraph, list, edgesList);
+        return createSortedGraph(g, sortedGraph, list, edgesList, null);
     }
 
     /**
@@ -328,9 +329,14 @@ public class GHUtility {
      * significant difference (bfs) for querying or are worse (z-curve).
      */
     public static Graph sortDFS(Graph g, Graph sortedGraph) {
-        if (g.getTurnCostExtension() != null) {
-            throw new IllegalArgumentException("Sorting the graph is currently not supported in the presence of turn costs");
-        }
+        return sortDFS(g, sortedGraph, null);
+    }
+
+    /**
+     * @param oldToNewEdges if not null it is filled with the new edge id of every edge or -1 if it was not copied
+     * @see #sortDFS(Graph, Graph)
+     */
+    public static Graph sortDFS(Graph g, Graph sortedGraph, int[] oldToNewEdges) {
         int nodes = g.getNodes();
         final GHIntArrayList nodeList = new GHIntArrayList(nodes);
         nodeList.fill(nodes, -1);
@@ -369,14 +375,91 @@ public class GHUtility {
                 }
             }.start(explorer, startNode);
         }
-        return createSortedGraph(g, sortedGraph, nodeList, edgeList);
+        return createSortedGraph(g, sortedGraph, nodeList, edgeList, oldToNewEdges);
     }
 
-    static Graph createSortedGraph(Graph fromGraph, Graph toSortedGraph, final IntIndexedContainer oldToNewNodeList, final IntIndexedContainer newToOldEdgeList) {
-        if (fromGraph.getTurnCostExtension() != null) {
-            throw new IllegalArgumentException("Sorting the graph is currently not supported in the presence of turn costs");
+    public static Graph sortHilbert(Graph g, Graph sortedGraph) {
+        return sortHilbert(g, sortedGraph, null);
+    }
+
+    /**
+     * Sorts the nodes along a Hilbert curve, so that nodes that are close to each other usually get close ids. The
+     * edges are sorted by their first node in the new order. This is cheaper than sortDFS as it needs no graph
+     * exploration, and unlike the z-curve the Hilbert curve has no big jumps between neighbouring cells.
+     *
+     * @param oldToNewEdges if not null it is filled with the new edge id of every edge or -1 if it was not copied
+     */
+    public static Graph sortHilbert(Graph g, Graph sortedGraph, int[] oldToNewEdges) {
+        int nodes = g.getNodes();
+        BBox bounds = g.getBounds();
+        NodeAccess na = g.getNodeAccess();
+        int order = 16;
+        int max = (1 << order) - 1;
+        double latFactor = max / Math.max(bounds.maxLat - bounds.minLat, 1e-9);
+        double lonFactor = max / Math.max(bounds.maxLon - bounds.minLon, 1e-9);
+        // the Hilbert index has 2 * order = 32 bits, so it fits into the upper bits and the node into the lower bits
+        long[] keys = new long[nodes];
+        for (int node = 0; node < nodes; node++) {
+            int x = (int) Math.max(0, Math.min(max, (na.getLongitude(node) - bounds.minLon) * lonFactor));
+            int y = (int) Math.max(0, Math.min(max, (na.getLatitude(node) - bounds.minLat) * latFactor));
+            keys[node] = calcHilbertIndex(x, y, order) << 31 | node;
+        }
+        Arrays.sort(keys);
+
+        GHIntArrayList nodeList = new GHIntArrayList(nodes);
+        nodeList.fill(nodes, -1);
+        int edges = g.getEdges();
+        GHIntArrayList edgeList = new GHIntArrayList(edges);
+        edgeList.fill(edges, -1);
+        GHBitSetImpl edgeBitset = new GHBitSetImpl(edges);
+        int edgeCount = 0;
+        EdgeExplorer explorer = g.createEdgeExplorer();
+        for (int i = 0; i < nodes; i++) {
+            int node = (int) (keys[i] & Integer.MAX_VALUE);
+            nodeList.set(node, i);
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (!edgeBitset.contains(iter.getEdge())) {
+                    edgeBitset.add(iter.getEdge());
+                    edgeList.set(edgeCount++, iter.getEdge());
+                }
+            }
+        }
+        return createSortedGraph(g, sortedGraph, nodeList, edgeList, oldToNewEdges);
+    }
+
+    /**
+     * @return the position of the cell x, y on the Hilbert curve through a grid of 2^order * 2^order cells
+     */
+    static long calcHilbertIndex(int x, int y, int order) {
+        int n = 1 << order;
+        long index = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant, so that the curve is continuous
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
         }
+        return index;
+    }
+
+    static Graph createSortedGraph(Graph fromGraph, Graph toSortedGraph, final IntIndexedContainer oldToNewNodeList,
+                                   final IntIndexedContainer newToOldEdgeList, int[] oldToNewEdges) {
         int edges = fromGraph.getEdges();
+        if (oldToNewEdges == null)
+            oldToNewEdges = new int[edges];
+        else if (oldToNewEdges.length < edges)
+            throw new IllegalArgumentException("The edge mapping needs space for " + edges + " edges but has only " + oldToNewEdges.length);
+        Arrays.fill(oldToNewEdges, 0, edges, -1);
         for (int i = 0; i < edges; i++) {
             int edgeId = newToOldEdgeList.get(i);
             if (edgeId < 0)
@@ -393,7 +476,7 @@ public class GHUtility {
             if (newBaseIndex < 0 || newAdjIndex < 0)
                 continue;
 
-            toSortedGraph.edge(newBaseIndex, newAdjIndex).copyPropertiesFrom(eIter);
+            oldToNewEdges[edgeId] = toSortedGraph.edge(newBaseIndex, newAdjIndex).copyPropertiesFrom(eIter).getEdge();
         }
 
         int nodes = fromGraph.getNodes();
@@ -406,6 +489,13 @@ public class GHUtility {
             else
                 sna.setNode(newIndex, na.getLatitude(old), na.getLongitude(old));
         }
+
+        TurnCostExtension turnCosts = fromGraph.getTurnCostExtension();
+        if (turnCosts != null) {
+            if (toSortedGraph.getTurnCostExtension() == null)
+                throw new IllegalArgumentException("The sorted graph needs turn cost support as the graph has turn costs");
+            turnCosts.copyRenumberedTo(toSortedGraph.getTurnCostExtension(), nodes, oldToNewNodeList, oldToNewEdges);
+        }
         return toSortedGraph;
     }
 
@@ -649,6 +739,83 @@ public class GHUtility {
         }
     }
 
+    /**
+     * Runs the specified worker in the calling thread and in threads - 1 tasks of the common ForkJoinPool. The worker
+     * usually takes its work from a shared counter. This method waits for all tasks even if one fails, as they could
+     * still use the shared state, and then throws the first exception.
+     */
+    public static void runConcurrently(final Runnable worker, int threads) {
+        // the exceptions are collected here as the pool would only rethrow a copy of them
+        final AtomicReference<RuntimeException> error = new AtomicReference<>();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    worker.run();
+                } catch (RuntimeException ex) {
+                    error.compareAndSet(null, ex);
+                }
+            }
+        };
+        List<Future<?>> futures = new ArrayList<>(Math.max(0, threads - 1));
+        for (int i = 1; i < threads; i++) {
+            futures.add(ForkJoinPool.commonPool().submit(task));
+        }
+
+        task.run();
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                    error.compareAndSet(null, new RuntimeException(ex));
+                } catch (ExecutionException ex) {
+                    error.compareAndSet(null, toRuntimeException(ex));
+                    break;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (error.get() != null)
+            throw error.get();
+    }
+
+    /**
+     * Runs the specified tasks with at most the specified number of threads, including the calling thread. If a task
+     * fails the tasks that did not start yet are skipped, see runConcurrently(Runnable, int).
+     */
+    public static void runConcurrently(final List<? extends Runnable> tasks, int threads) {
+        if (tasks.isEmpty())
+            return;
+
+        final AtomicInteger next = new AtomicInteger();
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = next.getAndIncrement(); i < tasks.size(); i = next.getAndIncrement()) {
+                    try {
+                        tasks.get(i).run();
+                    } catch (RuntimeException ex) {
+                        next.set(tasks.size());
+                        throw ex;
+                    }
+                }
+            }
+        }, Math.min(threads, tasks.size()));
+    }
+
+    /**
+     * @return the cause of the specified exception if it is unchecked or otherwise the cause wrapped into a
+     * RuntimeException
+     */
+    public static RuntimeException toRuntimeException(ExecutionException ex) {
+        return ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new RuntimeException(ex.getCause());
+    }
+
     /**
      * This edge iterator can be used in tests to mock specific iterator behaviour via overloading
      * certain methods.
@@ -772,4 +772,19 @@ public class PathMerger {
     public void setFavoredHeading(double favoredHeading) {
         this.favoredHeading = favoredHeading;
     }
+
+    /**
+     * @return a new PathMerger with the same settings but without a favored heading, e.g. for paths that were
+     * calculated without the heading of the request
+     */
+    public PathMerger withoutFavoredHeading() {
+        return new PathMerger(graph, weighting).
+                setCalcPoints(calcPoints).
+                setDouglasPeucker(douglasPeucker).
+                setEnableInstructions(enableInstructions).
+                setVersionCode(versionCode).
+                setEnableInstructionFiltering(enableInstructionFiltering).
+                setPathDetailsBuilders(pathBuilderFactory, requestedPathDetails).
+                setSimplifyResponse(simplifyResponse);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.IntHashSet;
+import org.junit.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+import static org.junit.Assert.*;
+
+public class IntDoubleIndexedMinHeapTest {
+
+    @Test
+    public void testPushAndPoll() {
+        IntDoubleIndexedMinHeap heap = new IntDoubleIndexedMinHeap(2);
+        heap.push(5, 3.5);
+        heap.push(1, 1.2);
+        heap.push(7, 2.0);
+        assertEquals(3, heap.size());
+        assertTrue(heap.contains(7));
+        assertFalse(heap.contains(2));
+        assertEquals(1, heap.peekId());
+        assertEquals(1.2, heap.peekKey(), 1e-6);
+
+        assertEquals(1, heap.poll());
+        assertFalse(heap.contains(1));
+        assertEquals(7, heap.poll());
+        assertEquals(5, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testUpdate() {
+        IntDoubleIndexedMinHeap heap = new IntDoubleIndexedMinHeap(10);
+        heap.push(0, 10);
+        heap.push(1, 20);
+        heap.push(2, 30);
+        heap.update(2, 5);
+        assertEquals(2, heap.peekId());
+        heap.update(2, 25);
+        assertEquals(0, heap.poll());
+        assertEquals(1, heap.poll());
+        assertEquals(2, heap.poll());
+    }
+
+    @Test
+    public void testClearAndReuse() {
+        IntDoubleIndexedMinHeap heap = new IntDoubleIndexedMinHeap(10);
+        heap.push(3, 1);
+        heap.push(100, 2);
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(3));
+        assertFalse(heap.contains(100));
+        heap.push(3, 4);
+        assertEquals(3, heap.poll());
+
+        try {
+            heap.poll();
+            fail("poll on an empty heap should fail");
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    @Test
+    public void testUpdateAll() {
+        IntDoubleIndexedMinHeap heap = new IntDoubleIndexedMinHeap(10);
+        for (int id = 0; id < 20; id++) {
+            heap.push(id, id);
+        }
+        for (int i = 0; i < 5; i++) {
+            heap.poll();
+        }
+        final IntHashSet updated = new IntHashSet();
+        // reverse the order of the remaining ids
+        heap.updateAll(new IntToDoubleFunction() {
+            @Override
+            public double applyAsDouble(int id) {
+                assertTrue(updated.add(id));
+                return 100 - id;
+            }
+        });
+        assertEquals(15, updated.size());
+        for (int id = 19; id >= 5; id--) {
+            assertEquals(id, heap.poll());
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testCompareToPriorityQueue() {
+        Random rand = new Random(0);
+        IntDoubleIndexedMinHeap heap = new IntDoubleIndexedMinHeap(16);
+        PriorityQueue<double[]> queue = new PriorityQueue<>(16, (a, b) -> Double.compare(a[1], b[1]));
+        double[] keys = new double[1000];
+        for (int i = 0; i < 5000; i++) {
+            int id = rand.nextInt(keys.length);
+            if (rand.nextInt(3) == 0 && !queue.isEmpty()) {
+                double expected = queue.peek()[1];
+                assertEquals(expected, heap.peekKey(), 1e-9);
+                int polled = heap.poll();
+                assertEquals(expected, keys[polled], 1e-9);
+                queue.removeIf(e -> e[0] == polled);
+            } else if (heap.contains(id)) {
+                keys[id] = rand.nextDouble() * 100;
+                heap.update(id, keys[id]);
+                queue.removeIf(e -> e[0] == id);
+                queue.add(new double[]{id, keys[id]});
+            } else {
+                keys[id] = rand.nextDouble() * 100;
+                heap.push(id, keys[id]);
+                queue.add(new double[]{id, keys[id]});
+            }
+            assertEquals(queue.size(), heap.size());
+        }
+    }
+}
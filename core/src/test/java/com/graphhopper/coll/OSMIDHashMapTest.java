@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OSMIDHashMapTest {
+    private final File location = new File("./target/tmp-osmid-hash-map");
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(location);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        OSMIDHashMap map = new OSMIDHashMap(new RAMDirectory(), DAType.RAM, "map", -1);
+        assertEquals(-1, map.put(9, 0));
+        assertEquals(-1, map.put(-10, -50));
+        assertEquals(-1, map.put(0, 2));
+        assertEquals(-1, map.put(Long.MAX_VALUE, 3));
+        assertEquals(4, map.getSize());
+
+        assertEquals(0, map.get(9));
+        assertEquals(-50, map.get(-10));
+        assertEquals(2, map.get(0));
+        assertEquals(3, map.get(Long.MAX_VALUE));
+        assertEquals(-1, map.get(10));
+        assertEquals(-1, map.get(Long.MIN_VALUE));
+
+        // overwriting does not change the size
+        assertEquals(0, map.put(9, 7));
+        assertEquals(7, map.get(9));
+        assertEquals(4, map.getSize());
+
+        try {
+            map.put(Long.MIN_VALUE, 1);
+            fail("Long.MIN_VALUE is not supported");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testGrow() {
+        OSMIDHashMap map = new OSMIDHashMap(new RAMDirectory(), DAType.RAM, "map", -1);
+        Random rand = new Random(0);
+        long[] keys = new long[200_000];
+        for (int i = 0; i < keys.length; i++) {
+            // OSM ids are often close to each other
+            keys[i] = i % 2 == 0 ? 4_000_000_000L + i : rand.nextLong();
+            map.put(keys[i], i);
+        }
+        assertEquals(keys.length, map.getSize());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, map.get(keys[i]));
+        }
+        assertEquals(-1, map.get(4_000_000_001L));
+    }
+
+    @Test
+    public void testMMapIsRemoved() {
+        GHDirectory dir = new GHDirectory(location.getAbsolutePath(), DAType.MMAP);
+        dir.create();
+        OSMIDHashMap map = new OSMIDHashMap(dir, DAType.MMAP, "map", -1);
+        for (int i = 0; i < 100_000; i++) {
+            map.put(i * 3L, i);
+        }
+        assertEquals(33_333, map.get(99_999));
+        assertEquals(-1, map.get(100_000));
+        assertTrue(map.getMemoryUsage() >= 0);
+        map.remove();
+        File[] files = location.listFiles();
+        assertEquals(0, files == null ? 0 : files.length);
+    }
+}
@@ -21,9 +21,9 @@ import org.junit.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * @author Peter Karich
@@ -48,4 +48,29 @@ public class OSMElementTest {
         instance.setTags(null);
         assertFalse(instance.hasTag("test", "xy"));
     }
+
+    @Test
+    public void testTagDecoder() {
+        final AtomicInteger decoded = new AtomicInteger();
+        ReaderNode node = new ReaderNode(1, 50, 10);
+        node.setTagDecoder(new ReaderElement.TagDecoder() {
+            @Override
+            public void decodeTags(ReaderElement element) {
+                decoded.incrementAndGet();
+                element.setTag("barrier", "gate");
+                element.setTag("ele", "100");
+            }
+        });
+        assertEquals(0, decoded.get());
+        assertTrue(node.hasTag("barrier", "gate"));
+        assertEquals(100, node.getEle(), .1);
+        node.setTag("access", "no");
+        assertEquals(1, decoded.get());
+        assertEquals("no", node.getTag("access"));
+
+        node.clearTags();
+        assertFalse(node.hasTags());
+        node.removeTag("access");
+        assertEquals(1, decoded.get());
+    }
 }
@@ -130,4 +130,40 @@ public class BridgeElevationInterpolatorTest extends EdgeElevationInterpolatorTe
         assertEquals(18, edge17PointList.getEle(4), PRECISION);
         assertEquals(20, edge17PointList.getEle(5), PRECISION);
     }
+
+    @Test
+    public void interpolatesIndependentBridgesInParallel() {
+        // every bridge is a-0-1-2-3-b, where only the edges between 0 and 3 are bridges
+        int bridges = 50;
+        NodeAccess na = graph.getNodeAccess();
+        for (int i = 0; i < bridges; i++) {
+            int a = 6 * i;
+            double lat = i * 0.01;
+            na.setNode(a, lat, -0.001, 0);
+            na.setNode(a + 1, lat, 0, 0);
+            na.setNode(a + 2, lat, 0.001, 1000);
+            na.setNode(a + 3, lat, 0.002, 1000);
+            na.setNode(a + 4, lat, 0.003, 30);
+            na.setNode(a + 5, lat, 0.004, 30);
+            for (int node = a; node < a + 5; node++) {
+                boolean bridge = node > a && node < a + 4;
+                EdgeIteratorState edge = graph.edge(node, node + 1).setDistance(100);
+                edge.setFlags(encodingManager.handleWayTags(bridge ? interpolatableWay : normalWay, ACCEPT_WAY, 0));
+                if (node == a + 2)
+                    edge.setWayGeometry(Helper.createPointList3D(lat, 0.0015, 1000));
+            }
+        }
+
+        edgeElevationInterpolator.setThreads(4).execute();
+        for (int i = 0; i < bridges; i++) {
+            int a = 6 * i;
+            assertEquals(0, na.getElevation(a + 1), .1);
+            assertEquals(10, na.getElevation(a + 2), .1);
+            assertEquals(20, na.getElevation(a + 3), .1);
+            assertEquals(30, na.getElevation(a + 4), .1);
+            PointList pillars = graph.getEdgeIteratorState(5 * i + 2, a + 3).fetchWayGeometry(0);
+            assertEquals(1, pillars.size());
+            assertEquals(15, pillars.getEle(0), .1);
+        }
+    }
 }
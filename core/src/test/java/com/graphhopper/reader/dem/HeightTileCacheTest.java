@@ -0,0 +1,161 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HeightTileCacheTest {
+    private final RAMDirectory dir = new RAMDirectory();
+    private final List<Integer> loaded = new ArrayList<>();
+    private final List<Integer> unloaded = new ArrayList<>();
+
+    private HeightTileCache<Integer> createCache(int maxTiles) {
+        return new HeightTileCache<>(maxTiles, new HeightTileCache.TileLoader<Integer>() {
+            @Override
+            public HeightTile load(Integer key, double lat, double lon) {
+                synchronized (loaded) {
+                    loaded.add(key);
+                }
+                // every tile covers one degree and has the height of its key
+                HeightTile tile = new HeightTile((int) lat, (int) lon, 10, 10, 1e7, 1, 1);
+                DataAccess heights;
+                synchronized (dir) {
+                    heights = dir.find("dem" + key);
+                }
+                heights.create(2 * 10 * 10);
+                for (int i = 0; i < 10 * 10; i++) {
+                    heights.setShort(2 * i, (short) (int) key);
+                }
+                tile.setHeights(heights);
+                return tile;
+            }
+
+            @Override
+            public void unload(HeightTile tile) {
+                unloaded.add(Integer.parseInt(tile.getHeights().getName().substring(3)));
+                synchronized (dir) {
+                    dir.close(tile.getHeights());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        HeightTileCache<Integer> cache = createCache(2);
+        assertEquals(1, cache.getHeight(1, 1.5, 1.5), 1e-3);
+        assertEquals(2, cache.getHeight(2, 2.5, 2.5), 1e-3);
+        // tile 1 is used again and so tile 2 is the least recently used one
+        assertEquals(1, cache.getHeight(1, 1.2, 1.2), 1e-3);
+        assertEquals(3, cache.getHeight(3, 3.5, 3.5), 1e-3);
+        assertEquals(2, cache.getSize());
+        assertEquals(Integer.valueOf(2), unloaded.get(0));
+
+        // the unloaded tile is loaded again
+        assertEquals(2, cache.getHeight(2, 2.5, 2.5), 1e-3);
+        assertEquals(4, loaded.size());
+        assertEquals(Integer.valueOf(1), unloaded.get(1));
+
+        cache.setMaxTiles(1);
+        assertEquals(1, cache.getSize());
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(4, unloaded.size());
+    }
+
+    @Test
+    public void testNoData() {
+        HeightTileCache<Integer> cache = new HeightTileCache<>(1, new HeightTileCache.TileLoader<Integer>() {
+            @Override
+            public HeightTile load(Integer key, double lat, double lon) {
+                loaded.add(key);
+                return null;
+            }
+
+            @Override
+            public void unload(HeightTile tile) {
+                fail("a missing tile cannot be unloaded");
+            }
+        });
+        assertEquals(0, cache.getHeight(1, 1.5, 1.5), 1e-3);
+        assertEquals(0, cache.getHeight(1, 1.5, 1.5), 1e-3);
+        assertEquals(1, loaded.size());
+        cache.clear();
+    }
+
+    @Test
+    public void testConcurrentGetHeight() throws Exception {
+        final HeightTileCache<Integer> cache = createCache(4);
+        final AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int offset = t;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        int key = (i + offset) % 6;
+                        if (cache.getHeight(key, key + 0.5, key + 0.5) != key)
+                            errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(0, errors.get());
+        assertTrue(cache.getSize() <= 4);
+        assertEquals(loaded.size() - cache.getSize(), unloaded.size());
+    }
+
+    @Test
+    public void testLoadOnce() throws Exception {
+        final HeightTileCache<Integer> cache = createCache(4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Double>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(new Callable<Double>() {
+                @Override
+                public Double call() throws Exception {
+                    start.await();
+                    return cache.getHeight(5, 5.5, 5.5);
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Double> future : futures) {
+            assertEquals(5, future.get(30, TimeUnit.SECONDS), 1e-3);
+        }
+        executor.shutdown();
+        assertEquals(1, loaded.size());
+    }
+}
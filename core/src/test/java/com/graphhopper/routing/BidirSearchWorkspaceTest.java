@@ -0,0 +1,70 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.storage.SPTEntry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BidirSearchWorkspaceTest {
+
+    @Test
+    public void testPool() {
+        BidirSearchWorkspace first = BidirSearchWorkspace.acquire(100);
+        BidirSearchWorkspace second = BidirSearchWorkspace.acquire(100);
+        assertNotSame(first, second);
+        first.bestWeightMapFrom.put(10, new SPTEntry(10, 1));
+        first.openSetFrom.push(0, 1);
+        first.release();
+        assertTrue(first.bestWeightMapFrom.isEmpty());
+        assertTrue(first.openSetFrom.isEmpty());
+        second.release();
+
+        BidirSearchWorkspace workspace = BidirSearchWorkspace.acquire(100);
+        assertTrue(workspace == first || workspace == second);
+        workspace.release();
+    }
+
+    @Test
+    public void testSparseWorkspaceIfPoolIsInUse() {
+        List<BidirSearchWorkspace> workspaces = new ArrayList<>();
+        for (int i = 0; i < BidirSearchWorkspace.POOL_SIZE; i++) {
+            BidirSearchWorkspace workspace = BidirSearchWorkspace.acquire(5000);
+            assertTrue(workspace.isPooled());
+            assertTrue(workspace.bestWeightMapFrom.getCapacity() >= 5000);
+            workspaces.add(workspace);
+        }
+
+        BidirSearchWorkspace sparse = BidirSearchWorkspace.acquire(5000);
+        assertFalse(sparse.isPooled());
+        sparse.bestWeightMapFrom.put(4999, new SPTEntry(0, 1));
+        assertEquals(1, sparse.bestWeightMapFrom.get(4999).weight, 1e-6);
+        assertTrue(sparse.bestWeightMapFrom.getCapacity() < 5000);
+        sparse.release();
+        assertEquals(0, BidirSearchWorkspace.getPooled());
+
+        for (BidirSearchWorkspace workspace : workspaces) {
+            workspace.release();
+        }
+        assertEquals(BidirSearchWorkspace.POOL_SIZE, BidirSearchWorkspace.getPooled());
+    }
+}
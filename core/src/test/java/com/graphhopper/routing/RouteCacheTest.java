@@ -0,0 +1,150 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.routing.util.Bike2WeightFlagEncoder;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RouteCacheTest {
+    private LocationIndex index;
+
+    @Before
+    public void setUp() {
+        GraphHopperStorage graph = new GraphBuilder(EncodingManager.create(new Bike2WeightFlagEncoder())).create();
+        graph.edge(0, 1);
+        graph.edge(1, 2);
+        GHUtility.updateDistancesFor(graph, 0, 50, 10);
+        GHUtility.updateDistancesFor(graph, 1, 50, 10.01);
+        GHUtility.updateDistancesFor(graph, 2, 50.01, 10.01);
+        index = new LocationIndexTree(graph, new RAMDirectory()).prepareIndex();
+    }
+
+    @Test
+    public void testKeyUsesSnappedLocations() {
+        GHRequest request = new GHRequest(new GHPoint(50.001, 10.005), new GHPoint(50.005, 10.011)).setVehicle("bike2");
+        // other coordinates that are snapped to the same locations
+        GHRequest otherRequest = new GHRequest(new GHPoint(49.999, 10.005), new GHPoint(50.005, 10.009)).setVehicle("bike2");
+        assertEquals(RouteCache.createKey(request, lookup(request), 0), RouteCache.createKey(otherRequest, lookup(otherRequest), 0));
+
+        GHRequest movedRequest = new GHRequest(new GHPoint(50.001, 10.006), new GHPoint(50.005, 10.011)).setVehicle("bike2");
+        assertNotEquals(RouteCache.createKey(request, lookup(request), 0), RouteCache.createKey(movedRequest, lookup(movedRequest), 0));
+
+        GHRequest shortestRequest = new GHRequest(new GHPoint(50.001, 10.005), new GHPoint(50.005, 10.011)).setVehicle("bike2");
+        shortestRequest.setWeighting("shortest");
+        assertNotEquals(RouteCache.createKey(request, lookup(request), 0), RouteCache.createKey(shortestRequest, lookup(shortestRequest), 0));
+
+        GHRequest headingRequest = new GHRequest(Arrays.asList(new GHPoint(50.001, 10.005), new GHPoint(50.005, 10.011)),
+                Arrays.asList(90d, Double.NaN)).setVehicle("bike2");
+        assertNotEquals(RouteCache.createKey(request, lookup(request), 0), RouteCache.createKey(headingRequest, lookup(headingRequest), 0));
+
+        // the graph was changed
+        assertNotEquals(RouteCache.createKey(request, lookup(request), 0), RouteCache.createKey(request, lookup(request), 1));
+    }
+
+    @Test
+    public void testLRU() {
+        RouteCache cache = new RouteCache(2);
+        RouteCache.Key key1 = createKey(new GHPoint(50.001, 10.001), new GHPoint(50.005, 10.011));
+        RouteCache.Key key2 = createKey(new GHPoint(50.001, 10.002), new GHPoint(50.005, 10.011));
+        RouteCache.Key key3 = createKey(new GHPoint(50.001, 10.003), new GHPoint(50.005, 10.011));
+        assertNull(cache.get(key1));
+        cache.put(key1, createPaths(1));
+        cache.put(key2, createPaths(2));
+        assertEquals(1, cache.get(key1).get(0).getDistance(), 1e-6);
+        // key2 is the least recently used entry
+        cache.put(key3, createPaths(3));
+        assertEquals(2, cache.getSize());
+        assertNull(cache.get(key2));
+        assertEquals(1, cache.get(key1).get(0).getDistance(), 1e-6);
+        assertEquals(3, cache.get(key3).get(0).getDistance(), 1e-6);
+
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getInvalidations());
+        assertNull(cache.get(key1));
+    }
+
+    @Test
+    public void testCopies() {
+        RouteCache cache = new RouteCache(2);
+        RouteCache.Key key = createKey(new GHPoint(50.001, 10.001), new GHPoint(50.005, 10.011));
+        PathWrapper path = new PathWrapper();
+        PointList points = new PointList();
+        points.add(50, 10);
+        points.add(50.01, 10.01);
+        path.setPoints(points);
+        PathDetail detail = new PathDetail(5L);
+        detail.setFirst(0);
+        detail.setLast(1);
+        path.addPathDetails(Collections.singletonMap("edge_id", Collections.singletonList(detail)));
+        cache.put(key, Collections.singletonList(path));
+
+        // the response that was cached and the responses of the hits can be changed
+        points.add(50.02, 10.02);
+        detail.setLast(2);
+        PathWrapper cachedPath = cache.get(key).get(0);
+        assertNotSame(path, cachedPath);
+        assertEquals(2, cachedPath.getPoints().size());
+        assertEquals(1, cachedPath.getPathDetails().get("edge_id").get(0).getLast());
+        cachedPath.getPoints().add(50.02, 10.02);
+        cachedPath.getPathDetails().get("edge_id").get(0).setLast(2);
+
+        cachedPath = cache.get(key).get(0);
+        assertEquals(2, cachedPath.getPoints().size());
+        assertEquals(1, cachedPath.getPathDetails().get("edge_id").get(0).getLast());
+    }
+
+    private static List<PathWrapper> createPaths(double distance) {
+        return Collections.singletonList(new PathWrapper().setDistance(distance));
+    }
+
+    private RouteCache.Key createKey(GHPoint from, GHPoint to) {
+        GHRequest request = new GHRequest(from, to).setVehicle("bike2");
+        return RouteCache.createKey(request, lookup(request), 0);
+    }
+
+    private List<QueryResult> lookup(GHRequest request) {
+        return Arrays.asList(index.findClosest(request.getPoints().get(0).lat, request.getPoints().get(0).lon, EdgeFilter.ALL_EDGES),
+                index.findClosest(request.getPoints().get(1).lat, request.getPoints().get(1).lon, EdgeFilter.ALL_EDGES));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.procedures.IntObjectProcedure;
+import com.graphhopper.storage.SPTEntry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SPTEntryMapTest {
+
+    @Test
+    public void testPutAndGet() {
+        checkPutAndGet(new SPTEntryMap(2));
+        checkPutAndGet(new SPTEntryMap(2, true));
+    }
+
+    private void checkPutAndGet(SPTEntryMap map) {
+        SPTEntry entry = new SPTEntry(3, 1);
+        assertEquals(0, map.put(3, entry));
+        assertEquals(1, map.put(50, new SPTEntry(50, 2)));
+        assertSame(entry, map.get(3));
+        assertNull(map.get(4));
+        assertNull(map.get(1000));
+        assertEquals(2, map.size());
+
+        // replace keeps the slot
+        SPTEntry other = new SPTEntry(3, 0.5);
+        assertEquals(0, map.put(3, other));
+        assertSame(other, map.get(3));
+        assertEquals(2, map.size());
+
+        // entries without a key are not visible via the map
+        int slot = map.add(new SPTEntry(7, 0));
+        assertEquals(2, slot);
+        assertEquals(2, map.size());
+        assertNull(map.get(7));
+        assertEquals(7, map.getBySlot(slot).adjNode);
+    }
+
+    @Test
+    public void testForEachAndClear() {
+        SPTEntryMap map = new SPTEntryMap(10);
+        map.put(5, new SPTEntry(5, 1));
+        map.add(new SPTEntry(6, 1));
+        map.put(2, new SPTEntry(2, 1));
+        final List<Integer> keys = new ArrayList<>();
+        map.forEach(new IntObjectProcedure<SPTEntry>() {
+            @Override
+            public void apply(int key, SPTEntry value) {
+                assertEquals(key, value.adjNode);
+                keys.add(key);
+            }
+        });
+        assertEquals(Arrays.asList(5, 2), keys);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+        assertEquals(0, map.getSlots());
+        assertEquals(0, map.put(2, new SPTEntry(2, 3)));
+        assertEquals(3, map.get(2).weight, 1e-6);
+        assertNull(map.get(5));
+    }
+}
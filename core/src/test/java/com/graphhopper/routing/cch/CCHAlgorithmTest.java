@@ -0,0 +1,205 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.cch;
+
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.Bike2WeightFlagEncoder;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.BlockAreaWeighting;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphEdgeIdFinder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.shapes.Circle;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CCHAlgorithmTest {
+    private FlagEncoder encoder;
+    private GraphHopperStorage graph;
+
+    @Before
+    public void setUp() {
+        encoder = new Bike2WeightFlagEncoder();
+        graph = new GraphHopperStorage(new RAMDirectory(), EncodingManager.create(encoder), false);
+        graph.create(1000);
+    }
+
+    private void buildRandomGraph(Random rand, int nodes, double meanDegree, double pBothDir) {
+        GHUtility.buildRandomGraph(graph, rand, nodes, meanDegree, false, false, null, 0, pBothDir, 0.5);
+        // different speeds per direction, the encoder cannot store the speeds of GHUtility
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            iter.set(encoder.getAverageSpeedEnc(), 4 + rand.nextInt(26));
+            iter.setReverse(encoder.getAverageSpeedEnc(), 4 + rand.nextInt(26));
+        }
+    }
+
+    private CCHTopology createTopology() {
+        CCHTopology topology = new CCHTopology(graph, new RAMDirectory());
+        topology.create(1000);
+        topology.build(new NestedDissectionOrdering(graph).setLeafSize(4).calcRankToNode());
+        return topology;
+    }
+
+    @Test
+    public void testSmallGraph() {
+        // 0-1-2
+        // |   |
+        // 3-4-5
+        graph.edge(0, 1, 1, true);
+        graph.edge(1, 2, 1, true);
+        graph.edge(0, 3, 1, true);
+        graph.edge(3, 4, 1, true);
+        graph.edge(4, 5, 1, true);
+        graph.edge(2, 5, 5, false);
+        for (int i = 0; i < 6; i++) {
+            graph.getNodeAccess().setNode(i, i < 3 ? 1 : 0, i % 3);
+        }
+        Weighting weighting = new ShortestWeighting(encoder);
+        CCHMetric metric = CCHMetric.customize(createTopology(), weighting);
+
+        Path path = new CCHAlgorithm(graph, metric, weighting).calcPath(2, 5);
+        assertTrue(path.isFound());
+        assertEquals(5, path.getDistance(), 1e-6);
+        assertEquals(GHUtility.asSet(2, 5), GHUtility.asSet(path.calcNodes().toArray()));
+
+        // the edge 2-5 is one-way
+        path = new CCHAlgorithm(graph, metric, weighting).calcPath(5, 2);
+        assertTrue(path.isFound());
+        assertEquals(5, path.getDistance(), 1e-6);
+        assertEquals("[5, 4, 3, 0, 1, 2]", path.calcNodes().toString());
+
+        path = new CCHAlgorithm(graph, metric, weighting).calcPath(3, 3);
+        assertTrue(path.isFound());
+        assertEquals(0, path.getEdgeCount());
+    }
+
+    @Test
+    public void testRandomGraphs() {
+        Weighting weighting = new FastestWeighting(encoder);
+        for (long seed = 0; seed < 5; seed++) {
+            setUp();
+            Random rand = new Random(seed);
+            buildRandomGraph(rand, 200, 2.2, 0.8);
+            CCHMetric metric = CCHMetric.customize(createTopology(), weighting);
+            for (int i = 0; i < 100; i++) {
+                int from = rand.nextInt(graph.getNodes());
+                int to = rand.nextInt(graph.getNodes());
+                compare(graph, metric, weighting, from, to, "seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    public void testQueryGraph() {
+        Weighting weighting = new FastestWeighting(encoder);
+        Random rand = new Random(1);
+        buildRandomGraph(rand, 100, 2.5, 0.9);
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+        CCHMetric metric = CCHMetric.customize(createTopology(), weighting);
+        for (int i = 0; i < 100; i++) {
+            QueryResult fromQR = index.findClosest(49.4 + rand.nextDouble() * 0.01, 9.7 + rand.nextDouble() * 0.01, EdgeFilter.ALL_EDGES);
+            QueryResult toQR = index.findClosest(49.4 + rand.nextDouble() * 0.01, 9.7 + rand.nextDouble() * 0.01, EdgeFilter.ALL_EDGES);
+            if (!fromQR.isValid() || !toQR.isValid())
+                continue;
+            QueryGraph queryGraph = QueryGraph.lookup(graph, fromQR, toQR);
+            compare(queryGraph, metric, weighting, fromQR.getClosestNode(), toQR.getClosestNode(), "query " + i);
+        }
+    }
+
+    @Test
+    public void testBlockArea() {
+        Weighting weighting = new FastestWeighting(encoder);
+        Random rand = new Random(2);
+        buildRandomGraph(rand, 200, 2.5, 0.9);
+        CCHMetric metric = CCHMetric.customize(createTopology(), weighting);
+
+        GraphEdgeIdFinder.BlockArea blockArea = new GraphEdgeIdFinder.BlockArea(graph);
+        for (int i = 0; i < 20; i++) {
+            blockArea.add(rand.nextInt(graph.getAllEdges().length()));
+        }
+        Weighting blockWeighting = new BlockAreaWeighting(weighting, blockArea);
+        CCHMetric incremental = metric.customize(blockWeighting, blockArea.getBlockedEdges());
+        CCHMetric full = CCHMetric.customize(metric.getTopology(), blockWeighting);
+        for (int arc = 0; arc < metric.getTopology().getArcs(); arc++) {
+            assertEquals(full.getUpWeight(arc), incremental.getUpWeight(arc), 1e-6);
+            assertEquals(full.getDownWeight(arc), incremental.getDownWeight(arc), 1e-6);
+        }
+        // only the changed arcs are stored for a request
+        assertTrue(incremental.getStoredArcs() > 0);
+        assertTrue(incremental.getStoredArcs() < metric.getStoredArcs());
+        for (int i = 0; i < 100; i++) {
+            compare(graph, incremental, blockWeighting, rand.nextInt(graph.getNodes()), rand.nextInt(graph.getNodes()), "block " + i);
+        }
+
+        // the edges of a shape are found via the location index
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+        blockArea = new GraphEdgeIdFinder.BlockArea(graph);
+        blockArea.add(new Circle(49.405, 9.705, 200));
+        blockWeighting = new BlockAreaWeighting(weighting, blockArea);
+        GHIntHashSet changedEdges = CCHAlgoFactoryDecorator.findBlockedEdges(graph, index, blockArea);
+        assertFalse(changedEdges.isEmpty());
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            boolean blocked = blockArea.contains(iter) || blockArea.contains(graph.getEdgeIteratorState(iter.getEdge(), iter.getBaseNode()));
+            assertEquals("edge " + iter.getEdge(), blocked, changedEdges.contains(iter.getEdge()));
+        }
+        incremental = metric.customize(blockWeighting, changedEdges);
+        full = CCHMetric.customize(metric.getTopology(), blockWeighting);
+        for (int arc = 0; arc < metric.getTopology().getArcs(); arc++) {
+            assertEquals(full.getUpWeight(arc), incremental.getUpWeight(arc), 1e-6);
+            assertEquals(full.getDownWeight(arc), incremental.getDownWeight(arc), 1e-6);
+        }
+        for (int i = 0; i < 100; i++) {
+            compare(graph, incremental, blockWeighting, rand.nextInt(graph.getNodes()), rand.nextInt(graph.getNodes()), "shape " + i);
+        }
+    }
+
+    private void compare(com.graphhopper.storage.Graph g, CCHMetric metric, Weighting weighting, int from, int to, String msg) {
+        RoutingAlgorithm dijkstra = new Dijkstra(g, weighting, TraversalMode.NODE_BASED);
+        Path expected = dijkstra.calcPath(from, to);
+        Path path = new CCHAlgorithm(g, metric, weighting).calcPath(from, to);
+        msg += ", " + from + "->" + to;
+        assertEquals(msg, expected.isFound(), path.isFound());
+        if (!expected.isFound())
+            return;
+        assertEquals(msg, expected.getWeight(), path.getWeight(), 1e-3 * Math.max(1, expected.getWeight()));
+        assertEquals(msg, path.getEdgeCount() + 1, path.calcNodes().size());
+        assertEquals(msg, to, path.calcNodes().get(path.calcNodes().size() - 1));
+    }
+}
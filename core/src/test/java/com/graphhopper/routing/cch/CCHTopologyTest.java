@@ -0,0 +1,97 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.cch;
+
+import com.graphhopper.routing.util.Bike2WeightFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CCHTopologyTest {
+    private GraphHopperStorage graph;
+
+    @Before
+    public void setUp() {
+        Bike2WeightFlagEncoder encoder = new Bike2WeightFlagEncoder();
+        graph = new GraphHopperStorage(new RAMDirectory(), EncodingManager.create(encoder), false);
+        graph.create(1000);
+        GHUtility.buildRandomGraph(graph, new Random(0), 300, 2.5, true, false, null, 0, 0.8, 0.5);
+    }
+
+    @Test
+    public void testOrderContainsAllNodes() {
+        int[] rankToNode = new NestedDissectionOrdering(graph).setLeafSize(8).calcRankToNode();
+        int[] sorted = rankToNode.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(i, sorted[i]);
+        }
+    }
+
+    @Test
+    public void testUpperNeighborsAreConnected() {
+        CCHTopology topology = new CCHTopology(graph, new RAMDirectory());
+        topology.create(1000);
+        topology.build(new NestedDissectionOrdering(graph).calcRankToNode());
+        for (int rank = 0; rank < topology.getNodes(); rank++) {
+            for (int arc = topology.getUpFirst(rank); arc < topology.getUpFirst(rank + 1); arc++) {
+                int head = topology.getUpHead(arc);
+                assertTrue(head > rank);
+                assertEquals(rank, topology.getTail(arc));
+                // the parent in the elimination tree is connected to all other upper neighbors
+                if (head != topology.getParent(rank))
+                    assertTrue(topology.findArcByRank(topology.getParent(rank), head) >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        String fileStr = "./target/tmp-cch";
+        Helper.removeDir(new File(fileStr));
+        Directory dir = new RAMDirectory(fileStr, true).create();
+        CCHTopology topology = new CCHTopology(graph, dir);
+        topology.create(1000);
+        topology.build(new NestedDissectionOrdering(graph).calcRankToNode());
+        topology.flush();
+        topology.close();
+
+        CCHTopology loaded = new CCHTopology(graph, new RAMDirectory(fileStr, true));
+        assertTrue(loaded.loadExisting());
+        assertEquals(topology.getArcs(), loaded.getArcs());
+        for (int rank = 0; rank < topology.getNodes(); rank++) {
+            assertEquals(topology.getNode(rank), loaded.getNode(rank));
+            assertEquals(topology.getParent(rank), loaded.getParent(rank));
+        }
+        for (int arc = 0; arc < topology.getArcs(); arc++) {
+            assertEquals(topology.getArcEdgeFirst(arc), loaded.getArcEdgeFirst(arc));
+        }
+        Helper.removeDir(new File(fileStr));
+    }
+}
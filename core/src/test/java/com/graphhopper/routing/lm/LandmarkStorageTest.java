@@ -186,6 +186,23 @@ public class LandmarkStorageTest {
         assertEquals("[1, 0]", Arrays.toString(storage.getLandmarks(1)));
     }
 
+    @Test
+    public void testMoreLandmarksThanNodes() {
+        // the same node is picked as landmark more than once and is then used as start node more than once
+        for (int node = 0; node < 2; node++) {
+            ghStorage.edge(node, node + 1).setDistance(10).
+                    set(encoder.getAccessEnc(), true).setReverse(encoder.getAccessEnc(), true).
+                    set(encoder.getAverageSpeedEnc(), 60);
+        }
+
+        LandmarkStorage storage = new LandmarkStorage(ghStorage, new RAMDirectory(), new FastestWeighting(encoder), 8);
+        storage.setMinimumNodes(2);
+        storage.createLandmarks();
+
+        assertEquals(2, storage.getSubnetworksWithLandmarks());
+        assertEquals(8, storage.getLandmarks(1).length);
+    }
+
     @Test
     public void testWithBorderBlocking() {
         AbstractRoutingAlgorithmTester.initBiGraph(ghStorage);
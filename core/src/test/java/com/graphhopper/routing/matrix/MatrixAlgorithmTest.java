@@ -0,0 +1,234 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.matrix;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.Bike2WeightFlagEncoder;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.GHUtility;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MatrixAlgorithmTest {
+    private Bike2WeightFlagEncoder encoder;
+    private Weighting weighting;
+    private GraphHopperStorage graph;
+    private CHGraph chGraph;
+    private final Random rand = new Random(0);
+
+    @Before
+    public void setUp() {
+        encoder = new Bike2WeightFlagEncoder();
+        EncodingManager em = EncodingManager.create(encoder);
+        weighting = new FastestWeighting(encoder);
+        CHProfile chProfile = CHProfile.nodeBased(weighting);
+        graph = new GraphBuilder(em).setCHProfiles(chProfile).create();
+        GHUtility.buildRandomGraph(graph, rand, 300, 2.2, false, false, null, 0, 0.8, 0.5);
+        // different speeds per direction, the encoder cannot store the speeds of GHUtility
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            iter.set(encoder.getAverageSpeedEnc(), 4 + rand.nextInt(26));
+            iter.setReverse(encoder.getAverageSpeedEnc(), 4 + rand.nextInt(26));
+        }
+        graph.freeze();
+        chGraph = graph.getCHGraph(chProfile);
+        PrepareContractionHierarchies.fromGraphHopperStorage(graph, chProfile).doWork();
+    }
+
+    @Test
+    public void testTowerNodes() {
+        int[] fromNodes = randomNodes(graph.getNodes(), 7);
+        int[] toNodes = randomNodes(graph.getNodes(), 9);
+        // a connection from a node to itself
+        toNodes[0] = fromNodes[0];
+
+        compare(graph, new OneToManyMatrixAlgorithm(graph, weighting).setThreads(3), fromNodes, toNodes);
+        compare(graph, new CHBucketMatrixAlgorithm(chGraph, chGraph, weighting).setThreads(3), fromNodes, toNodes);
+    }
+
+    @Test
+    public void testQueryGraph() {
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+        List<QueryResult> fromResults = new ArrayList<>(), toResults = new ArrayList<>();
+        List<QueryResult> chFromResults = new ArrayList<>(), chToResults = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            double lat = 49.4 + rand.nextDouble() * 0.01, lon = 9.7 + rand.nextDouble() * 0.01;
+            List<QueryResult> results = i < 4 ? fromResults : toResults;
+            List<QueryResult> chResults = i < 4 ? chFromResults : chToResults;
+            results.add(index.findClosest(lat, lon, EdgeFilter.ALL_EDGES));
+            chResults.add(index.findClosest(lat, lon, EdgeFilter.ALL_EDGES));
+        }
+
+        QueryGraph queryGraph = QueryGraph.lookup(graph, concat(fromResults, toResults));
+        compare(queryGraph, new OneToManyMatrixAlgorithm(queryGraph, weighting).setThreads(2),
+                closestNodes(fromResults), closestNodes(toResults));
+        QueryGraph chQueryGraph = QueryGraph.lookup(chGraph, concat(chFromResults, chToResults));
+        compare(queryGraph, new CHBucketMatrixAlgorithm(chQueryGraph, chGraph, weighting).setThreads(2),
+                closestNodes(chFromResults), closestNodes(chToResults));
+    }
+
+    @Test
+    public void testWeightsOnly() {
+        int[] nodes = randomNodes(graph.getNodes(), 5);
+        checkWeightsOnly(new CHBucketMatrixAlgorithm(chGraph, chGraph, weighting), nodes);
+        checkWeightsOnly(new OneToManyMatrixAlgorithm(graph, weighting), nodes);
+    }
+
+    private void checkWeightsOnly(AbstractMatrixAlgorithm algo, int[] nodes) {
+        DistanceMatrix full = algo.calcMatrix(nodes, nodes, true, true);
+        DistanceMatrix weights = algo.calcMatrix(nodes, nodes, false, false);
+        DistanceMatrix distances = algo.calcMatrix(nodes, nodes, false, true);
+        DistanceMatrix times = algo.calcMatrix(nodes, nodes, true, false);
+        for (int from = 0; from < nodes.length; from++) {
+            for (int to = 0; to < nodes.length; to++) {
+                String msg = algo.getName() + " " + nodes[from] + "->" + nodes[to];
+                assertEquals(msg, full.getWeight(from, to), weights.getWeight(from, to), 1e-9);
+                assertEquals(msg, 0, weights.getTime(from, to));
+                assertEquals(msg, 0, weights.getDistance(from, to), 1e-9);
+                assertEquals(msg, 0, distances.getTime(from, to));
+                assertEquals(msg, full.getDistance(from, to), distances.getDistance(from, to), 1e-9);
+                assertEquals(msg, full.getTime(from, to), times.getTime(from, to));
+                assertEquals(msg, 0, times.getDistance(from, to), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testReuseWorkspaces() {
+        int[] fromNodes = randomNodes(graph.getNodes(), 10);
+        int[] toNodes = randomNodes(graph.getNodes(), 5);
+        OneToManyMatrixAlgorithm algo = new OneToManyMatrixAlgorithm(graph, weighting).setThreads(100);
+        compare(graph, algo, fromNodes, toNodes);
+        // the threads are limited and every block returned its workspace
+        assertTrue(OneToManyMatrixAlgorithm.getPooledWorkspaces() >= 1);
+        assertTrue(OneToManyMatrixAlgorithm.getPooledWorkspaces() <= OneToManyMatrixAlgorithm.MAX_THREADS);
+
+        // the arrays of the previous matrix are reused for another graph, e.g. a QueryGraph with more nodes
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+        List<QueryResult> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(index.findClosest(49.4 + rand.nextDouble() * 0.01, 9.7 + rand.nextDouble() * 0.01, EdgeFilter.ALL_EDGES));
+        }
+        QueryGraph queryGraph = QueryGraph.lookup(graph, results);
+        compare(queryGraph, new OneToManyMatrixAlgorithm(queryGraph, weighting).setThreads(2),
+                closestNodes(results), closestNodes(results));
+        compare(graph, algo, toNodes, fromNodes);
+    }
+
+    @Test
+    public void testFailingBlockWaitsForOtherBlocks() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        AbstractMatrixAlgorithm algo = new OneToManyMatrixAlgorithm(graph, weighting) {
+            @Override
+            public DistanceMatrix calcMatrix(int[] fromNodes, int[] toNodes, boolean calcTimes, boolean calcDistances) {
+                runInBlocks(fromNodes.length, new BlockTask() {
+                    @Override
+                    public void run(int start, int end) {
+                        // the block of the calling thread
+                        if (start == 0)
+                            throw new IllegalStateException("block failed");
+                        running.incrementAndGet();
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                        finished.incrementAndGet();
+                        running.decrementAndGet();
+                    }
+                });
+                return null;
+            }
+        }.setThreads(4);
+
+        try {
+            algo.calcMatrix(new int[8], new int[1], false, false);
+            fail("the exception of the block should be thrown");
+        } catch (IllegalStateException ex) {
+            assertEquals("block failed", ex.getMessage());
+        }
+        // the other blocks were either skipped or are finished when calcMatrix returns
+        assertEquals(0, running.get());
+        assertTrue(finished.get() <= 3);
+    }
+
+    private void compare(Graph g, AbstractMatrixAlgorithm algo, int[] fromNodes, int[] toNodes) {
+        DistanceMatrix matrix = algo.calcMatrix(fromNodes, toNodes, true, true);
+        assertEquals(fromNodes.length, matrix.getFromCount());
+        assertEquals(toNodes.length, matrix.getToCount());
+        int connected = 0;
+        for (int from = 0; from < fromNodes.length; from++) {
+            for (int to = 0; to < toNodes.length; to++) {
+                Path path = new Dijkstra(g, weighting, TraversalMode.NODE_BASED).calcPath(fromNodes[from], toNodes[to]);
+                String msg = algo.getName() + " " + fromNodes[from] + "->" + toNodes[to];
+                assertEquals(msg, path.isFound(), matrix.isConnected(from, to));
+                if (!path.isFound())
+                    continue;
+                connected++;
+                // shortcut weights are stored with a limited precision
+                assertEquals(msg, path.getWeight(), matrix.getWeight(from, to), 1e-2);
+                assertEquals(msg, path.getDistance(), matrix.getDistance(from, to), 1e-3);
+                assertEquals(msg, path.getTime(), matrix.getTime(from, to), 10);
+            }
+        }
+        assertTrue("too few connections " + connected, connected > fromNodes.length);
+    }
+
+    private int[] randomNodes(int nodes, int count) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = rand.nextInt(nodes);
+        }
+        return result;
+    }
+
+    private static List<QueryResult> concat(List<QueryResult> first, List<QueryResult> second) {
+        List<QueryResult> result = new ArrayList<>(first);
+        result.addAll(second);
+        return result;
+    }
+
+    private static int[] closestNodes(List<QueryResult> results) {
+        int[] nodes = new int[results.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = results.get(i).getClosestNode();
+        }
+        return nodes;
+    }
+}
@@ -18,6 +18,7 @@
 package com.graphhopper.routing.subnetwork;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.profiles.BooleanEncodedValue;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.GraphBuilder;
 import com.graphhopper.storage.GraphHopperStorage;
@@ -31,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -92,6 +94,93 @@ public class PrepareRoutingSubnetworksTest {
         return g;
     }
 
+    private void addEdge(GraphHopperStorage g, FlagEncoder encoder, int from, int to, boolean bothDirections) {
+        BooleanEncodedValue accessEnc = encoder.getAccessEnc();
+        g.edge(from, to).setDistance(1).set(accessEnc, true).setReverse(accessEnc, bothDirections);
+    }
+
+    @Test
+    public void testTarjanWithDeepSearch() {
+        GraphHopperStorage g = createStorage(em);
+        // the same graph as in createSubnetworkTestStorage
+        int[][] edges = {{1, 2, 1}, {1, 4, 0}, {1, 8, 1}, {2, 4, 1}, {8, 4, 0}, {8, 11, 1}, {12, 11, 1}, {9, 12, 0},
+                {9, 15, 1}, {0, 13, 1}, {0, 3, 1}, {0, 7, 1}, {3, 7, 1}, {3, 5, 1}, {13, 5, 1}, {6, 14, 1}, {10, 14, 1}};
+        for (int[] edge : edges) {
+            addEdge(g, carFlagEncoder, edge[0], edge[1], edge[2] == 1);
+        }
+        List<IntArrayList> components = new TarjansSCCAlgorithm(g, DefaultEdgeFilter.outEdges(carFlagEncoder), false).findComponents();
+        assertEquals(4, components.size());
+        assertEquals(IntArrayList.from(13, 5, 3, 7, 0), components.get(0));
+        assertEquals(IntArrayList.from(2, 4, 12, 11, 8, 1), components.get(1));
+        assertEquals(IntArrayList.from(10, 14, 6), components.get(2));
+        assertEquals(IntArrayList.from(15, 9), components.get(3));
+
+        // a long one way cycle with a dead end, the search is as deep as the cycle is long
+        g = createStorage(em);
+        int nodes = 100_000;
+        for (int node = 0; node < nodes; node++) {
+            addEdge(g, carFlagEncoder, node, (node + 1) % nodes, false);
+        }
+        addEdge(g, carFlagEncoder, nodes / 2, nodes, false);
+        TarjansSCCAlgorithm tarjan = new TarjansSCCAlgorithm(g, DefaultEdgeFilter.outEdges(carFlagEncoder), true);
+        components = tarjan.findComponents();
+        assertTrue(tarjan.getIgnoreSet().contains(nodes));
+        // the ignored dead end is still found from the cycle
+        assertEquals(2, components.size());
+        assertEquals(IntArrayList.from(nodes), components.get(0));
+        assertEquals(nodes, components.get(1).size());
+    }
+
+    private GraphHopperStorage createRandomStorage(EncodingManager em, List<FlagEncoder> encoders) {
+        GraphHopperStorage g = createStorage(em);
+        Random random = new Random(123);
+        int nodes = 5000;
+        for (int i = 0; i < 2 * nodes; i++) {
+            int from = random.nextInt(nodes);
+            int to = Math.min(nodes - 1, from + 1 + random.nextInt(20));
+            EdgeIteratorState edge = g.edge(from, to).setDistance(1);
+            for (FlagEncoder encoder : encoders) {
+                BooleanEncodedValue accessEnc = encoder.getAccessEnc();
+                edge.set(accessEnc, random.nextInt(5) > 0).setReverse(accessEnc, random.nextBoolean());
+            }
+        }
+        return g;
+    }
+
+    @Test
+    public void testRemoveSubnetworksInParallel() {
+        List<FlagEncoder> encoders = Arrays.<FlagEncoder>asList(new CarFlagEncoder(), new BikeFlagEncoder(), new FootFlagEncoder());
+        EncodingManager em3 = EncodingManager.create(encoders);
+        GraphHopperStorage sequential = createRandomStorage(em3, encoders);
+        GraphHopperStorage parallel = createRandomStorage(em3, encoders);
+
+        PrepareRoutingSubnetworks instance = new PrepareRoutingSubnetworks(sequential, encoders).
+                setMinNetworkSize(50).setMinOneWayNetworkSize(20);
+        instance.doWork();
+        PrepareRoutingSubnetworks parallelInstance = new PrepareRoutingSubnetworks(parallel, encoders).
+                setMinNetworkSize(50).setMinOneWayNetworkSize(20).setThreads(3);
+        parallelInstance.doWork();
+
+        assertEquals(instance.getMaxSubnetworks(), parallelInstance.getMaxSubnetworks());
+        assertEquals(sequential.getNodes(), parallel.getNodes());
+        assertEquals(sequential.getAllEdges().length(), parallel.getAllEdges().length());
+        EdgeIterator seqIter = sequential.getAllEdges();
+        EdgeIterator parIter = parallel.getAllEdges();
+        int removed = 0;
+        while (seqIter.next()) {
+            assertTrue(parIter.next());
+            for (FlagEncoder encoder : encoders) {
+                BooleanEncodedValue accessEnc = encoder.getAccessEnc();
+                assertEquals(seqIter.get(accessEnc), parIter.get(accessEnc));
+                assertEquals(seqIter.getReverse(accessEnc), parIter.getReverse(accessEnc));
+            }
+            if (!seqIter.get(encoders.get(0).getAccessEnc()) && !seqIter.getReverse(encoders.get(0).getAccessEnc()))
+                removed++;
+        }
+        // make sure that the test removes something
+        assertTrue(removed > 0);
+    }
+
     @Test
     public void testFindSubnetworks() {
         GraphHopperStorage g = createSubnetworkTestStorage();
@@ -127,6 +216,27 @@ public class PrepareRoutingSubnetworksTest {
         assertEquals(1, components.size());
     }
 
+    @Test
+    public void testRemoveSmallNetworksAroundNodes() {
+        GraphHopperStorage g = createStorage(em);
+        BooleanEncodedValue accessEnc = carFlagEncoder.getAccessEnc();
+        // big network 0-1-2-3-4-5-6, small networks 7-8-9 and 10-11
+        for (int node : new int[]{0, 1, 2, 3, 4, 5, 7, 8, 10}) {
+            g.edge(node, node + 1).setDistance(1).set(accessEnc, true).setReverse(accessEnc, true);
+        }
+        PrepareRoutingSubnetworks instance = new PrepareRoutingSubnetworks(g, Collections.singletonList(carFlagEncoder));
+        instance.setMinNetworkSize(5);
+        // the search from 1 stops early, so the search from 6 reaches already explored nodes of the big network
+        assertEquals(2, instance.removeSmallNetworks(IntArrayList.from(1, 6, 9)));
+        EdgeExplorer explorer = g.createEdgeExplorer(DefaultEdgeFilter.allEdges(carFlagEncoder));
+        assertEquals(0, GHUtility.count(explorer.setBaseNode(8)));
+        assertEquals(1, GHUtility.count(explorer.setBaseNode(6)));
+        assertEquals(1, GHUtility.count(explorer.setBaseNode(11)));
+
+        assertEquals(1, instance.removeSmallNetworks(IntArrayList.from(11)));
+        assertEquals(0, GHUtility.count(explorer.setBaseNode(11)));
+    }
+
     @Test
     public void testRemoveSubnetworkIfOnlyOneVehicle() {
         GraphHopperStorage g = createSubnetworkTestStorage2(em);
@@ -0,0 +1,244 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.template;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.RoutingAlgorithmFactorySimple;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Instruction;
+import com.graphhopper.util.PathMerger;
+import com.graphhopper.util.TranslationMapTest;
+import com.graphhopper.util.Parameters.Routing;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.updateDistancesFor;
+import static com.graphhopper.util.Parameters.Algorithms.ASTAR_BI;
+import static org.junit.Assert.*;
+
+public class ViaRoutingTemplateTest {
+    private final Bike2WeightFlagEncoder encoder = new Bike2WeightFlagEncoder();
+    private final EncodingManager em = EncodingManager.create(encoder);
+    private final Weighting weighting = new FastestWeighting(encoder);
+    private final Random rand = new Random(1);
+    private GraphHopperStorage graph;
+    private LocationIndex locationIndex;
+
+    @Before
+    public void setUp() {
+        graph = new GraphBuilder(em).create();
+        GHUtility.buildRandomGraph(graph, rand, 200, 2.2, false, false, null, 0, 0.8, 0.5);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            iter.set(encoder.getAverageSpeedEnc(), 4 + rand.nextInt(26));
+            iter.setReverse(encoder.getAverageSpeedEnc(), 4 + rand.nextInt(26));
+        }
+        locationIndex = new LocationIndexTree(graph, new RAMDirectory()).prepareIndex();
+    }
+
+    @Test
+    public void testParallelLegs() {
+        List<GHPoint> points = createPoints(10);
+        compareWithSequential(new GHRequest(points));
+    }
+
+    @Test
+    public void testParallelLegsWithHeadings() {
+        List<GHPoint> points = createPoints(8);
+        List<Double> headings = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            headings.add(i % 3 == 0 ? rand.nextDouble() * 360 : Double.NaN);
+        }
+        compareWithSequential(new GHRequest(points, headings));
+    }
+
+    @Test
+    public void testParallelLegsWithPassThrough() {
+        GHRequest request = new GHRequest(createPoints(6));
+        request.getHints().put(Routing.PASS_THROUGH, true);
+        compareWithSequential(request);
+    }
+
+    @Test
+    public void testAlternativeWithoutHeading() {
+        createSquareGraph();
+
+        // without a heading the route goes west via 0 and 3, with the heading east via 1 and 2
+        List<GHPoint> points = Arrays.asList(new GHPoint(0, 0.002), new GHPoint(0.01, 0.003));
+        GHRequest request = new GHRequest(points, Arrays.asList(90d, Double.NaN));
+        request.getHints().put(Routing.ALTERNATIVE_WITHOUT_HEADING, true);
+        GHResponse response = new GHResponse();
+        ViaRoutingTemplate template = new ViaRoutingTemplate(request, response, locationIndex, em);
+        QueryGraph queryGraph = QueryGraph.lookup(graph, template.lookup(points, encoder));
+        template.calcPaths(queryGraph, new RoutingAlgorithmFactorySimple(),
+                new AlgorithmOptions(ASTAR_BI, weighting, TraversalMode.NODE_BASED), encoder);
+        PathMerger pathMerger = new PathMerger(queryGraph, weighting);
+        pathMerger.setFavoredHeading(90);
+        template.isReady(pathMerger, TranslationMapTest.SINGLETON.getWithFallBack(Locale.US));
+
+        assertEquals(2, response.getAll().size());
+        assertEquals(2780, response.getAll().get(0).getDistance(), 1);
+        assertEquals(1668, response.getAll().get(1).getDistance(), 1);
+        // the route without heading starts to the west, which is not a u-turn as it was calculated without the heading
+        assertEquals(Instruction.STRAIGHT, response.getAll().get(0).getInstructions().get(0).getSign());
+        assertEquals(Instruction.STRAIGHT, response.getAll().get(1).getInstructions().get(0).getSign());
+
+        // without any heading there is no alternative
+        response = new GHResponse();
+        request = new GHRequest(points);
+        request.getHints().put(Routing.ALTERNATIVE_WITHOUT_HEADING, true);
+        template = new ViaRoutingTemplate(request, response, locationIndex, em);
+        queryGraph = QueryGraph.lookup(graph, template.lookup(points, encoder));
+        template.calcPaths(queryGraph, new RoutingAlgorithmFactorySimple(),
+                new AlgorithmOptions(ASTAR_BI, weighting, TraversalMode.NODE_BASED), encoder);
+        template.isReady(new PathMerger(queryGraph, weighting), TranslationMapTest.SINGLETON.getWithFallBack(Locale.US));
+        assertEquals(1, response.getAll().size());
+    }
+
+    @Test
+    public void testAlternativeWithoutHeadingExceedsMaxVisitedNodes() {
+        createSquareGraph();
+        List<GHPoint> points = Arrays.asList(new GHPoint(0, 0.002), new GHPoint(0.01, 0.003));
+        GHRequest request = new GHRequest(points, Arrays.asList(90d, Double.NaN));
+        request.getHints().put(Routing.ALTERNATIVE_WITHOUT_HEADING, true);
+        GHResponse response = new GHResponse();
+        ViaRoutingTemplate template = new ViaRoutingTemplate(request, response, locationIndex, em);
+        QueryGraph queryGraph = QueryGraph.lookup(graph, template.lookup(points, encoder));
+        final AlgorithmOptions algoOpts = AlgorithmOptions.start().algorithm(ASTAR_BI).weighting(weighting).
+                traversalMode(TraversalMode.NODE_BASED).maxVisitedNodes(100).build();
+        // the second search is the one without heading, let it report that it exceeded the limit
+        RoutingAlgorithmFactory algoFactory = new RoutingAlgorithmFactorySimple() {
+            int createdAlgos = 0;
+
+            @Override
+            public RoutingAlgorithm createAlgo(Graph g, AlgorithmOptions opts) {
+                final RoutingAlgorithm algo = super.createAlgo(g, opts);
+                if (++createdAlgos == 1)
+                    return algo;
+                return new RoutingAlgorithm() {
+                    @Override
+                    public Path calcPath(int from, int to) {
+                        return algo.calcPath(from, to);
+                    }
+
+                    @Override
+                    public List<Path> calcPaths(int from, int to) {
+                        return algo.calcPaths(from, to);
+                    }
+
+                    @Override
+                    public void setMaxVisitedNodes(int numberOfNodes) {
+                        algo.setMaxVisitedNodes(numberOfNodes);
+                    }
+
+                    @Override
+                    public String getName() {
+                        return algo.getName();
+                    }
+
+                    @Override
+                    public int getVisitedNodes() {
+                        return algoOpts.getMaxVisitedNodes();
+                    }
+                };
+            }
+        };
+        template.calcPaths(queryGraph, algoFactory, algoOpts, encoder);
+        template.isReady(new PathMerger(queryGraph, weighting), TranslationMapTest.SINGLETON.getWithFallBack(Locale.US));
+
+        // only the alternative is dropped and the route with the heading is kept
+        assertFalse(response.hasErrors());
+        assertEquals(1, response.getAll().size());
+        assertEquals(2780, response.getBest().getDistance(), 1);
+        assertTrue(response.getDebugInfo(), response.getDebugInfo().contains("route without heading skipped"));
+    }
+
+    private void createSquareGraph() {
+        // 3-----2
+        // |     |
+        // 0-----1
+        graph = new GraphBuilder(em).create();
+        for (int node = 0; node < 4; node++) {
+            EdgeIteratorState edge = graph.edge(node, (node + 1) % 4);
+            edge.set(encoder.getAccessEnc(), true).setReverse(encoder.getAccessEnc(), true);
+            edge.set(encoder.getAverageSpeedEnc(), 18).setReverse(encoder.getAverageSpeedEnc(), 18);
+        }
+        updateDistancesFor(graph, 0, 0, 0);
+        updateDistancesFor(graph, 1, 0, 0.01);
+        updateDistancesFor(graph, 2, 0.01, 0.01);
+        updateDistancesFor(graph, 3, 0.01, 0);
+        locationIndex = new LocationIndexTree(graph, new RAMDirectory()).prepareIndex();
+    }
+
+    private void compareWithSequential(GHRequest request) {
+        List<Path> expected = calcPaths(request, false);
+        List<Path> paths = calcPaths(request, true);
+        assertEquals(request.getPoints().size() - 1, paths.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("leg " + i, expected.get(i).calcNodes(), paths.get(i).calcNodes());
+            assertEquals("leg " + i, expected.get(i).getWeight(), paths.get(i).getWeight(), 1e-6);
+        }
+    }
+
+    private List<Path> calcPaths(GHRequest request, boolean parallel) {
+        request.getHints().put(Routing.PARALLEL_LEGS, parallel);
+        ViaRoutingTemplate template = new ViaRoutingTemplate(request, new GHResponse(), locationIndex, em).
+                setParallelLegsThreads(4);
+        List<QueryResult> queryResults = template.lookup(request.getPoints(), encoder);
+        QueryGraph queryGraph = QueryGraph.lookup(graph, queryResults);
+        return template.calcPaths(queryGraph, new RoutingAlgorithmFactorySimple(),
+                new AlgorithmOptions(ASTAR_BI, weighting, TraversalMode.NODE_BASED), encoder);
+    }
+
+    private List<GHPoint> createPoints(int count) {
+        NodeAccess na = graph.getNodeAccess();
+        List<GHPoint> points = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // use the middle of an edge so that the point is snapped to a virtual node
+            EdgeIteratorState edge = graph.getEdgeIteratorState(rand.nextInt(graph.getEdges()), Integer.MIN_VALUE);
+            points.add(new GHPoint((na.getLat(edge.getBaseNode()) + na.getLat(edge.getAdjNode())) / 2,
+                    (na.getLon(edge.getBaseNode()) + na.getLon(edge.getAdjNode())) / 2));
+        }
+        return points;
+    }
+}
@@ -20,12 +20,16 @@ package com.graphhopper.routing.util;
 import com.graphhopper.reader.OSMTurnRelation;
 import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
-import com.graphhopper.routing.profiles.BooleanEncodedValue;
-import com.graphhopper.routing.profiles.Roundabout;
+import com.graphhopper.routing.profiles.*;
+import com.graphhopper.routing.util.parsers.KeyFilteredTagParser;
+import com.graphhopper.routing.util.parsers.OSMRoadClassParser;
+import com.graphhopper.routing.util.parsers.TagParser;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.util.BitUtil;
 import org.junit.Test;
 
+import java.util.*;
+
 import static org.junit.Assert.*;
 
 /**
@@ -294,4 +298,58 @@ public class EncodingManagerTest {
             assertTrue(encoder.toString(), roundaboutEnc.getBool(false, edgeFlags));
         }
     }
+
+    @Test
+    public void testKeyFilteredTagParsers() {
+        final List<String> calls = new ArrayList<>();
+        KeyFilteredTagParser tollParser = new KeyFilteredTagParser() {
+            @Override
+            public Collection<String> getTagKeys() {
+                return Arrays.asList("toll", "toll:hgv");
+            }
+
+            @Override
+            public void createEncodedValues(EncodedValueLookup lookup, List<EncodedValue> registerNewEncodedValue) {
+            }
+
+            @Override
+            public IntsRef handleWayTags(IntsRef edgeFlags, ReaderWay way, EncodingManager.Access access, long relationFlags) {
+                calls.add("toll");
+                way.setTag("toll_checked", true);
+                return edgeFlags;
+            }
+        };
+        TagParser allParser = new TagParser() {
+            @Override
+            public void createEncodedValues(EncodedValueLookup lookup, List<EncodedValue> registerNewEncodedValue) {
+            }
+
+            @Override
+            public IntsRef handleWayTags(IntsRef edgeFlags, ReaderWay way, EncodingManager.Access access, long relationFlags) {
+                calls.add("all " + way.getTag("toll_checked", false));
+                return edgeFlags;
+            }
+        };
+        EncodingManager manager = EncodingManager.start().add(new OSMRoadClassParser()).add(tollParser).add(allParser).
+                add(new CarFlagEncoder()).build();
+        EnumEncodedValue<RoadClass> roadClassEnc = manager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+
+        ReaderWay way = new ReaderWay(1);
+        way.setTag("highway", "primary");
+        EncodingManager.AcceptWay aw = new EncodingManager.AcceptWay();
+        assertTrue(manager.acceptWay(way, aw));
+        IntsRef edgeFlags = manager.handleWayTags(way, aw, 0);
+        assertEquals(RoadClass.PRIMARY, roadClassEnc.getEnum(false, edgeFlags));
+        assertEquals(Collections.singletonList("all false"), calls);
+
+        // the parser is called once even if the way has several of its keys and before the parsers added after it
+        calls.clear();
+        way.setTag("toll", "yes");
+        way.setTag("toll:hgv", "yes");
+        aw = new EncodingManager.AcceptWay();
+        manager.acceptWay(way, aw);
+        edgeFlags = manager.handleWayTags(way, aw, 0);
+        assertEquals(RoadClass.PRIMARY, roadClassEnc.getEnum(false, edgeFlags));
+        assertEquals(Arrays.asList("toll", "all true"), calls);
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.util.spatialrules;
+
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.Polygon;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpatialRuleLookupQuadtreeTest {
+    private final String location = "./target/tmp/spatial-rule-quadtree";
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(new File(location));
+    }
+
+    private SpatialRule createRule(final String id, Polygon... polygons) {
+        return new DefaultSpatialRule() {
+            @Override
+            public String getId() {
+                return id;
+            }
+        }.setBorders(Arrays.asList(polygons));
+    }
+
+    private List<SpatialRule> createRules() {
+        List<SpatialRule> rules = new ArrayList<>();
+        rules.add(createRule("square", new Polygon(new double[]{1, 1, 2, 2}, new double[]{1, 2, 2, 1})));
+        rules.add(createRule("triangle", new Polygon(new double[]{1, 3.6, 1}, new double[]{3, 3.5, 4})));
+        // overlaps the square, so the square has to win in the common part
+        rules.add(createRule("overlap", new Polygon(new double[]{1.5, 1.5, 3, 3}, new double[]{1.5, 2.5, 2.5, 1.5})));
+        return rules;
+    }
+
+    @Test
+    public void testLookup() {
+        SpatialRuleLookup lookup = new SpatialRuleLookupQuadtree(createRules(), .1, new BBox(0, 5, 0, 5));
+        assertEquals("square", lookup.lookupRule(1.2, 1.7).getId());
+        assertEquals("square", lookup.lookupRule(1.8, 1.8).getId());
+        assertEquals("overlap", lookup.lookupRule(2.5, 2).getId());
+        assertEquals("overlap", lookup.lookupRule(1.8, 2.2).getId());
+        assertEquals("triangle", lookup.lookupRule(1.2, 3.5).getId());
+        assertEquals(SpatialRule.EMPTY, lookup.lookupRule(3.5, 3.1));
+        assertEquals(SpatialRule.EMPTY, lookup.lookupRule(0.5, 0.5));
+        // outside of the bounds
+        assertEquals(SpatialRule.EMPTY, lookup.lookupRule(1.5, 6));
+
+        assertEquals(4, lookup.size());
+        assertEquals("triangle", lookup.getSpatialRule(lookup.getSpatialId(lookup.lookupRule(1.2, 3.5))).getId());
+    }
+
+    @Test
+    public void testSameRulesAsPolygons() {
+        List<SpatialRule> rules = createRules();
+        SpatialRuleLookup lookup = new SpatialRuleLookupQuadtree(rules, .1, new BBox(0, 5, 0, 5));
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            double lat = random.nextDouble() * 5;
+            double lon = random.nextDouble() * 5;
+            SpatialRule expected = SpatialRule.EMPTY;
+            for (SpatialRule rule : rules) {
+                if (rule.getBorders().get(0).contains(lat, lon)) {
+                    expected = rule;
+                    break;
+                }
+            }
+            assertEquals(lat + "," + lon, expected, lookup.lookupRule(lat, lon));
+        }
+    }
+
+    @Test
+    public void testOnlyBordersAreSplit() {
+        List<SpatialRule> rules = new ArrayList<>();
+        rules.add(createRule("big", new Polygon(new double[]{-100, -100, 100, 100}, new double[]{-100, 100, 100, -100})));
+        // the bounds are inside of the polygon, so a single cell is enough
+        SpatialRuleLookupQuadtree lookup = new SpatialRuleLookupQuadtree(rules, .001, new BBox(1, 2, 1, 2));
+        assertEquals(1, lookup.getCells());
+        assertEquals("big", lookup.lookupRule(1.5, 1.5).getId());
+
+        // a finer resolution only splits the cells along the border
+        SpatialRuleLookupQuadtree coarse = new SpatialRuleLookupQuadtree(createRules(), .1, new BBox(0, 5, 0, 5));
+        SpatialRuleLookupQuadtree fine = new SpatialRuleLookupQuadtree(createRules(), .01, new BBox(0, 5, 0, 5));
+        assertTrue(coarse.getCells() < fine.getCells());
+        assertTrue(fine.getCells() < 512 * 512 / 8);
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        RAMDirectory dir = new RAMDirectory(location, true);
+        dir.create();
+        SpatialRuleLookupQuadtree lookup = SpatialRuleLookupQuadtree.createOrLoad(createRules(), .1,
+                new BBox(0, 5, 0, 5), dir, "spatial_rule_index");
+        assertTrue(new File(location, "spatial_rule_index").exists());
+
+        dir = new RAMDirectory(location, true);
+        SpatialRuleLookupQuadtree loaded = SpatialRuleLookupQuadtree.createOrLoad(createRules(), .1,
+                new BBox(0, 5, 0, 5), dir, "spatial_rule_index");
+        assertEquals(lookup.getCells(), loaded.getCells());
+        assertEquals("square", loaded.lookupRule(1.2, 1.7).getId());
+        assertEquals("overlap", loaded.lookupRule(2.5, 2).getId());
+        assertEquals(SpatialRule.EMPTY, loaded.lookupRule(3.5, 3.1));
+
+        // changed rules must not use the stored tree
+        List<SpatialRule> rules = createRules();
+        rules.remove(0);
+        dir = new RAMDirectory(location, true);
+        SpatialRuleLookupQuadtree changed = SpatialRuleLookupQuadtree.createOrLoad(rules, .1,
+                new BBox(0, 5, 0, 5), dir, "spatial_rule_index");
+        assertEquals("overlap", changed.lookupRule(1.8, 1.8).getId());
+        assertEquals(SpatialRule.EMPTY, changed.lookupRule(1.2, 1.2));
+
+        // a moved point of a polygon must not use the stored tree, even if the bounds of the polygon are the same
+        dir = new RAMDirectory(location, true);
+        SpatialRuleLookupQuadtree.createOrLoad(createRules(), .1, new BBox(0, 5, 0, 5), dir, "spatial_rule_index");
+        rules = createRules();
+        rules.set(1, createRule("triangle", new Polygon(new double[]{1, 3.6, 1}, new double[]{3, 3.1, 4})));
+        dir = new RAMDirectory(location, true);
+        changed = SpatialRuleLookupQuadtree.createOrLoad(rules, .1, new BBox(0, 5, 0, 5), dir, "spatial_rule_index");
+        assertEquals("triangle", changed.lookupRule(3.3, 3.15).getId());
+        assertEquals(SpatialRule.EMPTY, changed.lookupRule(3.3, 3.5));
+    }
+}
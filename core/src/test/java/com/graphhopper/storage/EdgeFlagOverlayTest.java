@@ -0,0 +1,284 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.profiles.DecimalEncodedValue;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class EdgeFlagOverlayTest {
+    private DecimalEncodedValue speedEnc;
+    private GraphHopperStorage graph;
+
+    @Before
+    public void setUp() {
+        FlagEncoder encoder = new Bike2WeightFlagEncoder();
+        EncodingManager em = EncodingManager.create(encoder);
+        speedEnc = encoder.getAverageSpeedEnc();
+        graph = new GraphBuilder(em).create();
+        // 0-1-2
+        for (int node = 0; node < 2; node++) {
+            graph.edge(node, node + 1).setDistance(100).set(speedEnc, 10).setReverse(speedEnc, 10).
+                    set(encoder.getAccessEnc(), true).setReverse(encoder.getAccessEnc(), true);
+        }
+    }
+
+    private GHIntObjectHashMap<IntsRef> changeSpeed(int edge, double speed) {
+        IntsRef flags = IntsRef.deepCopyOf(graph.getEdgeIteratorState(edge, Integer.MIN_VALUE).getFlags());
+        speedEnc.setDecimal(false, flags, speed);
+        speedEnc.setDecimal(true, flags, speed);
+        GHIntObjectHashMap<IntsRef> changedFlags = new GHIntObjectHashMap<>();
+        changedFlags.put(edge, flags);
+        return changedFlags;
+    }
+
+    private static double getSpeed(EdgeExplorer explorer, int node, int edge, DecimalEncodedValue speedEnc) {
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (iter.getEdge() == edge)
+                return iter.get(speedEnc);
+        }
+        throw new IllegalArgumentException("edge " + edge + " not found at node " + node);
+    }
+
+    @Test
+    public void testPublishDoesNotChangeExistingIterators() {
+        EdgeExplorer oldExplorer = graph.createEdgeExplorer();
+        EdgeIteratorState oldEdge = graph.getEdgeIteratorState(0, 1);
+        assertEquals(0, graph.getFlagOverlay().getVersion());
+
+        EdgeFlagOverlay overlay = graph.publishFlagChanges(changeSpeed(0, 20));
+        assertEquals(1, overlay.getVersion());
+        assertEquals(1, overlay.size());
+        assertSame(overlay, graph.getFlagOverlay());
+
+        assertEquals(10, getSpeed(oldExplorer, 1, 0, speedEnc), .1);
+        assertEquals(10, oldEdge.get(speedEnc), .1);
+
+        EdgeExplorer newExplorer = graph.createEdgeExplorer();
+        assertEquals(20, getSpeed(newExplorer, 1, 0, speedEnc), .1);
+        assertEquals(20, getSpeed(newExplorer, 0, 0, speedEnc), .1);
+        assertEquals(10, getSpeed(newExplorer, 1, 1, speedEnc), .1);
+        assertEquals(20, graph.getEdgeIteratorState(0, 0).get(speedEnc), .1);
+        assertEquals(20, graph.getEdgeIteratorState(0, 1).detach(true).get(speedEnc), .1);
+        AllEdgesIterator allEdges = graph.getAllEdges();
+        assertTrue(allEdges.next());
+        assertEquals(20, allEdges.get(speedEnc), .1);
+
+        // the changes are accumulated
+        overlay = graph.publishFlagChanges(changeSpeed(1, 6));
+        assertEquals(2, overlay.getVersion());
+        assertEquals(2, overlay.size());
+        assertEquals(20, graph.getEdgeIteratorState(0, 1).get(speedEnc), .1);
+        assertEquals(6, graph.getEdgeIteratorState(1, 2).get(speedEnc), .1);
+    }
+
+    @Test
+    public void testCompactionWaitsForOlderReaders() throws Exception {
+        EdgeFlagOverlay oldOverlay = graph.acquireFlagOverlay();
+        // reads the edge storage directly as there were no changes when it was created
+        final EdgeIteratorState oldEdge = graph.getEdgeIteratorState(0, 1);
+        graph.publishFlagChanges(changeSpeed(0, 20));
+
+        final AtomicInteger compacted = new AtomicInteger(-1);
+        Thread compaction = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                compacted.set(graph.compactFlagOverlay());
+            }
+        });
+        compaction.start();
+        compaction.join(100);
+        assertTrue(compaction.isAlive());
+        assertEquals(10, oldEdge.get(speedEnc), .1);
+
+        // readers of the current overlay do not block the compaction
+        EdgeFlagOverlay currentOverlay = graph.acquireFlagOverlay();
+        graph.releaseFlagOverlay(oldOverlay);
+        compaction.join(10_000);
+        assertFalse(compaction.isAlive());
+        assertEquals(1, compacted.get());
+        graph.releaseFlagOverlay(currentOverlay);
+
+        EdgeFlagOverlay overlay = graph.getFlagOverlay();
+        assertTrue(overlay.isEmpty());
+        assertEquals(1, overlay.getVersion());
+        // the overlay is empty, so this reads the edge storage
+        assertEquals(20, graph.getEdgeIteratorState(0, 1).get(speedEnc), .1);
+        assertEquals(0, graph.compactFlagOverlay());
+    }
+
+    @Test
+    public void testFlushWaitsForOlderReaders() throws Exception {
+        EdgeFlagOverlay oldOverlay = graph.acquireFlagOverlay();
+        final EdgeIteratorState oldEdge = graph.getEdgeIteratorState(0, 1);
+        graph.publishFlagChanges(changeSpeed(0, 20));
+
+        Thread flush = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                graph.flush();
+            }
+        });
+        flush.start();
+        flush.join(100);
+        assertTrue(flush.isAlive());
+        assertEquals(10, oldEdge.get(speedEnc), .1);
+
+        graph.releaseFlagOverlay(oldOverlay);
+        flush.join(10_000);
+        assertFalse(flush.isAlive());
+        assertTrue(graph.getFlagOverlay().isEmpty());
+        assertEquals(20, graph.getEdgeIteratorState(0, 1).get(speedEnc), .1);
+    }
+
+    @Test
+    public void testStructureChangeIsExclusive() throws Exception {
+        EdgeFlagOverlay overlay = graph.acquireFlagOverlay();
+        try {
+            graph.changeStructure(new Runnable() {
+                @Override
+                public void run() {
+                    fail("the change must not run while this thread holds an overlay");
+                }
+            });
+            fail("the change must be refused");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+
+        final CountDownLatch changing = new CountDownLatch(1);
+        final CountDownLatch finishChange = new CountDownLatch(1);
+        Thread change = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                graph.changeStructure(new Runnable() {
+                    @Override
+                    public void run() {
+                        changing.countDown();
+                        try {
+                            finishChange.await();
+                        } catch (InterruptedException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                        graph.edge(2, 3).setDistance(100);
+                    }
+                });
+            }
+        });
+        change.start();
+        // the change waits for the running request
+        assertFalse(changing.await(100, TimeUnit.MILLISECONDS));
+        graph.releaseFlagOverlay(overlay);
+        assertTrue(changing.await(10, TimeUnit.SECONDS));
+
+        // a new request waits for the change
+        final AtomicInteger edges = new AtomicInteger(-1);
+        Thread request = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                EdgeFlagOverlay overlay = graph.acquireFlagOverlay();
+                edges.set(graph.getEdges());
+                graph.releaseFlagOverlay(overlay);
+            }
+        });
+        request.start();
+        request.join(100);
+        assertTrue(request.isAlive());
+        finishChange.countDown();
+        request.join(10_000);
+        change.join(10_000);
+        assertEquals(3, edges.get());
+    }
+
+    @Test
+    public void testViewUsesAcquiredOverlay() {
+        final EdgeFlagOverlay overlay = graph.acquireFlagOverlay();
+        Graph view = graph.withFlagOverlay(overlay);
+        Weighting weighting = new FastestWeighting(graph.getEncodingManager().getEncoder("bike2"));
+        // publish the change after the search but before the path is extracted
+        Path path = new Dijkstra(view, weighting, TraversalMode.NODE_BASED) {
+            @Override
+            protected Path extractPath() {
+                EdgeFlagOverlayTest.this.graph.publishFlagChanges(changeSpeed(1, 0));
+                return super.extractPath();
+            }
+        }.calcPath(0, 2);
+        assertTrue(path.isFound());
+        assertEquals(2 * 36_000, path.getTime());
+
+        // all iterators of the view ignore the new overlay
+        assertEquals(10, getSpeed(view.createEdgeExplorer(), 1, 1, speedEnc), .1);
+        assertEquals(10, view.getEdgeIteratorState(1, 2).get(speedEnc), .1);
+        AllEdgesIterator allEdges = view.getAllEdges();
+        assertTrue(allEdges.next());
+        assertTrue(allEdges.next());
+        assertEquals(10, allEdges.get(speedEnc), .1);
+        assertEquals(0, graph.getEdgeIteratorState(1, 2).get(speedEnc), .1);
+
+        graph.releaseFlagOverlay(overlay);
+        assertEquals(1, graph.compactFlagOverlay());
+        assertEquals(0, graph.getEdgeIteratorState(1, 2).get(speedEnc), .1);
+    }
+
+    @Test
+    public void testPublishWhileCompactionWaits() throws Exception {
+        EdgeFlagOverlay oldOverlay = graph.acquireFlagOverlay();
+        graph.publishFlagChanges(changeSpeed(0, 20));
+
+        final AtomicInteger compacted = new AtomicInteger(-1);
+        Thread compaction = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                compacted.set(graph.compactFlagOverlay());
+            }
+        });
+        compaction.start();
+        compaction.join(100);
+        assertTrue(compaction.isAlive());
+
+        // the waiting compaction does not block new changes
+        EdgeFlagOverlay overlay = graph.publishFlagChanges(changeSpeed(1, 6));
+        assertEquals(2, overlay.getVersion());
+        graph.releaseFlagOverlay(oldOverlay);
+        compaction.join(10_000);
+        assertFalse(compaction.isAlive());
+        // the new overlay is compacted by the next compaction
+        assertEquals(0, compacted.get());
+        assertSame(overlay, graph.getFlagOverlay());
+        assertEquals(2, graph.compactFlagOverlay());
+        assertTrue(graph.getFlagOverlay().isEmpty());
+        assertEquals(20, graph.getEdgeIteratorState(0, 1).get(speedEnc), .1);
+        assertEquals(6, graph.getEdgeIteratorState(1, 2).get(speedEnc), .1);
+    }
+}
@@ -21,7 +21,9 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 import static com.graphhopper.util.EdgeIteratorState.REVERSE_STATE;
 import static org.junit.Assert.*;
@@ -106,6 +108,36 @@ public class GraphHopperStorageTest extends AbstractGraphStorageTester {
         assertTrue(graph.isFrozen());
     }
 
+    @Test
+    public void testLoadConcurrently() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        graph.getNodeAccess().setNode(0, 10, 10);
+        graph.getNodeAccess().setNode(1, 11, 20);
+        graph.edge(0, 1).setDistance(100).setName("named street").setWayGeometry(Helper.createPointList(10.5, 15));
+        graph.flush();
+        graph.close();
+
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).setLoadThreads(4);
+        assertTrue(graph.loadExisting());
+        assertEquals(2, graph.getNodes());
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, 1);
+        assertEquals(100, edge.getDistance(), 1e-3);
+        assertEquals("named street", edge.getName());
+        assertEquals(Helper.createPointList(10.5, 15), edge.fetchWayGeometry(0));
+        assertTrue(graph.getLoadTimes().keySet().containsAll(Arrays.asList("nodes", "edges", "geometry", "name index")));
+        graph.close();
+
+        // a missing file is reported although the other files are loaded
+        assertTrue(new File(defaultGraphLoc, "edges").delete());
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).setLoadThreads(4);
+        try {
+            graph.loadExisting();
+            fail("loading without edges must fail");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("[edges]"));
+        }
+    }
+
     protected void checkGraph(Graph g) {
         NodeAccess na = g.getNodeAccess();
         assertTrue(na.is3D());
@@ -59,4 +59,48 @@ public class MMapDataAccessTest extends DataAccessTest {
         assertEquals(123, da.getInt(7 * 4));
         da.close();
     }
+
+    @Test
+    public void testLockFreeReads() {
+        MMapDataAccess da = (MMapDataAccess) createDataAccess(name);
+        assertFalse(da.isLockFreeReads());
+        da.create(300);
+        da.setInt(7 * 4, 123);
+        da.setShort(20 * 4, (short) -12);
+        byte[] bytes = new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        // crosses the segment boundary at 128
+        da.setBytes(124, bytes, bytes.length);
+        da.setLockFreeReads(true);
+
+        assertEquals(123, da.getInt(7 * 4));
+        assertEquals(-12, da.getShort(20 * 4));
+        byte[] result = new byte[bytes.length];
+        da.getBytes(124, result, result.length);
+        assertArrayEquals(bytes, result);
+        result = new byte[3];
+        da.getBytes(125, result, result.length);
+        assertArrayEquals(new byte[]{2, 3, 4}, result);
+        da.flush();
+        da.close();
+
+        // lock free reads are not enabled by default, not even for read only mappings
+        da = new MMapDataAccess(name, directory, defaultOrder, false);
+        assertFalse(da.isLockFreeReads());
+        assertTrue(da.loadExisting());
+        assertEquals(123, da.getInt(7 * 4));
+        da.close();
+    }
+
+    @Test
+    public void testPrefetch() {
+        MMapDataAccess da = (MMapDataAccess) createDataAccess(name);
+        da.create(300);
+        da.setInt(7 * 4, 123);
+        da.flush();
+        assertEquals(da.getCapacity(), da.prefetch());
+        assertEquals(123, da.getInt(7 * 4));
+        da.close();
+        // nothing is touched after closing
+        assertEquals(0, da.prefetch());
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.change;
+
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.profiles.BooleanEncodedValue;
+import com.graphhopper.routing.profiles.DecimalEncodedValue;
+import com.graphhopper.routing.util.Bike2WeightFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class BulkEdgeChangesTest {
+    private EncodingManager em;
+    private DecimalEncodedValue speedEnc;
+    private BooleanEncodedValue accessEnc;
+    private DecimalEncodedValue priorityEnc;
+    private GraphHopperStorage graph;
+    private OSMWayIdStorage osmWayIds;
+
+    @Before
+    public void setUp() {
+        FlagEncoder encoder = new Bike2WeightFlagEncoder();
+        em = EncodingManager.create(encoder);
+        speedEnc = encoder.getAverageSpeedEnc();
+        accessEnc = encoder.getAccessEnc();
+        priorityEnc = em.getDecimalEncodedValue(EncodingManager.getKey(encoder, "priority"));
+        graph = new GraphBuilder(em).create();
+        osmWayIds = new OSMWayIdStorage(new RAMDirectory()).create(100);
+        // 0-1-2-3, the edges 1 and 2 belong to the same OSM way
+        for (int i = 0; i < 3; i++) {
+            int edge = graph.edge(i, i + 1).setDistance(100).set(speedEnc, 10).setReverse(speedEnc, 10).
+                    set(accessEnc, true).setReverse(accessEnc, true).getEdge();
+            osmWayIds.setOSMWayId(edge, i == 0 ? 100 : 200);
+        }
+    }
+
+    private BulkChangeResponse collectChanges(BulkEdgeChanges changes, int threads, GHIntObjectHashMap<IntsRef> changedFlags) {
+        return new ChangeGraphHelper(graph, null).collectChanges(em, changes, Collections.<String>emptyList(),
+                osmWayIds, threads, changedFlags);
+    }
+
+    @Test
+    public void testReadCSV() throws IOException {
+        BulkEdgeChanges changes = BulkEdgeChanges.readCSV(new StringReader("type,id,speed,access,priority\n"
+                + "# comment\n"
+                + "edge,1,20\n"
+                + "\n"
+                + "way, 200, , false, 0.5\n"));
+        assertEquals(2, changes.size());
+        assertEquals(BulkEdgeChanges.EDGE, changes.getType(0));
+        assertEquals(1, changes.getId(0));
+        assertEquals(20, changes.getSpeed(0), .1);
+        assertFalse(changes.hasAccess(0));
+        assertFalse(changes.hasPriority(0));
+
+        assertEquals(BulkEdgeChanges.WAY, changes.getType(1));
+        assertEquals(200, changes.getId(1));
+        assertFalse(changes.hasSpeed(1));
+        assertTrue(changes.hasAccess(1));
+        assertFalse(changes.getAccess(1));
+        assertEquals(0.5, changes.getPriority(1), 1e-6);
+
+        try {
+            BulkEdgeChanges.readCSV(new StringReader("edge,1,20\nnode,2,30\n"));
+            fail("unknown type must fail");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("Cannot parse line 2"));
+        }
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        BulkEdgeChanges changes = new BulkEdgeChanges().
+                add(BulkEdgeChanges.EDGE, 2, 14, null, Double.NaN).
+                add(BulkEdgeChanges.WAY, 100, Double.NaN, true, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        changes.writeBinary(out);
+        assertEquals(8 + 2 * 18, out.size());
+
+        BulkEdgeChanges read = BulkEdgeChanges.readBinary(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, read.size());
+        assertEquals(2, read.getId(0));
+        assertEquals(14, read.getSpeed(0), .1);
+        assertFalse(read.hasAccess(0));
+        assertFalse(read.hasPriority(0));
+        assertEquals(BulkEdgeChanges.WAY, read.getType(1));
+        assertTrue(read.getAccess(1));
+        assertEquals(1, read.getPriority(1), 1e-6);
+
+        try {
+            BulkEdgeChanges.readBinary(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 0, 0, 0, 1}));
+            fail("unknown magic number must fail");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("magic number"));
+        }
+    }
+
+    @Test
+    public void testCollectChanges() {
+        BulkEdgeChanges changes = new BulkEdgeChanges().
+                add(BulkEdgeChanges.EDGE, 0, 20, null, Double.NaN).
+                add(BulkEdgeChanges.WAY, 200, Double.NaN, false, Double.NaN).
+                // later changes of the same edge win
+                add(BulkEdgeChanges.EDGE, 2, 6, true, 1).
+                add(BulkEdgeChanges.EDGE, 3, 30, null, Double.NaN).
+                add(BulkEdgeChanges.WAY, 300, 30, null, Double.NaN);
+
+        for (int threads : new int[]{1, 3}) {
+            GHIntObjectHashMap<IntsRef> changedFlags = new GHIntObjectHashMap<>();
+            BulkChangeResponse response = collectChanges(changes, threads, changedFlags);
+            assertEquals(3, response.getApplied());
+            assertEquals(2, response.getIgnored());
+            assertEquals(3, response.getEdges());
+            assertEquals(3, changedFlags.size());
+
+            IntsRef flags = changedFlags.get(0);
+            assertEquals(20, speedEnc.getDecimal(false, flags), .1);
+            assertEquals(20, speedEnc.getDecimal(true, flags), .1);
+            assertTrue(accessEnc.getBool(false, flags));
+
+            flags = changedFlags.get(1);
+            assertEquals(10, speedEnc.getDecimal(false, flags), .1);
+            assertFalse(accessEnc.getBool(false, flags));
+            assertFalse(accessEnc.getBool(true, flags));
+
+            flags = changedFlags.get(2);
+            assertEquals(6, speedEnc.getDecimal(false, flags), .1);
+            assertTrue(accessEnc.getBool(false, flags));
+            assertTrue(accessEnc.getBool(true, flags));
+            assertEquals(1, priorityEnc.getDecimal(false, flags), .01);
+        }
+        // the graph is not changed
+        assertEquals(10, graph.getEdgeIteratorState(0, 1).get(speedEnc), .1);
+    }
+
+    @Test
+    public void testIgnoreRemovedEdges() {
+        graph.markNodeRemoved(3);
+        graph.optimize();
+        assertTrue(graph.isEdgeRemoved(2));
+        assertFalse(graph.isEdgeRemoved(1));
+
+        BulkEdgeChanges changes = new BulkEdgeChanges().
+                add(BulkEdgeChanges.EDGE, 1, 20, null, Double.NaN).
+                add(BulkEdgeChanges.EDGE, 2, 20, null, Double.NaN);
+        GHIntObjectHashMap<IntsRef> changedFlags = new GHIntObjectHashMap<>();
+        BulkChangeResponse response = collectChanges(changes, 3, changedFlags);
+        assertEquals(1, response.getApplied());
+        assertEquals(1, response.getIgnored());
+        assertEquals(1, changedFlags.size());
+        assertTrue(changedFlags.containsKey(1));
+    }
+
+    @Test
+    public void testWayChangesRequireOSMWayIds() {
+        BulkEdgeChanges changes = new BulkEdgeChanges().add(BulkEdgeChanges.WAY, 200, 20, null, Double.NaN);
+        try {
+            new ChangeGraphHelper(graph, null).collectChanges(em, changes, Collections.<String>emptyList(), null, 1,
+                    new GHIntObjectHashMap<IntsRef>());
+            fail("way changes without OSM way ids must fail");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("OSM way ids are not stored"));
+        }
+    }
+}
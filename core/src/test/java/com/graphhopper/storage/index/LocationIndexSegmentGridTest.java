@@ -0,0 +1,265 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.index;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.BBox;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationIndexSegmentGridTest {
+    private final String location = "./target/tmp/segment-grid-index";
+    private final DistanceCalc distCalc = Helper.DIST_PLANE;
+    private GraphHopperStorage graph;
+
+    @Before
+    public void setUp() {
+        Helper.removeDir(new File(location));
+        graph = new GraphHopperStorage(new RAMDirectory(location, true), EncodingManager.create("car"), false).create(100);
+    }
+
+    @After
+    public void tearDown() {
+        graph.close();
+        Helper.removeDir(new File(location));
+    }
+
+    private LocationIndexSegmentGrid createIndex(int resolution) {
+        LocationIndexSegmentGrid index = new LocationIndexSegmentGrid(graph, new RAMDirectory(location, true));
+        index.setResolution(resolution);
+        index.prepareIndex();
+        return index;
+    }
+
+    //  0-----------------------------1
+    //  2--3
+    @Test
+    public void testLongEdge() {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 52.0, 4.0);
+        na.setNode(1, 52.0, 4.3);
+        na.setNode(2, 51.99, 4.0);
+        na.setNode(3, 51.99, 4.001);
+        EdgeIteratorState longEdge = graph.edge(0, 1).setDistance(20000);
+        graph.edge(2, 3).setDistance(70);
+
+        LocationIndexSegmentGrid index = createIndex(300);
+        // 100m north of the middle of the edge and more than 10km away from its nodes
+        QueryResult qr = index.findClosest(52.0009, 4.15, EdgeFilter.ALL_EDGES);
+        assertTrue(qr.isValid());
+        assertEquals(longEdge.getEdge(), qr.getClosestEdge().getEdge());
+        assertEquals(QueryResult.Position.EDGE, qr.getSnappedPosition());
+        assertEquals(0, qr.getWayIndex());
+        assertEquals(100, qr.getQueryDistance(), 1);
+        assertEquals(52.0, qr.getSnappedPoint().lat, 1e-6);
+        assertEquals(4.15, qr.getSnappedPoint().lon, 1e-6);
+
+        // the search is limited to resolution * maxRegionSearch
+        assertFalse(index.findClosest(52.02, 4.15, EdgeFilter.ALL_EDGES).isValid());
+        assertTrue(index.findClosest(52.02, 4.15, EdgeFilter.ALL_EDGES, 3000).isValid());
+
+        // close to the tower node 3
+        qr = index.findClosest(51.9899, 4.0011, EdgeFilter.ALL_EDGES);
+        assertEquals(3, qr.getClosestNode());
+        assertEquals(QueryResult.Position.TOWER, qr.getSnappedPosition());
+        assertEquals(51.99, qr.getSnappedPoint().lat, 1e-6);
+        assertEquals(4.001, qr.getSnappedPoint().lon, 1e-6);
+        index.close();
+    }
+
+    @Test
+    public void testPillarNodes() {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 52.0, 4.0);
+        na.setNode(1, 52.0, 4.1);
+        //   /\
+        //  0  \/\1
+        graph.edge(0, 1).setDistance(8000).setWayGeometry(Helper.createPointList(52.02, 4.03, 51.99, 4.06, 52.01, 4.08));
+
+        LocationIndexSegmentGrid index = createIndex(300);
+        QueryResult qr = index.findClosest(52.0201, 4.0301, EdgeFilter.ALL_EDGES);
+        assertEquals(QueryResult.Position.PILLAR, qr.getSnappedPosition());
+        assertEquals(1, qr.getWayIndex());
+        assertEquals(52.02, qr.getSnappedPoint().lat, 1e-6);
+        assertEquals(4.03, qr.getSnappedPoint().lon, 1e-6);
+        // the pillar at 4.03 is closer to node 0
+        assertEquals(0, qr.getClosestNode());
+
+        qr = index.findClosest(52.001, 4.09, EdgeFilter.ALL_EDGES);
+        assertEquals(QueryResult.Position.EDGE, qr.getSnappedPosition());
+        assertEquals(3, qr.getWayIndex());
+        assertEquals(1, qr.getClosestNode());
+        index.close();
+    }
+
+    @Test
+    public void testRandomGraph() {
+        Random rand = new Random(1);
+        NodeAccess na = graph.getNodeAccess();
+        int nodes = 200;
+        for (int node = 0; node < nodes; node++) {
+            na.setNode(node, 52 + rand.nextDouble() * 0.1, 4 + rand.nextDouble() * 0.15);
+        }
+        for (int i = 0; i < 300; i++) {
+            int from = rand.nextInt(nodes), to = rand.nextInt(nodes);
+            EdgeIteratorState edge = graph.edge(from, to).setDistance(1000);
+            if (rand.nextBoolean()) {
+                PointList pillars = new PointList();
+                for (int j = rand.nextInt(4); j >= 0; j--) {
+                    pillars.add(52 + rand.nextDouble() * 0.1, 4 + rand.nextDouble() * 0.15);
+                }
+                edge.setWayGeometry(pillars);
+            }
+        }
+
+        EdgeFilter evenEdges = new EdgeFilter() {
+            @Override
+            public boolean accept(EdgeIteratorState edgeState) {
+                return edgeState.getEdge() % 2 == 0;
+            }
+        };
+        LocationIndexSegmentGrid index = createIndex(500);
+        for (EdgeFilter filter : new EdgeFilter[]{EdgeFilter.ALL_EDGES, evenEdges}) {
+            for (int i = 0; i < 500; i++) {
+                double lat = 51.99 + rand.nextDouble() * 0.12, lon = 3.99 + rand.nextDouble() * 0.17;
+                QueryResult qr = index.findClosest(lat, lon, filter, Double.MAX_VALUE);
+                assertTrue(qr.isValid());
+                assertTrue(filter.accept(qr.getClosestEdge()));
+                assertEquals(calcMinDistance(lat, lon, filter), qr.getQueryDistance(), 1e-3);
+                assertEquals(qr.getQueryDistance(), distCalc.calcDist(lat, lon,
+                        qr.getSnappedPoint().lat, qr.getSnappedPoint().lon), 0.1);
+                int closestNode = qr.getClosestNode();
+                assertTrue(closestNode == qr.getClosestEdge().getBaseNode() || closestNode == qr.getClosestEdge().getAdjNode());
+            }
+        }
+        index.close();
+    }
+
+    private double calcMinDistance(double lat, double lon, EdgeFilter filter) {
+        double min = Double.MAX_VALUE;
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (!filter.accept(iter))
+                continue;
+            PointList pointList = iter.fetchWayGeometry(3);
+            for (int i = 0; i + 1 < pointList.getSize(); i++) {
+                double lat1 = pointList.getLat(i), lon1 = pointList.getLon(i);
+                double lat2 = pointList.getLat(i + 1), lon2 = pointList.getLon(i + 1);
+                double dist = distCalc.validEdgeDistance(lat, lon, lat1, lon1, lat2, lon2)
+                        ? distCalc.calcDenormalizedDist(distCalc.calcNormalizedEdgeDistance(lat, lon, lat1, lon1, lat2, lon2))
+                        : Math.min(distCalc.calcDist(lat, lon, lat1, lon1), distCalc.calcDist(lat, lon, lat2, lon2));
+                min = Math.min(min, dist);
+            }
+        }
+        return min;
+    }
+
+    @Test
+    public void testFillCells() {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 0, 0);
+        na.setNode(1, 0.1, 0.1);
+        graph.edge(0, 1).setDistance(15000);
+        LocationIndexSegmentGrid index = createIndex(1000);
+
+        IntArrayList cells = new IntArrayList();
+        // the diagonal crosses only the cells along it and not all cells of its bounding box
+        index.fillCells(0, 0, 0.1, 0.1, cells);
+        assertTrue(cells.size() > 10);
+        assertTrue(cells.size() < 50);
+        // a short segment within a single cell
+        index.fillCells(0.0501, 0.0501, 0.0502, 0.0502, cells);
+        assertEquals(1, cells.size());
+        index.close();
+    }
+
+    @Test
+    public void testQueryBBox() {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 52.0, 4.0);
+        na.setNode(1, 52.0, 4.3);
+        na.setNode(2, 52.1, 4.0);
+        na.setNode(3, 52.1, 4.001);
+        graph.edge(0, 1).setDistance(20000);
+        graph.edge(2, 3).setDistance(70);
+        LocationIndexSegmentGrid index = createIndex(300);
+
+        // no node is within the bounding box but the long edge crosses it
+        final IntHashSet edges = new IntHashSet();
+        index.query(new BBox(4.1, 4.2, 51.99, 52.01), new LocationIndex.EdgeVisitor(graph.createEdgeExplorer()) {
+            @Override
+            public void onEdge(EdgeIteratorState edge, int nodeA, int nodeB) {
+                assertTrue(edges.add(edge.getEdge()));
+            }
+        });
+        assertEquals(IntHashSet.from(0), edges);
+
+        final IntHashSet nodes = new IntHashSet();
+        index.query(new BBox(3.99, 4.01, 52.09, 52.11), new LocationIndex.Visitor() {
+            @Override
+            public void onNode(int nodeId) {
+                nodes.add(nodeId);
+            }
+        });
+        assertEquals(IntHashSet.from(2, 3), nodes);
+        index.close();
+    }
+
+    @Test
+    public void testLoadExisting() {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 52.0, 4.0);
+        na.setNode(1, 52.0, 4.3);
+        na.setNode(2, 51.99, 4.0);
+        graph.edge(0, 1).setDistance(20000);
+        graph.edge(0, 2).setDistance(1100);
+        createIndex(200).close();
+
+        LocationIndexSegmentGrid index = new LocationIndexSegmentGrid(graph, new RAMDirectory(location, true));
+        assertTrue(index.loadExisting());
+        assertEquals(200, index.getResolution());
+        QueryResult qr = index.findClosest(52.0009, 4.15, EdgeFilter.ALL_EDGES);
+        assertEquals(0, qr.getClosestEdge().getEdge());
+        assertEquals(100, qr.getQueryDistance(), 1);
+        qr = index.findClosest(51.995, 4.0001, EdgeFilter.ALL_EDGES);
+        assertEquals(1, qr.getClosestEdge().getEdge());
+        index.close();
+
+        na.setNode(3, 52.05, 4.05);
+        try {
+            new LocationIndexSegmentGrid(graph, new RAMDirectory(location, true)).loadExisting();
+            fail("the index must not be used for a changed graph");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("incorrect graph"));
+        }
+    }
+}
@@ -587,4 +587,66 @@ public class LocationIndexTreeTest extends AbstractLocationIndexTester {
                 Arrays.asList(edge4_5.getEdge(), edge4_7.getEdge()), ids);
     }
 
+    @Test
+    public void testFindClosestBatch() {
+        Graph graph = createGHStorage(new RAMDirectory(), encodingManager, false);
+        NodeAccess na = graph.getNodeAccess();
+        // a grid with roughly 100m between the nodes and a pillar node on every vertical edge
+        int size = 20;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int node = row * size + col;
+                na.setNode(node, 50 + 0.001 * row, 10 + 0.0015 * col);
+                if (col > 0)
+                    graph.edge(node - 1, node).setDistance(100);
+                if (row > 0)
+                    graph.edge(node - size, node).setDistance(100).
+                            setWayGeometry(Helper.createPointList(50 + 0.001 * row - 0.0005, 10 + 0.0015 * col + 0.0002));
+            }
+        }
+
+        LocationIndexTree index = createIndexNoPrepare(graph, 300);
+        index.prepareIndex();
+        EdgeFilter oddEdges = new EdgeFilter() {
+            @Override
+            public boolean accept(EdgeIteratorState edgeState) {
+                return edgeState.getEdge() % 2 == 1;
+            }
+        };
+
+        Random rand = new Random(1);
+        int count = 500;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            // include some points outside of the graph
+            lats[i] = 49.998 + rand.nextDouble() * 0.024;
+            lons[i] = 9.998 + rand.nextDouble() * 0.034;
+        }
+
+        for (EdgeFilter filter : Arrays.asList(EdgeFilter.ALL_EDGES, oddEdges)) {
+            QueryResult[] results = index.findClosestBatch(lats, lons, filter);
+            assertEquals(count, results.length);
+            for (int i = 0; i < count; i++) {
+                QueryResult expected = index.findClosest(lats[i], lons[i], filter);
+                QueryResult result = results[i];
+                assertEquals(lats[i], result.getQueryPoint().lat, 1e-9);
+                assertEquals(expected.isValid(), result.isValid());
+                if (!expected.isValid())
+                    continue;
+                assertEquals(expected.getQueryDistance(), result.getQueryDistance(), 1e-6);
+                assertEquals(expected.getSnappedPoint().lat, result.getSnappedPoint().lat, 1e-6);
+                assertEquals(expected.getSnappedPoint().lon, result.getSnappedPoint().lon, 1e-6);
+                assertTrue(filter.accept(result.getClosestEdge()));
+            }
+        }
+
+        assertEquals(0, index.findClosestBatch(new double[0], new double[0], EdgeFilter.ALL_EDGES).length);
+        try {
+            index.findClosestBatch(new double[2], new double[1], EdgeFilter.ALL_EDGES);
+            fail("the number of latitudes and longitudes must match");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
 }
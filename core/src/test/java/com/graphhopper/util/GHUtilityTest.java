@@ -27,6 +27,10 @@ import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.storage.*;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 /**
@@ -122,6 +126,89 @@ public class GHUtilityTest {
         GHUtility.sortDFS(g, createGraph());
     }
 
+    @Test
+    public void testSortHilbert() {
+        // a 4x4 grid with shuffled node ids
+        Graph g = createGraph();
+        NodeAccess na = g.getNodeAccess();
+        int[] nodes = {9, 3, 14, 0, 7, 12, 5, 1, 15, 10, 2, 8, 13, 6, 11, 4};
+        for (int i = 0; i < nodes.length; i++) {
+            na.setNode(nodes[i], i / 4, i % 4);
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            if (i % 4 < 3)
+                g.edge(nodes[i], nodes[i + 1]).setDistance(1).set(accessEnc, true).setReverse(accessEnc, true);
+            if (i < 12)
+                g.edge(nodes[i], nodes[i + 4]).setDistance(1).set(accessEnc, true).setReverse(accessEnc, false);
+        }
+
+        int[] oldToNewEdges = new int[g.getEdges()];
+        Graph newG = GHUtility.sortHilbert(g, createGraph(), oldToNewEdges);
+        assertEquals(g.getNodes(), newG.getNodes());
+        assertEquals(g.getEdges(), newG.getEdges());
+        assertEquals(getLengthOfAllEdges(g), getLengthOfAllEdges(newG), 1e-4);
+
+        // the Hilbert curve connects neighbouring cells only
+        NodeAccess newNA = newG.getNodeAccess();
+        for (int node = 1; node < newG.getNodes(); node++) {
+            double dist = Math.abs(newNA.getLatitude(node) - newNA.getLatitude(node - 1))
+                    + Math.abs(newNA.getLongitude(node) - newNA.getLongitude(node - 1));
+            assertEquals(1, dist, 1e-4);
+        }
+
+        for (int edge = 0; edge < g.getEdges(); edge++) {
+            EdgeIteratorState oldEdge = g.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            EdgeIteratorState newEdge = newG.getEdgeIteratorState(oldToNewEdges[edge], Integer.MIN_VALUE);
+            assertEquals(na.getLatitude(oldEdge.getBaseNode()), newNA.getLatitude(newEdge.getBaseNode()), 1e-4);
+            assertEquals(na.getLongitude(oldEdge.getAdjNode()), newNA.getLongitude(newEdge.getAdjNode()), 1e-4);
+            assertEquals(oldEdge.getReverse(accessEnc), newEdge.getReverse(accessEnc));
+        }
+    }
+
+    @Test
+    public void testCalcHilbertIndex() {
+        assertEquals(0, GHUtility.calcHilbertIndex(0, 0, 1));
+        assertEquals(1, GHUtility.calcHilbertIndex(0, 1, 1));
+        assertEquals(2, GHUtility.calcHilbertIndex(1, 1, 1));
+        assertEquals(3, GHUtility.calcHilbertIndex(1, 0, 1));
+        assertEquals(0xFFFFFFFFL, GHUtility.calcHilbertIndex(0xFFFF, 0, 16));
+    }
+
+    @Test
+    public void testSortWithTurnCosts() {
+        GraphBuilder builder = new GraphBuilder(encodingManager).withTurnCosts(true);
+        Graph g = builder.create();
+        NodeAccess na = g.getNodeAccess();
+        na.setNode(0, 3, 0);
+        na.setNode(1, 0, 0);
+        na.setNode(2, 1, 1);
+        na.setNode(3, 0, 2);
+        int edge01 = g.edge(0, 1).setDistance(1).set(accessEnc, true).setReverse(accessEnc, true).getEdge();
+        int edge12 = g.edge(1, 2).setDistance(1).set(accessEnc, true).setReverse(accessEnc, true).getEdge();
+        int edge23 = g.edge(2, 3).setDistance(1).set(accessEnc, true).setReverse(accessEnc, true).getEdge();
+        int edge02 = g.edge(0, 2).setDistance(1).set(accessEnc, true).setReverse(accessEnc, true).getEdge();
+        TurnCostExtension turnCosts = g.getTurnCostExtension();
+        turnCosts.addTurnInfo(edge01, 1, edge12, 5);
+        turnCosts.addTurnInfo(edge12, 2, edge23, 7);
+        turnCosts.addTurnInfo(edge02, 2, edge23, 9);
+
+        int[] oldToNewEdges = new int[g.getEdges()];
+        Graph newG = GHUtility.sortHilbert(g, builder.create(), oldToNewEdges);
+        NodeAccess newNA = newG.getNodeAccess();
+        int[] oldToNewNodes = new int[g.getNodes()];
+        for (int node = 0; node < newG.getNodes(); node++) {
+            for (int old = 0; old < g.getNodes(); old++) {
+                if (na.getLatitude(old) == newNA.getLatitude(node) && na.getLongitude(old) == newNA.getLongitude(node))
+                    oldToNewNodes[old] = node;
+            }
+        }
+        TurnCostExtension newTurnCosts = newG.getTurnCostExtension();
+        assertEquals(5, newTurnCosts.getTurnCostFlags(oldToNewEdges[edge01], oldToNewNodes[1], oldToNewEdges[edge12]));
+        assertEquals(7, newTurnCosts.getTurnCostFlags(oldToNewEdges[edge12], oldToNewNodes[2], oldToNewEdges[edge23]));
+        assertEquals(9, newTurnCosts.getTurnCostFlags(oldToNewEdges[edge02], oldToNewNodes[2], oldToNewEdges[edge23]));
+        assertEquals(0, newTurnCosts.getTurnCostFlags(oldToNewEdges[edge23], oldToNewNodes[2], oldToNewEdges[edge12]));
+    }
+
     @Test
     public void testCopyWithSelfRef() {
         Graph g = initUnsorted(createGraph());
@@ -223,4 +310,56 @@ public class GHUtilityTest {
 //        assertEquals(1, map2.get(2));
 //        assertEquals(-1, map2.get(3));
     }
+
+    @Test
+    public void testRunConcurrently() {
+        final AtomicInteger sum = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            final int value = i;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    sum.addAndGet(value);
+                }
+            });
+        }
+        GHUtility.runConcurrently(tasks, 4);
+        assertEquals(5050, sum.get());
+    }
+
+    @Test
+    public void testRunConcurrentlyWaitsForAllTasksIfOneFails() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger started = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final boolean fail = i == 0;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    started.incrementAndGet();
+                    if (fail)
+                        throw new IllegalStateException("task failed");
+                    running.incrementAndGet();
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }
+            });
+        }
+        try {
+            GHUtility.runConcurrently(tasks, 4);
+            fail("the exception of the task must be thrown");
+        } catch (IllegalStateException ex) {
+            assertEquals("task failed", ex.getMessage());
+        }
+        assertEquals(0, running.get());
+        // the tasks that did not start yet were skipped
+        assertTrue("started " + started.get(), started.get() < 100);
+    }
 }
@@ -22,9 +22,15 @@ import com.graphhopper.json.geo.JsonFeatureCollection;
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.util.spatialrules.*;
+import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.Polygon;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -35,6 +41,7 @@ import java.util.List;
 public class GraphHopperOSM extends GraphHopper {
 
     private final JsonFeatureCollection landmarkSplittingFeatureCollection;
+    private DAType nodeMapType;
 
     public GraphHopperOSM() {
         this(null);
@@ -45,9 +52,28 @@ public class GraphHopperOSM extends GraphHopper {
         this.landmarkSplittingFeatureCollection = landmarkSplittingFeatureCollection;
     }
 
+    @Override
+    public GraphHopper init(CmdArgs args) {
+        super.init(args);
+        String nodeMapStr = args.get("datareader.node_map", "");
+        if (!nodeMapStr.isEmpty() && !"heap".equalsIgnoreCase(nodeMapStr))
+            nodeMapType = DAType.fromString(nodeMapStr);
+        return this;
+    }
+
     @Override
     protected DataReader createReader(GraphHopperStorage ghStorage) {
-        return initDataReader(new OSMReader(ghStorage));
+        return initDataReader(new OSMReader(ghStorage).setOSMWayIdStorage(getOSMWayIdStorage()).
+                setNodeMapType(nodeMapType));
+    }
+
+    /**
+     * Stores the map from OSM node ids to internal node ids outside of the heap while importing, e.g. with
+     * DAType.MMAP or DAType.UNSAFE_STORE, see OSMReader.setNodeMapType. The default null uses the heap.
+     */
+    public GraphHopperOSM setNodeMapType(DAType nodeMapType) {
+        this.nodeMapType = nodeMapType;
+        return this;
     }
 
     public String getOSMFile() {
@@ -63,6 +89,33 @@ public class GraphHopperOSM extends GraphHopper {
         return this;
     }
 
+    /**
+     * Applies the OSM change file (.osc or .osc.gz) to the loaded graph and stores it, see OSMChangeUpdater. This
+     * requires that the OSM way ids were stored while import, see setStoreOSMWayIds. The landmarks are removed and
+     * prepared again when the graph is loaded the next time, so this instance should not be used for routing
+     * afterwards. If the graph is frozen, e.g. as it was prepared for CH, new ways and changed geometries cannot be
+     * added and the response reports these ways, see OSMChangeResponse.getFrozenWays.
+     */
+    public OSMChangeResponse applyOSMChanges(final File changeFile) {
+        if (getOSMWayIdStorage() == null)
+            throw new IllegalStateException("OSM changes can only be applied if the OSM way ids were stored while import, see setStoreOSMWayIds");
+
+        final OSMChangeUpdater updater = new OSMChangeUpdater(getGraphHopperStorage(), getOSMWayIdStorage()).
+                setMinNetworkSize(getMinNetworkSize());
+        final OSMChangeResponse[] response = new OSMChangeResponse[1];
+        changeGraphStructure(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    response[0] = updater.apply(changeFile);
+                } catch (IOException | XMLStreamException ex) {
+                    throw new RuntimeException("Cannot apply the OSM changes of " + changeFile, ex);
+                }
+            }
+        });
+        return response[0];
+    }
+
     @Override
     protected void loadOrPrepareLM(boolean closeEarly) {
         if (!getLMFactoryDecorator().isEnabled() || getLMFactoryDecorator().getPreparations().isEmpty())
@@ -79,7 +132,7 @@ public class GraphHopperOSM extends GraphHopper {
                         }
                     }.setBorders(polygons);
                 }
-            });
+            }, .1, new BBox(-180, 180, -90, 90), getGraphHopperStorage().getDirectory(), "landmark_split_index");
             for (PrepareLandmarks prep : getLMFactoryDecorator().getPreparations()) {
                 // the ruleLookup splits certain areas from each other but avoids making this a permanent change so that other algorithms still can route through these regions.
                 if (ruleLookup != null && ruleLookup.size() > 0) {
@@ -0,0 +1,121 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class describes the result of OSMChangeUpdater.apply
+ */
+public class OSMChangeResponse {
+    int changedWays;
+    int createdWays;
+    int deletedWays;
+    int skippedWays;
+    int frozenWays;
+    final List<Long> skippedWayIds = new ArrayList<>();
+    int createdEdges;
+    int disabledEdges;
+    int movedNodes;
+    int ignoredRelations;
+    int removedSubnetworkEdges;
+
+    /**
+     * @return the number of existing ways whose edges were changed
+     */
+    public int getChangedWays() {
+        return changedWays;
+    }
+
+    /**
+     * @return the number of ways whose edges were added to the graph
+     */
+    public int getCreatedWays() {
+        return createdWays;
+    }
+
+    /**
+     * @return the number of deleted ways whose edges were disabled
+     */
+    public int getDeletedWays() {
+        return deletedWays;
+    }
+
+    /**
+     * @return the number of created or changed ways whose geometry could not be applied, e.g. as they reference nodes
+     * that are neither contained in the change file nor tower nodes of the graph. The edges of a skipped way keep
+     * their old geometry with the new flags and a skipped new way is not added to the graph.
+     */
+    public int getSkippedWays() {
+        return skippedWays;
+    }
+
+    /**
+     * @return the number of skipped ways whose geometry could not be applied as the graph is frozen, e.g. as it was
+     * prepared for CH. These ways are also counted in getSkippedWays.
+     */
+    public int getFrozenWays() {
+        return frozenWays;
+    }
+
+    /**
+     * @return the OSM ids of the skipped ways, see getSkippedWays
+     */
+    public List<Long> getSkippedWayIds() {
+        return skippedWayIds;
+    }
+
+    public int getCreatedEdges() {
+        return createdEdges;
+    }
+
+    /**
+     * @return the number of edges that are no longer accessible as their way was deleted, changed or is no longer
+     * accepted by the encoders
+     */
+    public int getDisabledEdges() {
+        return disabledEdges;
+    }
+
+    /**
+     * @return the number of tower nodes whose coordinates were changed
+     */
+    public int getMovedNodes() {
+        return movedNodes;
+    }
+
+    public int getIgnoredRelations() {
+        return ignoredRelations;
+    }
+
+    /**
+     * @return the number of edges that were disabled as they belong to a small subnetwork after the changes
+     */
+    public int getRemovedSubnetworkEdges() {
+        return removedSubnetworkEdges;
+    }
+
+    @Override
+    public String toString() {
+        return "changed ways: " + changedWays + ", created ways: " + createdWays + ", deleted ways: " + deletedWays
+                + ", skipped ways: " + skippedWays + ", frozen ways: " + frozenWays + ", created edges: " + createdEdges
+                + ", disabled edges: " + disabledEdges + ", moved nodes: " + movedNodes + ", ignored relations: "
+                + ignoredRelations + ", removed subnetwork edges: " + removedSubnetworkEdges;
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.*;
+import com.carrotsearch.hppc.cursors.LongCursor;
+import com.carrotsearch.hppc.cursors.LongObjectCursor;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.profiles.IntEncodedValue;
+import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks;
+import com.graphhopper.routing.util.AbstractFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.OSMWayIdStorage;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPoint;
+import com.graphhopper.util.shapes.GHPoint3D;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Applies OSM change files (osmChange XML, .osc or .osc.gz) to an existing graph, so that small changes of the OSM
+ * data do not require a new import. The graph has to be imported with the OSM way ids, see
+ * GraphHopper.setStoreOSMWayIds, which are used to find the edges of the changed ways and the tower nodes that new
+ * ways connect to.
+ * <p>
+ * The edges of deleted ways are disabled. The flags of changed ways are encoded again and their edges are kept if
+ * the way still connects the same tower nodes. Otherwise the old edges are disabled and new edges and nodes are
+ * appended, which requires that the graph is not frozen and that every node of the way is either contained in the
+ * change file or is a tower node of the graph. Otherwise the way is skipped: its edges keep the old geometry with the
+ * new flags and a new way is not added, see OSMChangeResponse.getSkippedWayIds and getFrozenWays. Moved tower nodes are updated with the distances of their edges.
+ * Relations are ignored, so flags that depend on relations, e.g. of bike routes, are not restored for changed ways.
+ * Finally the small subnetworks around the changed nodes are removed.
+ */
+public class OSMChangeUpdater {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OSMChangeUpdater.class);
+    private final GraphHopperStorage graph;
+    private final NodeAccess nodeAccess;
+    private final EncodingManager encodingManager;
+    private final List<FlagEncoder> encoders;
+    private final OSMWayIdStorage osmWayIds;
+    private final DistanceCalc distCalc = Helper.DIST_EARTH;
+    private int minNetworkSize = 200;
+
+    public OSMChangeUpdater(GraphHopperStorage graph, OSMWayIdStorage osmWayIds) {
+        if (osmWayIds == null)
+            throw new IllegalArgumentException("OSM changes can only be applied if the OSM way ids are stored");
+        this.graph = graph;
+        this.nodeAccess = graph.getNodeAccess();
+        this.encodingManager = graph.getEncodingManager();
+        this.encoders = encodingManager.fetchEdgeEncoders();
+        this.osmWayIds = osmWayIds;
+    }
+
+    /**
+     * Subnetworks with less nodes than this are removed after the changes, see PrepareRoutingSubnetworks.
+     */
+    public OSMChangeUpdater setMinNetworkSize(int minNetworkSize) {
+        this.minNetworkSize = minNetworkSize;
+        return this;
+    }
+
+    public OSMChangeResponse apply(File changeFile) throws IOException, XMLStreamException {
+        InputStream input = new BufferedInputStream(new FileInputStream(changeFile), 64 * 1024);
+        try {
+            if (changeFile.getName().endsWith(".gz"))
+                input = new GZIPInputStream(input);
+            return apply(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    public OSMChangeResponse apply(InputStream input) throws XMLStreamException {
+        StopWatch sw = new StopWatch().start();
+        OSMChange change = readChange(input);
+        OSMChangeResponse response = new OSMChangeResponse();
+        response.ignoredRelations = change.relations;
+
+        LongIntMap towerNodes = osmWayIds.createNodeIndex(graph);
+        IntArrayList changedNodes = new IntArrayList();
+        moveTowerNodes(change.nodes, towerNodes, changedNodes, response);
+
+        for (LongCursor wayId : change.deletedWays) {
+            int[] edges = osmWayIds.getEdges(graph, wayId.value);
+            if (edges.length == 0)
+                continue;
+            disableEdges(edges, changedNodes, response);
+            response.deletedWays++;
+        }
+
+        // nodes that are used more than once have to be tower nodes of the new edges
+        LongIntMap nodeUsages = new LongIntHashMap();
+        for (ReaderWay way : change.ways.values()) {
+            for (LongCursor ref : way.getNodes()) {
+                nodeUsages.putOrAdd(ref.value, 1, 1);
+            }
+        }
+        for (ReaderWay way : change.ways.values()) {
+            updateWay(way, change.nodes, towerNodes, nodeUsages, changedNodes, response);
+        }
+
+        if (!changedNodes.isEmpty())
+            response.removedSubnetworkEdges = new PrepareRoutingSubnetworks(graph, encoders).
+                    setMinNetworkSize(minNetworkSize).removeSmallNetworks(changedNodes);
+
+        if (response.frozenWays > 0)
+            LOGGER.warn("the geometry of " + response.frozenWays + " created or changed ways was not applied as the graph"
+                    + " is frozen, e.g. by the CH preparation, skipped OSM way ids: " + response.skippedWayIds);
+        LOGGER.info("applied OSM changes, " + response + ", took: " + sw.stop().getSeconds() + "s");
+        return response;
+    }
+
+    private static OSMChange readChange(InputStream input) throws XMLStreamException {
+        XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(input, "UTF-8");
+        try {
+            parser.nextTag();
+            if (!"osmChange".equals(parser.getLocalName()))
+                throw new IllegalArgumentException("Not an OSM change file, the root element was " + parser.getLocalName());
+
+            OSMChange change = new OSMChange();
+            boolean delete = false;
+            int event;
+            while ((event = parser.next()) != XMLStreamConstants.END_DOCUMENT) {
+                if (event != XMLStreamConstants.START_ELEMENT)
+                    continue;
+
+                String name = parser.getLocalName();
+                if ("create".equals(name) || "modify".equals(name)) {
+                    delete = false;
+                    continue;
+                } else if ("delete".equals(name)) {
+                    delete = true;
+                    continue;
+                }
+
+                String idStr = parser.getAttributeValue(null, "id");
+                if (idStr == null)
+                    continue;
+                long id = Long.parseLong(idStr);
+                // the elements of later changes replace the elements of earlier changes
+                if ("node".equals(name)) {
+                    // deleted elements do not need to contain their coordinates or tags
+                    if (delete)
+                        change.nodes.remove(id);
+                    else
+                        change.nodes.put(id, OSMXMLHelper.createNode(id, parser));
+                } else if ("way".equals(name)) {
+                    change.ways.remove(id);
+                    if (delete) {
+                        change.deletedWays.add(id);
+                    } else {
+                        change.deletedWays.remove(id);
+                        change.ways.put(id, OSMXMLHelper.createWay(id, parser));
+                    }
+                } else if ("relation".equals(name)) {
+                    change.relations++;
+                }
+            }
+            return change;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private void moveTowerNodes(LongObjectMap<ReaderNode> nodes, LongIntMap towerNodes, IntArrayList changedNodes,
+                                OSMChangeResponse response) {
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (LongObjectCursor<ReaderNode> cursor : nodes) {
+            int node = towerNodes.getOrDefault(cursor.key, -1);
+            ReaderNode readerNode = cursor.value;
+            if (node < 0 || nodeAccess.getLatitude(node) == readerNode.getLat()
+                    && nodeAccess.getLongitude(node) == readerNode.getLon())
+                continue;
+
+            if (nodeAccess.is3D())
+                nodeAccess.setNode(node, readerNode.getLat(), readerNode.getLon(), nodeAccess.getElevation(node));
+            else
+                nodeAccess.setNode(node, readerNode.getLat(), readerNode.getLon());
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                iter.setDistance(calcDistance(iter.fetchWayGeometry(3)));
+            }
+            changedNodes.add(node);
+            response.movedNodes++;
+        }
+    }
+
+    private void updateWay(ReaderWay way, LongObjectMap<ReaderNode> nodes, LongIntMap towerNodes,
+                           LongIntMap nodeUsages, IntArrayList changedNodes, OSMChangeResponse response) {
+        int[] edges = osmWayIds.getEdges(graph, way.getId());
+        IntsRef flags = encodeWay(way, nodes, towerNodes);
+        if (flags == null) {
+            if (edges.length > 0) {
+                disableEdges(edges, changedNodes, response);
+                response.changedWays++;
+            }
+            return;
+        }
+
+        LongArrayList refs = way.getNodes();
+        if (edges.length > 0 && hasSameTowerNodes(refs, edges, nodes, towerNodes)) {
+            setFlags(way, edges, flags);
+            response.changedWays++;
+            return;
+        }
+
+        if (graph.isFrozen() || !canResolve(refs, nodes, towerNodes)) {
+            // keep the old geometry but at least use the new tags, new ways are missing
+            setFlags(way, edges, flags);
+            response.skippedWays++;
+            response.skippedWayIds.add(way.getId());
+            if (graph.isFrozen())
+                response.frozenWays++;
+            return;
+        }
+
+        disableEdges(edges, changedNodes, response);
+        addEdges(way, flags, nodes, towerNodes, nodeUsages, changedNodes, response);
+        if (edges.length > 0)
+            response.changedWays++;
+        else
+            response.createdWays++;
+    }
+
+    /**
+     * Calculates the edge flags of the way like OSMReader, but without the flags of relations.
+     *
+     * @return the edge flags or null if the way is not accepted by the encoders
+     */
+    private IntsRef encodeWay(ReaderWay way, LongObjectMap<ReaderNode> nodes, LongIntMap towerNodes) {
+        LongArrayList refs = way.getNodes();
+        if (refs.size() < 2 || !way.hasTags())
+            return null;
+
+        GHPoint first = getPoint(refs.get(0), nodes, towerNodes);
+        GHPoint last = getPoint(refs.get(refs.size() - 1), nodes, towerNodes);
+        if (first != null && last != null) {
+            way.setTag("estimated_distance", distCalc.calcDist(first.lat, first.lon, last.lat, last.lon));
+            way.setTag("estimated_center", new GHPoint((first.lat + last.lat) / 2, (first.lon + last.lon) / 2));
+        }
+
+        EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
+        if (!encodingManager.acceptWay(way, acceptWay))
+            return null;
+
+        if (way.getTag("duration") != null) {
+            try {
+                way.setTag("duration:seconds", Long.toString(OSMReaderUtility.parseDuration(way.getTag("duration"))));
+            } catch (Exception ex) {
+                LOGGER.warn("Parsing error in way with OSMID=" + way.getId() + " : " + ex.getMessage());
+            }
+        }
+
+        IntsRef flags = encodingManager.handleWayTags(way, acceptWay, 0);
+        return flags.isEmpty() ? null : flags;
+    }
+
+    /**
+     * @return true if the edges still start and end at the tower nodes of the way in the same direction and the
+     * way does not contain new nodes or pass other tower nodes
+     */
+    private boolean hasSameTowerNodes(LongArrayList refs, int[] edges, LongObjectMap<ReaderNode> nodes,
+                                      LongIntMap towerNodes) {
+        LongHashSet edgeNodes = new LongHashSet();
+        for (int edge : edges) {
+            long base = osmWayIds.getBaseOSMNodeId(edge);
+            long adj = osmWayIds.getAdjOSMNodeId(edge);
+            if (base != 0 && !refs.contains(base) || adj != 0 && !refs.contains(adj))
+                return false;
+            if (base != 0 && adj != 0 && refs.indexOf(base) > refs.lastIndexOf(adj))
+                return false;
+            edgeNodes.add(base);
+            edgeNodes.add(adj);
+        }
+
+        for (LongCursor ref : refs) {
+            if (towerNodes.containsKey(ref.value) ? !edgeNodes.contains(ref.value) : nodes.containsKey(ref.value))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean canResolve(LongArrayList refs, LongObjectMap<ReaderNode> nodes, LongIntMap towerNodes) {
+        for (LongCursor ref : refs) {
+            if (!nodes.containsKey(ref.value) && !towerNodes.containsKey(ref.value))
+                return false;
+        }
+        return true;
+    }
+
+    private GHPoint3D getPoint(long osmNodeId, LongObjectMap<ReaderNode> nodes, LongIntMap towerNodes) {
+        ReaderNode readerNode = nodes.get(osmNodeId);
+        if (readerNode != null) {
+            double ele = nodeAccess.is3D() && !Double.isNaN(readerNode.getEle()) ? readerNode.getEle() : 0;
+            return new GHPoint3D(readerNode.getLat(), readerNode.getLon(), ele);
+        }
+
+        int node = towerNodes.getOrDefault(osmNodeId, -1);
+        if (node < 0)
+            return null;
+        return new GHPoint3D(nodeAccess.getLatitude(node), nodeAccess.getLongitude(node),
+                nodeAccess.is3D() ? nodeAccess.getElevation(node) : 0);
+    }
+
+    /**
+     * Sets the new flags for the edges that have the direction of the way. The zero length edges of barriers keep
+     * their flags as the barrier nodes are not contained in the change file.
+     */
+    private void setFlags(ReaderWay way, int[] edges, IntsRef flags) {
+        LongArrayList refs = way.getNodes();
+        for (int edge : edges) {
+            long base = osmWayIds.getBaseOSMNodeId(edge);
+            long adj = osmWayIds.getAdjOSMNodeId(edge);
+            EdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            if (base != 0 && adj != 0 && refs.indexOf(base) > refs.lastIndexOf(adj)
+                    || (base == 0 || adj == 0) && edgeState.getDistance() <= 0.0001)
+                continue;
+
+            IntsRef edgeFlags = IntsRef.deepCopyOf(flags);
+            // the node references are not contained in the tags of the way
+            IntsRef oldFlags = edgeState.getFlags();
+            for (FlagEncoder encoder : encoders) {
+                if (encoder instanceof AbstractFlagEncoder) {
+                    IntEncodedValue nodeNameEnc = ((AbstractFlagEncoder) encoder).getNodeNameEnc();
+                    nodeNameEnc.setInt(false, edgeFlags, nodeNameEnc.getInt(false, oldFlags));
+                }
+            }
+            edgeState.setFlags(edgeFlags);
+            encodingManager.applyWayTags(way, edgeState);
+        }
+    }
+
+    private void disableEdges(int[] edges, IntArrayList changedNodes, OSMChangeResponse response) {
+        for (int edge : edges) {
+            EdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            for (FlagEncoder encoder : encoders) {
+                edgeState.set(encoder.getAccessEnc(), false).setReverse(encoder.getAccessEnc(), false);
+            }
+            osmWayIds.setOSMWayId(edge, 0);
+            changedNodes.add(edgeState.getBaseNode());
+            changedNodes.add(edgeState.getAdjNode());
+            response.disabledEdges++;
+        }
+    }
+
+    /**
+     * Creates the edges of the way between its tower nodes like OSMReader.addOSMWay. All nodes of the way must be
+     * resolvable, see canResolve.
+     */
+    private void addEdges(ReaderWay way, IntsRef flags, LongObjectMap<ReaderNode> nodes, LongIntMap towerNodes,
+                          LongIntMap nodeUsages, IntArrayList changedNodes, OSMChangeResponse response) {
+        LongArrayList refs = way.getNodes();
+        PointList points = new PointList(refs.size(), nodeAccess.is3D());
+        int fromNode = -1;
+        long fromOSMNodeId = 0;
+        for (int i = 0; i < refs.size(); i++) {
+            long ref = refs.get(i);
+            GHPoint3D point = getPoint(ref, nodes, towerNodes);
+            points.add(point);
+            boolean isTower = i == 0 || i == refs.size() - 1 || towerNodes.containsKey(ref) || nodeUsages.get(ref) > 1;
+            if (!isTower)
+                continue;
+
+            int node = towerNodes.getOrDefault(ref, -1);
+            if (node < 0) {
+                node = addNode(point);
+                towerNodes.put(ref, node);
+            }
+            if (i > 0)
+                addEdge(way, flags, fromNode, fromOSMNodeId, node, ref, points, changedNodes, response);
+
+            fromNode = node;
+            fromOSMNodeId = ref;
+            points = new PointList(refs.size() - i, nodeAccess.is3D());
+            points.add(point);
+        }
+    }
+
+    private int addNode(GHPoint3D point) {
+        int node = graph.getNodes();
+        if (nodeAccess.is3D())
+            nodeAccess.setNode(node, point.lat, point.lon, point.ele);
+        else
+            nodeAccess.setNode(node, point.lat, point.lon);
+        return node;
+    }
+
+    private void addEdge(ReaderWay way, IntsRef flags, int fromNode, long fromOSMNodeId, int toNode, long toOSMNodeId,
+                         PointList points, IntArrayList changedNodes, OSMChangeResponse response) {
+        if (fromNode == toNode) {
+            // split loops at the last pillar node
+            if (points.size() < 3)
+                return;
+            int splitIndex = points.size() - 2;
+            int splitNode = addNode(points.get(splitIndex));
+            addEdge(way, flags, fromNode, fromOSMNodeId, splitNode, 0, points.copy(0, splitIndex + 1), changedNodes, response);
+            addEdge(way, flags, splitNode, 0, toNode, toOSMNodeId, points.copy(splitIndex, points.size()), changedNodes, response);
+            return;
+        }
+
+        EdgeIteratorState edge = graph.edge(fromNode, toNode).setDistance(calcDistance(points)).setFlags(flags);
+        if (points.size() > 2)
+            edge.setWayGeometry(points.copy(1, points.size() - 1));
+        osmWayIds.setOSMWayId(edge.getEdge(), way.getId());
+        osmWayIds.setOSMNodeIds(edge.getEdge(), fromOSMNodeId, toOSMNodeId);
+        encodingManager.applyWayTags(way, edge);
+        changedNodes.add(fromNode);
+        changedNodes.add(toNode);
+        response.createdEdges++;
+    }
+
+    private double calcDistance(PointList points) {
+        // like OSMReader.addEdge, e.g. for the zero length edges of barriers
+        return Math.max(points.calcDistance(distCalc), 0.0001);
+    }
+
+    private static class OSMChange {
+        final LongObjectMap<ReaderNode> nodes = new LongObjectHashMap<>();
+        final Map<Long, ReaderWay> ways = new LinkedHashMap<>();
+        final LongHashSet deletedWays = new LongHashSet();
+        int relations;
+    }
+}
@@ -20,9 +20,18 @@ package com.graphhopper.reader.osm;
 import com.graphhopper.reader.ReaderElement;
 
 import javax.xml.stream.XMLStreamException;
+import java.util.List;
 
 public interface OSMInput extends AutoCloseable {
     ReaderElement getNext() throws XMLStreamException;
 
+    /**
+     * Returns the next elements in the order of the file. Iterating over a batch requires no synchronization with
+     * the decoding threads, so this is faster than calling getNext for every element.
+     *
+     * @return a non-empty list of elements or null if the end of the file is reached
+     */
+    List<ReaderElement> getNextBatch() throws XMLStreamException;
+
     int getUnprocessedElements();
 }
@@ -27,8 +27,11 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipInputStream;
@@ -40,21 +43,29 @@ import java.util.zip.ZipInputStream;
  * @author Nop
  */
 public class OSMInputFile implements Sink, OSMInput {
+    private static final int XML_BATCH_SIZE = 1000;
+    // marks the end of the pbf data in the batch queue, compared by identity
+    private static final List<ReaderElement> END_OF_DATA = new ArrayList<>(0);
     private final InputStream bis;
-    private final BlockingQueue<ReaderElement> itemQueue;
+    // the decoded blobs of a pbf file, one blob contains about 8000 elements
+    private final BlockingQueue<List<ReaderElement>> batchQueue;
     Thread pbfReaderThread;
     private boolean eof;
+    private volatile boolean closed;
     // for xml parsing
     private XMLStreamReader parser;
+    private boolean endOfXML;
     // for pbf parsing
     private boolean binary = false;
-    private boolean hasIncomingData;
+    private List<ReaderElement> currentBatch = Collections.emptyList();
+    private int currentIndex;
     private int workerThreads = -1;
+    private boolean skipNodes;
     private OSMFileHeader fileheader;
 
     public OSMInputFile(File file) throws IOException {
         bis = decode(file);
-        itemQueue = new LinkedBlockingQueue<>(50_000);
+        batchQueue = new ArrayBlockingQueue<>(8);
     }
 
     public OSMInputFile open() throws XMLStreamException {
@@ -74,6 +85,14 @@ public class OSMInputFile implements Sink, OSMInput {
         return this;
     }
 
+    /**
+     * Does not return any nodes if true, which avoids decoding them if only the ways and relations are needed.
+     */
+    public OSMInputFile setSkipNodes(boolean skipNodes) {
+        this.skipNodes = skipNodes;
+        return this;
+    }
+
     @SuppressWarnings("unchecked")
     private InputStream decode(File file) throws IOException {
         final String name = file.getName();
@@ -165,7 +184,7 @@ public class OSMInputFile implements Sink, OSMInput {
         if (binary)
             item = getNextPBF();
         else
-            item = getNextXML();
+            item = endOfXML ? null : getNextXML();
 
         if (item != null)
             return item;
@@ -174,6 +193,39 @@ public class OSMInputFile implements Sink, OSMInput {
         return null;
     }
 
+    @Override
+    public List<ReaderElement> getNextBatch() throws XMLStreamException {
+        if (eof)
+            throw new IllegalStateException("EOF reached");
+
+        List<ReaderElement> batch;
+        if (binary) {
+            if (currentIndex < currentBatch.size()) {
+                // the rest of a batch that was partly consumed via getNext
+                batch = currentBatch.subList(currentIndex, currentBatch.size());
+                currentBatch = Collections.emptyList();
+                currentIndex = 0;
+                return batch;
+            }
+            batch = takeBatch();
+        } else {
+            batch = new ArrayList<>(XML_BATCH_SIZE);
+            while (!endOfXML && batch.size() < XML_BATCH_SIZE) {
+                ReaderElement item = getNextXML();
+                if (item == null)
+                    endOfXML = true;
+                else
+                    batch.add(item);
+            }
+        }
+
+        if (batch != null && !batch.isEmpty())
+            return batch;
+
+        eof = true;
+        return null;
+    }
+
     private ReaderElement getNextXML() throws XMLStreamException {
 
         int event = parser.next();
@@ -192,7 +244,7 @@ public class OSMInputFile implements Sink, OSMInput {
                     switch (name.charAt(0)) {
                         case 'n':
                             // note vs. node
-                            if ("node".equals(name)) {
+                            if ("node".equals(name) && !skipNodes) {
                                 id = Long.parseLong(idStr);
                                 return OSMXMLHelper.createNode(id, parser);
                             }
@@ -211,6 +263,7 @@ public class OSMInputFile implements Sink, OSMInput {
             event = parser.next();
         }
         parser.close();
+        endOfXML = true;
         return null;
     }
 
@@ -227,6 +280,7 @@ public class OSMInputFile implements Sink, OSMInput {
             throw new IOException(ex);
         } finally {
             eof = true;
+            closed = true;
             bis.close();
             // if exception happend on OSMInputFile-thread we need to shutdown the pbf handling
             if (pbfReaderThread != null && pbfReaderThread.isAlive())
@@ -235,51 +289,71 @@ public class OSMInputFile implements Sink, OSMInput {
     }
 
     private void openPBFReader(InputStream stream) {
-        hasIncomingData = true;
         if (workerThreads <= 0)
             workerThreads = 1;
 
-        PbfReader reader = new PbfReader(stream, this, workerThreads);
+        PbfReader reader = new PbfReader(stream, this, workerThreads, skipNodes);
         pbfReaderThread = new Thread(reader, "PBF Reader");
         pbfReaderThread.start();
     }
 
     @Override
-    public void process(ReaderElement item) {
+    public void process(List<ReaderElement> items) {
+        if (!items.isEmpty())
+            putBatch(items);
+    }
+
+    @Override
+    public void complete() {
+        putBatch(END_OF_DATA);
+    }
+
+    private void putBatch(List<ReaderElement> batch) {
         try {
-            // blocks if full
-            itemQueue.put(item);
+            // blocks if full, but stops waiting if the reading side was closed e.g. because of an exception
+            while (!batchQueue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (closed)
+                    return;
+            }
         } catch (InterruptedException ex) {
             throw new RuntimeException(ex);
         }
     }
 
     public int getUnprocessedElements() {
-        return itemQueue.size();
-    }
-
-    @Override
-    public void complete() {
-        hasIncomingData = false;
+        int elements = currentBatch.size() - currentIndex;
+        for (List<ReaderElement> batch : batchQueue) {
+            elements += batch.size();
+        }
+        return elements;
     }
 
     private ReaderElement getNextPBF() {
-        ReaderElement next = null;
-        while (next == null) {
-            if (!hasIncomingData && itemQueue.isEmpty()) {
-                // we are done, stop polling
-                eof = true;
-                break;
-            }
+        while (currentIndex >= currentBatch.size()) {
+            List<ReaderElement> batch = takeBatch();
+            if (batch == null)
+                return null;
+            currentBatch = batch;
+            currentIndex = 0;
+        }
+        return currentBatch.get(currentIndex++);
+    }
 
-            try {
-                // we cannot use "itemQueue.take()" as it blocks and hasIncomingData can change
-                next = itemQueue.poll(10, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException ex) {
-                eof = true;
-                break;
+    /**
+     * @return the next decoded blob or null if all blobs were read
+     */
+    private List<ReaderElement> takeBatch() {
+        try {
+            List<ReaderElement> batch = batchQueue.take();
+            if (batch == END_OF_DATA) {
+                currentBatch = Collections.emptyList();
+                currentIndex = 0;
+                return null;
             }
+            return batch;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
         }
-        return next;
     }
 }
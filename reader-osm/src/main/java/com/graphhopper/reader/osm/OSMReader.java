@@ -36,6 +36,7 @@ import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static com.graphhopper.util.Helper.nf;
 
@@ -58,13 +59,15 @@ import static com.graphhopper.util.Helper.nf;
  * <p>
  * 2.b) Reads ways from OSM file and creates edges while calculating the speed etc from the OSM tags.
  * When creating an edge the pillar node information from the intermediate data structure will be
- * stored in the way geometry of that edge.
+ * stored in the way geometry of that edge. With more than one worker thread the tags of batches of ways are
+ * encoded in parallel, only the edges are created in the order of the file, see {@link WayPipeline}.
  * <p>
  *
  * @author Peter Karich
  */
 public class OSMReader implements DataReader {
     protected static final int EMPTY_NODE = -1;
+    private static final int WAY_BATCH_SIZE = 1000;
     // pillar node is >= 3
     protected static final int PILLAR_NODE = 1;
     // tower node is <= -3
@@ -103,6 +106,7 @@ public class OSMReader implements DataReader {
    // stores osm way ids used by relations to identify which edge ids needs to be mapped later
     private GHLongHashSet osmWayIdSet = new GHLongHashSet();
     private IntLongMap edgeIdToOsmWayIdMap;
+    private OSMWayIdStorage osmWayIdStorage;
     private boolean doSimplify = true;
     private int nextTowerId = 0;
     private int nextPillarId = 0;
@@ -155,47 +159,50 @@ public class OSMReader implements DataReader {
      * compact graph data structure.
      */
     void preProcess(File osmFile) {
-        try (OSMInput in = openOsmInputFile(osmFile)) {
+        // the nodes are read in the second pass only
+        try (OSMInput in = openOsmInputFile(osmFile, true)) {
             long tmpWayCounter = 1;
             long tmpRelationCounter = 1;
-            ReaderElement item;
-            while ((item = in.getNext()) != null) {
-                if (item.isType(ReaderElement.NODE)) {
+            List<ReaderElement> batch;
+            while ((batch = in.getNextBatch()) != null) {
+                for (ReaderElement item : batch) {
+                    if (item.isType(ReaderElement.NODE)) {
 
-                } else if (item.isType(ReaderElement.WAY)) {
-                    final ReaderWay way = (ReaderWay) item;
-                    boolean valid = filterWay(way);
-                    if (valid) {
-                        LongIndexedContainer wayNodes = way.getNodes();
-                        int s = wayNodes.size();
-                        for (int index = 0; index < s; index++) {
-                            prepareHighwayNode(wayNodes.get(index));
+                    } else if (item.isType(ReaderElement.WAY)) {
+                        final ReaderWay way = (ReaderWay) item;
+                        boolean valid = filterWay(way);
+                        if (valid) {
+                            LongIndexedContainer wayNodes = way.getNodes();
+                            int s = wayNodes.size();
+                            for (int index = 0; index < s; index++) {
+                                prepareHighwayNode(wayNodes.get(index));
 
 
-                        }
+                            }
 
-                        if (++tmpWayCounter % 10_000_000 == 0) {
-                            LOGGER.info(nf(tmpWayCounter) + " (preprocess), osmIdMap:" + nf(getNodeMap().getSize()) + " ("
-                                    + getNodeMap().getMemoryUsage() + "MB) " + Helper.getMemInfo());
+                            if (++tmpWayCounter % 10_000_000 == 0) {
+                                LOGGER.info(nf(tmpWayCounter) + " (preprocess), osmIdMap:" + nf(getNodeMap().getSize()) + " ("
+                                        + getNodeMap().getMemoryUsage() + "MB) " + Helper.getMemInfo());
+                            }
                         }
-                    }
-                } else if (item.isType(ReaderElement.RELATION)) {
-                    final ReaderRelation relation = (ReaderRelation) item;
-                    if (!relation.isMetaRelation() && relation.hasTag("type", "route"))
-                        prepareWaysWithRelationInfo(relation);
+                    } else if (item.isType(ReaderElement.RELATION)) {
+                        final ReaderRelation relation = (ReaderRelation) item;
+                        if (!relation.isMetaRelation() && relation.hasTag("type", "route"))
+                            prepareWaysWithRelationInfo(relation);
 
-                    if (relation.hasTag("type", "restriction"))
-                        prepareRestrictionRelation(relation);
+                        if (relation.hasTag("type", "restriction"))
+                            prepareRestrictionRelation(relation);
 
-                    if (++tmpRelationCounter % 100_000 == 0) {
-                        LOGGER.info(nf(tmpRelationCounter) + " (preprocess), osmWayMap:" + nf(getRelFlagsMap().size())
-                                + " " + Helper.getMemInfo());
+                        if (++tmpRelationCounter % 100_000 == 0) {
+                            LOGGER.info(nf(tmpRelationCounter) + " (preprocess), osmWayMap:" + nf(getRelFlagsMap().size())
+                                    + " " + Helper.getMemInfo());
+                        }
+                    } else if (item.isType(ReaderElement.FILEHEADER)) {
+                        final OSMFileHeader fileHeader = (OSMFileHeader) item;
+                        osmDataDate = Helper.createFormatter().parse(fileHeader.getTag("timestamp"));
                     }
-                } else if (item.isType(ReaderElement.FILEHEADER)) {
-                    final OSMFileHeader fileHeader = (OSMFileHeader) item;
-                    osmDataDate = Helper.createFormatter().parse(fileHeader.getTag("timestamp"));
-                }
 
+                }
             }
         } catch (Exception ex) {
             throw new RuntimeException("Problem while parsing file", ex);
@@ -255,43 +262,50 @@ public class OSMReader implements DataReader {
         long wayStart = -1;
         long relationStart = -1;
         long counter = 1;
-        try (OSMInput in = openOsmInputFile(osmFile)) {
+        try (OSMInput in = openOsmInputFile(osmFile); WayPipeline wayPipeline = new WayPipeline(workerThreads)) {
             LongIntMap nodeFilter = getNodeMap();
 
-            ReaderElement item;
-            while ((item = in.getNext()) != null) {
-                switch (item.getType()) {
-                    case ReaderElement.NODE:
-                        if (nodeFilter.get(item.getId()) != EMPTY_NODE) {
-                            processNode((ReaderNode) item);
+            List<ReaderElement> batch;
+            while ((batch = in.getNextBatch()) != null) {
+                for (ReaderElement item : batch) {
+                    // the pending ways have to be finished before other elements can change the graph
+                    if (item.getType() != ReaderElement.WAY)
+                        wayPipeline.flush();
 
+                    switch (item.getType()) {
+                        case ReaderElement.NODE:
+                            if (nodeFilter.get(item.getId()) != EMPTY_NODE) {
+                                processNode((ReaderNode) item);
 
-                        }
-                        break;
 
-                    case ReaderElement.WAY:
-                        if (wayStart < 0) {
-                            LOGGER.info(nf(counter) + ", now parsing ways");
-                            wayStart = counter;
-                        }
-                        processWay((ReaderWay) item);
-                        break;
-                    case ReaderElement.RELATION:
-                        if (relationStart < 0) {
-                            LOGGER.info(nf(counter) + ", now parsing relations");
-                            relationStart = counter;
-                        }
-                        processRelation((ReaderRelation) item);
-                        break;
-                    case ReaderElement.FILEHEADER:
-                        break;
-                    default:
-                        throw new IllegalStateException("Unknown type " + item.getType());
-                }
-                if (++counter % 200_000_000 == 0) {
-                    LOGGER.info(nf(counter) + ", locs:" + nf(locations) + " (" + skippedLocations + ") " + Helper.getMemInfo());
+                            }
+                            break;
+
+                        case ReaderElement.WAY:
+                            if (wayStart < 0) {
+                                LOGGER.info(nf(counter) + ", now parsing ways");
+                                wayStart = counter;
+                            }
+                            wayPipeline.add((ReaderWay) item);
+                            break;
+                        case ReaderElement.RELATION:
+                            if (relationStart < 0) {
+                                LOGGER.info(nf(counter) + ", now parsing relations");
+                                relationStart = counter;
+                            }
+                            processRelation((ReaderRelation) item);
+                            break;
+                        case ReaderElement.FILEHEADER:
+                            break;
+                        default:
+                            throw new IllegalStateException("Unknown type " + item.getType());
+                    }
+                    if (++counter % 200_000_000 == 0) {
+                        LOGGER.info(nf(counter) + ", locs:" + nf(locations) + " (" + skippedLocations + ") " + Helper.getMemInfo());
+                    }
                 }
             }
+            wayPipeline.flush();
 
             if (in.getUnprocessedElements() > 0)
                 throw new IllegalStateException("Still unprocessed elements in reader queue " + in.getUnprocessedElements());
@@ -307,28 +321,31 @@ public class OSMReader implements DataReader {
     }
 
     protected OSMInput openOsmInputFile(File osmFile) throws XMLStreamException, IOException {
-        return new OSMInputFile(osmFile).setWorkerThreads(workerThreads).open();
+        return openOsmInputFile(osmFile, false);
+    }
+
+    protected OSMInput openOsmInputFile(File osmFile, boolean skipNodes) throws XMLStreamException, IOException {
+        return new OSMInputFile(osmFile).setWorkerThreads(workerThreads).setSkipNodes(skipNodes).open();
     }
 
     /**
      * Process properties, encode flags and create edges for the way.
      */
     void processWay(ReaderWay way) {
-        if (way.getNodes().size() < 2)
-            return;
-
-        // ignore multipolygon geometry
-        if (!way.hasTags())
-            return;
-
-        long wayOsmId = way.getId();
+        prepareWay(way);
+        IntsRef edgeFlags = encodeWay(way);
+        if (edgeFlags != null)
+            addWay(way, edgeFlags);
+    }
 
-        EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
-        if (!encodingManager.acceptWay(way, acceptWay))
+    /**
+     * Adds the tags that depend on the node coordinates. This reads the node map which is changed while edges are
+     * created, so it must not run concurrently to addWay.
+     */
+    private void prepareWay(ReaderWay way) {
+        if (way.getNodes().size() < 2 || !way.hasTags())
             return;
 
-        long relationFlags = getRelFlagsMap().get(way.getId());
-
         // TODO move this after we have created the edge and know the coordinates => encodingManager.applyWayTags
         LongArrayList osmNodeIds = way.getNodes();
         // Estimate length of ways containing a route tag e.g. for ferry speed calculation
@@ -344,6 +361,27 @@ public class OSMReader implements DataReader {
                 way.setTag("estimated_center", new GHPoint((firstLat + lastLat) / 2, (firstLon + lastLon) / 2));
             }
         }
+    }
+
+    /**
+     * Calculates the edge flags of the way from its tags. This only reads data that is not changed while the
+     * ways are processed and can be called from several threads at the same time.
+     *
+     * @return the edge flags or null if the way should be ignored
+     */
+    private IntsRef encodeWay(ReaderWay way) {
+        if (way.getNodes().size() < 2)
+            return null;
+
+        // ignore multipolygon geometry
+        if (!way.hasTags())
+            return null;
+
+        EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
+        if (!encodingManager.acceptWay(way, acceptWay))
+            return null;
+
+        long relationFlags = getRelFlagsMap().get(way.getId());
 
         if (way.getTag("duration") != null) {
             try {
@@ -356,9 +394,15 @@ public class OSMReader implements DataReader {
         }
 
         IntsRef edgeFlags = encodingManager.handleWayTags(way, acceptWay, relationFlags);
-        if (edgeFlags.isEmpty())
-            return;
+        return edgeFlags.isEmpty() ? null : edgeFlags;
+    }
 
+    /**
+     * Creates the edges of the way with the specified flags. The edges have to be created in the order of the file.
+     */
+    private void addWay(ReaderWay way, IntsRef edgeFlags) {
+        long wayOsmId = way.getId();
+        LongArrayList osmNodeIds = way.getNodes();
         List<EdgeIteratorState> createdEdges = new ArrayList<>();
         // look for barriers along the way
         final int size = osmNodeIds.size();
@@ -443,6 +487,109 @@ public class OSMReader implements DataReader {
         }
     }
 
+    /**
+     * Processes the ways of the second pass. With more than one thread the edge flags of batches of ways are
+     * calculated on worker threads while the calling thread reads the next ways and creates the edges of the
+     * finished batches. The edges are created in the order of the file, so the graph is the same as with one thread.
+     */
+    private class WayPipeline implements AutoCloseable {
+        private final ExecutorService executor;
+        private final int maxPendingBatches;
+        private final Deque<Future<WayBatch>> pendingBatches = new ArrayDeque<>();
+        private List<ReaderWay> ways = new ArrayList<>(WAY_BATCH_SIZE);
+
+        WayPipeline(int threads) {
+            if (threads > 1) {
+                executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "osm-way-worker");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                // keep the workers busy while the edges of a finished batch are created
+                maxPendingBatches = 2 * threads;
+            } else {
+                executor = null;
+                maxPendingBatches = 0;
+            }
+        }
+
+        void add(ReaderWay way) {
+            if (executor == null) {
+                processWay(way);
+                return;
+            }
+
+            prepareWay(way);
+            ways.add(way);
+            if (ways.size() >= WAY_BATCH_SIZE)
+                submit();
+        }
+
+        private void submit() {
+            final List<ReaderWay> batch = ways;
+            ways = new ArrayList<>(WAY_BATCH_SIZE);
+            pendingBatches.add(executor.submit(new Callable<WayBatch>() {
+                @Override
+                public WayBatch call() {
+                    IntsRef[] edgeFlags = new IntsRef[batch.size()];
+                    for (int i = 0; i < edgeFlags.length; i++) {
+                        edgeFlags[i] = encodeWay(batch.get(i));
+                    }
+                    return new WayBatch(batch, edgeFlags);
+                }
+            }));
+            while (pendingBatches.size() > maxPendingBatches) {
+                addWays(pendingBatches.poll());
+            }
+        }
+
+        /**
+         * Creates the edges of all ways that were added so far.
+         */
+        void flush() {
+            if (!ways.isEmpty())
+                submit();
+            while (!pendingBatches.isEmpty()) {
+                addWays(pendingBatches.poll());
+            }
+        }
+
+        private void addWays(Future<WayBatch> future) {
+            WayBatch batch;
+            try {
+                batch = future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the ways", ex);
+            } catch (ExecutionException ex) {
+                throw GHUtility.toRuntimeException(ex);
+            }
+            for (int i = 0; i < batch.edgeFlags.length; i++) {
+                if (batch.edgeFlags[i] != null)
+                    addWay(batch.ways.get(i), batch.edgeFlags[i]);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (executor != null)
+                executor.shutdownNow();
+        }
+    }
+
+    private static class WayBatch {
+        final List<ReaderWay> ways;
+        final IntsRef[] edgeFlags;
+
+        WayBatch(List<ReaderWay> ways, IntsRef[] edgeFlags) {
+            this.ways = ways;
+            this.edgeFlags = edgeFlags;
+        }
+    }
+
     public void processRelation(ReaderRelation relation) {
         if (relation.hasTag("type", "restriction")) {
             TurnCostExtension turnCostExtension = graph.getTurnCostExtension();
@@ -827,13 +974,26 @@ public class OSMReader implements DataReader {
             iter.setWayGeometry(pillarNodes);
         }
         storeOsmWayID(iter.getEdge(), wayOsmId);
+        if (osmWayIdStorage != null)
+            osmWayIdStorage.setOSMNodeIds(iter.getEdge(), getTowerOSMNodeId(fromIndex), getTowerOSMNodeId(toIndex));
         return iter;
     }
 
     /**
-     * Stores only osmWayIds which are required for relations
+     * @return the OSM node id of the specified tower node or 0 for the artificial nodes, e.g. of barriers
+     */
+    private long getTowerOSMNodeId(int nodeId) {
+        long osmNodeId = getNodeIdToOsmNodeIdMap().get(nodeId);
+        return osmNodeId > 0 ? osmNodeId : 0;
+    }
+
+    /**
+     * Stores the osmWayIds of all edges if an OSMWayIdStorage is set, otherwise only the osmWayIds which are
+     * required for relations
      */
     protected void storeOsmWayID(int edgeId, long osmWayId) {
+        if (osmWayIdStorage != null)
+            osmWayIdStorage.setOSMWayId(edgeId, osmWayId);
         if (getOsmWayIdSet().contains(osmWayId)) {
             getEdgeIdToOsmWayIdMap().put(edgeId, osmWayId);
         }
@@ -867,6 +1027,8 @@ public class OSMReader implements DataReader {
         printInfo("way");
         pillarInfo.clear();
         eleProvider.release();
+        if (osmNodeIdToInternalNodeMap instanceof OSMIDHashMap)
+            ((OSMIDHashMap) osmNodeIdToInternalNodeMap).remove();
         osmNodeIdToInternalNodeMap = null;
         osmNodeIdToNodeFlagsMap = null;
         osmWayIdToRouteWeightMap = null;
@@ -1108,6 +1270,31 @@ public class OSMReader implements DataReader {
         return this;
     }
 
+    /**
+     * Specifies where the map from OSM node ids to the internal node ids is stored while reading. By default it is
+     * a tree on the heap. With a DAType like MMAP or UNSAFE_STORE the map is stored outside of the heap, which keeps
+     * the heap small for big imports but is a bit slower.
+     *
+     * @param type the DAType of the map or null to use the heap
+     */
+    public OSMReader setNodeMapType(DAType type) {
+        if (type == null) {
+            osmNodeIdToInternalNodeMap = new GHLongIntBTree(200);
+        } else {
+            Directory dir = new GHDirectory(ghStorage.getDirectory().getLocation(), type).create();
+            osmNodeIdToInternalNodeMap = new OSMIDHashMap(dir, type, "tmp_osm_node_map", EMPTY_NODE);
+        }
+        return this;
+    }
+
+    /**
+     * Specifies the storage for the OSM way id of every edge, see GraphHopper.setStoreOSMWayIds
+     */
+    public OSMReader setOSMWayIdStorage(OSMWayIdStorage osmWayIdStorage) {
+        this.osmWayIdStorage = osmWayIdStorage;
+        return this;
+    }
+
     @Override
     public OSMReader setElevationProvider(ElevationProvider eleProvider) {
         if (eleProvider == null)
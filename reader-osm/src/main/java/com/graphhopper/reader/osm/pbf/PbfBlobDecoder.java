@@ -2,7 +2,8 @@
 package com.graphhopper.reader.osm.pbf;
 
 import com.carrotsearch.hppc.LongIndexedContainer;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
@@ -23,15 +24,20 @@ import java.util.zip.Inflater;
  * Converts PBF block data into decoded entities ready to be passed into an Osmosis pipeline. This
  * class is designed to be passed into a pool of worker threads to allow multi-threaded decoding.
  * <p>
+ * Every worker thread reuses its Inflater and buffers for all blobs. The tags of the dense nodes are only decoded
+ * when they are accessed, see ReaderElement.setTagDecoder, as most of the nodes are skipped by the OSMReader.
+ * <p>
  *
  * @author Brett Henderson
  */
 public class PbfBlobDecoder implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(PbfBlobDecoder.class);
+    private static final ThreadLocal<BlobBuffers> BUFFERS = ThreadLocal.withInitial(BlobBuffers::new);
     private final boolean checkData = false;
     private final String blobType;
     private final byte[] rawBlob;
     private final PbfBlobDecoderListener listener;
+    private final boolean skipNodes;
     private List<ReaderElement> decodedEntities;
 
     /**
@@ -43,38 +49,57 @@ public class PbfBlobDecoder implements Runnable {
      * @param listener The listener for receiving decoding results.
      */
     public PbfBlobDecoder(String blobType, byte[] rawBlob, PbfBlobDecoderListener listener) {
+        this(blobType, rawBlob, listener, false);
+    }
+
+    /**
+     * @param skipNodes if true no nodes are decoded, e.g. if only the ways and relations are needed
+     */
+    public PbfBlobDecoder(String blobType, byte[] rawBlob, PbfBlobDecoderListener listener, boolean skipNodes) {
         this.blobType = blobType;
         this.rawBlob = rawBlob;
         this.listener = listener;
+        this.skipNodes = skipNodes;
     }
 
-    private byte[] readBlobContent() throws IOException {
-        Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawBlob);
-        byte[] blobData;
+    /**
+     * Decodes the blob into the output buffer of the worker thread.
+     *
+     * @return the blob content, only valid until the next blob is read by this thread
+     */
+    private CodedInputStream readBlobContent() throws IOException {
+        BlobBuffers buffers = BUFFERS.get();
+        CodedInputStream blobInput = CodedInputStream.newInstance(rawBlob);
+        // the raw or compressed data references the raw blob instead of being copied
+        blobInput.enableAliasing(true);
+        Fileformat.Blob blob = Fileformat.Blob.parseFrom(blobInput);
 
         if (blob.hasRaw()) {
-            blobData = blob.getRaw().toByteArray();
+            ByteString raw = blob.getRaw();
+            raw.copyTo(buffers.ensureOutput(raw.size()), 0);
+            return CodedInputStream.newInstance(buffers.output, 0, raw.size());
         } else if (blob.hasZlibData()) {
-            Inflater inflater = new Inflater();
-            inflater.setInput(blob.getZlibData().toByteArray());
-            blobData = new byte[blob.getRawSize()];
+            ByteString zlibData = blob.getZlibData();
+            zlibData.copyTo(buffers.ensureInput(zlibData.size()), 0);
+            Inflater inflater = buffers.inflater;
+            inflater.reset();
+            inflater.setInput(buffers.input, 0, zlibData.size());
+            int rawSize = blob.getRawSize();
             try {
-                inflater.inflate(blobData);
+                inflater.inflate(buffers.ensureOutput(rawSize), 0, rawSize);
             } catch (DataFormatException e) {
                 throw new RuntimeException("Unable to decompress PBF blob.", e);
             }
             if (!inflater.finished()) {
                 throw new RuntimeException("PBF blob contains incomplete compressed data.");
             }
-            inflater.end();
+            return CodedInputStream.newInstance(buffers.output, 0, rawSize);
         } else {
             throw new RuntimeException("PBF blob uses unsupported compression, only raw or zlib may be used.");
         }
-
-        return blobData;
     }
 
-    private void processOsmHeader(byte[] data) throws InvalidProtocolBufferException {
+    private void processOsmHeader(CodedInputStream data) throws IOException {
         Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(data);
 
         // Build the list of active and unsupported features in the file.
@@ -116,37 +141,26 @@ public class PbfBlobDecoder implements Runnable {
          */
     }
 
-    private Map<String, String> buildTags(List<Integer> keys, List<Integer> values, PbfFieldDecoder fieldDecoder) {
-
+    private void checkTags(int keyCount, int valueCount) {
         // Ensure parallel lists are of equal size.
         if (checkData) {
-            if (keys.size() != values.size()) {
-                throw new RuntimeException("Number of tag keys (" + keys.size() + ") and tag values ("
-                        + values.size() + ") don't match");
-            }
-        }
-
-        Iterator<Integer> keyIterator = keys.iterator();
-        Iterator<Integer> valueIterator = values.iterator();
-        if (keyIterator.hasNext()) {
-            Map<String, String> tags = new HashMap<>(keys.size());
-            while (keyIterator.hasNext()) {
-                String key = fieldDecoder.decodeString(keyIterator.next());
-                String value = fieldDecoder.decodeString(valueIterator.next());
-                tags.put(key, value);
+            if (keyCount != valueCount) {
+                throw new RuntimeException("Number of tag keys (" + keyCount + ") and tag values ("
+                        + valueCount + ") don't match");
             }
-            return tags;
         }
-        return null;
     }
 
+    // The getters with index are used instead of the lists to avoid boxing, and the tags are set directly.
+
     private void processNodes(List<Osmformat.Node> nodes, PbfFieldDecoder fieldDecoder) {
         for (Osmformat.Node node : nodes) {
-            Map<String, String> tags = buildTags(node.getKeysList(), node.getValsList(), fieldDecoder);
-
+            checkTags(node.getKeysCount(), node.getValsCount());
             ReaderNode osmNode = new ReaderNode(node.getId(), fieldDecoder.decodeLatitude(node
                     .getLat()), fieldDecoder.decodeLatitude(node.getLon()));
-            osmNode.setTags(tags);
+            for (int i = 0; i < node.getKeysCount(); i++) {
+                osmNode.setTag(fieldDecoder.decodeString(node.getKeys(i)), fieldDecoder.decodeString(node.getVals(i)));
+            }
 
             // Add the bound object to the results.
             decodedEntities.add(osmNode);
@@ -154,92 +168,43 @@ public class PbfBlobDecoder implements Runnable {
     }
 
     private void processNodes(Osmformat.DenseNodes nodes, PbfFieldDecoder fieldDecoder) {
-        List<Long> idList = nodes.getIdList();
-        List<Long> latList = nodes.getLatList();
-        List<Long> lonList = nodes.getLonList();
+        int count = nodes.getIdCount();
 
         // Ensure parallel lists are of equal size.
         if (checkData) {
-            if ((idList.size() != latList.size()) || (idList.size() != lonList.size())) {
-                throw new RuntimeException("Number of ids (" + idList.size() + "), latitudes (" + latList.size()
-                        + "), and longitudes (" + lonList.size() + ") don't match");
+            if ((count != nodes.getLatCount()) || (count != nodes.getLonCount())) {
+                throw new RuntimeException("Number of ids (" + count + "), latitudes (" + nodes.getLatCount()
+                        + "), and longitudes (" + nodes.getLonCount() + ") don't match");
             }
         }
 
-        Iterator<Integer> keysValuesIterator = nodes.getKeysValsList().iterator();
+        // The key and value string indexes of the tags are sequential in the same PBF array. Each set of tags is
+        // delimited by an index with a value of 0. The array is shared by the tag decoders of all nodes.
+        int[] keysVals = new int[nodes.getKeysValsCount()];
+        for (int i = 0; i < keysVals.length; i++) {
+            keysVals[i] = nodes.getKeysVals(i);
+        }
 
-        /*
-         Osmformat.DenseInfo denseInfo;
-         if (nodes.hasDenseinfo()) {
-         denseInfo = nodes.getDenseinfo();
-         } else {
-         denseInfo = null;
-         }
-         */
         long nodeId = 0;
         long latitude = 0;
         long longitude = 0;
-//		int userId = 0;
-//		int userSid = 0;
-//		long timestamp = 0;
-//		long changesetId = 0;
-        for (int i = 0; i < idList.size(); i++) {
+        int keysValsIndex = 0;
+        for (int i = 0; i < count; i++) {
             // Delta decode node fields.
-            nodeId += idList.get(i);
-            latitude += latList.get(i);
-            longitude += lonList.get(i);
-
-            /*
-             if (denseInfo != null) {
-             // Delta decode dense info fields.
-             userId += denseInfo.getUid(i);
-             userSid += denseInfo.getUserSid(i);
-             timestamp += denseInfo.getTimestamp(i);
-             changesetId += denseInfo.getChangeset(i);
-
-             // Build the user, but only if one exists.
-             OsmUser user;
-             if (userId >= 0) {
-             user = new OsmUser(userId, fieldDecoder.decodeString(userSid));
-             } else {
-             user = OsmUser.NONE;
-             }
-
-             entityData = new CommonEntityData(nodeId, denseInfo.getVersion(i),
-             fieldDecoder.decodeTimestamp(timestamp), user, changesetId);
-             } else {
-             entityData = new CommonEntityData(nodeId, EMPTY_VERSION, EMPTY_TIMESTAMP, OsmUser.NONE,
-             EMPTY_CHANGESET);
-             }
-             */
-            // Build the tags. The key and value string indexes are sequential
-            // in the same PBF array. Each set of tags is delimited by an index
-            // with a value of 0.
-            Map<String, String> tags = null;
-            while (keysValuesIterator.hasNext()) {
-                int keyIndex = keysValuesIterator.next();
-                if (keyIndex == 0) {
-                    break;
-                }
-                if (checkData) {
-                    if (!keysValuesIterator.hasNext()) {
-                        throw new RuntimeException(
-                                "The PBF DenseInfo keys/values list contains a key with no corresponding value.");
-                    }
-                }
-                int valueIndex = keysValuesIterator.next();
+            nodeId += nodes.getId(i);
+            latitude += nodes.getLat(i);
+            longitude += nodes.getLon(i);
 
-                if (tags == null) {
-                    // devide by 2 as key&value, multiple by 2 because of the better approximation
-                    tags = new HashMap<>(Math.max(3, 2 * (nodes.getKeysValsList().size() / 2) / idList.size()));
+            ReaderNode node = new ReaderNode(nodeId, ((double) latitude) / 10000000, ((double) longitude) / 10000000);
+            if (keysValsIndex < keysVals.length) {
+                if (keysVals[keysValsIndex] != 0)
+                    node.setTagDecoder(new DenseNodeTagDecoder(fieldDecoder, keysVals, keysValsIndex));
+                while (keysVals[keysValsIndex] != 0) {
+                    keysValsIndex += 2;
                 }
-
-                tags.put(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
+                keysValsIndex++;
             }
 
-            ReaderNode node = new ReaderNode(nodeId, ((double) latitude) / 10000000, ((double) longitude) / 10000000);
-            node.setTags(tags);
-
             // Add the bound object to the results.
             decodedEntities.add(node);
         }
@@ -247,17 +212,19 @@ public class PbfBlobDecoder implements Runnable {
 
     private void processWays(List<Osmformat.Way> ways, PbfFieldDecoder fieldDecoder) {
         for (Osmformat.Way way : ways) {
-            Map<String, String> tags = buildTags(way.getKeysList(), way.getValsList(), fieldDecoder);
+            checkTags(way.getKeysCount(), way.getValsCount());
             ReaderWay osmWay = new ReaderWay(way.getId());
-            osmWay.setTags(tags);
+            for (int i = 0; i < way.getKeysCount(); i++) {
+                osmWay.setTag(fieldDecoder.decodeString(way.getKeys(i)), fieldDecoder.decodeString(way.getVals(i)));
+            }
 
             // Build up the list of way nodes for the way. The node ids are
             // delta encoded meaning that each id is stored as a delta against
             // the previous one.
             long nodeId = 0;
             LongIndexedContainer wayNodes = osmWay.getNodes();
-            for (long nodeIdOffset : way.getRefsList()) {
-                nodeId += nodeIdOffset;
+            for (int i = 0; i < way.getRefsCount(); i++) {
+                nodeId += way.getRefs(i);
                 wayNodes.add(nodeId);
             }
 
@@ -265,29 +232,26 @@ public class PbfBlobDecoder implements Runnable {
         }
     }
 
-    private void buildRelationMembers(ReaderRelation relation,
-                                      List<Long> memberIds, List<Integer> memberRoles, List<Osmformat.Relation.MemberType> memberTypes,
+    private void buildRelationMembers(ReaderRelation relation, Osmformat.Relation pbfRelation,
                                       PbfFieldDecoder fieldDecoder) {
+        int count = pbfRelation.getMemidsCount();
 
         // Ensure parallel lists are of equal size.
         if (checkData) {
-            if ((memberIds.size() != memberRoles.size()) || (memberIds.size() != memberTypes.size())) {
-                throw new RuntimeException("Number of member ids (" + memberIds.size() + "), member roles ("
-                        + memberRoles.size() + "), and member types (" + memberTypes.size() + ") don't match");
+            if ((count != pbfRelation.getRolesSidCount()) || (count != pbfRelation.getTypesCount())) {
+                throw new RuntimeException("Number of member ids (" + count + "), member roles ("
+                        + pbfRelation.getRolesSidCount() + "), and member types (" + pbfRelation.getTypesCount()
+                        + ") don't match");
             }
         }
 
-        Iterator<Long> memberIdIterator = memberIds.iterator();
-        Iterator<Integer> memberRoleIterator = memberRoles.iterator();
-        Iterator<Osmformat.Relation.MemberType> memberTypeIterator = memberTypes.iterator();
-
         // Build up the list of relation members for the way. The member ids are
         // delta encoded meaning that each id is stored as a delta against
         // the previous one.
         long refId = 0;
-        while (memberIdIterator.hasNext()) {
-            Osmformat.Relation.MemberType memberType = memberTypeIterator.next();
-            refId += memberIdIterator.next();
+        for (int i = 0; i < count; i++) {
+            Osmformat.Relation.MemberType memberType = pbfRelation.getTypes(i);
+            refId += pbfRelation.getMemids(i);
 
             int entityType = ReaderRelation.Member.NODE;
             if (memberType == Osmformat.Relation.MemberType.WAY) {
@@ -301,33 +265,43 @@ public class PbfBlobDecoder implements Runnable {
                 }
             }
 
-            ReaderRelation.Member member = new ReaderRelation.Member(entityType, refId, fieldDecoder.decodeString(memberRoleIterator.next()));
+            ReaderRelation.Member member = new ReaderRelation.Member(entityType, refId, fieldDecoder.decodeString(pbfRelation.getRolesSid(i)));
             relation.add(member);
         }
     }
 
     private void processRelations(List<Osmformat.Relation> relations, PbfFieldDecoder fieldDecoder) {
         for (Osmformat.Relation relation : relations) {
-            Map<String, String> tags = buildTags(relation.getKeysList(), relation.getValsList(), fieldDecoder);
-
+            checkTags(relation.getKeysCount(), relation.getValsCount());
             ReaderRelation osmRelation = new ReaderRelation(relation.getId());
-            osmRelation.setTags(tags);
+            for (int i = 0; i < relation.getKeysCount(); i++) {
+                osmRelation.setTag(fieldDecoder.decodeString(relation.getKeys(i)), fieldDecoder.decodeString(relation.getVals(i)));
+            }
 
-            buildRelationMembers(osmRelation, relation.getMemidsList(), relation.getRolesSidList(),
-                    relation.getTypesList(), fieldDecoder);
+            buildRelationMembers(osmRelation, relation, fieldDecoder);
 
             // Add the bound object to the results.
             decodedEntities.add(osmRelation);
         }
     }
 
-    private void processOsmPrimitives(byte[] data) throws InvalidProtocolBufferException {
+    private void processOsmPrimitives(CodedInputStream data) throws IOException {
         Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(data);
         PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(block);
 
+        int count = 0;
+        for (Osmformat.PrimitiveGroup primitiveGroup : block.getPrimitivegroupList()) {
+            if (!skipNodes)
+                count += primitiveGroup.getDense().getIdCount() + primitiveGroup.getNodesCount();
+            count += primitiveGroup.getWaysCount() + primitiveGroup.getRelationsCount();
+        }
+        decodedEntities = new ArrayList<>(count);
+
         for (Osmformat.PrimitiveGroup primitiveGroup : block.getPrimitivegroupList()) {
-            processNodes(primitiveGroup.getDense(), fieldDecoder);
-            processNodes(primitiveGroup.getNodesList(), fieldDecoder);
+            if (!skipNodes) {
+                processNodes(primitiveGroup.getDense(), fieldDecoder);
+                processNodes(primitiveGroup.getNodesList(), fieldDecoder);
+            }
             processWays(primitiveGroup.getWaysList(), fieldDecoder);
             processRelations(primitiveGroup.getRelationsList(), fieldDecoder);
         }
@@ -359,4 +333,47 @@ public class PbfBlobDecoder implements Runnable {
             listener.error(e);
         }
     }
+
+    /**
+     * The Inflater and the buffers of a worker thread, which are reused for all blobs.
+     */
+    private static class BlobBuffers {
+        final Inflater inflater = new Inflater();
+        byte[] input = new byte[0];
+        byte[] output = new byte[0];
+
+        byte[] ensureInput(int size) {
+            if (input.length < size)
+                input = new byte[size];
+            return input;
+        }
+
+        byte[] ensureOutput(int size) {
+            if (output.length < size)
+                output = new byte[size];
+            return output;
+        }
+    }
+
+    /**
+     * Decodes the tags of a dense node that start at the specified index of the keys and values.
+     */
+    private static class DenseNodeTagDecoder implements ReaderElement.TagDecoder {
+        private final PbfFieldDecoder fieldDecoder;
+        private final int[] keysVals;
+        private final int start;
+
+        DenseNodeTagDecoder(PbfFieldDecoder fieldDecoder, int[] keysVals, int start) {
+            this.fieldDecoder = fieldDecoder;
+            this.keysVals = keysVals;
+            this.start = start;
+        }
+
+        @Override
+        public void decodeTags(ReaderElement element) {
+            for (int i = start; keysVals[i] != 0; i += 2) {
+                element.setTag(fieldDecoder.decodeString(keysVals[i]), fieldDecoder.decodeString(keysVals[i + 1]));
+            }
+        }
+    }
 }
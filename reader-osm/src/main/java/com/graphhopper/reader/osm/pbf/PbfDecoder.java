@@ -25,6 +25,7 @@ public class PbfDecoder implements Runnable {
     private final ExecutorService executorService;
     private final int maxPendingBlobs;
     private final Sink sink;
+    private final boolean skipNodes;
     private final Lock lock;
     private final Condition dataWaitCondition;
     private final Queue<PbfBlobResult> blobResults;
@@ -40,7 +41,16 @@ public class PbfDecoder implements Runnable {
      */
     public PbfDecoder(PbfStreamSplitter streamSplitter, ExecutorService executorService, int maxPendingBlobs,
                       Sink sink) {
+        this(streamSplitter, executorService, maxPendingBlobs, sink, false);
+    }
+
+    /**
+     * @param skipNodes if true no nodes are decoded and sent to the sink
+     */
+    public PbfDecoder(PbfStreamSplitter streamSplitter, ExecutorService executorService, int maxPendingBlobs,
+                      Sink sink, boolean skipNodes) {
         this.streamSplitter = streamSplitter;
+        this.skipNodes = skipNodes;
         this.executorService = executorService;
         this.maxPendingBlobs = maxPendingBlobs;
         this.sink = sink;
@@ -92,9 +102,7 @@ public class PbfDecoder implements Runnable {
             // their results.
             lock.unlock();
             try {
-                for (ReaderElement entity : blobResult.getEntities()) {
-                    sink.process(entity);
-                }
+                sink.process(blobResult.getEntities());
             } finally {
                 lock.lock();
             }
@@ -142,7 +150,7 @@ public class PbfDecoder implements Runnable {
             };
 
             // Create the blob decoder itself and execute it on a worker thread.
-            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getData(), decoderListener);
+            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getData(), decoderListener, skipNodes);
             executorService.execute(blobDecoder);
 
             // If the number of pending blobs has reached capacity we must begin
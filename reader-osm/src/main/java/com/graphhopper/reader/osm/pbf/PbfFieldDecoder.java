@@ -4,6 +4,7 @@ package com.graphhopper.reader.osm.pbf;
 import org.openstreetmap.osmosis.osmbinary.Osmformat;
 
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages decoding of the lower level PBF data structures.
@@ -14,6 +15,12 @@ import java.util.Date;
  */
 public class PbfFieldDecoder {
     private static final double COORDINATE_SCALING_FACTOR = 0.000000001;
+    // Tag keys and common values like highway=residential are repeated in every block. They are shared between all
+    // blocks, which saves memory and makes the HashMap lookups of the tag keys cheaper as equal keys are identical.
+    // Long strings are mostly names and are not shared, the size limit prevents the pool from growing for rare strings.
+    private static final int MAX_POOLED_LENGTH = 32;
+    private static final int MAX_POOL_SIZE = 50_000;
+    private static final ConcurrentHashMap<String, String> STRING_POOL = new ConcurrentHashMap<>();
     private String[] strings;
     private int coordGranularity;
     private long coordLatitudeOffset;
@@ -35,10 +42,22 @@ public class PbfFieldDecoder {
         Osmformat.StringTable stringTable = primitiveBlock.getStringtable();
         strings = new String[stringTable.getSCount()];
         for (int i = 0; i < strings.length; i++) {
-            strings[i] = stringTable.getS(i).toStringUtf8();
+            strings[i] = share(stringTable.getS(i).toStringUtf8());
         }
     }
 
+    static String share(String string) {
+        if (string.length() > MAX_POOLED_LENGTH)
+            return string;
+        String shared = STRING_POOL.get(string);
+        if (shared != null)
+            return shared;
+        if (STRING_POOL.size() >= MAX_POOL_SIZE)
+            return string;
+        shared = STRING_POOL.putIfAbsent(string, string);
+        return shared == null ? string : shared;
+    }
+
     /**
      * Decodes a raw latitude value into degrees.
      * <p>
@@ -16,6 +16,7 @@ public class PbfReader implements Runnable {
     private InputStream inputStream;
     private Sink sink;
     private int workers;
+    private boolean skipNodes;
 
     /**
      * Creates a new instance.
@@ -25,9 +26,17 @@ public class PbfReader implements Runnable {
      * @param workers The number of worker threads for decoding PBF blocks.
      */
     public PbfReader(InputStream in, Sink sink, int workers) {
+        this(in, sink, workers, false);
+    }
+
+    /**
+     * @param skipNodes if true no nodes are decoded and sent to the sink
+     */
+    public PbfReader(InputStream in, Sink sink, int workers, boolean skipNodes) {
         this.inputStream = in;
         this.sink = sink;
         this.workers = workers;
+        this.skipNodes = skipNodes;
     }
 
     @Override
@@ -43,7 +52,7 @@ public class PbfReader implements Runnable {
             // immediately ready for processing when a worker thread completes.
             // The main thread is responsible for splitting blobs from the
             // request stream, and sending decoded entities to the sink.
-            PbfDecoder pbfDecoder = new PbfDecoder(streamSplitter, executorService, workers + 1, sink);
+            PbfDecoder pbfDecoder = new PbfDecoder(streamSplitter, executorService, workers + 1, sink, skipNodes);
             pbfDecoder.run();
 
         } catch (Exception e) {
@@ -19,11 +19,16 @@ package com.graphhopper.reader.osm.pbf;
 
 import com.graphhopper.reader.ReaderElement;
 
+import java.util.List;
+
 /**
  * @author Nop
  */
 public interface Sink {
-    void process(ReaderElement item);
+    /**
+     * Receives the decoded elements of one blob in the order of the file.
+     */
+    void process(List<ReaderElement> items);
 
     void complete();
 }
@@ -147,6 +147,38 @@ public class GraphHopperOSMTest {
         gh.close();
     }
 
+    @Test
+    public void testRouteCache() {
+        instance = new GraphHopperOSM().setStoreOnFlush(false).setCHEnabled(false).
+                setEncodingManager(EncodingManager.create("car")).
+                setGraphHopperLocation(ghLoc).
+                setDataReaderFile(testOsm).
+                setRouteCacheSize(10);
+        instance.importOrLoad();
+
+        GHResponse rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().getSize());
+        double distance = rsp.getBest().getDistance();
+        assertTrue(distance > 0);
+        // changing the response does not change the cached one
+        rsp.getBest().setDistance(0);
+
+        rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertTrue(rsp.getDebugInfo(), rsp.getDebugInfo().contains("route cache hit"));
+        assertEquals(3, rsp.getBest().getPoints().getSize());
+        assertEquals(distance, rsp.getBest().getDistance(), 1e-6);
+        assertEquals(1, instance.getRouteCache().getHits());
+
+        // calcPaths does not use the cache
+        rsp = new GHResponse();
+        List<Path> paths = instance.calcPaths(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4), rsp);
+        assertFalse(rsp.hasErrors());
+        assertEquals(1, paths.size());
+        assertFalse(rsp.getDebugInfo().contains("route cache hit"));
+        assertEquals(1, instance.getRouteCache().getHits());
+    }
+
     @Test
     public void testQueryLocationIndexWithBBox() {
         final GraphHopper gh = new GraphHopperOSM().setStoreOnFlush(true).
@@ -346,6 +378,46 @@ public class GraphHopperOSMTest {
         assertEquals(3, rsp.getBest().getPoints().getSize());
     }
 
+    @Test
+    public void testSortedGraph_withCHAndOSMWayIds() {
+        // the OSM way ids of the unsorted graph are the reference
+        GraphHopper unsorted = new GraphHopperOSM().setStoreOnFlush(false).
+                setStoreOSMWayIds(true).
+                setEncodingManager(EncodingManager.create("car")).setCHEnabled(false).
+                setGraphHopperLocation(ghLoc + "-unsorted").
+                setDataReaderFile(testOsm).
+                importOrLoad();
+        Map<Long, Long> expectedWayDistances = getWayDistances(unsorted);
+        unsorted.close();
+
+        instance = new GraphHopperOSM().setStoreOnFlush(false).
+                setSortGraph(true).
+                setStoreOSMWayIds(true).
+                setEncodingManager(EncodingManager.create("car|turn_costs=true")).
+                setGraphHopperLocation(ghLoc).
+                setDataReaderFile(testOsm);
+        instance.getCHFactoryDecorator().setCHProfileStrings("fastest");
+        instance.importOrLoad();
+        assertEquals(expectedWayDistances, getWayDistances(instance));
+
+        assertNotNull(instance.getGraphHopperStorage().getTurnCostExtension());
+        // CH is prepared for the sorted graph
+        assertEquals("true", instance.getGraphHopperStorage().getProperties().get(Parameters.CH.PREPARE + "done"));
+        assertFalse(instance.getGraphHopperStorage().getProperties().get("datareader.import.date").isEmpty());
+    }
+
+    // sums up the edge distances in centimeter per OSM way
+    private Map<Long, Long> getWayDistances(GraphHopper hopper) {
+        Map<Long, Long> distances = new HashMap<>();
+        AllEdgesIterator iter = hopper.getGraphHopperStorage().getAllEdges();
+        while (iter.next()) {
+            long osmWayId = hopper.getOSMWayIdStorage().getOSMWayId(iter.getEdge());
+            Long distance = distances.get(osmWayId);
+            distances.put(osmWayId, (distance == null ? 0 : distance) + Math.round(iter.getDistance() * 100));
+        }
+        return distances;
+    }
+
     @Test
     public void testSortedGraph_noCH() {
         instance = new GraphHopperOSM().setStoreOnFlush(false).
@@ -1026,6 +1098,45 @@ public class GraphHopperOSMTest {
         assertEquals(2, tmpGH.getCHFactoryDecorator().getCHProfileStrings().size());
     }
 
+    @Test
+    public void testParallelWayProcessingCreatesSameGraph() {
+        GraphHopper sequential = importAndorra(1);
+        GraphHopper parallel = importAndorra(3);
+        GraphHopperStorage expected = sequential.getGraphHopperStorage();
+        GraphHopperStorage graph = parallel.getGraphHopperStorage();
+        assertEquals(expected.getNodes(), graph.getNodes());
+        assertEquals(expected.getAllEdges().length(), graph.getAllEdges().length());
+        for (int node = 0; node < expected.getNodes(); node++) {
+            assertEquals(expected.getNodeAccess().getLatitude(node), graph.getNodeAccess().getLatitude(node), 0);
+            assertEquals(expected.getNodeAccess().getLongitude(node), graph.getNodeAccess().getLongitude(node), 0);
+        }
+        AllEdgesIterator expectedIter = expected.getAllEdges();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (expectedIter.next()) {
+            assertTrue(iter.next());
+            assertEquals(expectedIter.getBaseNode(), iter.getBaseNode());
+            assertEquals(expectedIter.getAdjNode(), iter.getAdjNode());
+            assertEquals(expectedIter.getFlags(), iter.getFlags());
+            assertEquals(expectedIter.getName(), iter.getName());
+            assertEquals(expectedIter.getDistance(), iter.getDistance(), 0);
+            assertEquals(expectedIter.fetchWayGeometry(3), iter.fetchWayGeometry(3));
+        }
+        sequential.close();
+        parallel.close();
+    }
+
+    private static GraphHopper importAndorra(int workerThreads) {
+        GraphHopper hopper = new GraphHopperOSM().init(new CmdArgs().
+                put("datareader.file", "../core/files/andorra.osm.pbf").
+                put("datareader.worker_threads", workerThreads).
+                put("graph.flag_encoders", "car,bike,foot").
+                put("graph.location", ghLoc + workerThreads).
+                put("prepare.ch.weightings", "no")).
+                setStoreOnFlush(false);
+        hopper.importOrLoad();
+        return hopper;
+    }
+
     private static class TestEncoder extends CarFlagEncoder {
         private final String name;
 
@@ -0,0 +1,254 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.OSMWayIdStorage;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class OSMChangeUpdaterTest {
+    private final String dir = "./target/tmp/test-osm-change";
+    private CarFlagEncoder carEncoder;
+    private GraphHopperOSM hopper;
+
+    @Before
+    public void setUp() throws Exception {
+        new File(dir).mkdirs();
+        carEncoder = new CarFlagEncoder();
+        hopper = new GraphHopperOSM();
+        hopper.setOSMFile(new File(getClass().getResource("test-osm.xml").toURI()).getAbsolutePath());
+        hopper.setStoreOnFlush(false).
+                setGraphHopperLocation(dir).
+                setCHEnabled(false).
+                setStoreOSMWayIds(true).
+                setMinNetworkSize(1, 1).
+                setEncodingManager(EncodingManager.create(carEncoder));
+        hopper.importOrLoad();
+    }
+
+    @After
+    public void tearDown() {
+        hopper.close();
+        Helper.removeDir(new File(dir));
+    }
+
+    private File writeChange(String content) throws IOException {
+        File file = new File(dir, "change.osc");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testApplyChanges() throws IOException {
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        OSMWayIdStorage osmIds = hopper.getOSMWayIdStorage();
+        // the way 10 is split at node 20 which is also used by way 11
+        assertArrayEquals(new int[]{0, 1}, osmIds.getEdges(graph, 10));
+        assertArrayEquals(new int[]{2}, osmIds.getEdges(graph, 11));
+        assertEquals(10, osmIds.getBaseOSMNodeId(0));
+        assertEquals(20, osmIds.getAdjOSMNodeId(0));
+        double oldSpeed = graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carEncoder.getAverageSpeedEnc());
+        int edges = graph.getAllEdges().length();
+        int nodes = graph.getNodes();
+
+        OSMChangeResponse response = hopper.applyOSMChanges(writeChange("<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<osmChange version=\"0.6\">\n"
+                + "  <modify>\n"
+                + "    <node id=\"50\" lat=\"49.1\" lon=\"10\"/>\n"
+                + "    <way id=\"10\">\n"
+                + "      <nd ref=\"10\"/><nd ref=\"20\"/><nd ref=\"30\"/>\n"
+                + "      <tag k=\"highway\" v=\"residential\"/>\n"
+                + "    </way>\n"
+                + "  </modify>\n"
+                + "  <delete>\n"
+                + "    <way id=\"11\"/>\n"
+                + "  </delete>\n"
+                + "  <create>\n"
+                + "    <node id=\"60\" lat=\"50\" lon=\"9.7\"/>\n"
+                + "    <way id=\"12\">\n"
+                + "      <nd ref=\"30\"/><nd ref=\"60\"/><nd ref=\"50\"/>\n"
+                + "      <tag k=\"highway\" v=\"primary\"/>\n"
+                + "    </way>\n"
+                + "    <relation id=\"1\"/>\n"
+                + "  </create>\n"
+                + "</osmChange>\n"));
+
+        assertEquals(1, response.getChangedWays());
+        assertEquals(1, response.getDeletedWays());
+        assertEquals(1, response.getCreatedWays());
+        assertEquals(0, response.getSkippedWays());
+        assertEquals(1, response.getCreatedEdges());
+        assertEquals(1, response.getDisabledEdges());
+        assertEquals(1, response.getMovedNodes());
+        assertEquals(1, response.getIgnoredRelations());
+
+        // the edges of the modified way are kept but have new flags
+        assertArrayEquals(new int[]{0, 1}, osmIds.getEdges(graph, 10));
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, Integer.MIN_VALUE);
+        assertNotEquals(oldSpeed, edge.get(carEncoder.getAverageSpeedEnc()), .1);
+        assertTrue(edge.get(carEncoder.getAccessEnc()));
+
+        // the edge of the deleted way is disabled
+        assertEquals(0, osmIds.getEdges(graph, 11).length);
+        assertEquals(0, osmIds.getOSMWayId(2));
+        edge = graph.getEdgeIteratorState(2, Integer.MIN_VALUE);
+        assertFalse(edge.get(carEncoder.getAccessEnc()));
+        assertFalse(edge.getReverse(carEncoder.getAccessEnc()));
+
+        // the new way connects the existing tower nodes and node 60 is a pillar node
+        assertEquals(edges + 1, graph.getAllEdges().length());
+        assertEquals(nodes, graph.getNodes());
+        assertArrayEquals(new int[]{edges}, osmIds.getEdges(graph, 12));
+        assertEquals(30, osmIds.getBaseOSMNodeId(edges));
+        assertEquals(50, osmIds.getAdjOSMNodeId(edges));
+        edge = graph.getEdgeIteratorState(edges, Integer.MIN_VALUE);
+        assertTrue(edge.get(carEncoder.getAccessEnc()));
+        assertTrue(edge.getReverse(carEncoder.getAccessEnc()));
+        assertEquals(3, edge.fetchWayGeometry(3).size());
+
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        assertEquals(49.1, nodeAccess.getLatitude(edge.getAdjNode()), 1e-6);
+        assertEquals(edge.fetchWayGeometry(3).calcDistance(Helper.DIST_EARTH), edge.getDistance(), .1);
+
+        // the location index is created again and finds the new edge
+        assertEquals(edges, hopper.getLocationIndex().findClosest(50, 9.7, EdgeFilter.ALL_EDGES).getClosestEdge().getEdge());
+    }
+
+    @Test
+    public void testChangedGeometry() throws IOException {
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        OSMWayIdStorage osmIds = hopper.getOSMWayIdStorage();
+        int edges = graph.getAllEdges().length();
+        int nodes = graph.getNodes();
+
+        // the way 10 gets a new node between 10 and 20 that is used by a new way, the other nodes of way 11 are unknown
+        OSMChangeResponse response = hopper.applyOSMChanges(writeChange("<osmChange version=\"0.6\">\n"
+                + "  <create>\n"
+                + "    <node id=\"70\" lat=\"51.5\" lon=\"9.2\"/>\n"
+                + "    <node id=\"71\" lat=\"51.5\" lon=\"9.3\"/>\n"
+                + "    <way id=\"13\">\n"
+                + "      <nd ref=\"70\"/><nd ref=\"71\"/>\n"
+                + "      <tag k=\"highway\" v=\"residential\"/>\n"
+                + "    </way>\n"
+                + "  </create>\n"
+                + "  <modify>\n"
+                + "    <way id=\"10\">\n"
+                + "      <nd ref=\"10\"/><nd ref=\"70\"/><nd ref=\"20\"/><nd ref=\"30\"/>\n"
+                + "      <tag k=\"highway\" v=\"motorway_link\"/>\n"
+                + "    </way>\n"
+                + "    <way id=\"11\">\n"
+                + "      <nd ref=\"20\"/><nd ref=\"45\"/><nd ref=\"71\"/>\n"
+                + "      <tag k=\"highway\" v=\"service\"/>\n"
+                + "    </way>\n"
+                + "  </modify>\n"
+                + "</osmChange>\n"));
+
+        assertEquals(1, response.getChangedWays());
+        assertEquals(1, response.getCreatedWays());
+        assertEquals(1, response.getSkippedWays());
+        assertEquals(0, response.getFrozenWays());
+        assertEquals(Collections.singletonList(11L), response.getSkippedWayIds());
+        assertEquals(2, response.getDisabledEdges());
+        assertEquals(4, response.getCreatedEdges());
+
+        // the way 10 is split at the new tower node 70 and the old edges are disabled
+        assertEquals(nodes + 2, graph.getNodes());
+        int[] wayEdges = osmIds.getEdges(graph, 10);
+        assertArrayEquals(new int[]{edges + 1, edges + 2, edges + 3}, wayEdges);
+        assertEquals(10, osmIds.getBaseOSMNodeId(wayEdges[0]));
+        assertEquals(70, osmIds.getAdjOSMNodeId(wayEdges[0]));
+        assertFalse(graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carEncoder.getAccessEnc()));
+        EdgeIteratorState wayEdge = graph.getEdgeIteratorState(wayEdges[0], Integer.MIN_VALUE);
+        int node70 = wayEdge.getAdjNode();
+        assertTrue(wayEdge.get(carEncoder.getAccessEnc()));
+
+        // the new way was created before and its first node became a tower node of way 10
+        assertArrayEquals(new int[]{edges}, osmIds.getEdges(graph, 13));
+        assertEquals(node70, graph.getEdgeIteratorState(edges, Integer.MIN_VALUE).getBaseNode());
+
+        // node 45 is neither a tower node nor contained in the change, so the geometry of way 11 cannot be changed
+        assertArrayEquals(new int[]{2}, osmIds.getEdges(graph, 11));
+        assertTrue(graph.getEdgeIteratorState(2, Integer.MIN_VALUE).get(carEncoder.getAccessEnc()));
+    }
+
+    @Test
+    public void testRequiresOSMWayIds() {
+        try {
+            new OSMChangeUpdater(hopper.getGraphHopperStorage(), null);
+            fail("OSM changes without OSM way ids must fail");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("OSM way ids"));
+        }
+    }
+
+    @Test
+    public void testFrozenGraph() throws IOException {
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        OSMWayIdStorage osmIds = hopper.getOSMWayIdStorage();
+        graph.freeze();
+        int edges = graph.getAllEdges().length();
+        double oldSpeed = graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carEncoder.getAverageSpeedEnc());
+
+        OSMChangeResponse response = hopper.applyOSMChanges(writeChange("<osmChange version=\"0.6\">\n"
+                + "  <create>\n"
+                + "    <node id=\"70\" lat=\"51.5\" lon=\"9.2\"/>\n"
+                + "    <way id=\"13\">\n"
+                + "      <nd ref=\"70\"/><nd ref=\"30\"/>\n"
+                + "      <tag k=\"highway\" v=\"residential\"/>\n"
+                + "    </way>\n"
+                + "  </create>\n"
+                + "  <modify>\n"
+                + "    <way id=\"10\">\n"
+                + "      <nd ref=\"10\"/><nd ref=\"70\"/><nd ref=\"20\"/><nd ref=\"30\"/>\n"
+                + "      <tag k=\"highway\" v=\"service\"/>\n"
+                + "    </way>\n"
+                + "  </modify>\n"
+                + "</osmChange>\n"));
+
+        // neither the new way nor the new geometry can be added to the frozen graph
+        assertEquals(0, response.getCreatedWays());
+        assertEquals(0, response.getChangedWays());
+        assertEquals(2, response.getSkippedWays());
+        assertEquals(2, response.getFrozenWays());
+        assertEquals(Arrays.asList(13L, 10L), response.getSkippedWayIds());
+        assertEquals(0, response.getCreatedEdges());
+        assertEquals(edges, graph.getAllEdges().length());
+        assertEquals(0, osmIds.getEdges(graph, 13).length);
+
+        // the old edges of the changed way get the new flags
+        assertArrayEquals(new int[]{0, 1}, osmIds.getEdges(graph, 10));
+        assertNotEquals(oldSpeed, graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carEncoder.getAverageSpeedEnc()), .1);
+    }
+}
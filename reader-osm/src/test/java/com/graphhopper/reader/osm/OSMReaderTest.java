@@ -930,6 +930,72 @@ public class OSMReaderTest {
         assertEquals("2014-01-02T00:10:14Z", graph.getProperties().get("datareader.data.date"));
     }
 
+    @Test
+    public void testReadBatches() throws Exception {
+        for (String file : Arrays.asList("test-osm6.pbf", "test-osm6.xml")) {
+            File osmFile = new File(getClass().getResource(file).toURI());
+            List<String> elements = new ArrayList<>();
+            try (OSMInputFile in = new OSMInputFile(osmFile).setWorkerThreads(2).open()) {
+                ReaderElement item;
+                while ((item = in.getNext()) != null) {
+                    elements.add(item.getType() + ":" + item.getId());
+                }
+            }
+            assertTrue(elements.size() > 5);
+
+            List<String> batchElements = new ArrayList<>();
+            try (OSMInputFile in = new OSMInputFile(osmFile).setWorkerThreads(2).open()) {
+                // mix both ways of iteration, the batch contains the rest of the current blob
+                ReaderElement first = in.getNext();
+                batchElements.add(first.getType() + ":" + first.getId());
+                List<ReaderElement> batch;
+                while ((batch = in.getNextBatch()) != null) {
+                    assertFalse(batch.isEmpty());
+                    for (ReaderElement item : batch) {
+                        batchElements.add(item.getType() + ":" + item.getId());
+                    }
+                }
+                assertEquals(0, in.getUnprocessedElements());
+            }
+            assertEquals(file, elements, batchElements);
+        }
+    }
+
+    @Test
+    public void testSkipNodes() throws Exception {
+        for (String file : Arrays.asList("test-osm6.pbf", "test-osm6.xml")) {
+            File osmFile = new File(getClass().getResource(file).toURI());
+            List<String> elements = new ArrayList<>();
+            List<String> nonNodeElements = new ArrayList<>();
+            int taggedNodes = 0;
+            try (OSMInputFile in = new OSMInputFile(osmFile).setWorkerThreads(2).open()) {
+                List<ReaderElement> batch;
+                while ((batch = in.getNextBatch()) != null) {
+                    for (ReaderElement item : batch) {
+                        elements.add(item.getType() + ":" + item.getId() + ":" + item);
+                        if (!item.isType(ReaderElement.NODE))
+                            nonNodeElements.add(item.getType() + ":" + item.getId() + ":" + item);
+                        else if (item.hasTags())
+                            taggedNodes++;
+                    }
+                }
+            }
+            assertTrue(file, taggedNodes > 0);
+            assertTrue(file, nonNodeElements.size() < elements.size());
+
+            List<String> skipNodeElements = new ArrayList<>();
+            try (OSMInputFile in = new OSMInputFile(osmFile).setWorkerThreads(2).setSkipNodes(true).open()) {
+                List<ReaderElement> batch;
+                while ((batch = in.getNextBatch()) != null) {
+                    for (ReaderElement item : batch) {
+                        skipNodeElements.add(item.getType() + ":" + item.getId() + ":" + item);
+                    }
+                }
+            }
+            assertEquals(file, nonNodeElements, skipNodeElements);
+        }
+    }
+
     @Test
     public void testCrossBoundary_issue667() {
         GraphHopper hopper = new GraphHopperFacade("test-osm-waterway.xml").importOrLoad();
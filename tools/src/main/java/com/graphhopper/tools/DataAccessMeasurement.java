@@ -0,0 +1,115 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.tools;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.reader.osm.GraphHopperOSM;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * Compares the read throughput of the different DataAccess implementations when many threads traverse the
+ * same graph concurrently, e.g. to see how memory mapped storage scales with and without lock free reads.
+ * <p>
+ * Example: java -cp tools.jar com.graphhopper.tools.DataAccessMeasurement datareader.file=map.pbf
+ * graph.location=map-gh graph.flag_encoders=car measurement.threads=8
+ */
+public class DataAccessMeasurement {
+    private static final Logger logger = LoggerFactory.getLogger(DataAccessMeasurement.class);
+
+    public static void main(String[] strs) throws Exception {
+        CmdArgs args = CmdArgs.read(strs);
+        int threads = args.getInt("measurement.threads", Runtime.getRuntime().availableProcessors());
+        int count = args.getInt("measurement.count", 1_000_000);
+        long seed = args.getLong("measurement.seed", 123);
+
+        // the first run imports the graph if necessary, all further runs load the existing files
+        String[][] configs = {{"RAM_STORE", "false"}, {"UNSAFE_STORE", "false"}, {"MMAP", "false"}, {"MMAP", "true"}};
+        for (String[] config : configs) {
+            CmdArgs tmpArgs = new CmdArgs(args.toMap());
+            tmpArgs.put("graph.dataaccess", config[0]);
+            tmpArgs.put("graph.dataaccess.mmap.lock_free_reads", config[1]);
+            GraphHopper hopper = new GraphHopperOSM().init(tmpArgs).setCHEnabled(false);
+            hopper.getLMFactoryDecorator().setEnabled(false);
+            hopper.importOrLoad();
+            try {
+                double nodesPerSecond = measure(hopper, threads, count, seed);
+                logger.info(config[0] + (Boolean.parseBoolean(config[1]) ? " (lock free reads)" : "")
+                        + ", threads: " + threads + ", explored nodes per second: " + Helper.nf((long) nodesPerSecond));
+            } finally {
+                hopper.close();
+            }
+        }
+    }
+
+    /**
+     * Every thread explores the edges of random nodes using its own explorer.
+     */
+    static double measure(GraphHopper hopper, int threads, final int count, long seed) throws Exception {
+        final Graph graph = hopper.getGraphHopperStorage();
+        final FlagEncoder encoder = hopper.getEncodingManager().fetchEdgeEncoders().get(0);
+        final int nodes = graph.getNodes();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            List<Future<Long>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                final Random rand = new Random(seed + t);
+                futures.add(executorService.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        EdgeExplorer explorer = graph.createEdgeExplorer();
+                        long sum = 0;
+                        startLatch.await();
+                        for (int i = 0; i < count; i++) {
+                            EdgeIterator iter = explorer.setBaseNode(rand.nextInt(nodes));
+                            while (iter.next()) {
+                                sum += iter.getAdjNode();
+                                if (iter.get(encoder.getAccessEnc()))
+                                    sum += (long) iter.getDistance();
+                                // reads the geometry via getBytes
+                                sum += iter.fetchWayGeometry(0).size();
+                            }
+                        }
+                        return sum;
+                    }
+                }));
+            }
+
+            StopWatch sw = new StopWatch().start();
+            startLatch.countDown();
+            long dummySum = 0;
+            for (Future<Long> future : futures) {
+                dummySum += future.get();
+            }
+            sw.stop();
+            logger.info("dummySum:" + dummySum);
+            return (double) threads * count / sw.getSeconds();
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
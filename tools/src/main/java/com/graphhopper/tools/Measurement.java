@@ -29,11 +29,14 @@ import com.graphhopper.reader.osm.GraphHopperOSM;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Parameters.Algorithms;
 import com.graphhopper.util.Parameters.CH;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -132,6 +135,14 @@ public class Measurement {
                 put("graph.import_time", sw.stop().getSeconds());
                 return dr;
             }
+
+            @Override
+            protected void sortGraph() {
+                StopWatch sw = new StopWatch().start();
+                super.sortGraph();
+                put("graph.sort_time", sw.stop().getSeconds());
+                put("graph.sort_order", getSortOrder());
+            }
         };
 
         hopper.init(args).
@@ -162,9 +173,13 @@ public class Measurement {
             GHBitSet allowedEdges = printGraphDetails(g, vehicleStr);
             printMiscUnitPerfTests(g, isCH, encoder, count * 100, allowedEdges);
             printLocationIndexQuery(g, hopper.getLocationIndex(), count);
+            if (hopper.getLocationIndex() instanceof LocationIndexTree)
+                printLocationIndexBatchQuery(g, (LocationIndexTree) hopper.getLocationIndex(), count);
             if (runSlow) {
                 printTimeOfRouteQuery(hopper, isCH, isLM, count / 20, "routing", vehicleStr,
                         true, false, -1, true, false, false);
+                printTimeOfViaRouteQuery(hopper, count / 200, "routing_via", vehicleStr, false);
+                printTimeOfViaRouteQuery(hopper, count / 200, "routing_via_parallel", vehicleStr, true);
             }
 
             if (hopper.getLMFactoryDecorator().isEnabled()) {
@@ -285,6 +300,54 @@ public class Measurement {
         print("location_index", miniPerf);
     }
 
+    /**
+     * Compares findClosestBatch with calling findClosest for every point, e.g. like for a matrix request. Both snap
+     * the same batches of points that are spread over about a kilometer.
+     */
+    private void printLocationIndexBatchQuery(Graph g, final LocationIndexTree idx, int count) {
+        final int batchSize = 100;
+        int batches = Math.max(1, count * 2 / batchSize);
+        final BBox bbox = g.getBounds();
+        final double latDelta = bbox.maxLat - bbox.minLat;
+        final double lonDelta = bbox.maxLon - bbox.minLon;
+        final double radius = 0.01;
+        final double[][] lats = new double[batches][batchSize];
+        final double[][] lons = new double[batches][batchSize];
+        Random rand = new Random(seed);
+        for (int batch = 0; batch < batches; batch++) {
+            double centerLat = rand.nextDouble() * latDelta + bbox.minLat;
+            double centerLon = rand.nextDouble() * lonDelta + bbox.minLon;
+            for (int i = 0; i < batchSize; i++) {
+                lats[batch][i] = centerLat + (rand.nextDouble() - 0.5) * radius;
+                lons[batch][i] = centerLon + (rand.nextDouble() - 0.5) * radius;
+            }
+        }
+
+        MiniPerfTest singlePerf = new MiniPerfTest() {
+            @Override
+            public int doCalc(boolean warmup, int run) {
+                int batch = run % lats.length, val = 0;
+                for (int i = 0; i < batchSize; i++) {
+                    val += idx.findClosest(lats[batch][i], lons[batch][i], EdgeFilter.ALL_EDGES).getClosestNode();
+                }
+                return val;
+            }
+        }.setIterations(batches).start();
+        print("location_index_batch_single", singlePerf);
+
+        MiniPerfTest batchPerf = new MiniPerfTest() {
+            @Override
+            public int doCalc(boolean warmup, int run) {
+                int batch = run % lats.length, val = 0;
+                for (QueryResult qr : idx.findClosestBatch(lats[batch], lons[batch], EdgeFilter.ALL_EDGES)) {
+                    val += qr.getClosestNode();
+                }
+                return val;
+            }
+        }.setIterations(batches).start();
+        print("location_index_batch", batchPerf);
+    }
+
     private void printMiscUnitPerfTests(final Graph graph, boolean isCH, final FlagEncoder encoder,
                                         int count, final GHBitSet allowedEdges) {
         final Random rand = new Random(seed);
@@ -582,6 +645,46 @@ public class Measurement {
         print(prefix, miniPerf);
     }
 
+    /**
+     * Measures routes with 10 points without CH and LM, either with the legs calculated one after the other or in
+     * parallel. Both use the same points so that the means are comparable.
+     */
+    private void printTimeOfViaRouteQuery(final GraphHopper hopper, int count, String prefix, final String vehicle,
+                                          final boolean parallelLegs) {
+        final NodeAccess na = hopper.getGraphHopperStorage().getNodeAccess();
+        final AtomicInteger failedCount = new AtomicInteger(0);
+        final AtomicLong distSum = new AtomicLong(0);
+        final Random rand = new Random(seed);
+        MiniPerfTest miniPerf = new MiniPerfTest() {
+            @Override
+            public int doCalc(boolean warmup, int run) {
+                List<GHPoint> points = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    int node = rand.nextInt(maxNode);
+                    points.add(new GHPoint(na.getLatitude(node), na.getLongitude(node)));
+                }
+                GHRequest req = new GHRequest(points).setWeighting("fastest").setVehicle(vehicle);
+                req.getHints().put(CH.DISABLE, true).
+                        put(Landmark.DISABLE, true).
+                        put(Parameters.Routing.PARALLEL_LEGS, parallelLegs).
+                        put("instructions", false);
+                GHResponse rsp = hopper.route(req);
+                if (rsp.hasErrors()) {
+                    if (!warmup)
+                        failedCount.incrementAndGet();
+                    return 0;
+                }
+                if (!warmup)
+                    distSum.addAndGet((long) rsp.getBest().getDistance());
+                return rsp.getBest().getPoints().getSize();
+            }
+        }.setIterations(count).start();
+
+        put(prefix + ".failed_count", failedCount.get());
+        put(prefix + ".distance_mean", (float) distSum.get() / Math.max(1, count - failedCount.get()));
+        print(prefix, miniPerf);
+    }
+
     void print(String prefix, MiniPerfTest perf) {
         logger.info(prefix + ": " + perf.getReport());
         put(prefix + ".sum", perf.getSum());
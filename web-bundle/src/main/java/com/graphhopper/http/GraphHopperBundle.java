@@ -18,8 +18,11 @@
 
 package com.graphhopper.http;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -36,6 +39,7 @@ import com.graphhopper.reader.gtfs.GraphHopperGtfs;
 import com.graphhopper.reader.gtfs.GtfsStorage;
 import com.graphhopper.reader.gtfs.PtEncodedValues;
 import com.graphhopper.resources.*;
+import com.graphhopper.routing.RouteCache;
 import com.graphhopper.routing.util.CarFlagEncoder;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FootFlagEncoder;
@@ -44,6 +48,7 @@ import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Parameters;
 import com.graphhopper.util.TranslationMap;
 import io.dropwizard.ConfiguredBundle;
 import io.dropwizard.lifecycle.Managed;
@@ -51,16 +56,75 @@ import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.ext.WriterInterceptor;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
+    /**
+     * Provides the GraphHopper instance of the current request, which stays open until the request is finished even
+     * if the graph is swapped in the meantime.
+     */
+    static class GraphHopperFactory implements Factory<GraphHopper> {
+
+        @Inject
+        GraphHopperManaged graphHopperManaged;
+
+        @Inject
+        Provider<ContainerRequestContext> requestContext;
+
+        @Override
+        public GraphHopper provide() {
+            return graphHopperManaged.acquire(requestContext.get());
+        }
+
+        @Override
+        public void dispose(GraphHopper instance) {
+
+        }
+    }
+
+    /**
+     * Releases the GraphHopper instance of a request after the response was written. So a resource must not use the
+     * instance in other threads after the response was written, e.g. BatchRouteResource waits for its running routes.
+     * The background tasks of GraphHopper itself, like the compaction of the changed edges, are awaited when the
+     * instance is closed.
+     */
+    static class GraphHopperReleaseListener implements ApplicationEventListener {
+
+        private final GraphHopperManaged graphHopperManaged;
+
+        GraphHopperReleaseListener(GraphHopperManaged graphHopperManaged) {
+            this.graphHopperManaged = graphHopperManaged;
+        }
+
+        @Override
+        public void onEvent(ApplicationEvent event) {
+
+        }
+
+        @Override
+        public RequestEventListener onRequest(RequestEvent requestEvent) {
+            return event -> {
+                if (event.getType() == RequestEvent.Type.FINISHED)
+                    graphHopperManaged.release(event.getContainerRequest());
+            };
+        }
+    }
+
     static class TranslationMapFactory implements Factory<TranslationMap> {
 
         @Inject
@@ -254,8 +318,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             protected void configure() {
                 bind(configuration).to(CmdArgs.class);
                 bind(graphHopperManaged).to(GraphHopperManaged.class);
-                bind(graphHopperManaged.getGraphHopper()).to(GraphHopper.class);
-                bind(graphHopperManaged.getGraphHopper()).to(GraphHopperAPI.class);
+                bindFactory(GraphHopperFactory.class).to(GraphHopper.class).to(GraphHopperAPI.class);
 
                 bindFactory(HasElevation.class).to(Boolean.class).named("hasElevation");
                 bindFactory(LocationIndexFactory.class).to(LocationIndex.class);
@@ -265,6 +328,10 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             }
         });
 
+        environment.jersey().register(new GraphHopperReleaseListener(graphHopperManaged));
+        if (configuration.getBool("web.swap_graph.enabled", false))
+            environment.admin().addTask(new SwapGraphTask(graphHopperManaged));
+
         if (configuration.getBool("web.change_graph.enabled", false)) {
             environment.jersey().register(ChangeGraphResource.class);
         }
@@ -273,11 +340,60 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(NearestResource.class);
         environment.jersey().register(NavigateResource.class);
         environment.jersey().register(RouteResource.class);
+        environment.jersey().register(MatrixResource.class);
+        registerBatchRouteResource(configuration, environment);
         environment.jersey().register(IsochroneResource.class);
         environment.jersey().register(SPTResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
-        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged.getGraphHopper()));
+        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged));
+        registerRouteCacheMetrics(graphHopperManaged, environment);
+    }
+
+    private static void registerBatchRouteResource(CmdArgs configuration, Environment environment) {
+        int threads = configuration.getInt(Parameters.Routing.INIT_BATCH_THREADS, Runtime.getRuntime().availableProcessors());
+        if (threads < 1)
+            throw new IllegalArgumentException(Parameters.Routing.INIT_BATCH_THREADS + " must be positive but was " + threads);
+        int maxInFlight = configuration.getInt(Parameters.Routing.INIT_BATCH_MAX_IN_FLIGHT, threads * 4);
+        // the routes of all batch requests share one work stealing pool, the search state of the bidirectional
+        // algorithms is reused per thread
+        final ExecutorService executorService = Executors.newWorkStealingPool(threads);
+        environment.lifecycle().manage(new Managed() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+                executorService.shutdownNow();
+            }
+        });
+        environment.jersey().register(new AbstractBinder() {
+            @Override
+            protected void configure() {
+                bind(environment.getObjectMapper()).to(ObjectMapper.class);
+                bind(executorService).to(ExecutorService.class).named(BatchRouteResource.EXECUTOR);
+                bind(maxInFlight).to(Integer.class).named(BatchRouteResource.MAX_IN_FLIGHT);
+            }
+        });
+        environment.jersey().register(BatchRouteResource.class);
+    }
+
+    private static void registerRouteCacheMetrics(final GraphHopperManaged graphHopperManaged, Environment environment) {
+        if (graphHopperManaged.getGraphHopper().getRouteCache() == null)
+            return;
+
+        // a swapped graph has its own cache with the same configuration
+        MetricRegistry metrics = environment.metrics();
+        metrics.register("graphhopper.route_cache.hits", (Gauge<Long>) () -> routeCache(graphHopperManaged).getHits());
+        metrics.register("graphhopper.route_cache.misses", (Gauge<Long>) () -> routeCache(graphHopperManaged).getMisses());
+        metrics.register("graphhopper.route_cache.evictions", (Gauge<Long>) () -> routeCache(graphHopperManaged).getEvictions());
+        metrics.register("graphhopper.route_cache.invalidations", (Gauge<Long>) () -> routeCache(graphHopperManaged).getInvalidations());
+        metrics.register("graphhopper.route_cache.size", (Gauge<Integer>) () -> routeCache(graphHopperManaged).getSize());
+    }
+
+    private static RouteCache routeCache(GraphHopperManaged graphHopperManaged) {
+        return graphHopperManaged.getGraphHopper().getRouteCache();
     }
 
 }
@@ -26,12 +26,15 @@ import com.graphhopper.reader.osm.GraphHopperOSM;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.util.spatialrules.SpatialRuleLookupHelper;
 import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.EngineWarmUp;
 import com.graphhopper.util.Parameters;
+import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.BBox;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.container.ContainerRequestContext;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -39,13 +42,25 @@ import java.io.Reader;
 
 import static com.graphhopper.util.Helper.UTF_CS;
 
+/**
+ * Manages the GraphHopper instance of the server. The instance can be replaced while the server is running via
+ * swapGraph: the new graph is loaded and warmed up next to the live one, then new requests use the new graph, and
+ * the old graph is closed after all requests that use it are finished.
+ * <p>
+ * Requests obtain the graph via acquire, which keeps it open until release is called, see GraphHopperBundle.
+ */
 public class GraphHopperManaged implements Managed {
 
+    private static final String REQUEST_PROPERTY = GraphHopperManaged.class.getName() + ".graph";
     private final Logger logger = LoggerFactory.getLogger(getClass());
-    private final GraphHopper graphHopper;
+    private final CmdArgs configuration;
+    private final ObjectMapper localObjectMapper;
+    private final JsonFeatureCollection landmarkSplittingFeatureCollection;
+    private volatile LoadedGraph current;
 
     public GraphHopperManaged(CmdArgs configuration, ObjectMapper objectMapper) {
-        ObjectMapper localObjectMapper = objectMapper.copy();
+        this.configuration = configuration;
+        localObjectMapper = objectMapper.copy();
         localObjectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         String splitAreaLocation = configuration.get(Parameters.Landmark.PREPARE + "split_area_location", "");
         JsonFeatureCollection landmarkSplittingFeatureCollection;
@@ -55,22 +70,29 @@ public class GraphHopperManaged implements Managed {
             logger.error("Problem while reading border map GeoJSON. Skipping this.", e1);
             landmarkSplittingFeatureCollection = null;
         }
-        graphHopper = new GraphHopperOSM(landmarkSplittingFeatureCollection).forServer();
+        this.landmarkSplittingFeatureCollection = landmarkSplittingFeatureCollection;
+        current = new LoadedGraph(createGraphHopper(configuration));
+    }
+
+    private GraphHopper createGraphHopper(CmdArgs configuration) {
+        GraphHopper graphHopper = new GraphHopperOSM(landmarkSplittingFeatureCollection).forServer();
         String spatialRuleLocation = configuration.get("spatial_rules.location", "");
         if (!spatialRuleLocation.isEmpty()) {
             final BBox maxBounds = BBox.parseBBoxString(configuration.get("spatial_rules.max_bbox", "-180, 180, -90, 90"));
             try (final InputStreamReader reader = new InputStreamReader(new FileInputStream(spatialRuleLocation), UTF_CS)) {
                 JsonFeatureCollection jsonFeatureCollection = localObjectMapper.readValue(reader, JsonFeatureCollection.class);
-                SpatialRuleLookupHelper.buildAndInjectSpatialRuleIntoGH(graphHopper, maxBounds, jsonFeatureCollection);
+                SpatialRuleLookupHelper.buildAndInjectSpatialRuleIntoGH(graphHopper, maxBounds, jsonFeatureCollection, true);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
         graphHopper.init(configuration);
+        return graphHopper;
     }
 
     @Override
     public void start() {
+        GraphHopper graphHopper = current.graphHopper;
         graphHopper.importOrLoad();
         logger.info("loaded graph at:" + graphHopper.getGraphHopperLocation()
                 + ", data_reader_file:" + graphHopper.getDataReaderFile()
@@ -78,14 +100,142 @@ public class GraphHopperManaged implements Managed {
                 + ", " + graphHopper.getGraphHopperStorage().toDetailsString());
     }
 
+    /**
+     * @return the current GraphHopper instance. Use acquire instead if the instance is used for longer, as it can be
+     * closed by swapGraph otherwise.
+     */
     public GraphHopper getGraphHopper() {
-        return graphHopper;
+        return current.graphHopper;
+    }
+
+    /**
+     * Returns the current GraphHopper instance for the specified request and keeps it open until release is called
+     * for the request. Every call for the same request returns the same instance, even if the graph was swapped in
+     * the meantime.
+     */
+    public GraphHopper acquire(ContainerRequestContext request) {
+        LoadedGraph graph = (LoadedGraph) request.getProperty(REQUEST_PROPERTY);
+        if (graph == null) {
+            graph = acquire();
+            request.setProperty(REQUEST_PROPERTY, graph);
+        }
+        return graph.graphHopper;
+    }
+
+    /**
+     * Releases the GraphHopper instance of the specified request if acquire was called for it.
+     */
+    public void release(ContainerRequestContext request) {
+        LoadedGraph graph = (LoadedGraph) request.getProperty(REQUEST_PROPERTY);
+        if (graph != null) {
+            request.removeProperty(REQUEST_PROPERTY);
+            graph.release();
+        }
+    }
+
+    private LoadedGraph acquire() {
+        while (true) {
+            LoadedGraph graph = current;
+            if (graph.acquire() && graph == current)
+                return graph;
+            // the graph was swapped in the meantime, so it must not be used any longer
+            graph.release();
+        }
+    }
+
+    /**
+     * Loads the graph from the specified folder, which has to be imported before with the same configuration, and
+     * replaces the current graph with it. The data access of the new graph can be set via graph.swap.dataaccess,
+     * e.g. to MMAP to limit the memory usage while both graphs are loaded.
+     *
+     * @return true if the old graph was closed, false if there are still requests using it after the drain
+     * timeout. It is closed when the last of these requests is finished.
+     */
+    public synchronized boolean swapGraph(String graphLocation) throws InterruptedException {
+        CmdArgs swapConfiguration = new CmdArgs(configuration.toMap());
+        swapConfiguration.put("graph.location", graphLocation);
+        // only load existing graphs and never import the data while serving requests
+        swapConfiguration.put("datareader.file", "");
+        String dataAccess = configuration.get("graph.swap.dataaccess", "");
+        if (!dataAccess.isEmpty())
+            swapConfiguration.put("graph.dataaccess", dataAccess);
+
+        StopWatch sw = new StopWatch().start();
+        GraphHopper graphHopper = createGraphHopper(swapConfiguration);
+        try {
+            if (!graphHopper.load(graphLocation))
+                throw new IllegalArgumentException("Cannot load the graph from " + graphLocation);
+            EngineWarmUp.warmUp(graphHopper, configuration.getInt("graph.swap.warm_up_iterations", 100));
+        } catch (RuntimeException ex) {
+            graphHopper.close();
+            throw ex;
+        }
+        logger.info("loaded and warmed up graph at:" + graphLocation + " in " + sw.stop().getSeconds() + "s, "
+                + graphHopper.getGraphHopperStorage().toDetailsString());
+
+        LoadedGraph old = current;
+        current = new LoadedGraph(graphHopper);
+        old.retire();
+        boolean closed = old.awaitClosed(configuration.getLong("graph.swap.drain_timeout", 60) * 1000);
+        logger.info("swapped graph from " + old.graphHopper.getGraphHopperLocation() + " to " + graphLocation
+                + (closed ? ", closed the old graph" : ", the old graph is closed after the remaining requests"));
+        return closed;
     }
 
     @Override
     public void stop() {
-        graphHopper.close();
+        current.retire();
     }
 
+    /**
+     * A GraphHopper instance and the number of requests that use it. It is closed when it was retired and is not
+     * used any longer.
+     */
+    private static class LoadedGraph {
+        final GraphHopper graphHopper;
+        private int users;
+        private boolean retired;
+        private boolean closed;
+
+        LoadedGraph(GraphHopper graphHopper) {
+            this.graphHopper = graphHopper;
+        }
+
+        /**
+         * @return false if this graph is retired and so it must be released immediately
+         */
+        synchronized boolean acquire() {
+            users++;
+            return !retired;
+        }
+
+        synchronized void release() {
+            users--;
+            closeIfUnused();
+        }
+
+        synchronized void retire() {
+            retired = true;
+            closeIfUnused();
+        }
+
+        private void closeIfUnused() {
+            if (retired && users == 0 && !closed) {
+                graphHopper.close();
+                closed = true;
+                notifyAll();
+            }
+        }
 
+        synchronized boolean awaitClosed(long timeoutMillis) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeoutMillis;
+            while (!closed) {
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                wait(remaining);
+            }
+            return true;
+        }
+    }
 }
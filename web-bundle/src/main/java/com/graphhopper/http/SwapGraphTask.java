@@ -0,0 +1,50 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+
+/**
+ * Admin task that replaces the graph of the running server without a restart, e.g. after a new import into another
+ * folder: POST /tasks/swap-graph?graph.location=/path/to/new-gh
+ */
+public class SwapGraphTask extends Task {
+
+    private final GraphHopperManaged graphHopperManaged;
+
+    public SwapGraphTask(GraphHopperManaged graphHopperManaged) {
+        super("swap-graph");
+        this.graphHopperManaged = graphHopperManaged;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        Collection<String> locations = parameters.get("graph.location");
+        if (locations.size() != 1)
+            throw new IllegalArgumentException("Specify exactly one graph.location but was " + locations);
+
+        String location = locations.iterator().next();
+        boolean closed = graphHopperManaged.swapGraph(location);
+        output.println("swapped graph to " + location + (closed ? ", the old graph is closed"
+                : ", the old graph is closed after the remaining requests are finished"));
+    }
+}
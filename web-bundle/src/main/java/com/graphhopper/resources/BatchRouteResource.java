@@ -0,0 +1,273 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.MultiException;
+import com.graphhopper.http.WebHelper;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.graphhopper.util.Parameters.Routing.CALC_POINTS;
+import static com.graphhopper.util.Parameters.Routing.INSTRUCTIONS;
+
+/**
+ * Calculates many route requests with one POST request. The body contains one JSON route request per line, e.g.
+ * {"id": "1", "points": [[lon1,lat1],[lon2,lat2]], "vehicle": "car", "instructions": false}, and the response contains
+ * one JSON line per request in the order in which the routes were finished. Every line contains the id of its
+ * request and either the usual route response or the error message.
+ * <p>
+ * The requests are read by a separate thread while the results are written, so the response is streamed while the
+ * client still sends the body. Only a limited number of requests is calculated or waits to be written at the same
+ * time, so a slow client slows down the reading of the body instead of filling the memory with results.
+ */
+@Path("service/route/batch")
+public class BatchRouteResource {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String EXECUTOR = "batchRouteExecutor";
+    public static final String MAX_IN_FLIGHT = "batchRouteMaxInFlight";
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchRouteResource.class);
+
+    private final GraphHopper graphHopper;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executorService;
+    private final int maxInFlight;
+
+    /**
+     * @param maxInFlight the maximum number of requests of one batch that are calculated or whose results wait to be
+     *                    written at the same time
+     */
+    @Inject
+    public BatchRouteResource(GraphHopper graphHopper, ObjectMapper objectMapper,
+                              @Named(EXECUTOR) ExecutorService executorService, @Named(MAX_IN_FLIGHT) Integer maxInFlight) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("The maximum number of requests in flight must be positive but was " + maxInFlight);
+        this.graphHopper = graphHopper;
+        this.objectMapper = objectMapper;
+        this.executorService = executorService;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @POST
+    @Consumes({NDJSON, MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
+    @Produces(NDJSON)
+    public StreamingOutput doPost(@Context HttpServletRequest httpReq, final InputStream body) {
+        final String infoStr = httpReq.getRemoteAddr() + " " + httpReq.getHeader("User-Agent");
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                StopWatch sw = new StopWatch().start();
+                Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                final Batch batch = new Batch();
+                // the body is read by a separate thread, otherwise a client that sends the whole body before it
+                // reads the response could block this thread in write while the body is not yet read
+                Thread reader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        batch.readRequests(body);
+                    }
+                }, "batch-route-reader");
+                reader.setDaemon(true);
+                reader.start();
+                int written = 0;
+                boolean bodyRead = false;
+                try {
+                    while (!bodyRead || written < batch.submitted.get()) {
+                        String result = batch.results.take();
+                        if (result.isEmpty()) {
+                            bodyRead = true;
+                            continue;
+                        }
+                        writer.write(result);
+                        written++;
+                        batch.inFlight.release();
+                        if (batch.results.isEmpty())
+                            writer.flush();
+                    }
+                    writer.flush();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Batch was interrupted after " + written + " of " + batch.submitted.get() + " routes");
+                } finally {
+                    // the reader might wait for a calculated route or for the body, it must not submit more requests
+                    // if this thread failed. The calculating requests are not interrupted but awaited, so that no
+                    // route of this batch uses the graph after this method returned
+                    batch.cancelled.set(true);
+                    reader.interrupt();
+                    batch.running.arriveAndAwaitAdvance();
+                }
+                if (batch.readException != null)
+                    throw batch.readException;
+                logger.info(infoStr + " batch of " + written + " routes, took:" + sw.stop().getSeconds());
+            }
+        };
+    }
+
+    /**
+     * The state of one batch that is shared between the thread reading the requests, the threads calculating the
+     * routes and the thread writing the results.
+     */
+    private class Batch {
+        // the results in the order in which they were finished, an empty string marks the end of the body. It never
+        // blocks as every result holds a permit of inFlight
+        final BlockingQueue<String> results = new ArrayBlockingQueue<>(maxInFlight + 1);
+        // limits the number of requests that are calculated or wait to be written. A permit is released after the
+        // result was written, so the reading of the body waits for a client that does not read the response
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final AtomicInteger submitted = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        // every submitted request is a party that arrives when it is finished or skipped
+        final Phaser running = new Phaser(1);
+        volatile IOException readException;
+
+        void readRequests(InputStream body) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            int lineNumber = 0;
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.trim().isEmpty())
+                        continue;
+
+                    inFlight.acquire();
+                    if (cancelled.get())
+                        return;
+                    submit(line, lineNumber);
+                }
+            } catch (IOException ex) {
+                readException = ex;
+            } catch (InterruptedException ex) {
+                // the writer failed
+                return;
+            } catch (RuntimeException ex) {
+                // e.g. the executor was shut down
+                readException = new IOException("Cannot submit the request in line " + lineNumber, ex);
+            }
+            results.add("");
+        }
+
+        private void submit(final String requestLine, final int lineNumber) {
+            running.register();
+            try {
+                executorService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean added = false;
+                        try {
+                            // the result is not written anymore if the batch was cancelled
+                            if (!cancelled.get())
+                                added = results.add(calcRoute(requestLine, lineNumber));
+                        } finally {
+                            // otherwise the writer releases the permit
+                            if (!added)
+                                inFlight.release();
+                            running.arriveAndDeregister();
+                        }
+                    }
+                });
+            } catch (RuntimeException ex) {
+                inFlight.release();
+                running.arriveAndDeregister();
+                throw ex;
+            }
+            submitted.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the JSON line of the response for the specified request line, never throws an exception
+     */
+    String calcRoute(String requestLine, int lineNumber) {
+        JsonNode id = null;
+        try {
+            StopWatch sw = new StopWatch().start();
+            JsonNode requestJson;
+            try {
+                requestJson = objectMapper.readTree(requestLine);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Cannot parse request in line " + lineNumber + ": " + ex.getMessage());
+            }
+            if (!requestJson.isObject())
+                throw new IllegalArgumentException("The request in line " + lineNumber + " must be a JSON object");
+            id = ((ObjectNode) requestJson).remove("id");
+
+            GHRequest request = objectMapper.treeToValue(requestJson, GHRequest.class);
+            if (request.getPoints().isEmpty())
+                throw new IllegalArgumentException("You have to pass at least one point");
+            // the output options are not removed from the hints, just like for the GET request
+            boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
+            boolean calcPoints = request.getHints().getBool(CALC_POINTS, true);
+            boolean elevation = request.getHints().getBool("elevation", false);
+            boolean pointsEncoded = request.getHints().getBool("points_encoded", true);
+            if (elevation && !graphHopper.hasElevation())
+                throw new IllegalArgumentException("Elevation not supported!");
+
+            GHResponse ghResponse = graphHopper.route(request);
+            ObjectNode json;
+            if (ghResponse.hasErrors())
+                json = objectMapper.valueToTree(new MultiException(ghResponse.getErrors()));
+            else
+                json = WebHelper.jsonObject(ghResponse, instructions, calcPoints, elevation, pointsEncoded, sw.stop().getSeconds());
+            return toLine(id, json);
+        } catch (Throwable t) {
+            // the writer waits for one line per request, so also unexpected errors have to end up in the output
+            try {
+                return toLine(id, objectMapper.valueToTree(new MultiException(t)));
+            } catch (Throwable t2) {
+                logger.error("Cannot write error of request in line " + lineNumber, t2);
+                return "{\"message\":\"Cannot write error of request in line " + lineNumber + "\"}\n";
+            }
+        }
+    }
+
+    private String toLine(JsonNode id, ObjectNode json) throws IOException {
+        ObjectNode line = objectMapper.createObjectNode();
+        line.set("id", id);
+        line.setAll(json);
+        return objectMapper.writeValueAsString(line) + "\n";
+    }
+}
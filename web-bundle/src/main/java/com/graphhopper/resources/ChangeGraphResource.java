@@ -20,6 +20,8 @@ package com.graphhopper.resources;
 import com.codahale.metrics.annotation.Timed;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.json.geo.JsonFeatureCollection;
+import com.graphhopper.storage.change.BulkChangeResponse;
+import com.graphhopper.storage.change.BulkEdgeChanges;
 import org.glassfish.jersey.server.ManagedAsync;
 
 import javax.inject.Inject;
@@ -27,12 +29,20 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
- * This class defines a new endpoint to submit access and speed changes to the graph.
+ * This class defines a new endpoint to submit access and speed changes to the graph. The changes are either
+ * features that are found spatially or bulk changes of edges and OSM ways posted to change/bulk as CSV or in the
+ * binary format, see BulkEdgeChanges.
  *
  * @author Peter Karich
  * @author Michael Zilske
@@ -57,4 +67,23 @@ public class ChangeGraphResource {
         response.resume(graphHopper.changeGraph(collection.getFeatures()));
     }
 
+    @POST
+    @Path("bulk")
+    @Consumes({"text/csv", MediaType.TEXT_PLAIN})
+    @Timed
+    @ManagedAsync
+    public void changeEdgesCSV(@QueryParam("vehicle") List<String> vehicles, InputStream body,
+                               @Suspended AsyncResponse response) throws IOException {
+        response.resume(graphHopper.changeEdges(BulkEdgeChanges.readCSV(new InputStreamReader(body, StandardCharsets.UTF_8)), vehicles));
+    }
+
+    @POST
+    @Path("bulk")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Timed
+    @ManagedAsync
+    public void changeEdgesBinary(@QueryParam("vehicle") List<String> vehicles, InputStream body,
+                                  @Suspended AsyncResponse response) throws IOException {
+        response.resume(graphHopper.changeEdges(BulkEdgeChanges.readBinary(body), vehicles));
+    }
 }
@@ -10,7 +10,9 @@ import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.EdgeFlagOverlay;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.StopWatch;
@@ -78,27 +80,37 @@ public class IsochroneResource {
 
         FlagEncoder encoder = encodingManager.getEncoder(vehicle);
         EdgeFilter edgeFilter = DefaultEdgeFilter.allEdges(encoder);
-        LocationIndex locationIndex = graphHopper.getLocationIndex();
-        QueryResult qr = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
-        if (!qr.isValid())
-            throw new IllegalArgumentException("Point not found:" + point);
-
-        Graph graph = graphHopper.getGraphHopperStorage();
-        QueryGraph queryGraph = QueryGraph.lookup(graph, qr);
-
-        HintsMap hintsMap = new HintsMap();
-        RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
-
-        Weighting weighting = graphHopper.createWeighting(hintsMap, encoder, graph);
-        Isochrone isochrone = new Isochrone(queryGraph, weighting, reverseFlow);
+        GraphHopperStorage ghStorage = graphHopper.getGraphHopperStorage();
+        // all edges are read with the flags of one overlay, even if changes are published meanwhile
+        EdgeFlagOverlay flagOverlay = ghStorage.acquireFlagOverlay();
+        Isochrone isochrone;
+        List<List<Coordinate>> buckets;
+        try {
+            // the location index can be replaced by a structural change while no overlay is acquired
+            LocationIndex locationIndex = graphHopper.getLocationIndex();
+            QueryResult qr = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
+            if (!qr.isValid())
+                throw new IllegalArgumentException("Point not found:" + point);
+
+            Graph graph = ghStorage.withFlagOverlay(flagOverlay);
+            QueryGraph queryGraph = QueryGraph.lookup(graph, qr);
+
+            HintsMap hintsMap = new HintsMap();
+            RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+
+            Weighting weighting = graphHopper.createWeighting(hintsMap, encoder, graph);
+            isochrone = new Isochrone(queryGraph, weighting, reverseFlow);
+
+            if (distanceInMeter > 0) {
+                isochrone.setDistanceLimit(distanceInMeter);
+            } else {
+                isochrone.setTimeLimit(timeLimitInSeconds);
+            }
 
-        if (distanceInMeter > 0) {
-            isochrone.setDistanceLimit(distanceInMeter);
-        } else {
-            isochrone.setTimeLimit(timeLimitInSeconds);
+            buckets = isochrone.searchGPS(qr.getClosestNode(), nBuckets);
+        } finally {
+            ghStorage.releaseFlagOverlay(flagOverlay);
         }
-
-        List<List<Coordinate>> buckets = isochrone.searchGPS(qr.getClosestNode(), nBuckets);
         if (isochrone.getVisitedNodes() > graphHopper.getMaxVisitedNodes() / 5) {
             throw new IllegalArgumentException("Too many nodes would have to explored (" + isochrone.getVisitedNodes() + "). Let us know if you need this increased.");
         }
@@ -4,8 +4,10 @@ import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.profiles.*;
 import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.EdgeFlagOverlay;
+import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.NodeAccess;
-import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 import com.wdtinc.mapbox_vector_tile.VectorTile;
@@ -72,9 +74,8 @@ public class MVTResource {
         StopWatch totalSW = new StopWatch().start();
         Coordinate nw = num2deg(xInfo, yInfo, zInfo);
         Coordinate se = num2deg(xInfo + 1, yInfo + 1, zInfo);
-        LocationIndexTree locationIndex = (LocationIndexTree) graphHopper.getLocationIndex();
-        final NodeAccess na = graphHopper.getGraphHopperStorage().getNodeAccess();
-        EdgeExplorer edgeExplorer = graphHopper.getGraphHopperStorage().createEdgeExplorer(DefaultEdgeFilter.ALL_EDGES);
+        GraphHopperStorage ghStorage = graphHopper.getGraphHopperStorage();
+        final NodeAccess na = ghStorage.getNodeAccess();
         BBox bbox = new BBox(nw.x, se.x, se.y, nw.y);
         if (!bbox.isValid())
             throw new IllegalStateException("Invalid bbox " + bbox);
@@ -95,60 +96,69 @@ public class MVTResource {
         final MvtLayerProps layerProps = new MvtLayerProps();
         final VectorTile.Tile.Layer.Builder layerBuilder = MvtLayerBuild.newLayerBuilder("roads", layerParams);
 
-        locationIndex.query(bbox, new LocationIndexTree.EdgeVisitor(edgeExplorer) {
-            @Override
-            public void onEdge(EdgeIteratorState edge, int nodeA, int nodeB) {
-                LineString lineString;
-                RoadClass rc = edge.get(roadClassEnc);
-                if (zInfo >= 14) {
-                    PointList pl = edge.fetchWayGeometry(3);
-                    lineString = pl.toLineString(false);
-                } else if (rc == RoadClass.MOTORWAY
-                        || zInfo > 10 && (rc == RoadClass.PRIMARY || rc == RoadClass.TRUNK)
-                        || zInfo > 11 && (rc == RoadClass.SECONDARY)
-                        || zInfo > 12) {
-                    double lat = na.getLatitude(nodeA);
-                    double lon = na.getLongitude(nodeA);
-                    double toLat = na.getLatitude(nodeB);
-                    double toLon = na.getLongitude(nodeB);
-                    lineString = geometryFactory.createLineString(new Coordinate[]{new Coordinate(lon, lat), new Coordinate(toLon, toLat)});
-                } else {
-                    // skip edge for certain zoom
-                    return;
+        // all edges of the tile are read with the flags of one overlay, even if changes are published meanwhile
+        EdgeFlagOverlay flagOverlay = ghStorage.acquireFlagOverlay();
+        try {
+            // the location index can be replaced by a structural change while no overlay is acquired
+            LocationIndex locationIndex = graphHopper.getLocationIndex();
+            EdgeExplorer edgeExplorer = ghStorage.withFlagOverlay(flagOverlay).createEdgeExplorer(DefaultEdgeFilter.ALL_EDGES);
+            locationIndex.query(bbox, new LocationIndex.EdgeVisitor(edgeExplorer) {
+                @Override
+                public void onEdge(EdgeIteratorState edge, int nodeA, int nodeB) {
+                    LineString lineString;
+                    RoadClass rc = edge.get(roadClassEnc);
+                    if (zInfo >= 14) {
+                        PointList pl = edge.fetchWayGeometry(3);
+                        lineString = pl.toLineString(false);
+                    } else if (rc == RoadClass.MOTORWAY
+                            || zInfo > 10 && (rc == RoadClass.PRIMARY || rc == RoadClass.TRUNK)
+                            || zInfo > 11 && (rc == RoadClass.SECONDARY)
+                            || zInfo > 12) {
+                        double lat = na.getLatitude(nodeA);
+                        double lon = na.getLongitude(nodeA);
+                        double toLat = na.getLatitude(nodeB);
+                        double toLon = na.getLongitude(nodeB);
+                        lineString = geometryFactory.createLineString(new Coordinate[]{new Coordinate(lon, lat), new Coordinate(toLon, toLat)});
+                    } else {
+                        // skip edge for certain zoom
+                        return;
+                    }
+
+                    edgeCounter.incrementAndGet();
+                    Map<String, Object> map = new HashMap<>(2);
+                    map.put("name", edge.getName());
+//                    map.put(edge.getFlags())
+                    for (String str : pathDetails) {
+                        // how to indicate an erroneous parameter?
+                        if (str.contains(",") || !encodingManager.hasEncodedValue(str))
+                            continue;
+
+                        EncodedValue ev = encodingManager.getEncodedValue(str, EncodedValue.class);
+                        if (ev instanceof EnumEncodedValue)
+                            map.put(ev.getName(), edge.get((EnumEncodedValue) ev).toString());
+                        else if (ev instanceof DecimalEncodedValue)
+                            map.put(ev.getName(), edge.get((DecimalEncodedValue) ev));
+                        else if (ev instanceof BooleanEncodedValue)
+                            map.put(ev.getName(), edge.get((BooleanEncodedValue) ev));
+                        else if (ev instanceof IntEncodedValue)
+                            map.put(ev.getName(), edge.get((IntEncodedValue) ev));
+                    }
+
+                    lineString.setUserData(map);
+
+                    // doing some AffineTransformation
+                    TileGeomResult tileGeom = JtsAdapter.createTileGeom(lineString, tileEnvelope, geometryFactory, layerParams, acceptAllGeomFilter);
+                    List<VectorTile.Tile.Feature> features = JtsAdapter.toFeatures(tileGeom.mvtGeoms, layerProps, converter);
+                    layerBuilder.addAllFeatures(features);
                 }
 
-                edgeCounter.incrementAndGet();
-                Map<String, Object> map = new HashMap<>(2);
-                map.put("name", edge.getName());
-//                map.put(edge.getFlags())
-                for (String str : pathDetails) {
-                    // how to indicate an erroneous parameter?
-                    if (str.contains(",") || !encodingManager.hasEncodedValue(str))
-                        continue;
-
-                    EncodedValue ev = encodingManager.getEncodedValue(str, EncodedValue.class);
-                    if (ev instanceof EnumEncodedValue)
-                        map.put(ev.getName(), edge.get((EnumEncodedValue) ev).toString());
-                    else if (ev instanceof DecimalEncodedValue)
-                        map.put(ev.getName(), edge.get((DecimalEncodedValue) ev));
-                    else if (ev instanceof BooleanEncodedValue)
-                        map.put(ev.getName(), edge.get((BooleanEncodedValue) ev));
-                    else if (ev instanceof IntEncodedValue)
-                        map.put(ev.getName(), edge.get((IntEncodedValue) ev));
+                @Override
+                public void onTile(BBox bbox, int depth) {
                 }
-
-                lineString.setUserData(map);
-
-                // doing some AffineTransformation
-                TileGeomResult tileGeom = JtsAdapter.createTileGeom(lineString, tileEnvelope, geometryFactory, layerParams, acceptAllGeomFilter);
-                List<VectorTile.Tile.Feature> features = JtsAdapter.toFeatures(tileGeom.mvtGeoms, layerProps, converter);
-                layerBuilder.addAllFeatures(features);
-            }
-
-            @Override
-            public void onTile(BBox bbox, int depth) {
-            }
-        });
+            });
+        } finally {
+            ghStorage.releaseFlagOverlay(flagOverlay);
+        }
 
         MvtLayerBuild.writeProps(layerBuilder, layerProps);
         mvtBuilder.addLayers(layerBuilder.build());
@@ -0,0 +1,159 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.http.WebHelper;
+import com.graphhopper.routing.matrix.DistanceMatrix;
+import com.graphhopper.routing.matrix.MatrixRequest;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.GHPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.graphhopper.util.Parameters.Routing.POINT_HINT;
+
+/**
+ * Calculates the weights, times and distances between many points with one request instead of one route request
+ * per pair. Either pass the same 'point' list for the from and to points or use 'from_point' and 'to_point'. The
+ * response contains the requested arrays where the row is the from and the column is the to point. Times are in
+ * seconds and distances in meter.
+ */
+@Path("service/matrix")
+public class MatrixResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatrixResource.class);
+
+    private final GraphHopper graphHopper;
+
+    @Inject
+    public MatrixResource(GraphHopper graphHopper) {
+        this.graphHopper = graphHopper;
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doGet(
+            @Context HttpServletRequest httpReq,
+            @Context UriInfo uriInfo,
+            @QueryParam("point") List<GHPoint> points,
+            @QueryParam("from_point") List<GHPoint> fromPoints,
+            @QueryParam("to_point") List<GHPoint> toPoints,
+            @QueryParam(POINT_HINT) List<String> pointHints,
+            @QueryParam("from_" + POINT_HINT) List<String> fromPointHints,
+            @QueryParam("to_" + POINT_HINT) List<String> toPointHints,
+            @QueryParam("out_array") List<String> outArrays,
+            @QueryParam("vehicle") String vehicleStr,
+            @QueryParam("weighting") @DefaultValue("fastest") String weighting,
+            @QueryParam(Parameters.Matrix.FAIL_FAST) @DefaultValue("true") boolean failFast) {
+        StopWatch sw = new StopWatch().start();
+
+        if (!points.isEmpty()) {
+            if (!fromPoints.isEmpty() || !toPoints.isEmpty())
+                throw new IllegalArgumentException("Either pass point or from_point and to_point but not both");
+            fromPoints = toPoints = points;
+            fromPointHints = toPointHints = pointHints;
+        } else if (fromPoints.isEmpty() || toPoints.isEmpty()) {
+            throw new IllegalArgumentException("You have to pass at least one point or at least one from_point and one to_point");
+        }
+        if (!fromPointHints.isEmpty() && fromPointHints.size() != fromPoints.size())
+            throw new IllegalArgumentException("If you pass " + POINT_HINT + " or from_" + POINT_HINT + ", you need to pass a hint for every from point, empty hints will be ignored");
+        if (!toPointHints.isEmpty() && toPointHints.size() != toPoints.size())
+            throw new IllegalArgumentException("If you pass " + POINT_HINT + " or to_" + POINT_HINT + ", you need to pass a hint for every to point, empty hints will be ignored");
+
+        if (outArrays.isEmpty())
+            outArrays = Collections.singletonList("weights");
+        for (String outArray : outArrays) {
+            if (!Arrays.asList("weights", "times", "distances").contains(outArray))
+                throw new IllegalArgumentException("out_array must be one of weights, times or distances but was " + outArray);
+        }
+        boolean writeTimes = outArrays.contains("times"), writeDistances = outArrays.contains("distances");
+
+        MatrixRequest request = new MatrixRequest(fromPoints, toPoints).
+                setFromPointHints(fromPointHints).
+                setToPointHints(toPointHints).
+                setCalcTimes(writeTimes).
+                setCalcDistances(writeDistances);
+        RouteResource.initHints(request.getHints(), uriInfo.getQueryParameters());
+        request.setVehicle(vehicleStr).setWeighting(weighting);
+
+        DistanceMatrix matrix = graphHopper.calcMatrix(request);
+        if (failFast)
+            checkConnected(matrix);
+
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        if (outArrays.contains("weights"))
+            putArray(json.putArray("weights"), matrix, "weights");
+        if (writeTimes)
+            putArray(json.putArray("times"), matrix, "times");
+        if (writeDistances)
+            putArray(json.putArray("distances"), matrix, "distances");
+
+        float took = sw.stop().getSeconds();
+        WebHelper.jsonResponsePutInfo(json, took);
+        logger.info(httpReq.getQueryString() + " " + httpReq.getRemoteAddr() + " " + matrix.getFromCount() + "x"
+                + matrix.getToCount() + ", took:" + took + ", " + weighting + ", " + vehicleStr
+                + ", debugInfo: " + matrix.getDebugInfo());
+        return Response.ok(json).header("X-GH-Took", "" + Math.round(took * 1000)).build();
+    }
+
+    private static void checkConnected(DistanceMatrix matrix) {
+        for (int from = 0; from < matrix.getFromCount(); from++) {
+            for (int to = 0; to < matrix.getToCount(); to++) {
+                if (!matrix.isConnected(from, to))
+                    throw new IllegalArgumentException("Connection between locations not found: from_point " + from
+                            + " and to_point " + to + ". Use " + Parameters.Matrix.FAIL_FAST + "=false to get null for these entries");
+            }
+        }
+    }
+
+    /**
+     * Writes one row per from point. Not connected entries are null.
+     */
+    private static void putArray(ArrayNode rows, DistanceMatrix matrix, String type) {
+        for (int from = 0; from < matrix.getFromCount(); from++) {
+            ArrayNode row = rows.addArray();
+            for (int to = 0; to < matrix.getToCount(); to++) {
+                if (!matrix.isConnected(from, to))
+                    row.addNull();
+                else if ("times".equals(type))
+                    row.add(Math.round(matrix.getTime(from, to) / 1000d));
+                else if ("distances".equals(type))
+                    row.add(Helper.round(matrix.getDistance(from, to), 1));
+                else
+                    row.add(Helper.round(matrix.getWeight(from, to), 3));
+            }
+        }
+    }
+}
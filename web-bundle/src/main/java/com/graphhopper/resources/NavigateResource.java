@@ -124,12 +124,15 @@ public class NavigateResource {
 
         StopWatch sw = new StopWatch().start();
 
-        GHResponse ghResponse = calcRoute(uriInfo, favoredHeadings, requestPoints, vehicleStr, weighting, localeStr, algoStr, enableInstructions, minPathPrecision, versionCode);
-
-        // Only do this, when there are more than 2 points, otherwise we use alternative routes
-        if (!ghResponse.hasErrors() && favoredHeadings.size() > 0) {
-            GHResponse noHeadingResponse = calcRoute(uriInfo, Collections.EMPTY_LIST, requestPoints, vehicleStr, weighting, localeStr, algoStr, enableInstructions, minPathPrecision, versionCode);
-            if (ghResponse.getBest().getDistance() != noHeadingResponse.getBest().getDistance()) {
+        // with bearings the route without them is added as alternative if it differs. Only the via routing calculates
+        // it within the same request, for the alternative route and round trip algorithms it is a second request
+        boolean withoutHeadingInRequest = favoredHeadings.size() > 0
+                && !Parameters.Algorithms.ALT_ROUTE.equalsIgnoreCase(algoStr)
+                && !Parameters.Algorithms.ROUND_TRIP.equalsIgnoreCase(algoStr);
+        GHResponse ghResponse = calcRoute(uriInfo, favoredHeadings, withoutHeadingInRequest, requestPoints, vehicleStr, weighting, localeStr, algoStr, enableInstructions, minPathPrecision, versionCode);
+        if (!ghResponse.hasErrors() && favoredHeadings.size() > 0 && !withoutHeadingInRequest) {
+            GHResponse noHeadingResponse = calcRoute(uriInfo, Collections.<Double>emptyList(), false, requestPoints, vehicleStr, weighting, localeStr, algoStr, enableInstructions, minPathPrecision, versionCode);
+            if (!noHeadingResponse.hasErrors() && ghResponse.getBest().getDistance() != noHeadingResponse.getBest().getDistance()) {
                 ghResponse.getAll().add(noHeadingResponse.getBest());
             }
         }
@@ -152,10 +155,12 @@ public class NavigateResource {
         }
     }
 
-    private GHResponse calcRoute(UriInfo uriInfo, List<Double> favoredHeadings, List<GHPoint> requestPoints, String vehicleStr, String weighting, String localeStr, String algoStr, boolean enableInstructions, double minPathPrecision, int versionCode) {
+    private GHResponse calcRoute(UriInfo uriInfo, List<Double> favoredHeadings, boolean alternativeWithoutHeading, List<GHPoint> requestPoints, String vehicleStr, String weighting, String localeStr, String algoStr, boolean enableInstructions, double minPathPrecision, int versionCode) {
         GHRequest request;
         if (favoredHeadings.size() > 0) {
             request = new GHRequest(requestPoints, favoredHeadings);
+            if (alternativeWithoutHeading)
+                request.getHints().put(Parameters.Routing.ALTERNATIVE_WITHOUT_HEADING, true);
         } else {
             request = new GHRequest(requestPoints);
         }
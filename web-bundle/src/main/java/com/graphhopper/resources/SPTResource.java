@@ -6,7 +6,9 @@ import com.graphhopper.routing.profiles.*;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.EdgeFlagOverlay;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.*;
@@ -67,140 +69,155 @@ public class SPTResource {
 
         FlagEncoder encoder = encodingManager.getEncoder(vehicle);
         EdgeFilter edgeFilter = DefaultEdgeFilter.allEdges(encoder);
-        LocationIndex locationIndex = graphHopper.getLocationIndex();
-        QueryResult qr = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
-        if (!qr.isValid())
-            throw new IllegalArgumentException("Point not found:" + point);
-
-        Graph graph = graphHopper.getGraphHopperStorage();
-        QueryGraph queryGraph = QueryGraph.lookup(graph, qr);
-        HintsMap hintsMap = new HintsMap();
-        RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
-
-        Weighting weighting = graphHopper.createWeighting(hintsMap, encoder, graph);
-        Isochrone isochrone = new Isochrone(queryGraph, weighting, reverseFlow);
-
-        if (distanceInMeter > 0) {
-            isochrone.setDistanceLimit(distanceInMeter);
-        } else {
-            isochrone.setTimeLimit(timeLimitInSeconds);
-        }
+        final GraphHopperStorage ghStorage = graphHopper.getGraphHopperStorage();
+        // all edges are read with the flags of one overlay, even if changes are published meanwhile. The overlay is
+        // released after the streaming output was written
+        final EdgeFlagOverlay flagOverlay = ghStorage.acquireFlagOverlay();
+        boolean streaming = false;
+        try {
+            // the location index can be replaced by a structural change while no overlay is acquired
+            LocationIndex locationIndex = graphHopper.getLocationIndex();
+            QueryResult qr = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
+            if (!qr.isValid())
+                throw new IllegalArgumentException("Point not found:" + point);
+
+            Graph graph = ghStorage.withFlagOverlay(flagOverlay);
+            QueryGraph queryGraph = QueryGraph.lookup(graph, qr);
+            HintsMap hintsMap = new HintsMap();
+            RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+
+            Weighting weighting = graphHopper.createWeighting(hintsMap, encoder, graph);
+            Isochrone isochrone = new Isochrone(queryGraph, weighting, reverseFlow);
+
+            if (distanceInMeter > 0) {
+                isochrone.setDistanceLimit(distanceInMeter);
+            } else {
+                isochrone.setTimeLimit(timeLimitInSeconds);
+            }
 
-        final String COL_SEP = ",", LINE_SEP = "\n";
-        List<String> columns;
-        if (!Helper.isEmpty(columnsParam))
-            columns = Arrays.asList(columnsParam.split(","));
-        else
-            columns = Arrays.asList("longitude", "latitude", "time", "distance");
+            final String COL_SEP = ",", LINE_SEP = "\n";
+            List<String> columns;
+            if (!Helper.isEmpty(columnsParam))
+                columns = Arrays.asList(columnsParam.split(","));
+            else
+                columns = Arrays.asList("longitude", "latitude", "time", "distance");
 
-        if (columns.isEmpty())
-            throw new IllegalArgumentException("Either omit the columns parameter or specify the columns via comma separated values");
+            if (columns.isEmpty())
+                throw new IllegalArgumentException("Either omit the columns parameter or specify the columns via comma separated values");
 
-        Map<String, EncodedValue> pathDetails = new HashMap<>();
-        for (String col : columns) {
-            if (encodingManager.hasEncodedValue(col))
-                pathDetails.put(col, encodingManager.getEncodedValue(col, EncodedValue.class));
-        }
+            Map<String, EncodedValue> pathDetails = new HashMap<>();
+            for (String col : columns) {
+                if (encodingManager.hasEncodedValue(col))
+                    pathDetails.put(col, encodingManager.getEncodedValue(col, EncodedValue.class));
+            }
 
-        StreamingOutput out = output -> {
-            try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, Helper.UTF_CS))) {
-                StringBuilder sb = new StringBuilder();
-                for (String col : columns) {
-                    if (sb.length() > 0)
-                        sb.append(COL_SEP);
-                    sb.append(col);
-                }
-                sb.append(LINE_SEP);
-                writer.write(sb.toString());
-                isochrone.search(qr.getClosestNode(), label -> {
-                    sb.setLength(0);
-                    for (int colIndex = 0; colIndex < columns.size(); colIndex++) {
-                        String col = columns.get(colIndex);
-                        if (colIndex > 0)
+            StreamingOutput out = output -> {
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, Helper.UTF_CS))) {
+                    StringBuilder sb = new StringBuilder();
+                    for (String col : columns) {
+                        if (sb.length() > 0)
                             sb.append(COL_SEP);
-
-                        switch (col) {
-                            case "node_id":
-                                sb.append(label.nodeId);
-                                continue;
-                            case "prev_node_id":
-                                sb.append(label.prevNodeId);
-                                continue;
-                            case "edge_id":
-                                sb.append(label.edgeId);
-                                continue;
-                            case "prev_edge_id":
-                                sb.append(label.prevEdgeId);
-                                continue;
-                            case "distance":
-                                sb.append(label.distance);
-                                continue;
-                            case "prev_distance":
-                                sb.append(label.prevCoordinate == null ? 0 : label.prevDistance);
-                                continue;
-                            case "time":
-                                sb.append(label.timeMillis);
-                                continue;
-                            case "prev_time":
-                                sb.append(label.prevCoordinate == null ? 0 : label.prevTimeMillis);
-                                continue;
-                            case "longitude":
-                                sb.append(label.coordinate.lon);
-                                continue;
-                            case "prev_longitude":
-                                sb.append(label.prevCoordinate == null ? null : label.prevCoordinate.lon);
+                        sb.append(col);
+                    }
+                    sb.append(LINE_SEP);
+                    writer.write(sb.toString());
+                    isochrone.search(qr.getClosestNode(), label -> {
+                        sb.setLength(0);
+                        for (int colIndex = 0; colIndex < columns.size(); colIndex++) {
+                            String col = columns.get(colIndex);
+                            if (colIndex > 0)
+                                sb.append(COL_SEP);
+
+                            switch (col) {
+                                case "node_id":
+                                    sb.append(label.nodeId);
+                                    continue;
+                                case "prev_node_id":
+                                    sb.append(label.prevNodeId);
+                                    continue;
+                                case "edge_id":
+                                    sb.append(label.edgeId);
+                                    continue;
+                                case "prev_edge_id":
+                                    sb.append(label.prevEdgeId);
+                                    continue;
+                                case "distance":
+                                    sb.append(label.distance);
+                                    continue;
+                                case "prev_distance":
+                                    sb.append(label.prevCoordinate == null ? 0 : label.prevDistance);
+                                    continue;
+                                case "time":
+                                    sb.append(label.timeMillis);
+                                    continue;
+                                case "prev_time":
+                                    sb.append(label.prevCoordinate == null ? 0 : label.prevTimeMillis);
+                                    continue;
+                                case "longitude":
+                                    sb.append(label.coordinate.lon);
+                                    continue;
+                                case "prev_longitude":
+                                    sb.append(label.prevCoordinate == null ? null : label.prevCoordinate.lon);
+                                    continue;
+                                case "latitude":
+                                    sb.append(label.coordinate.lat);
+                                    continue;
+                                case "prev_latitude":
+                                    sb.append(label.prevCoordinate == null ? null : label.prevCoordinate.lat);
+                                    continue;
+                            }
+
+                            if (!EdgeIterator.Edge.isValid(label.edgeId))
                                 continue;
-                            case "latitude":
-                                sb.append(label.coordinate.lat);
+
+                            EdgeIteratorState edge = queryGraph.getEdgeIteratorState(label.edgeId, label.nodeId);
+                            if (edge == null)
                                 continue;
-                            case "prev_latitude":
-                                sb.append(label.prevCoordinate == null ? null : label.prevCoordinate.lat);
+
+                            if (col.equals(Parameters.DETAILS.STREET_NAME)) {
+                                sb.append(edge.getName().replaceAll(",", ""));
                                 continue;
+                            }
+
+                            EncodedValue ev = pathDetails.get(col);
+                            if (ev instanceof DecimalEncodedValue) {
+                                DecimalEncodedValue dev = (DecimalEncodedValue) ev;
+                                sb.append(reverseFlow ? edge.getReverse(dev) : edge.get(dev));
+                            } else if (ev instanceof EnumEncodedValue) {
+                                EnumEncodedValue eev = (EnumEncodedValue) ev;
+                                sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
+                            } else if (ev instanceof BooleanEncodedValue) {
+                                BooleanEncodedValue eev = (BooleanEncodedValue) ev;
+                                sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
+                            } else if (ev instanceof IntEncodedValue) {
+                                IntEncodedValue eev = (IntEncodedValue) ev;
+                                sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
+                            } else {
+                                throw new IllegalArgumentException("Unknown property " + col);
+                            }
                         }
-
-                        if (!EdgeIterator.Edge.isValid(label.edgeId))
-                            continue;
-
-                        EdgeIteratorState edge = queryGraph.getEdgeIteratorState(label.edgeId, label.nodeId);
-                        if (edge == null)
-                            continue;
-
-                        if (col.equals(Parameters.DETAILS.STREET_NAME)) {
-                            sb.append(edge.getName().replaceAll(",", ""));
-                            continue;
+                        sb.append(LINE_SEP);
+                        try {
+                            writer.write(sb.toString());
+                        } catch (IOException ex) {
+                            throw new RuntimeException(ex);
                         }
+                    });
 
-                        EncodedValue ev = pathDetails.get(col);
-                        if (ev instanceof DecimalEncodedValue) {
-                            DecimalEncodedValue dev = (DecimalEncodedValue) ev;
-                            sb.append(reverseFlow ? edge.getReverse(dev) : edge.get(dev));
-                        } else if (ev instanceof EnumEncodedValue) {
-                            EnumEncodedValue eev = (EnumEncodedValue) ev;
-                            sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
-                        } else if (ev instanceof BooleanEncodedValue) {
-                            BooleanEncodedValue eev = (BooleanEncodedValue) ev;
-                            sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
-                        } else if (ev instanceof IntEncodedValue) {
-                            IntEncodedValue eev = (IntEncodedValue) ev;
-                            sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
-                        } else {
-                            throw new IllegalArgumentException("Unknown property " + col);
-                        }
-                    }
-                    sb.append(LINE_SEP);
-                    try {
-                        writer.write(sb.toString());
-                    } catch (IOException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                });
-
-                logger.info("took: " + sw.stop().getSeconds() + ", visited nodes:" + isochrone.getVisitedNodes() + ", " + uriInfo.getQueryParameters());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        };
-        // took header does not make sense as we stream
-        return Response.ok(out).build();
+                    logger.info("took: " + sw.stop().getSeconds() + ", visited nodes:" + isochrone.getVisitedNodes() + ", " + uriInfo.getQueryParameters());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    ghStorage.releaseFlagOverlay(flagOverlay);
+                }
+            };
+            // took header does not make sense as we stream
+            Response response = Response.ok(out).build();
+            streaming = true;
+            return response;
+        } finally {
+            if (!streaming)
+                ghStorage.releaseFlagOverlay(flagOverlay);
+        }
     }
 }
@@ -0,0 +1,188 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class BatchRouteResourceTest {
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testWriteBeforeBodyIsRead() throws IOException {
+        // the lines cannot be parsed, so no graph is necessary. All results of the body fit into the buffer
+        BatchRouteResource resource = new BatchRouteResource(null, new ObjectMapper(), executorService, 20);
+        final CountDownLatch bodyRead = new CountDownLatch(1);
+        InputStream body = new ByteArrayInputStream(createBody(20)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                int read = super.read(b, off, len);
+                if (read < 0)
+                    bodyRead.countDown();
+                return read;
+            }
+        };
+        // like a client that reads the response only after it sent the whole body
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                try {
+                    if (!bodyRead.await(10, TimeUnit.SECONDS))
+                        throw new IllegalStateException("the response was written before the body was read");
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                super.write(b, off, len);
+            }
+        };
+        resource.doPost(createRequest(), body).write(output);
+
+        String[] lines = new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(20, lines.length);
+        for (String line : lines) {
+            assertTrue(line, line.contains("Cannot parse request in line"));
+        }
+    }
+
+    @Test
+    public void testSlowClientLimitsCalculatedRoutes() throws Exception {
+        final AtomicInteger calculated = new AtomicInteger();
+        final BatchRouteResource resource = new BatchRouteResource(null, new ObjectMapper(), executorService, 2) {
+            @Override
+            String calcRoute(String requestLine, int lineNumber) {
+                calculated.incrementAndGet();
+                return "{}\n";
+            }
+        };
+        final CountDownLatch clientReads = new CountDownLatch(1);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                try {
+                    clientReads.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                super.write(b, off, len);
+            }
+        };
+        final AtomicReference<Exception> writeException = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resource.doPost(createRequest(), new ByteArrayInputStream(createBody(100))).write(output);
+                } catch (Exception ex) {
+                    writeException.set(ex);
+                }
+            }
+        });
+        writer.start();
+
+        Thread.sleep(300);
+        // the writer blocks in the first flush, besides the written route only the routes in flight are calculated
+        assertTrue("calculated " + calculated.get(), calculated.get() <= 3);
+
+        clientReads.countDown();
+        writer.join(10_000);
+        assertNull(writeException.get());
+        assertEquals(100, calculated.get());
+        assertEquals(100, new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n").length);
+    }
+
+    @Test
+    public void testWaitForRunningRoutesIfWriteFails() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger calculated = new AtomicInteger();
+        BatchRouteResource resource = new BatchRouteResource(null, new ObjectMapper(), executorService, 4) {
+            @Override
+            String calcRoute(String requestLine, int lineNumber) {
+                running.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                } finally {
+                    calculated.incrementAndGet();
+                    running.decrementAndGet();
+                }
+                return "{}\n";
+            }
+        };
+        OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("connection closed");
+            }
+        };
+        try {
+            resource.doPost(createRequest(), new ByteArrayInputStream(createBody(100))).write(output);
+            fail("the exception of the output must be thrown");
+        } catch (IOException ex) {
+            assertEquals("connection closed", ex.getMessage());
+        }
+        // the routes still running were awaited and no further routes were calculated
+        assertEquals(0, running.get());
+        assertTrue("calculated " + calculated.get(), calculated.get() < 10);
+    }
+
+    private static byte[] createBody(int lines) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            body.append("{\"id\": ").append(i).append(", \"points\": \n");
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static HttpServletRequest createRequest() {
+        return (HttpServletRequest) Proxy.newProxyInstance(BatchRouteResourceTest.class.getClassLoader(),
+                new Class[]{HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+    }
+}
@@ -18,6 +18,7 @@
 package com.graphhopper.http;
 
 import com.graphhopper.http.cli.ImportCommand;
+import com.graphhopper.http.cli.UpdateCommand;
 import com.graphhopper.http.resources.RootResource;
 import io.dropwizard.Application;
 import io.dropwizard.bundles.assets.ConfiguredAssetsBundle;
@@ -67,6 +68,7 @@ public final class GraphHopperApplication extends Application<GraphHopperServerC
         bootstrap.addBundle(new GraphHopperBundle());
         bootstrap.addBundle(new ConfiguredAssetsBundle("/assets/", "/maps/", "index.html"));
         bootstrap.addCommand(new ImportCommand(bootstrap.getObjectMapper()));
+        bootstrap.addCommand(new UpdateCommand(bootstrap.getObjectMapper()));
     }
 
     @Override
@@ -0,0 +1,61 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.http.GraphHopperManaged;
+import com.graphhopper.http.GraphHopperServerConfiguration;
+import com.graphhopper.reader.osm.GraphHopperOSM;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import java.io.File;
+import java.util.List;
+
+public class UpdateCommand extends ConfiguredCommand<GraphHopperServerConfiguration> {
+
+    private final ObjectMapper objectMapper;
+
+    public UpdateCommand(ObjectMapper objectMapper) {
+        super("update", "applies OSM change files (.osc or .osc.gz) to the graphhopper files, requires graph.osm_way_ids");
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("changes").nargs("+").help("the OSM change files in the order they should be applied");
+    }
+
+    @Override
+    protected void run(Bootstrap<GraphHopperServerConfiguration> bootstrap, Namespace namespace, GraphHopperServerConfiguration configuration) {
+        final GraphHopperManaged graphHopper = new GraphHopperManaged(configuration.getGraphHopperConfiguration(), objectMapper);
+        graphHopper.start();
+        try {
+            List<String> changes = namespace.getList("changes");
+            for (String change : changes) {
+                ((GraphHopperOSM) graphHopper.getGraphHopper()).applyOSMChanges(new File(change));
+            }
+        } finally {
+            graphHopper.stop();
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit.DropwizardAppRule;
+import org.junit.AfterClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SwapGraphTaskTest {
+    private static final String DIR = "./target/swap-graph-gh/";
+    private static final String NEW_DIR = "./target/swap-graph-new-gh/";
+
+    private static final GraphHopperServerConfiguration config = new GraphHopperServerConfiguration();
+
+    static {
+        config.getGraphHopperConfiguration().merge(new CmdArgs().
+                put("graph.flag_encoders", "car").
+                put("prepare.ch.weightings", "no").
+                put("prepare.min_network_size", 0).
+                put("prepare.min_one_way_network_size", 0).
+                put("datareader.file", "../core/files/andorra.osm.pbf").
+                put("web.swap_graph.enabled", true).
+                put("graph.swap.warm_up_iterations", 10).
+                put("graph.location", DIR));
+    }
+
+    @ClassRule
+    public static final DropwizardAppRule<GraphHopperServerConfiguration> app = new DropwizardAppRule<>(
+            GraphHopperApplication.class, config);
+
+    @AfterClass
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+        Helper.removeDir(new File(NEW_DIR));
+    }
+
+    /**
+     * Imports the same area into another folder as it would be done for an update
+     */
+    private static void importNewGraph() {
+        if (new File(NEW_DIR).exists())
+            return;
+        CmdArgs newConfig = new CmdArgs(config.getGraphHopperConfiguration().toMap()).put("graph.location", NEW_DIR);
+        GraphHopperManaged newGraph = new GraphHopperManaged(newConfig, app.getObjectMapper());
+        newGraph.start();
+        newGraph.stop();
+    }
+
+    @Test
+    public void testSwapGraph() {
+        double distance = route();
+        importNewGraph();
+
+        Response response = swap(NEW_DIR);
+        assertEquals(200, response.getStatus());
+        assertTrue(response.readEntity(String.class).startsWith("swapped graph to " + NEW_DIR));
+        assertEquals(distance, route(), 1e-3);
+
+        // the old graph can be loaded again
+        response = swap(DIR);
+        assertEquals(200, response.getStatus());
+        assertEquals(distance, route(), 1e-3);
+    }
+
+    @Test
+    public void testSwapToMissingGraph() {
+        double distance = route();
+        Response response = swap("./target/swap-graph-missing-gh/");
+        assertEquals(500, response.getStatus());
+        // the current graph is still in use
+        assertEquals(distance, route(), 1e-3);
+    }
+
+    @Test
+    public void testCloseOldGraphAfterRunningRequest() throws Exception {
+        importNewGraph();
+        CmdArgs args = new CmdArgs(config.getGraphHopperConfiguration().toMap()).
+                put("graph.location", DIR).
+                put("graph.swap.drain_timeout", 1);
+        GraphHopperManaged managed = new GraphHopperManaged(args, app.getObjectMapper());
+        managed.start();
+        try {
+            ContainerRequestContext request = createRequest();
+            GraphHopper old = managed.acquire(request);
+
+            // the request is still running, so the old graph must not be closed after the drain timeout
+            assertFalse(managed.swapGraph(NEW_DIR));
+            assertFalse(old.getGraphHopperStorage().isClosed());
+            assertSame(old, managed.acquire(request));
+            GHResponse rsp = old.route(new GHRequest(42.554851, 1.536198, 42.510071, 1.548128).setVehicle("car"));
+            assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+            // new requests use the new graph
+            assertNotSame(old, managed.getGraphHopper());
+
+            managed.release(request);
+            assertTrue(old.getGraphHopperStorage().isClosed());
+        } finally {
+            managed.stop();
+        }
+    }
+
+    private static ContainerRequestContext createRequest() {
+        final Map<String, Object> properties = new HashMap<>();
+        return (ContainerRequestContext) Proxy.newProxyInstance(SwapGraphTaskTest.class.getClassLoader(),
+                new Class[]{ContainerRequestContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getProperty":
+                                return properties.get(args[0]);
+                            case "setProperty":
+                                properties.put((String) args[0], args[1]);
+                                return null;
+                            case "removeProperty":
+                                properties.remove(args[0]);
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+                });
+    }
+
+    private static Response swap(String location) {
+        return app.client().target("http://localhost:8081/tasks/swap-graph").queryParam("graph.location", location).
+                request().post(Entity.text(""));
+    }
+
+    private static double route() {
+        Response response = app.client().target("http://localhost:8080/service/route?point=42.554851,1.536198&point=42.510071,1.548128&vehicle=car").
+                request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        return json.get("paths").get(0).get("distance").asDouble();
+    }
+}
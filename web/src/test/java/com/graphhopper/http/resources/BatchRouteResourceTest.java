@@ -0,0 +1,101 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.http.GraphHopperApplication;
+import com.graphhopper.http.GraphHopperServerConfiguration;
+import com.graphhopper.resources.BatchRouteResource;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.Parameters;
+import io.dropwizard.testing.junit.DropwizardAppRule;
+import org.junit.AfterClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BatchRouteResourceTest {
+    private static final String DIR = "./target/andorra-gh-batch/";
+
+    private static final GraphHopperServerConfiguration config = new GraphHopperServerConfiguration();
+
+    static {
+        config.getGraphHopperConfiguration().merge(new CmdArgs().
+                put(Parameters.CH.PREPARE + "weightings", "no").
+                put("graph.flag_encoders", "car").
+                put(Parameters.Routing.INIT_BATCH_THREADS, "2").
+                put(Parameters.Routing.INIT_BATCH_MAX_IN_FLIGHT, "2").
+                put("graph.location", DIR).
+                put("datareader.file", "../core/files/andorra.osm.pbf"));
+    }
+
+    @ClassRule
+    public static final DropwizardAppRule<GraphHopperServerConfiguration> app = new DropwizardAppRule(
+            GraphHopperApplication.class, config);
+
+    @AfterClass
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            body.append("{\"id\": \"route").append(i).append("\", \"points\": [[1.518946,42.531453],[1.54006,42.511178]], " +
+                    "\"instructions\": false, \"points_encoded\": false}\n");
+        }
+        body.append("\n");
+        body.append("{\"id\": 42, \"points\": [[1.518946,42.531453],[1.54006,52.511178]]}\n");
+        body.append("{\"id\": \"broken\", \"points\": \n");
+
+        Response response = app.client().target("http://localhost:8080/service/route/batch").request().
+                post(Entity.entity(body.toString(), BatchRouteResource.NDJSON));
+        assertEquals(200, response.getStatus());
+        String[] lines = response.readEntity(String.class).split("\n");
+        assertEquals(12, lines.length);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, JsonNode> results = new HashMap<>();
+        for (String line : lines) {
+            JsonNode json = objectMapper.readTree(line);
+            results.put(json.get("id").asText(), json);
+        }
+        assertEquals(12, results.size());
+        for (int i = 0; i < 10; i++) {
+            JsonNode path = results.get("route" + i).get("paths").get(0);
+            double distance = path.get("distance").asDouble();
+            assertTrue("distance wasn't correct:" + distance, distance > 3000);
+            assertTrue("distance wasn't correct:" + distance, distance < 3500);
+            assertFalse(path.has("instructions"));
+            assertTrue(path.get("points").has("coordinates"));
+        }
+        assertTrue(results.get("42").get("message").asText(), results.get("42").get("message").asText().contains("Point 1 is out of bounds"));
+        // the id of a line that cannot be parsed is unknown
+        assertTrue(results.get("null").get("message").asText().contains("Cannot parse request in line 13"));
+    }
+}